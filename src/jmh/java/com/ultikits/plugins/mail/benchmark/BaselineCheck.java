@@ -0,0 +1,153 @@
+package com.ultikits.plugins.mail.benchmark;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compares a JMH JSON result file with the committed baseline.
+ * <p>
+ * A benchmark regresses when its score is worse than the baseline by more than the
+ * tolerance, or when it allocates more bytes per operation by more than the
+ * tolerance. Single-shot runs measure retained heap ({@code indexBytes}) rather than
+ * time, so for them that counter is compared instead of the score. Benchmarks missing
+ * from the baseline are reported and skipped.
+ * <p>
+ * No baseline is committed with the sources: it has to be recorded on the reference
+ * machine first. Until then the check fails instead of passing without comparing
+ * anything.
+ * <p>
+ * Arguments: {@code <result.json> <baseline.json> <tolerance percent> <update>}.
+ * With {@code update = true} the result replaces the baseline instead.
+ */
+public final class BaselineCheck {
+
+    private static final String ALLOC_METRIC = "gc.alloc.rate.norm";
+    private static final String RETAINED_METRIC = "indexBytes";
+
+    private BaselineCheck() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path result = Paths.get(args[0]);
+        Path baseline = Paths.get(args[1]);
+        double tolerance = Double.parseDouble(args[2]) / 100.0;
+        boolean update = Boolean.parseBoolean(args[3]);
+
+        if (update) {
+            Files.copy(result, baseline, StandardCopyOption.REPLACE_EXISTING);
+            System.out.println("Baseline updated: " + baseline);
+            return;
+        }
+
+        Map<String, JsonObject> current = load(result);
+        Map<String, JsonObject> expected = Files.exists(baseline) ? load(baseline) : new TreeMap<>();
+        if (expected.isEmpty()) {
+            System.out.println("No baseline recorded in " + baseline + ", nothing was checked.");
+            System.out.println("Record one on the reference machine with -Djmh.baseline.update=true");
+            System.exit(1);
+        }
+        int regressions = 0;
+        int unchecked = 0;
+        for (Map.Entry<String, JsonObject> entry : current.entrySet()) {
+            JsonObject base = expected.get(entry.getKey());
+            if (base == null) {
+                System.out.println("NEW        " + entry.getKey());
+                unchecked++;
+                continue;
+            }
+            JsonObject run = entry.getValue();
+            String mode = run.get("mode").getAsString();
+            if ("ss".equals(mode)) {
+                double retained = secondary(run, RETAINED_METRIC);
+                double baseRetained = secondary(base, RETAINED_METRIC);
+                boolean larger = baseRetained > 0 && retained > baseRetained * (1 + tolerance);
+                System.out.printf("%-10s %s  retained %.0f -> %.0f B%n",
+                    larger ? "REGRESSED" : "ok", entry.getKey(), baseRetained, retained);
+                if (larger) {
+                    regressions++;
+                }
+                continue;
+            }
+            boolean higherIsBetter = "thrpt".equals(mode);
+            double score = score(run);
+            double baseScore = score(base);
+            double change = baseScore == 0 ? 0 : (score - baseScore) / baseScore;
+            boolean slower = higherIsBetter ? change < -tolerance : change > tolerance;
+
+            double alloc = secondary(run, ALLOC_METRIC);
+            double baseAlloc = secondary(base, ALLOC_METRIC);
+            boolean heavier = baseAlloc > 0 && alloc > baseAlloc * (1 + tolerance);
+
+            String status = slower || heavier ? "REGRESSED" : "ok";
+            System.out.printf("%-10s %s  score %.3f -> %.3f (%+.1f%%)  alloc %.0f -> %.0f B/op%n",
+                status, entry.getKey(), baseScore, score, change * 100, baseAlloc, alloc);
+            if (slower || heavier) {
+                regressions++;
+            }
+        }
+        if (unchecked > 0) {
+            System.out.println(unchecked + " benchmark(s) not in the baseline were not checked");
+        }
+        if (regressions > 0) {
+            System.out.println(regressions + " benchmark(s) regressed beyond " + args[2] + "%");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Key each run by benchmark name and parameters.
+     */
+    private static Map<String, JsonObject> load(Path file) throws IOException {
+        Map<String, JsonObject> runs = new TreeMap<>();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            JsonArray array = JsonParser.parseReader(reader).getAsJsonArray();
+            for (JsonElement element : array) {
+                JsonObject run = element.getAsJsonObject();
+                StringBuilder key = new StringBuilder(run.get("benchmark").getAsString());
+                if (run.has("params")) {
+                    Map<String, String> params = new TreeMap<>();
+                    for (Map.Entry<String, JsonElement> param : run.getAsJsonObject("params").entrySet()) {
+                        params.put(param.getKey(), param.getValue().getAsString());
+                    }
+                    key.append(params);
+                }
+                runs.put(key.toString(), run);
+            }
+        }
+        return runs;
+    }
+
+    private static double score(JsonObject run) {
+        return run.getAsJsonObject("primaryMetric").get("score").getAsDouble();
+    }
+
+    /**
+     * A secondary metric such as the bytes allocated per operation reported by the gc
+     * profiler; 0 if it was not recorded. Older JMH versions prefix profiler metric
+     * names with a middle dot, so match on the suffix.
+     */
+    private static double secondary(JsonObject run, String name) {
+        JsonObject secondary = run.getAsJsonObject("secondaryMetrics");
+        if (secondary == null) {
+            return 0;
+        }
+        for (Map.Entry<String, JsonElement> metric : secondary.entrySet()) {
+            if (metric.getKey().endsWith(name)) {
+                return metric.getValue().getAsJsonObject().get("score").getAsDouble();
+            }
+        }
+        return 0;
+    }
+}
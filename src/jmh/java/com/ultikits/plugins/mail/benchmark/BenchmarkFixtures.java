@@ -0,0 +1,167 @@
+package com.ultikits.plugins.mail.benchmark;
+
+import be.seeseemelk.mockbukkit.MockBukkit;
+import be.seeseemelk.mockbukkit.ServerMock;
+import com.ultikits.plugins.mail.config.MailConfig;
+import com.ultikits.plugins.mail.entity.MailData;
+import com.ultikits.plugins.mail.metrics.MailMetrics;
+import com.ultikits.plugins.mail.metrics.MainThreadMonitor;
+import com.ultikits.plugins.mail.service.MailService;
+import com.ultikits.plugins.mail.service.MailTaskScheduler;
+import com.ultikits.plugins.mail.service.NotificationAggregator;
+import com.ultikits.plugins.mail.store.MailStore;
+import com.ultikits.plugins.mail.utils.MockBukkitHelper;
+import com.ultikits.plugins.mail.utils.TestHelper;
+import com.ultikits.ultitools.abstracts.UltiToolsPlugin;
+
+import org.bukkit.ChatColor;
+import org.bukkit.Material;
+import org.bukkit.enchantments.Enchantment;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.ItemMeta;
+import org.bukkit.plugin.Plugin;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Shared setup for the JMH benchmarks.
+ * <p>
+ * Bukkit is provided by MockBukkit so items serialize for real. The UltiTools plugin
+ * is a stub-only Mockito mock, which keeps the per-call cost of {@code i18n} low.
+ */
+final class BenchmarkFixtures {
+
+    private static final Material[] MATERIALS = {
+        Material.DIAMOND, Material.IRON_INGOT, Material.GOLD_INGOT, Material.EMERALD,
+        Material.OAK_LOG, Material.COBBLESTONE, Material.BREAD, Material.ARROW, Material.REDSTONE
+    };
+
+    private BenchmarkFixtures() {
+    }
+
+    /**
+     * How much data each attached item carries.
+     */
+    enum AttachmentComplexity {
+        /** Single items without meta. */
+        PLAIN,
+        /** Full stacks of mixed materials without meta. */
+        STACKED,
+        /** Named, lored and enchanted items. */
+        DECORATED
+    }
+
+    static ServerMock startServer() {
+        MockBukkitHelper.ensureCleanState();
+        return MockBukkit.mock();
+    }
+
+    static void stopServer() {
+        MockBukkitHelper.safeUnmock();
+    }
+
+    static UltiToolsPlugin plugin() {
+        return TestHelper.stubUltiToolsPlugin();
+    }
+
+    /**
+     * Build a MailService wired the way the container would, on top of the given store.
+     */
+    static MailService mailService(MailConfig config, MailStore store, UltiToolsPlugin plugin,
+                                   Plugin bukkitPlugin) throws Exception {
+        MailTaskScheduler taskScheduler = new MailTaskScheduler();
+        injectField(taskScheduler, "config", config);
+        injectField(taskScheduler, "plugin", plugin);
+        injectField(taskScheduler, "bukkitPlugin", bukkitPlugin);
+
+        NotificationAggregator notificationAggregator = new NotificationAggregator();
+        injectField(notificationAggregator, "config", config);
+        injectField(notificationAggregator, "bukkitPlugin", bukkitPlugin);
+
+        MailMetrics metrics = new MailMetrics();
+        MainThreadMonitor mainThread = new MainThreadMonitor();
+        injectField(mainThread, "config", config);
+        injectField(mainThread, "plugin", plugin);
+        injectField(mainThread, "metrics", metrics);
+        injectField(mainThread, "bukkitPlugin", bukkitPlugin);
+
+        MailService mailService = new MailService();
+        injectField(mailService, "config", config);
+        injectField(mailService, "store", store);
+        injectField(mailService, "plugin", plugin);
+        injectField(mailService, "bukkitPlugin", bukkitPlugin);
+        injectField(mailService, "taskScheduler", taskScheduler);
+        injectField(mailService, "notificationAggregator", notificationAggregator);
+        injectField(mailService, "metrics", metrics);
+        injectField(mailService, "mainThread", mainThread);
+        return mailService;
+    }
+
+    static ItemStack[] items(AttachmentComplexity complexity, int count) {
+        ItemStack[] items = new ItemStack[count];
+        for (int i = 0; i < count; i++) {
+            Material material = MATERIALS[i % MATERIALS.length];
+            switch (complexity) {
+                case PLAIN:
+                    items[i] = new ItemStack(material);
+                    break;
+                case STACKED:
+                    items[i] = new ItemStack(material, material.getMaxStackSize());
+                    break;
+                default:
+                    items[i] = decorated(material, i);
+                    break;
+            }
+        }
+        return items;
+    }
+
+    private static ItemStack decorated(Material material, int index) {
+        ItemStack item = new ItemStack(material, 1 + index % 16);
+        ItemMeta meta = item.getItemMeta();
+        meta.setDisplayName(ChatColor.GOLD + "Reward #" + index);
+        meta.setLore(Arrays.asList(
+            ChatColor.GRAY + "Season event reward",
+            ChatColor.GRAY + "Bound to the receiver",
+            ChatColor.YELLOW + "Tier " + (index % 5)));
+        meta.addEnchant(Enchantment.DURABILITY, 3, true);
+        item.setItemMeta(meta);
+        return item;
+    }
+
+    static List<MailData> inbox(String receiverUuid, int size, String items) {
+        List<MailData> mails = new ArrayList<>(size);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < size; i++) {
+            MailData mail = new MailData();
+            mail.setSenderUuid("sender-" + (i % 20));
+            mail.setSenderName("Sender" + (i % 20));
+            mail.setReceiverUuid(receiverUuid);
+            mail.setReceiverName("Receiver");
+            mail.setSubject("Subject " + i);
+            mail.setContent("Mail number " + i + " with a body long enough to need a preview cut");
+            mail.setSentTime(now - i * 60_000L);
+            mail.setRead(i % 3 == 0);
+            mail.setDeletedByReceiver(i % 10 == 9);
+            if (i % 4 == 0) {
+                mail.setItems(items);
+                mail.setClaimed(i % 8 == 0);
+            }
+            mails.add(mail);
+        }
+        return mails;
+    }
+
+    static Method method(Class<?> type, String name, Class<?>... parameterTypes) throws Exception {
+        Method method = type.getDeclaredMethod(name, parameterTypes);
+        method.setAccessible(true);
+        return method;
+    }
+
+    static void injectField(Object target, String fieldName, Object value) throws Exception {
+        TestHelper.injectField(target, fieldName, value);
+    }
+}
@@ -0,0 +1,80 @@
+package com.ultikits.plugins.mail.benchmark;
+
+import com.ultikits.plugins.mail.benchmark.BenchmarkFixtures.AttachmentComplexity;
+import com.ultikits.plugins.mail.config.MailConfig;
+import com.ultikits.plugins.mail.entity.MailData;
+import com.ultikits.plugins.mail.gui.MailboxGUI;
+import com.ultikits.plugins.mail.service.MailService;
+import com.ultikits.plugins.mail.store.InMemoryMailStore;
+import com.ultikits.ultitools.abstracts.UltiToolsPlugin;
+
+import be.seeseemelk.mockbukkit.MockBukkit;
+import be.seeseemelk.mockbukkit.ServerMock;
+import be.seeseemelk.mockbukkit.entity.PlayerMock;
+import org.bukkit.inventory.ItemStack;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Opening an inbox: {@link MailService#getInbox(UUID)} filtering and sorting the
+ * receiver's rows, and {@code MailboxGUI.createMailIcon} building one icon per mail.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InboxBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int inboxSize;
+
+    private MailService mailService;
+    private UUID receiverUuid;
+    private MailboxGUI gui;
+    private Method createMailIcon;
+    private List<MailData> inbox;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        ServerMock server = BenchmarkFixtures.startServer();
+        UltiToolsPlugin plugin = BenchmarkFixtures.plugin();
+        mailService = BenchmarkFixtures.mailService(new MailConfig(), new InMemoryMailStore(),
+            plugin, MockBukkit.createMockPlugin());
+
+        PlayerMock receiver = server.addPlayer("Receiver");
+        receiverUuid = receiver.getUniqueId();
+        Method serializeItems = BenchmarkFixtures.method(MailService.class, "serializeItems", ItemStack[].class);
+        String items = (String) serializeItems.invoke(mailService,
+            (Object) BenchmarkFixtures.items(AttachmentComplexity.STACKED, 9));
+        for (MailData mail : BenchmarkFixtures.inbox(receiverUuid.toString(), inboxSize, items)) {
+            mailService.insertMail(mail);
+        }
+
+        gui = new MailboxGUI(receiver, mailService, plugin);
+        createMailIcon = BenchmarkFixtures.method(MailboxGUI.class, "createMailIcon", MailData.class);
+        inbox = mailService.getInbox(receiverUuid);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkFixtures.stopServer();
+    }
+
+    @Benchmark
+    public List<MailData> getInbox() {
+        return mailService.getInbox(receiverUuid);
+    }
+
+    @Benchmark
+    public Object createMailIcon() throws Exception {
+        next = (next + 1) % inbox.size();
+        return createMailIcon.invoke(gui, inbox.get(next));
+    }
+}
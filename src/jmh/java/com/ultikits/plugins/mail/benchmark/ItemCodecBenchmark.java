@@ -0,0 +1,82 @@
+package com.ultikits.plugins.mail.benchmark;
+
+import com.ultikits.plugins.mail.benchmark.BenchmarkFixtures.AttachmentComplexity;
+import com.ultikits.plugins.mail.config.MailConfig;
+import com.ultikits.plugins.mail.entity.MailData;
+import com.ultikits.plugins.mail.service.MailService;
+import com.ultikits.plugins.mail.store.InMemoryMailStore;
+
+import be.seeseemelk.mockbukkit.MockBukkit;
+import org.bukkit.inventory.ItemStack;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Attachment encoding in {@link MailService}: {@code serializeItems},
+ * {@code deserializeItems} and {@code createMailData}, which validates and
+ * serializes the items of every outgoing mail.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ItemCodecBenchmark {
+
+    @Param({"1", "9", "27"})
+    public int itemCount;
+
+    @Param({"PLAIN", "STACKED", "DECORATED"})
+    public AttachmentComplexity complexity;
+
+    private MailService mailService;
+    private Method serializeItems;
+    private Method deserializeItems;
+    private Method createMailData;
+    private ItemStack[] items;
+    private String encoded;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        BenchmarkFixtures.startServer();
+        mailService = BenchmarkFixtures.mailService(new MailConfig(), new InMemoryMailStore(),
+            BenchmarkFixtures.plugin(), MockBukkit.createMockPlugin());
+        serializeItems = BenchmarkFixtures.method(MailService.class, "serializeItems", ItemStack[].class);
+        deserializeItems = BenchmarkFixtures.method(MailService.class, "deserializeItems", String.class);
+        createMailData = BenchmarkFixtures.method(MailService.class, "createMailData",
+            String.class, String.class, String.class, String.class,
+            String.class, String.class, ItemStack[].class, List.class);
+
+        items = BenchmarkFixtures.items(complexity, itemCount);
+        encoded = (String) serializeItems.invoke(mailService, (Object) items);
+        if (encoded == null) {
+            throw new IllegalStateException("items did not serialize; check the MockBukkit item meta support");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkFixtures.stopServer();
+    }
+
+    @Benchmark
+    public Object serializeItems() throws Exception {
+        return serializeItems.invoke(mailService, (Object) items);
+    }
+
+    @Benchmark
+    public Object deserializeItems() throws Exception {
+        return deserializeItems.invoke(mailService, encoded);
+    }
+
+    @Benchmark
+    public MailData createMailData() throws Exception {
+        return (MailData) createMailData.invoke(mailService,
+            "sender-uuid", "Sender", "receiver-uuid", "Receiver",
+            "Subject", "Content", items, null);
+    }
+}
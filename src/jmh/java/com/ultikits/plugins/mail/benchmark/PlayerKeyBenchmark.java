@@ -0,0 +1,136 @@
+package com.ultikits.plugins.mail.benchmark;
+
+import com.ultikits.plugins.mail.store.PlayerKey;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Receiver index keyed by UUID strings against one keyed by {@link PlayerKey}: lookups,
+ * and building the index. Run with {@code -prof gc} to compare the bytes allocated per
+ * index ({@code gc.alloc.rate.norm}).
+ * <p>
+ * The {@code *Retained} runs build each index once and report the heap it keeps alive,
+ * measured as used heap after a full GC before and after the build, as the
+ * {@code indexBytes} and {@code bytesPerReceiver} counters. Their time score is a cold
+ * single shot and only the counters are meant to be read.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PlayerKeyBenchmark {
+
+    @Param({"1000", "10000"})
+    public int receivers;
+
+    private String[] uuids;
+    private Map<String, Integer> byString;
+    private Map<PlayerKey, Integer> byKey;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        uuids = new String[receivers];
+        for (int i = 0; i < receivers; i++) {
+            uuids[i] = UUID.randomUUID().toString();
+        }
+        byString = stringIndex();
+        byKey = playerKeyIndex();
+    }
+
+    @Benchmark
+    public Integer stringIndexLookup() {
+        next = (next + 1) % receivers;
+        // A fresh string, as a lookup from UUID#toString() gets
+        return byString.get(new String(uuids[next]));
+    }
+
+    @Benchmark
+    public Integer playerKeyIndexLookup() {
+        next = (next + 1) % receivers;
+        return byKey.get(PlayerKey.of(new String(uuids[next])));
+    }
+
+    @Benchmark
+    public Map<String, Integer> stringIndex() {
+        Map<String, Integer> index = new HashMap<>();
+        for (int i = 0; i < receivers; i++) {
+            index.put(new String(uuids[i]), i);
+        }
+        return index;
+    }
+
+    @Benchmark
+    public Map<PlayerKey, Integer> playerKeyIndex() {
+        Map<PlayerKey, Integer> index = new HashMap<>();
+        for (int i = 0; i < receivers; i++) {
+            index.put(PlayerKey.of(uuids[i]), i);
+        }
+        return index;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 0)
+    @Measurement(iterations = 1)
+    public void stringIndexRetained(IndexHeap heap) {
+        heap.keep(stringIndex(), receivers);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 0)
+    @Measurement(iterations = 1)
+    public void playerKeyIndexRetained(IndexHeap heap) {
+        heap.keep(playerKeyIndex(), receivers);
+    }
+
+    /**
+     * Heap retained by the index built in one invocation. The GCs run in the
+     * per-invocation setup and teardown, outside the timed region.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class IndexHeap {
+
+        public long indexBytes;
+        public long bytesPerReceiver;
+
+        private long before;
+        private Object index;
+        private int receivers;
+
+        @Setup(Level.Invocation)
+        public void measureBefore() {
+            index = null;
+            before = usedHeapAfterGc();
+        }
+
+        void keep(Object built, int count) {
+            index = built;
+            receivers = count;
+        }
+
+        @TearDown(Level.Invocation)
+        public void measureAfter() {
+            // The index is still referenced here, so it survives this GC
+            indexBytes = Math.max(0, usedHeapAfterGc() - before);
+            bytesPerReceiver = receivers == 0 ? 0 : indexBytes / receivers;
+            index = null;
+        }
+
+        private static long usedHeapAfterGc() {
+            Runtime runtime = Runtime.getRuntime();
+            System.gc();
+            System.gc();
+            return runtime.totalMemory() - runtime.freeMemory();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.ultikits.plugins.mail.benchmark;
+
+import com.ultikits.plugins.mail.benchmark.BenchmarkFixtures.AttachmentComplexity;
+import com.ultikits.plugins.mail.config.MailConfig;
+import com.ultikits.plugins.mail.service.MailService;
+import com.ultikits.plugins.mail.service.MailTaskScheduler;
+import com.ultikits.plugins.mail.store.InMemoryMailStore;
+
+import be.seeseemelk.mockbukkit.MockBukkit;
+import be.seeseemelk.mockbukkit.ServerMock;
+import be.seeseemelk.mockbukkit.entity.PlayerMock;
+import org.bukkit.inventory.ItemStack;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.reflect.Field;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link MailService#sendToAll} fan-out: one mail per known player, including the
+ * async task hand-off and draining the progress messages on the main-thread queue.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SendToAllBenchmark {
+
+    @Param({"100", "1000"})
+    public int players;
+
+    @Param({"0", "9"})
+    public int itemCount;
+
+    private ServerMock server;
+    private MailService mailService;
+    private MailTaskScheduler taskScheduler;
+    private PlayerMock sender;
+    private ItemStack[] items;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        server = BenchmarkFixtures.startServer();
+        server.setPlayers(players);
+        sender = server.getPlayer(0);
+        mailService = BenchmarkFixtures.mailService(new MailConfig(), new InMemoryMailStore(),
+            BenchmarkFixtures.plugin(), MockBukkit.createMockPlugin());
+        Field field = MailService.class.getDeclaredField("taskScheduler");
+        field.setAccessible(true);
+        taskScheduler = (MailTaskScheduler) field.get(mailService);
+        items = itemCount > 0 ? BenchmarkFixtures.items(AttachmentComplexity.STACKED, itemCount) : null;
+    }
+
+    /**
+     * Start each iteration on an empty store so the fan-out cost does not drift with its size.
+     */
+    @Setup(Level.Iteration)
+    public void resetStore() throws Exception {
+        BenchmarkFixtures.injectField(mailService, "store", new InMemoryMailStore());
+    }
+
+    @TearDown(Level.Invocation)
+    public void drainMessages() {
+        while (sender.nextMessage() != null) {
+            // Discard progress messages so the mock player does not grow without bound
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkFixtures.stopServer();
+    }
+
+    @Benchmark
+    public int sendToAll() {
+        mailService.sendToAll(sender, "Server-wide announcement", items);
+        server.getScheduler().waitAsyncTasksFinished();
+        int depth = taskScheduler.getQueueDepth();
+        while (taskScheduler.getQueueDepth() > 0) {
+            taskScheduler.tick();
+        }
+        return depth;
+    }
+}
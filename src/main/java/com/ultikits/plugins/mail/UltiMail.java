@@ -1,5 +1,7 @@
 package com.ultikits.plugins.mail;
 
+import com.ultikits.plugins.mail.metrics.MetricsExporter;
+import com.ultikits.plugins.mail.service.MailService;
 import com.ultikits.ultitools.abstracts.UltiToolsPlugin;
 import com.ultikits.ultitools.annotations.UltiToolsModule;
 
@@ -27,9 +29,21 @@ public class UltiMail extends UltiToolsPlugin {
 
     @Override
     public void unregisterSelf() {
+        // Closes the store and stops the tasks scheduled under UltiTools
+        shutDown("mail service", () -> getContext().getBean(MailService.class).shutdown());
+        // Frees the port, so the next enable can bind it again
+        shutDown("metrics exporter", () -> getContext().getBean(MetricsExporter.class).stop());
         getLogger().info(i18n("UltiMail 已禁用！"));
     }
 
+    private void shutDown(String component, Runnable step) {
+        try {
+            step.run();
+        } catch (RuntimeException e) {
+            getLogger().warn("Failed to shut down " + component + ": " + e.getMessage());
+        }
+    }
+
     @Override
     public void reloadSelf() {
         getLogger().info(i18n("UltiMail 配置已重载！"));
@@ -1,10 +1,15 @@
 package com.ultikits.plugins.mail.commands;
 
 import com.ultikits.plugins.mail.entity.MailData;
+import com.ultikits.plugins.mail.entity.MailGroupData;
 import com.ultikits.plugins.mail.gui.AttachmentSelectorPage;
 import com.ultikits.plugins.mail.gui.MailboxGUI;
 import com.ultikits.plugins.mail.gui.SentboxGUI;
+import com.ultikits.plugins.mail.metrics.LatencyHistogram;
+import com.ultikits.plugins.mail.metrics.MailMetrics;
+import com.ultikits.plugins.mail.service.ClaimAllResult;
 import com.ultikits.plugins.mail.service.MailService;
+import com.ultikits.plugins.mail.service.TimestampFormat;
 import com.ultikits.ultitools.abstracts.UltiToolsPlugin;
 import com.ultikits.ultitools.abstracts.command.BaseCommandExecutor;
 import com.ultikits.ultitools.annotations.Autowired;
@@ -12,16 +17,13 @@ import com.ultikits.ultitools.annotations.command.*;
 
 import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
-import org.bukkit.Material;
 import org.bukkit.OfflinePlayer;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
-import org.bukkit.inventory.ItemStack;
 import org.bukkit.scheduler.BukkitRunnable;
 
-import java.text.SimpleDateFormat;
-import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Mail command executor.
@@ -44,7 +46,6 @@ public class MailCommand extends BaseCommandExecutor {
     private UltiToolsPlugin plugin;
 
     private final MailService mailService;
-    private static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd HH:mm");
 
     public MailCommand(MailService mailService) {
         this.mailService = mailService;
@@ -72,7 +73,7 @@ public class MailCommand extends BaseCommandExecutor {
     
     @CmdMapping(format = "inbox")
     public void inbox(@CmdSender Player player) {
-        List<MailData> mails = mailService.getInbox(player.getUniqueId());
+        List<MailData> mails = mailService.listInbox(player.getUniqueId());
         
         if (mails.isEmpty()) {
             player.sendMessage(ChatColor.YELLOW + i18n("inbox_empty"));
@@ -102,15 +103,36 @@ public class MailCommand extends BaseCommandExecutor {
     @CmdMapping(format = "sent")
     public void sent(@CmdSender Player player) {
         List<MailData> mails = mailService.getSentMails(player.getUniqueId());
+        List<MailGroupData> groups = mailService.getSentGroups(player.getUniqueId());
         
-        if (mails.isEmpty()) {
+        if (mails.isEmpty() && groups.isEmpty()) {
             player.sendMessage(ChatColor.YELLOW + i18n("sentbox_empty"));
             return;
         }
         
-        player.sendMessage(ChatColor.GOLD + i18n("sentbox_title").replace("{0}", String.valueOf(mails.size())));
+        player.sendMessage(ChatColor.GOLD + i18n("sentbox_title")
+            .replace("{0}", String.valueOf(mails.size() + groups.size())));
         int index = 1;
-        for (MailData mail : mails) {
+        int m = 0;
+        int g = 0;
+        // Both lists are newest first; merge them by sent time
+        while (m < mails.size() || g < groups.size()) {
+            if (g < groups.size() && (m == mails.size()
+                    || groups.get(g).getSentTime() >= mails.get(m).getSentTime())) {
+                MailGroupData group = groups.get(g++);
+                player.sendMessage(String.format("%s%d. %s %s%s %s- %s",
+                    ChatColor.WHITE, index++,
+                    ChatColor.GOLD + i18n("sentbox_broadcast"),
+                    ChatColor.WHITE, group.getSubject(),
+                    ChatColor.GRAY,
+                    i18n("sentbox_group_stats")
+                        .replace("{0}", String.valueOf(group.getDeliveredCount()))
+                        .replace("{1}", String.valueOf(group.getReadCount()))
+                        .replace("{2}", String.valueOf(group.getClaimedCount()))
+                ));
+                continue;
+            }
+            MailData mail = mails.get(m++);
             String status = mail.isRead() ? 
                 ChatColor.GREEN + i18n("inbox_status_read") : 
                 ChatColor.GRAY + i18n("inbox_status_unread");
@@ -128,14 +150,12 @@ public class MailCommand extends BaseCommandExecutor {
     
     @CmdMapping(format = "read <index>")
     public void readByIndex(@CmdSender Player player, @CmdParam("index") int index) {
-        List<MailData> mails = mailService.getInbox(player.getUniqueId());
+        MailData mail = mailService.getInboxMail(player.getUniqueId(), index);
         
-        if (index < 1 || index > mails.size()) {
+        if (mail == null) {
             player.sendMessage(ChatColor.RED + i18n("error_invalid_index"));
             return;
         }
-        
-        MailData mail = mails.get(index - 1);
         mailService.markAsRead(mail);
         
         // Execute commands if any
@@ -146,7 +166,7 @@ public class MailCommand extends BaseCommandExecutor {
         player.sendMessage(ChatColor.GOLD + i18n("mail_detail_title"));
         player.sendMessage(ChatColor.YELLOW + i18n("mail_detail_sender") + ChatColor.WHITE + mail.getSenderName());
         player.sendMessage(ChatColor.YELLOW + i18n("mail_detail_subject") + ChatColor.WHITE + mail.getSubject());
-        player.sendMessage(ChatColor.YELLOW + i18n("mail_detail_time") + ChatColor.WHITE + DATE_FORMAT.format(new Date(mail.getSentTime())));
+        player.sendMessage(ChatColor.YELLOW + i18n("mail_detail_time") + ChatColor.WHITE + TimestampFormat.format(mail.getSentTime()));
         player.sendMessage(ChatColor.YELLOW + i18n("mail_detail_content"));
         player.sendMessage(ChatColor.WHITE + mail.getContent());
         
@@ -163,15 +183,13 @@ public class MailCommand extends BaseCommandExecutor {
     
     @CmdMapping(format = "claim <index>")
     public void claim(@CmdSender Player player, @CmdParam("index") int index) {
-        List<MailData> mails = mailService.getInbox(player.getUniqueId());
+        MailData mail = mailService.getInboxMail(player.getUniqueId(), index);
         
-        if (index < 1 || index > mails.size()) {
+        if (mail == null) {
             player.sendMessage(ChatColor.RED + i18n("error_invalid_index"));
             return;
         }
         
-        MailData mail = mails.get(index - 1);
-        
         if (mail.isClaimed()) {
             player.sendMessage(ChatColor.RED + i18n("claim_already_claimed"));
             return;
@@ -182,32 +200,33 @@ public class MailCommand extends BaseCommandExecutor {
             return;
         }
         
-        // Check inventory space
-        int requiredSlots = mailService.getItemCount(mail);
-        int emptySlots = countEmptySlots(player);
+        // Check inventory space (items merge into existing stacks)
+        int missingSlots = mailService.getMissingSlots(mail, player);
         
-        if (emptySlots < requiredSlots) {
+        if (missingSlots > 0) {
             player.sendMessage(ChatColor.RED + i18n("claim_inventory_full")
-                .replace("{0}", String.valueOf(requiredSlots)));
+                .replace("{0}", String.valueOf(missingSlots)));
             return;
         }
         
-        ItemStack[] items = mailService.claimItems(mail, player);
-        player.sendMessage(ChatColor.GREEN + i18n("claim_success")
-            .replace("{0}", String.valueOf(items.length)));
+        mailService.claimItems(mail, player, items -> player.sendMessage(ChatColor.GREEN + i18n("claim_success")
+            .replace("{0}", String.valueOf(items.length))));
+    }
+    
+    @CmdMapping(format = "claimall")
+    public void claimAll(@CmdSender Player player) {
+        mailService.claimAll(player, result -> sendClaimAllResult(player, result));
     }
     
     @CmdMapping(format = "delete <index>")
     public void delete(@CmdSender Player player, @CmdParam("index") int index) {
-        List<MailData> mails = mailService.getInbox(player.getUniqueId());
+        MailData mail = mailService.getInboxMail(player.getUniqueId(), index);
         
-        if (index < 1 || index > mails.size()) {
+        if (mail == null) {
             player.sendMessage(ChatColor.RED + i18n("error_invalid_index"));
             return;
         }
         
-        MailData mail = mails.get(index - 1);
-        
         // Check if has unclaimed items
         if (mail.hasItems() && !mail.isClaimed()) {
             player.sendMessage(ChatColor.RED + i18n("delete_claim_first"));
@@ -225,8 +244,8 @@ public class MailCommand extends BaseCommandExecutor {
      */
     @CmdMapping(format = "delall")
     public void deleteAll(@CmdSender Player player) {
-        int count = mailService.deleteAllByReceiver(player.getUniqueId());
-        player.sendMessage(ChatColor.GREEN + i18n("delete_all_success") + " (" + count + ")");
+        mailService.deleteAllByReceiver(player.getUniqueId(), count ->
+            player.sendMessage(ChatColor.GREEN + i18n("delete_all_success") + " (" + count + ")"));
     }
     
     /**
@@ -234,8 +253,8 @@ public class MailCommand extends BaseCommandExecutor {
      */
     @CmdMapping(format = "delread")
     public void deleteRead(@CmdSender Player player) {
-        int count = mailService.deleteReadByReceiver(player.getUniqueId());
-        player.sendMessage(ChatColor.GREEN + i18n("delete_read_success") + " (" + count + ")");
+        mailService.deleteReadByReceiver(player.getUniqueId(), count ->
+            player.sendMessage(ChatColor.GREEN + i18n("delete_read_success") + " (" + count + ")"));
     }
     
     // ==================== Admin Commands ====================
@@ -269,6 +288,57 @@ public class MailCommand extends BaseCommandExecutor {
         ).open();
     }
     
+    /**
+     * Show operation metrics: latencies, main-thread time, counters, cache hit ratios and queue depths.
+     * Also available from the console.
+     */
+    @CmdTarget(CmdTarget.CmdTargetType.BOTH)
+    @CmdMapping(format = "stats", permission = "ultimail.admin.stats")
+    public void stats(@CmdSender CommandSender sender) {
+        MailMetrics metrics = mailService.getMetrics();
+        sender.sendMessage(ChatColor.GOLD + i18n("stats_title")
+            .replace("{0}", formatUptime(metrics.getUptimeMillis())));
+
+        sender.sendMessage(ChatColor.YELLOW + i18n("stats_operations"));
+        for (MailMetrics.Operation operation : MailMetrics.Operation.values()) {
+            LatencyHistogram latency = metrics.getLatency(operation);
+            sender.sendMessage(ChatColor.WHITE + String.format("  %s: %d, %.2f/s, %d, %s, %s, %s",
+                operation.getKey(), latency.getCount(), metrics.getRate(operation),
+                metrics.getFailures(operation), formatNanos(latency.getPercentileNanos(50)),
+                formatNanos(latency.getPercentileNanos(99)), formatNanos(latency.getMaxNanos())));
+        }
+
+        sender.sendMessage(ChatColor.YELLOW + i18n("stats_main_thread"));
+        sender.sendMessage(ChatColor.WHITE + "  " + i18n("stats_tick_times")
+            .replace("{0}", formatNanos(metrics.getLastTickNanos()))
+            .replace("{1}", formatNanos(metrics.getAverageTickNanos(20)))
+            .replace("{2}", formatNanos(metrics.getAverageTickNanos(MailMetrics.TICK_WINDOW)))
+            .replace("{3}", formatNanos(metrics.getMaxTickNanos(MailMetrics.TICK_WINDOW))));
+        for (MailMetrics.Operation operation : MailMetrics.Operation.values()) {
+            long nanos = metrics.getMainThreadNanos(operation);
+            if (nanos > 0) {
+                sender.sendMessage(ChatColor.WHITE + "  " + operation.getKey() + ": " + formatNanos(nanos));
+            }
+        }
+
+        sender.sendMessage(ChatColor.YELLOW + i18n("stats_counters"));
+        for (MailMetrics.Counter counter : MailMetrics.Counter.values()) {
+            sender.sendMessage(ChatColor.WHITE + "  " + counter.getKey() + ": " + metrics.getCounter(counter));
+        }
+
+        sender.sendMessage(ChatColor.YELLOW + i18n("stats_caches"));
+        for (Map.Entry<String, MailMetrics.CacheStats> entry : metrics.getCaches().entrySet()) {
+            MailMetrics.CacheStats cache = entry.getValue();
+            sender.sendMessage(ChatColor.WHITE + String.format("  %s: %.1f%% (%d/%d)", entry.getKey(),
+                cache.getHitRatio() * 100, cache.getHits(), cache.getHits() + cache.getMisses()));
+        }
+
+        sender.sendMessage(ChatColor.YELLOW + i18n("stats_gauges"));
+        for (Map.Entry<String, Long> entry : metrics.getGauges().entrySet()) {
+            sender.sendMessage(ChatColor.WHITE + "  " + entry.getKey() + ": " + entry.getValue());
+        }
+    }
+    
     // ==================== Help ====================
     
     @CmdMapping(format = "")
@@ -284,6 +354,7 @@ public class MailCommand extends BaseCommandExecutor {
         sender.sendMessage(ChatColor.YELLOW + "/mail sent" + ChatColor.WHITE + " - " + i18n("help_sent"));
         sender.sendMessage(ChatColor.YELLOW + "/mail read <编号>" + ChatColor.WHITE + " - " + i18n("help_read_index"));
         sender.sendMessage(ChatColor.YELLOW + "/mail claim <编号>" + ChatColor.WHITE + " - " + i18n("help_claim"));
+        sender.sendMessage(ChatColor.YELLOW + "/mail claimall" + ChatColor.WHITE + " - " + i18n("help_claimall"));
         sender.sendMessage(ChatColor.YELLOW + "/mail delete <编号>" + ChatColor.WHITE + " - " + i18n("help_delete"));
         sender.sendMessage(ChatColor.YELLOW + "/mail delall" + ChatColor.WHITE + " - " + i18n("help_delall"));
         sender.sendMessage(ChatColor.YELLOW + "/mail delread" + ChatColor.WHITE + " - " + i18n("help_delread"));
@@ -292,18 +363,49 @@ public class MailCommand extends BaseCommandExecutor {
         if (sender.hasPermission("ultimail.admin.sendall")) {
             sender.sendMessage(ChatColor.RED + "/mail sendall <内容>" + ChatColor.WHITE + " - " + i18n("help_sendall"));
         }
+        if (sender.hasPermission("ultimail.admin.stats")) {
+            sender.sendMessage(ChatColor.RED + "/mail stats" + ChatColor.WHITE + " - " + i18n("help_stats"));
+        }
     }
     
     // ==================== Utilities ====================
     
-    private int countEmptySlots(Player player) {
-        int count = 0;
-        for (ItemStack item : player.getInventory().getStorageContents()) {
-            if (item == null || item.getType() == Material.AIR) {
-                count++;
-            }
+    private void sendClaimAllResult(Player player, ClaimAllResult result) {
+        if (result.isBusy()) {
+            player.sendMessage(ChatColor.YELLOW + i18n("claim_all_busy"));
+            return;
+        }
+        if (result.isFailed()) {
+            player.sendMessage(ChatColor.RED + i18n("claim_all_failed"));
+            return;
         }
-        return count;
+        if (result.getClaimedMails() == 0 && result.getSkippedMails() == 0) {
+            player.sendMessage(ChatColor.YELLOW + i18n("claim_all_none"));
+            return;
+        }
+        if (result.getClaimedMails() > 0) {
+            player.sendMessage(ChatColor.GREEN + i18n("claim_all_success")
+                .replace("{0}", String.valueOf(result.getClaimedItems()))
+                .replace("{1}", String.valueOf(result.getClaimedMails())));
+        }
+        if (result.getSkippedMails() > 0) {
+            player.sendMessage(ChatColor.RED + i18n("claim_all_skipped")
+                .replace("{0}", String.valueOf(result.getSkippedMails())));
+        }
+    }
+    
+    private static String formatNanos(long nanos) {
+        if (nanos >= 1_000_000L) {
+            return String.format("%.1fms", nanos / 1e6);
+        }
+        return String.format("%dµs", nanos / 1000);
+    }
+    
+    private String formatUptime(long millis) {
+        long minutes = millis / 60_000L;
+        return i18n("stats_uptime")
+            .replace("{0}", String.valueOf(minutes / 60))
+            .replace("{1}", String.format("%02d", minutes % 60));
     }
     
     private String i18n(String key) {
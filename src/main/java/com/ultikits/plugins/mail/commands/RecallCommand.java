@@ -2,12 +2,15 @@ package com.ultikits.plugins.mail.commands;
 
 import com.ultikits.plugins.mail.config.MailConfig;
 import com.ultikits.plugins.mail.entity.MailData;
+import com.ultikits.plugins.mail.metrics.MailEvents;
+import com.ultikits.plugins.mail.metrics.MailMetrics;
+import com.ultikits.plugins.mail.metrics.MailMetrics.Counter;
+import com.ultikits.plugins.mail.metrics.MailMetrics.Operation;
 import com.ultikits.plugins.mail.service.MailService;
 import com.ultikits.ultitools.abstracts.UltiToolsPlugin;
 import com.ultikits.ultitools.annotations.Autowired;
 import com.ultikits.ultitools.annotations.command.*;
 import com.ultikits.ultitools.abstracts.command.BaseCommandExecutor;
-import com.ultikits.ultitools.interfaces.DataOperator;
 
 import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
@@ -34,6 +37,9 @@ import java.util.concurrent.atomic.AtomicInteger;
 )
 public class RecallCommand extends BaseCommandExecutor {
 
+    // Players covered by one recall chunk event
+    private static final int EVENT_CHUNK = 50;
+
     private Plugin bukkitPlugin;
 
     @Autowired
@@ -44,6 +50,9 @@ public class RecallCommand extends BaseCommandExecutor {
 
     @Autowired
     private MailService mailService;
+
+    @Autowired
+    private MailMetrics metrics;
     
     /**
      * Send recall notifications to all registered players.
@@ -87,6 +96,7 @@ public class RecallCommand extends BaseCommandExecutor {
             int gameMails = results[1];
             int emails = results[2];
             int failed = results[3];
+            metrics.add(Counter.RECALL_MAILS, gameMails);
             
             // Send result back on main thread
             Bukkit.getScheduler().runTask(bukkitPlugin, () -> {
@@ -121,39 +131,63 @@ public class RecallCommand extends BaseCommandExecutor {
         
         // Try to get players from login plugin if available
         List<PlayerInfo> allPlayers = getAllRegisteredPlayers();
+        MailMetrics.Job job = metrics.startJob(Operation.RECALL, allPlayers.size());
+        MailEvents.Span chunk = MailEvents.begin(MailEvents.Kind.RECALL_CHUNK);
+        int processed = 0;
+        int chunkMails = 0;
+        long chunkBytes = 0;
         
-        for (PlayerInfo playerInfo : allPlayers) {
-            if (processedPlayers.contains(playerInfo.uuid)) {
-                continue;
-            }
-            processedPlayers.add(playerInfo.uuid);
-            total.incrementAndGet();
-            
-            // Skip currently online players
-            if (Bukkit.getPlayer(UUID.fromString(playerInfo.uuid)) != null) {
-                continue;
-            }
+        boolean completed = false;
+        try {
+            for (PlayerInfo playerInfo : allPlayers) {
+                if (processed > 0 && processed % EVENT_CHUNK == 0) {
+                    long bytes = chunkBytes;
+                    chunk.end(senderName, chunkMails, () -> bytes);
+                    chunk = MailEvents.begin(MailEvents.Kind.RECALL_CHUNK);
+                    chunkMails = 0;
+                    chunkBytes = 0;
+                }
+                processed++;
+                job.advance();
+                if (processedPlayers.contains(playerInfo.uuid)) {
+                    continue;
+                }
+                processedPlayers.add(playerInfo.uuid);
+                total.incrementAndGet();
             
-            // Send in-game mail
-            try {
-                sendGameMail(playerInfo.uuid, playerInfo.name, senderName, customMessage);
-                gameMails.incrementAndGet();
-            } catch (Exception e) {
-                failed.incrementAndGet();
-            }
+                // Skip currently online players
+                if (Bukkit.getPlayer(UUID.fromString(playerInfo.uuid)) != null) {
+                    continue;
+                }
             
-            // Send real email if enabled and player has email
-            if (config.isEmailEnabled() && playerInfo.email != null && !playerInfo.email.isEmpty()) {
+                // Send in-game mail
                 try {
-                    sendRealEmail(playerInfo.email, playerInfo.name, senderName, customMessage);
-                    emails.incrementAndGet();
+                    MailData mail = sendGameMail(playerInfo.uuid, playerInfo.name, senderName, customMessage);
+                    gameMails.incrementAndGet();
+                    chunkMails++;
+                    chunkBytes += mail.getSubject().length() + mail.getContent().length();
                 } catch (Exception e) {
-                    // Email failed, but game mail may have succeeded
-                    plugin.getLogger().warn(
-                        "Failed to send email to " + playerInfo.email + ": " + e.getMessage()
-                    );
+                    failed.incrementAndGet();
+                }
+            
+                // Send real email if enabled and player has email
+                if (config.isEmailEnabled() && playerInfo.email != null && !playerInfo.email.isEmpty()) {
+                    try {
+                        sendRealEmail(playerInfo.email, playerInfo.name, senderName, customMessage);
+                        emails.incrementAndGet();
+                    } catch (Exception e) {
+                        // Email failed, but game mail may have succeeded
+                        plugin.getLogger().warn(
+                            "Failed to send email to " + playerInfo.email + ": " + e.getMessage()
+                        );
+                    }
                 }
             }
+            completed = true;
+        } finally {
+            long bytes = chunkBytes;
+            chunk.end(senderName, chunkMails, () -> bytes);
+            job.finish(completed && failed.get() == 0);
         }
         
         return new int[]{total.get(), gameMails.get(), emails.get(), failed.get()};
@@ -161,8 +195,10 @@ public class RecallCommand extends BaseCommandExecutor {
     
     /**
      * Send in-game mail to a player.
+     *
+     * @return the mail sent
      */
-    private void sendGameMail(String receiverUuid, String receiverName, String senderName, String customMessage) {
+    private MailData sendGameMail(String receiverUuid, String receiverName, String senderName, String customMessage) {
         String subject = config.getRecallSubject();
         String content = customMessage != null ? customMessage : config.getRecallContent();
         
@@ -180,8 +216,8 @@ public class RecallCommand extends BaseCommandExecutor {
         mail.setContent(content);
         mail.setSentTime(System.currentTimeMillis());
         
-        DataOperator<MailData> dataOperator = plugin.getDataOperator(MailData.class);
-        dataOperator.insert(mail);
+        mailService.insertMail(mail);
+        return mail;
     }
     
     /**
@@ -312,8 +348,7 @@ public class RecallCommand extends BaseCommandExecutor {
         
         // Also check mail data for any receivers
         if (players.isEmpty()) {
-            DataOperator<MailData> mailOperator = plugin.getDataOperator(MailData.class);
-            List<MailData> allMails = mailOperator.getAll();
+            List<MailData> allMails = mailService.getStore().getAll();
             Set<String> seen = new HashSet<>();
             
             for (MailData mail : allMails) {
@@ -28,6 +28,9 @@ public class MailConfig extends AbstractConfigEntity {
     @Range(min = 0, max = 365)
     private int mailExpireDays = 30;
 
+    @ConfigEntry(path = "purge-expired-mails", comment = "启动时删除超过过期天数的已读邮件；未读、附件未领取或命令未执行的邮件始终保留")
+    private boolean purgeExpiredMails = false;
+
     @ConfigEntry(path = "notify-on-join", comment = "玩家登录时通知未读邮件")
     private boolean notifyOnJoin = true;
 
@@ -35,6 +38,10 @@ public class MailConfig extends AbstractConfigEntity {
     @Range(min = 0, max = 60)
     private int notifyDelay = 3;
 
+    @ConfigEntry(path = "notify-merge-ticks", comment = "新邮件通知合并窗口（tick），窗口内的多封邮件合并为一条通知")
+    @Range(min = 1, max = 200)
+    private int notifyMergeTicks = 10;
+
     @ConfigEntry(path = "max-subject-length", comment = "邮件标题最大长度")
     @Range(min = 10, max = 200)
     private int maxSubjectLength = 50;
@@ -47,6 +54,44 @@ public class MailConfig extends AbstractConfigEntity {
     @Range(min = 0, max = 300)
     private int sendCooldown = 10;
     
+    @ConfigEntry(path = "archive.after-days", comment = "已读且附件已领取的邮件超过该天数后移入按月压缩的归档（0为不归档）")
+    @Range(min = 0, max = 3650)
+    private int archiveAfterDays = 0;
+    
+    @ConfigEntry(path = "tick-budget-micros", comment = "每 tick 主线程邮件任务的时间预算（微秒）")
+    @Range(min = 100, max = 50000)
+    private int tickBudgetMicros = 2000;
+    
+    @ConfigEntry(path = "commands-per-tick", comment = "每 tick 最多执行的邮件命令数，超出部分顺延到后续 tick")
+    @Range(min = 1, max = 1000)
+    private int commandsPerTick = 20;
+    
+    @ConfigEntry(path = "slow-operation-micros", comment = "主线程上单次邮件操作超过该耗时（微秒）时记录日志，0 为不记录")
+    @Range(min = 0, max = 1000000)
+    private int slowOperationMicros = 5000;
+    
+    @ConfigEntry(path = "storage.backend", comment = "邮件存储后端：ultitools（UltiTools 数据源）或 segment（内置分段文件存储）")
+    @NotEmpty
+    private String storageBackend = "ultitools";
+    
+    @ConfigEntry(path = "storage.receiver-filter", comment = "ultitools 数据源也用收件人过滤器跳过没有邮件的玩家的查询；仅当只有本服务器写入邮件表时开启，segment 存储始终启用")
+    private boolean receiverFilterEnabled = false;
+    
+    @ConfigEntry(path = "claim-journal-sync-ticks", comment = "领取日志批量刷盘间隔（tick），日志用于崩溃后恢复未完成的附件领取")
+    @Range(min = 1, max = 200)
+    private int claimJournalSyncTicks = 1;
+    
+    @ConfigEntry(path = "metrics.exporter-enabled", comment = "是否启用 Prometheus 指标导出（HTTP /metrics）")
+    private boolean metricsExporterEnabled = false;
+    
+    @ConfigEntry(path = "metrics.exporter-host", comment = "指标导出监听地址，默认只允许本机抓取")
+    @NotEmpty
+    private String metricsExporterHost = "127.0.0.1";
+    
+    @ConfigEntry(path = "metrics.exporter-port", comment = "指标导出端口")
+    @Range(min = 1, max = 65535)
+    private int metricsExporterPort = 9465;
+    
     @ConfigEntry(path = "messages.new-mail", comment = "新邮件通知")
     @NotEmpty
     private String newMailMessage = "&e[邮件] &f你有 &a{COUNT} &f封未读邮件！使用 /mail inbox 查看";
@@ -59,6 +104,10 @@ public class MailConfig extends AbstractConfigEntity {
     @NotEmpty
     private String mailReceivedMessage = "&e[邮件] &f你收到了来自 &a{SENDER} &f的新邮件！";
     
+    @ConfigEntry(path = "messages.mail-received-batch", comment = "合并后的新邮件通知")
+    @NotEmpty
+    private String mailReceivedBatchMessage = "&e[邮件] &f你收到了来自 &a{SENDERS} &f的 &a{COUNT} &f封新邮件！";
+    
     // ========== 召回玩家功能配置 ==========
     
     @ConfigEntry(path = "recall.server-name", comment = "服务器名称，用于召回邮件显示")
@@ -0,0 +1,23 @@
+package com.ultikits.plugins.mail.entity;
+
+import com.ultikits.ultitools.abstracts.data.BaseDataEntity;
+import com.ultikits.ultitools.annotations.Column;
+import com.ultikits.ultitools.annotations.Table;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+/**
+ * Compressed mails of one {@link MailArchiveData} month.
+ *
+ * @author wisdomme
+ * @version 1.0.0
+ */
+@Data
+@EqualsAndHashCode(callSuper = true)
+@Table("mail_archive_blobs")
+public class MailArchiveBlob extends BaseDataEntity<String> {
+
+    @Column(value = "data", type = "LONGTEXT")
+    private String data; // GZIP compressed JSON array of mails in Base64
+}
@@ -0,0 +1,45 @@
+package com.ultikits.plugins.mail.entity;
+
+import com.ultikits.ultitools.abstracts.data.BaseDataEntity;
+import com.ultikits.ultitools.annotations.Column;
+import com.ultikits.ultitools.annotations.Table;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+/**
+ * Summary of one player's archived mails for one month.
+ * <p>
+ * The mails themselves are in the {@link MailArchiveBlob} with the same id, so the
+ * archive view can list months without loading them.
+ *
+ * @author wisdomme
+ * @version 1.0.0
+ */
+@Data
+@EqualsAndHashCode(callSuper = true)
+@Table("mail_archives")
+public class MailArchiveData extends BaseDataEntity<String> {
+
+    @Column("player_uuid")
+    private String playerUuid;
+
+    /**
+     * Month the mails were sent in, as {@code yyyy-MM}.
+     */
+    @Column("archive_month")
+    private String month;
+
+    @Column(value = "mail_count", type = "INT")
+    private int mailCount;
+
+    @Column(value = "updated_time", type = "BIGINT")
+    private long updatedTime;
+
+    /**
+     * Id shared by the summary and the blob of a player's month.
+     */
+    public static String idOf(String playerUuid, String month) {
+        return playerUuid + ":" + month;
+    }
+}
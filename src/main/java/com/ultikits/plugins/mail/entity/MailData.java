@@ -18,8 +18,13 @@ import lombok.EqualsAndHashCode;
  */
 @Data
 @EqualsAndHashCode(callSuper = true)
-@Table("mail_messages")
+@Table(MailData.TABLE)
 public class MailData extends BaseDataEntity<String> {
+
+    /**
+     * Table the mails are stored in, shared with the migrations and raw SQL statements.
+     */
+    public static final String TABLE = "mail_messages";
     
     @Column("sender_uuid")
     private String senderUuid;
@@ -75,6 +80,21 @@ public class MailData extends BaseDataEntity<String> {
     @Column(value = "deleted_by_receiver", type = "BOOLEAN")
     private boolean deletedByReceiver;
     
+    /**
+     * Row version for optimistic concurrency.
+     * Bumped on every state change; a change only applies if the stored
+     * version still matches the one it was based on.
+     */
+    @Column(value = "row_version", type = "BIGINT")
+    private long version;
+    
+    /**
+     * Id of the {@link MailGroupData} of the broadcast this mail was sent in, null for
+     * a mail sent to one player. The sender sees the group instead of its rows.
+     */
+    @Column("group_id")
+    private String groupId;
+    
     public MailData() {
         this.sentTime = System.currentTimeMillis();
         this.read = false;
@@ -82,6 +102,7 @@ public class MailData extends BaseDataEntity<String> {
         this.commandsExecuted = false;
         this.deletedBySender = false;
         this.deletedByReceiver = false;
+        this.version = 0L;
     }
     
     /**
@@ -97,4 +118,16 @@ public class MailData extends BaseDataEntity<String> {
     public boolean hasCommands() {
         return commands != null && !commands.isEmpty() && !commands.equals("[]");
     }
+    
+    /**
+     * Copy the mutable state flags and version from another copy of this mail.
+     */
+    public void copyStateFrom(MailData other) {
+        this.read = other.read;
+        this.claimed = other.claimed;
+        this.commandsExecuted = other.commandsExecuted;
+        this.deletedBySender = other.deletedBySender;
+        this.deletedByReceiver = other.deletedByReceiver;
+        this.version = other.version;
+    }
 }
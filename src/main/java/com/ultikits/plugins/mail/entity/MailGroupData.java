@@ -0,0 +1,51 @@
+package com.ultikits.plugins.mail.entity;
+
+import com.ultikits.ultitools.abstracts.data.BaseDataEntity;
+import com.ultikits.ultitools.annotations.Column;
+import com.ultikits.ultitools.annotations.Table;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+/**
+ * Sentbox entry of one broadcast.
+ * <p>
+ * Every recipient's row carries the group id in {@link MailData#getGroupId()}; the
+ * sender sees this row instead, with counters kept up to date as the recipients read
+ * and claim their copies.
+ *
+ * @author wisdomme
+ * @version 1.0.0
+ */
+@Data
+@EqualsAndHashCode(callSuper = true)
+@Table("mail_groups")
+public class MailGroupData extends BaseDataEntity<String> {
+
+    @Column("sender_uuid")
+    private String senderUuid;
+
+    @Column("sender_name")
+    private String senderName;
+
+    @Column("subject")
+    private String subject;
+
+    @Column("content")
+    private String content;
+
+    @Column(value = "has_items", type = "BOOLEAN")
+    private boolean itemsAttached;
+
+    @Column(value = "sent_time", type = "BIGINT")
+    private long sentTime;
+
+    @Column(value = "delivered_count", type = "INT")
+    private int deliveredCount;
+
+    @Column(value = "read_count", type = "INT")
+    private int readCount;
+
+    @Column(value = "claimed_count", type = "INT")
+    private int claimedCount;
+}
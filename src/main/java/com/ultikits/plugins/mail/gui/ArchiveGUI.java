@@ -0,0 +1,184 @@
+package com.ultikits.plugins.mail.gui;
+
+import com.ultikits.plugins.mail.entity.MailArchiveData;
+import com.ultikits.plugins.mail.entity.MailData;
+import com.ultikits.plugins.mail.service.MailService;
+import com.ultikits.plugins.mail.service.TimestampFormat;
+import com.ultikits.ultitools.abstracts.UltiToolsPlugin;
+import com.ultikits.ultitools.abstracts.gui.BasePaginationPage;
+import com.ultikits.ultitools.entities.Colors;
+import mc.obliviate.inventory.Icon;
+import org.bukkit.ChatColor;
+import org.bukkit.Material;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.ItemMeta;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * GUI for browsing archived mails.
+ * <p>
+ * The first level lists the archived months; a month's mails are only loaded and
+ * decompressed when it is clicked. Archived mails are read-only.
+ *
+ * @author wisdomme
+ * @version 1.0.0
+ */
+public class ArchiveGUI extends BasePaginationPage {
+
+    private final MailService mailService;
+    private final UltiToolsPlugin plugin;
+    private final List<MailArchiveData> months;
+    // Mails of the opened month, null while listing months
+    private final List<MailData> mails;
+
+    private ArchiveGUI(@NotNull Player player, MailService mailService, UltiToolsPlugin plugin, String title,
+                       List<MailArchiveData> months, List<MailData> mails) {
+        super(player, "archive-gui", title, 6);
+        this.mailService = mailService;
+        this.plugin = plugin;
+        this.months = months;
+        this.mails = mails;
+    }
+
+    /**
+     * Load the player's archived months off-thread, then open the month list.
+     */
+    public static void open(Player player, MailService mailService, UltiToolsPlugin plugin) {
+        mailService.loadArchiveMonths(player.getUniqueId(), months -> {
+            if (!player.isOnline()) {
+                return;
+            }
+            if (months.isEmpty()) {
+                player.sendMessage(ChatColor.YELLOW + plugin.i18n("archive_empty"));
+                return;
+            }
+            new ArchiveGUI(player, mailService, plugin,
+                plugin.i18n("archive_gui_title").replace("{0}", player.getName()), months, null).open();
+        });
+    }
+
+    @Override
+    protected List<Icon> provideItems() {
+        List<Icon> icons = new ArrayList<>();
+        if (mails == null) {
+            for (MailArchiveData month : months) {
+                icons.add(createMonthIcon(month));
+            }
+        } else {
+            for (MailData mail : mails) {
+                icons.add(createMailIcon(mail));
+            }
+        }
+        return icons;
+    }
+
+    /**
+     * Creates an icon for an archived month.
+     */
+    private Icon createMonthIcon(MailArchiveData month) {
+        ItemStack itemStack = new ItemStack(Material.CHEST);
+        ItemMeta meta = itemStack.getItemMeta();
+
+        if (meta != null) {
+            meta.setDisplayName(ChatColor.GOLD + month.getMonth());
+            List<String> lore = new ArrayList<>();
+            lore.add(ChatColor.GRAY + i18n("archive_lore_count").replace("{0}", String.valueOf(month.getMailCount())));
+            lore.add(ChatColor.GREEN + i18n("archive_lore_click_to_open"));
+            meta.setLore(lore);
+            itemStack.setItemMeta(meta);
+        }
+
+        Icon icon = new Icon(itemStack);
+        icon.onClick(e -> openMonth(month));
+        return icon;
+    }
+
+    /**
+     * Load one month off-thread and show its mails.
+     */
+    private void openMonth(MailArchiveData month) {
+        mailService.loadArchive(player.getUniqueId(), month.getMonth(), loaded -> {
+            if (!player.isOnline()) {
+                return;
+            }
+            new ArchiveGUI(player, mailService, plugin,
+                i18n("archive_month_gui_title").replace("{0}", month.getMonth()), months, loaded).open();
+        });
+    }
+
+    /**
+     * Creates an icon for an archived mail.
+     */
+    private Icon createMailIcon(MailData mail) {
+        ItemStack itemStack = new ItemStack(Material.BOOK);
+        ItemMeta meta = itemStack.getItemMeta();
+
+        if (meta != null) {
+            meta.setDisplayName(ChatColor.GRAY + i18n("archive_status") + " " + ChatColor.WHITE + mail.getSubject());
+
+            List<String> lore = new ArrayList<>();
+            lore.add(ChatColor.GRAY + i18n("lore_from").replace("{0}", mail.getSenderName()));
+            lore.add(ChatColor.GRAY + i18n("lore_time").replace("{0}", TimestampFormat.format(mail.getSentTime())));
+            lore.add("");
+
+            // Content preview
+            String contentPreview = mail.getContent();
+            if (contentPreview.length() > 30) {
+                contentPreview = contentPreview.substring(0, 30) + "...";
+            }
+            lore.add(ChatColor.YELLOW + i18n("lore_content"));
+            lore.add(ChatColor.WHITE + contentPreview);
+
+            if (mail.hasItems()) {
+                lore.add("");
+                lore.add(ChatColor.GRAY + i18n("inbox_status_claimed"));
+            }
+
+            meta.setLore(lore);
+            itemStack.setItemMeta(meta);
+        }
+
+        Icon icon = new Icon(itemStack);
+        // Archived mails are read-only, show the full content in chat
+        icon.onClick(e -> {
+            player.sendMessage(ChatColor.GRAY + "---");
+            player.sendMessage(ChatColor.YELLOW + i18n("lore_from").replace("{0}", mail.getSenderName()));
+            player.sendMessage(ChatColor.WHITE + mail.getContent());
+            player.sendMessage(ChatColor.GRAY + "---");
+        });
+
+        return icon;
+    }
+
+    private String i18n(String key) {
+        return plugin.i18n(key);
+    }
+
+    @Override
+    protected void setupNavigationButtons() {
+        super.setupNavigationButtons();
+
+        // Back to the month list, or from there to the inbox
+        Icon backButton = createActionButton(Colors.GREEN,
+            ChatColor.GREEN + i18n("gui_back"),
+            e -> {
+                if (mails != null) {
+                    new ArchiveGUI(player, mailService, plugin,
+                        i18n("archive_gui_title").replace("{0}", player.getName()), months, null).open();
+                } else {
+                    new MailboxGUI(player, mailService, plugin).open();
+                }
+            });
+        addToBottomRow(2, backButton);
+
+        // Add close button at center
+        Icon closeButton = createActionButton(Colors.RED,
+            ChatColor.RED + i18n("gui_close"),
+            e -> player.closeInventory());
+        addToBottomRow(4, closeButton);
+    }
+}
@@ -1,5 +1,6 @@
 package com.ultikits.plugins.mail.gui;
 
+import com.ultikits.plugins.mail.service.InventoryFitSimulator;
 import com.ultikits.ultitools.abstracts.UltiToolsPlugin;
 import com.ultikits.ultitools.abstracts.gui.BaseConfirmationPage;
 import com.ultikits.ultitools.entities.Colors;
@@ -85,9 +86,7 @@ public class AttachmentSelectorPage extends BaseConfirmationPage {
             // Return excess items to player
             player.sendMessage(ChatColor.YELLOW + i18n("send_items_too_many")
                 .replace("{0}", String.valueOf(maxItems)));
-            for (int i = maxItems; i < items.size(); i++) {
-                player.getInventory().addItem(items.get(i));
-            }
+            giveBack(items.subList(maxItems, items.size()));
             items = items.subList(0, maxItems);
         }
         
@@ -124,10 +123,27 @@ public class AttachmentSelectorPage extends BaseConfirmationPage {
      * Returns all items to the player.
      */
     public void returnAllItems() {
+        List<ItemStack> items = new ArrayList<>();
         for (int i = 0; i < CONTENT_SIZE; i++) {
             ItemStack item = getInventory().getItem(i);
             if (item != null && !item.getType().isAir()) {
+                items.add(item);
+            }
+        }
+        giveBack(items);
+    }
+    
+    /**
+     * Gives items back to the player. Items that do not fit in the
+     * inventory are dropped at the player's feet instead of being lost.
+     */
+    private void giveBack(List<ItemStack> items) {
+        InventoryFitSimulator simulator = new InventoryFitSimulator().load(player.getInventory());
+        for (ItemStack item : items) {
+            if (simulator.add(item)) {
                 player.getInventory().addItem(item);
+            } else {
+                player.getWorld().dropItemNaturally(player.getLocation(), item);
             }
         }
     }
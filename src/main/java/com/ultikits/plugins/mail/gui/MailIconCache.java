@@ -0,0 +1,82 @@
+package com.ultikits.plugins.mail.gui;
+
+import com.ultikits.plugins.mail.entity.MailData;
+import com.ultikits.plugins.mail.metrics.MailMetrics;
+import com.ultikits.plugins.mail.metrics.MailMetrics.Counter;
+import mc.obliviate.inventory.Icon;
+import org.bukkit.inventory.ItemStack;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Icons of the mails shown by a GUI, reused until a mail changes.
+ * <p>
+ * Icons are keyed by mail id and remember the mail version they were rendered
+ * from. Every store update bumps the version, so an icon is rebuilt exactly when
+ * its mail changed and a page refresh only renders the changed mails. A rebuilt
+ * icon is updated in place, so the page's own list of icons never holds a stale
+ * one. Builds and reuses are counted in the metrics.
+ *
+ * @author wisdomme
+ * @version 1.0.0
+ */
+class MailIconCache {
+
+    private final Function<MailData, Icon> renderer;
+    private final MailMetrics metrics;
+
+    // Mail id -> icon and the version it shows
+    private final Map<String, Entry> icons = new HashMap<>();
+
+    MailIconCache(Function<MailData, Icon> renderer, MailMetrics metrics) {
+        this.renderer = renderer;
+        this.metrics = metrics;
+    }
+
+    /**
+     * The icon of a mail, rendered only if the mail changed since it was last shown.
+     */
+    Icon get(MailData mail) {
+        if (mail.getId() == null) {
+            metrics.increment(Counter.GUI_ICON_BUILDS);
+            return renderer.apply(mail);
+        }
+        Entry entry = icons.get(mail.getId());
+        if (entry != null && entry.version == mail.getVersion()) {
+            metrics.increment(Counter.GUI_ICON_REUSES);
+            return entry.icon;
+        }
+        metrics.increment(Counter.GUI_ICON_BUILDS);
+        Icon rendered = renderer.apply(mail);
+        if (entry == null) {
+            icons.put(mail.getId(), new Entry(rendered, mail.getVersion()));
+            return rendered;
+        }
+        ItemStack shown = entry.icon.getItem();
+        ItemStack fresh = rendered.getItem();
+        shown.setType(fresh.getType());
+        shown.setItemMeta(fresh.getItemMeta());
+        entry.version = mail.getVersion();
+        return entry.icon;
+    }
+
+    /**
+     * Whether the cached icon of a mail still shows its current state.
+     */
+    boolean isCurrent(MailData mail) {
+        Entry entry = mail.getId() != null ? icons.get(mail.getId()) : null;
+        return entry != null && entry.version == mail.getVersion();
+    }
+
+    private static final class Entry {
+        private final Icon icon;
+        private long version;
+
+        private Entry(Icon icon, long version) {
+            this.icon = icon;
+            this.version = version;
+        }
+    }
+}
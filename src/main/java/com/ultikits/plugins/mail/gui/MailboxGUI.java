@@ -1,22 +1,23 @@
 package com.ultikits.plugins.mail.gui;
 
 import com.ultikits.plugins.mail.entity.MailData;
+import com.ultikits.plugins.mail.service.MailLabels;
+import com.ultikits.plugins.mail.service.MailRender;
+import com.ultikits.plugins.mail.service.MailRenderCache;
+import com.ultikits.plugins.mail.service.MailRenderCache.View;
 import com.ultikits.plugins.mail.service.MailService;
+import com.ultikits.plugins.mail.service.TimestampFormat;
 import com.ultikits.ultitools.abstracts.UltiToolsPlugin;
 import com.ultikits.ultitools.abstracts.gui.BasePaginationPage;
 import com.ultikits.ultitools.entities.Colors;
-import com.ultikits.ultitools.utils.XVersionUtils;
 import mc.obliviate.inventory.Icon;
 import org.bukkit.ChatColor;
 import org.bukkit.Material;
 import org.bukkit.entity.Player;
-import org.bukkit.inventory.ItemStack;
-import org.bukkit.inventory.meta.ItemMeta;
+import org.bukkit.event.inventory.InventoryCloseEvent;
 import org.jetbrains.annotations.NotNull;
 
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.List;
 
 /**
@@ -27,6 +28,12 @@ import java.util.List;
  * - Different icons for read/unread mails
  * - Click to read mail and claim items
  * - Shows mail info in lore
+ * - Opens the archive of older mails
+ * - Re-renders only the mails whose state changed
+ * <p>
+ * The page opens at once with a loading placeholder. The inbox is loaded and its
+ * icons rendered off the main thread, and the mails are filled in when they
+ * arrive, unless the player closed the page meanwhile.
  *
  * @author wisdomme
  * @version 1.0.0
@@ -35,88 +42,131 @@ public class MailboxGUI extends BasePaginationPage {
     
     private final MailService mailService;
     private final UltiToolsPlugin plugin;
-    private final List<MailData> mails;
-    private static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd HH:mm");
+    // Null until the inbox has loaded
+    private List<MailData> mails;
+    private boolean closed;
+    private final MailIconCache icons;
+    private final MailRenderCache renders;
+    private final MailLabels labels;
 
     public MailboxGUI(@NotNull Player player, MailService mailService, UltiToolsPlugin plugin) {
         super(player, "mailbox-gui", plugin.i18n("inbox_gui_title").replace("{0}", player.getName()), 6);
         this.mailService = mailService;
         this.plugin = plugin;
-        this.mails = mailService.getInbox(player.getUniqueId());
+        this.renders = mailService.getRenderCache();
+        this.labels = renders.labels(plugin::i18n);
+        this.icons = new MailIconCache(this::createMailIcon, mailService.getMetrics());
+    }
+    
+    @Override
+    public void open() {
+        super.open();
+        mailService.loadInbox(player.getUniqueId(),
+            loaded -> loaded.forEach(mail -> renders.get(View.INBOX, mail, labels, MailboxGUI::render)),
+            this::showMails);
+    }
+    
+    /**
+     * Fill in the loaded inbox, dropped if the page was closed meanwhile.
+     */
+    private void showMails(List<MailData> loaded) {
+        if (closed || !player.isOnline()) {
+            return;
+        }
+        mails = loaded;
+        updatePaginatedContent();
+    }
+    
+    @Override
+    public void onClose(InventoryCloseEvent event) {
+        closed = true;
+        super.onClose(event);
     }
     
     @Override
     protected List<Icon> provideItems() {
-        List<Icon> icons = new ArrayList<>();
+        List<Icon> items = new ArrayList<>();
+        
+        if (mails == null) {
+            items.add(createLoadingIcon());
+            return items;
+        }
         
         for (MailData mail : mails) {
-            Icon icon = createMailIcon(mail);
-            icons.add(icon);
+            items.add(icons.get(mail));
         }
         
-        return icons;
+        return items;
     }
     
     /**
-     * Creates an icon for a mail item.
+     * Placeholder shown while the inbox is loading.
+     */
+    private Icon createLoadingIcon() {
+        return new Icon(new MailRender(Material.CLOCK, ChatColor.YELLOW + i18n("inbox_loading"),
+            new ArrayList<>()).toItem());
+    }
+    
+    /**
+     * Creates an icon for a mail item from its cached render.
      */
     private Icon createMailIcon(MailData mail) {
+        Icon icon = new Icon(renders.get(View.INBOX, mail, labels, MailboxGUI::render).toItem());
+        icon.onClick(e -> handleMailClick(mail, e.getSlot()));
+        
+        return icon;
+    }
+    
+    /**
+     * Display data of a mail in the inbox. Only reads the mail and the labels, so it
+     * can run off the main thread.
+     */
+    static MailRender render(MailData mail, MailLabels labels) {
         // Use different materials for read/unread
         Material material = mail.isRead() ? Material.BOOK : Material.WRITABLE_BOOK;
-        ItemStack itemStack = new ItemStack(material);
-        ItemMeta meta = itemStack.getItemMeta();
         
-        if (meta != null) {
-            // Title: subject with read status
-            String status = mail.isRead() ? 
-                ChatColor.GRAY + i18n("lore_read") : 
-                ChatColor.GREEN + i18n("lore_unread");
-            meta.setDisplayName(status + " " + ChatColor.WHITE + mail.getSubject());
-            
-            // Lore: mail details
-            List<String> lore = new ArrayList<>();
-            lore.add(ChatColor.GRAY + i18n("lore_from").replace("{0}", mail.getSenderName()));
-            lore.add(ChatColor.GRAY + i18n("lore_time").replace("{0}", DATE_FORMAT.format(new Date(mail.getSentTime()))));
-            lore.add("");
-            
-            // Content preview (first 30 chars)
-            String contentPreview = mail.getContent();
-            if (contentPreview.length() > 30) {
-                contentPreview = contentPreview.substring(0, 30) + "...";
-            }
-            lore.add(ChatColor.YELLOW + i18n("lore_content"));
-            lore.add(ChatColor.WHITE + contentPreview);
-            lore.add("");
-            
-            // Items info
-            if (mail.hasItems()) {
-                if (mail.isClaimed()) {
-                    lore.add(ChatColor.GRAY + i18n("inbox_status_claimed"));
-                } else {
-                    lore.add(ChatColor.GOLD + i18n("inbox_status_has_items"));
-                    lore.add(ChatColor.YELLOW + i18n("lore_click_to_claim"));
-                }
-            }
-            
-            // Click hint
-            if (!mail.isRead()) {
-                lore.add(ChatColor.GREEN + i18n("lore_click_to_read"));
+        // Title: subject with read status
+        String status = mail.isRead() ? 
+            ChatColor.GRAY + labels.get("lore_read") : 
+            ChatColor.GREEN + labels.get("lore_unread");
+        
+        // Lore: mail details
+        List<String> lore = new ArrayList<>();
+        lore.add(ChatColor.GRAY + labels.get("lore_from").replace("{0}", mail.getSenderName()));
+        lore.add(ChatColor.GRAY + labels.get("lore_time").replace("{0}", TimestampFormat.format(mail.getSentTime())));
+        lore.add("");
+        
+        // Content preview (first 30 chars)
+        String contentPreview = mail.getContent();
+        if (contentPreview.length() > 30) {
+            contentPreview = contentPreview.substring(0, 30) + "...";
+        }
+        lore.add(ChatColor.YELLOW + labels.get("lore_content"));
+        lore.add(ChatColor.WHITE + contentPreview);
+        lore.add("");
+        
+        // Items info
+        if (mail.hasItems()) {
+            if (mail.isClaimed()) {
+                lore.add(ChatColor.GRAY + labels.get("inbox_status_claimed"));
+            } else {
+                lore.add(ChatColor.GOLD + labels.get("inbox_status_has_items"));
+                lore.add(ChatColor.YELLOW + labels.get("lore_click_to_claim"));
             }
-            
-            meta.setLore(lore);
-            itemStack.setItemMeta(meta);
         }
         
-        Icon icon = new Icon(itemStack);
-        icon.onClick(e -> handleMailClick(mail));
+        // Click hint
+        if (!mail.isRead()) {
+            lore.add(ChatColor.GREEN + labels.get("lore_click_to_read"));
+        }
         
-        return icon;
+        return new MailRender(material, status + " " + ChatColor.WHITE + mail.getSubject(), lore);
     }
     
     /**
      * Handles click on a mail item.
      */
-    private void handleMailClick(MailData mail) {
+    private void handleMailClick(MailData mail, int slot) {
         // Mark as read
         if (!mail.isRead()) {
             mailService.markAsRead(mail);
@@ -129,37 +179,26 @@ public class MailboxGUI extends BasePaginationPage {
         
         // Try to claim items if has unclaimed items
         if (mail.hasItems() && !mail.isClaimed()) {
-            // Check inventory space
-            int requiredSlots = mailService.getItemCount(mail);
-            int emptySlots = countEmptySlots(player);
+            // Check inventory space (items merge into existing stacks)
+            int missingSlots = mailService.getMissingSlots(mail, player);
             
-            if (emptySlots < requiredSlots) {
+            if (missingSlots > 0) {
                 player.sendMessage(ChatColor.RED + i18n("claim_inventory_full")
-                    .replace("{0}", String.valueOf(requiredSlots)));
+                    .replace("{0}", String.valueOf(missingSlots)));
             } else {
-                ItemStack[] items = mailService.claimItems(mail, player);
-                if (items.length > 0) {
-                    player.sendMessage(ChatColor.GREEN + i18n("claim_success")
-                        .replace("{0}", String.valueOf(items.length)));
-                }
+                mailService.claimItems(mail, player, items -> {
+                    if (items.length > 0) {
+                        player.sendMessage(ChatColor.GREEN + i18n("claim_success")
+                            .replace("{0}", String.valueOf(items.length)));
+                    }
+                });
             }
         }
         
-        // Refresh GUI
-        updatePaginatedContent();
-    }
-    
-    /**
-     * Counts empty inventory slots.
-     */
-    private int countEmptySlots(Player player) {
-        int count = 0;
-        for (ItemStack item : player.getInventory().getStorageContents()) {
-            if (item == null || item.getType() == Material.AIR) {
-                count++;
-            }
+        // Only the clicked mail can have changed, redraw just its slot
+        if (!icons.isCurrent(mail)) {
+            addItem(slot, icons.get(mail));
         }
-        return count;
     }
     
     /**
@@ -178,5 +217,48 @@ public class MailboxGUI extends BasePaginationPage {
             ChatColor.RED + i18n("gui_close"), 
             e -> player.closeInventory());
         addToBottomRow(4, closeButton);
+        
+        // Claim all attachments that fit
+        Icon claimAllButton = createActionButton(Colors.GREEN,
+            ChatColor.GREEN + i18n("gui_claim_all"),
+            e -> handleClaimAll());
+        addToBottomRow(6, claimAllButton);
+        
+        // Archived months, loaded on demand
+        Icon archiveButton = createActionButton(Colors.GREEN,
+            ChatColor.GOLD + i18n("gui_archive"),
+            e -> ArchiveGUI.open(player, mailService, plugin));
+        addToBottomRow(2, archiveButton);
+    }
+    
+    /**
+     * Handles click on the claim-all button.
+     */
+    private void handleClaimAll() {
+        if (mails == null) {
+            return;
+        }
+        mailService.claimAll(player, mails, result -> {
+            if (result.isBusy()) {
+                player.sendMessage(ChatColor.YELLOW + i18n("claim_all_busy"));
+                return;
+            }
+            if (result.isFailed()) {
+                player.sendMessage(ChatColor.RED + i18n("claim_all_failed"));
+                return;
+            }
+            if (result.getClaimedMails() > 0) {
+                player.sendMessage(ChatColor.GREEN + i18n("claim_all_success")
+                    .replace("{0}", String.valueOf(result.getClaimedItems()))
+                    .replace("{1}", String.valueOf(result.getClaimedMails())));
+            } else if (result.getSkippedMails() == 0) {
+                player.sendMessage(ChatColor.YELLOW + i18n("claim_all_none"));
+            }
+            if (result.getSkippedMails() > 0) {
+                player.sendMessage(ChatColor.RED + i18n("claim_all_skipped")
+                    .replace("{0}", String.valueOf(result.getSkippedMails())));
+            }
+            updatePaginatedContent();
+        });
     }
 }
@@ -1,7 +1,13 @@
 package com.ultikits.plugins.mail.gui;
 
 import com.ultikits.plugins.mail.entity.MailData;
+import com.ultikits.plugins.mail.entity.MailGroupData;
+import com.ultikits.plugins.mail.service.MailLabels;
+import com.ultikits.plugins.mail.service.MailRender;
+import com.ultikits.plugins.mail.service.MailRenderCache;
+import com.ultikits.plugins.mail.service.MailRenderCache.View;
 import com.ultikits.plugins.mail.service.MailService;
+import com.ultikits.plugins.mail.service.TimestampFormat;
 import com.ultikits.ultitools.abstracts.UltiToolsPlugin;
 import com.ultikits.ultitools.abstracts.gui.BasePaginationPage;
 import com.ultikits.ultitools.entities.Colors;
@@ -13,13 +19,14 @@ import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.meta.ItemMeta;
 import org.jetbrains.annotations.NotNull;
 
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.List;
 
 /**
  * GUI for displaying sent mails with pagination.
+ * <p>
+ * A broadcast is shown as one entry with its delivered, read and claimed counts,
+ * however many players it went to.
  *
  * @author wisdomme
  * @version 1.0.0
@@ -29,65 +36,61 @@ public class SentboxGUI extends BasePaginationPage {
     private final MailService mailService;
     private final UltiToolsPlugin plugin;
     private final List<MailData> mails;
-    private static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd HH:mm");
+    private final List<MailGroupData> groups;
+    private final MailRenderCache renders;
+    private final MailLabels labels;
 
     public SentboxGUI(@NotNull Player player, MailService mailService, UltiToolsPlugin plugin) {
         super(player, "sentbox-gui", plugin.i18n("sentbox_gui_title").replace("{0}", player.getName()), 6);
         this.mailService = mailService;
         this.plugin = plugin;
         this.mails = mailService.getSentMails(player.getUniqueId());
+        this.groups = mailService.getSentGroups(player.getUniqueId());
+        this.renders = mailService.getRenderCache();
+        this.labels = renders.labels(plugin::i18n);
     }
     
     @Override
     protected List<Icon> provideItems() {
         List<Icon> icons = new ArrayList<>();
         
-        for (MailData mail : mails) {
-            Icon icon = createMailIcon(mail);
-            icons.add(icon);
+        // Both lists are newest first; merge them by sent time
+        int m = 0;
+        int g = 0;
+        while (m < mails.size() || g < groups.size()) {
+            if (g < groups.size() && (m == mails.size()
+                    || groups.get(g).getSentTime() >= mails.get(m).getSentTime())) {
+                icons.add(createGroupIcon(groups.get(g++)));
+            } else {
+                icons.add(createMailIcon(mails.get(m++)));
+            }
         }
         
         return icons;
     }
     
     /**
-     * Creates an icon for a sent mail item.
+     * Creates an icon for a broadcast.
      */
-    private Icon createMailIcon(MailData mail) {
-        // Sent mails use paper icon
-        Material material = mail.isRead() ? Material.MAP : Material.PAPER;
-        ItemStack itemStack = new ItemStack(material);
+    private Icon createGroupIcon(MailGroupData group) {
+        ItemStack itemStack = new ItemStack(Material.BOOKSHELF);
         ItemMeta meta = itemStack.getItemMeta();
         
         if (meta != null) {
-            // Title with read status (by receiver)
-            String status = mail.isRead() ? 
-                ChatColor.GREEN + i18n("inbox_status_read") : 
-                ChatColor.GRAY + i18n("inbox_status_unread");
-            meta.setDisplayName(status + " " + ChatColor.WHITE + mail.getSubject());
+            meta.setDisplayName(ChatColor.GOLD + i18n("sentbox_broadcast") + " " + ChatColor.WHITE + group.getSubject());
             
-            // Lore
             List<String> lore = new ArrayList<>();
-            lore.add(ChatColor.GRAY + i18n("lore_to").replace("{0}", mail.getReceiverName()));
-            lore.add(ChatColor.GRAY + i18n("lore_time").replace("{0}", DATE_FORMAT.format(new Date(mail.getSentTime()))));
+            lore.add(ChatColor.GRAY + i18n("lore_time").replace("{0}", TimestampFormat.format(group.getSentTime())));
             lore.add("");
-            
-            // Content preview
-            String contentPreview = mail.getContent();
-            if (contentPreview.length() > 30) {
-                contentPreview = contentPreview.substring(0, 30) + "...";
-            }
-            lore.add(ChatColor.YELLOW + i18n("lore_content"));
-            lore.add(ChatColor.WHITE + contentPreview);
-            
-            // Items info
-            if (mail.hasItems()) {
-                lore.add("");
-                if (mail.isClaimed()) {
-                    lore.add(ChatColor.GREEN + i18n("inbox_status_claimed"));
-                } else {
-                    lore.add(ChatColor.GOLD + i18n("inbox_status_has_items"));
-                }
+            lore.add(ChatColor.YELLOW + i18n("lore_group_delivered")
+                .replace("{0}", String.valueOf(group.getDeliveredCount())));
+            lore.add(ChatColor.GREEN + i18n("lore_group_read")
+                .replace("{0}", String.valueOf(group.getReadCount()))
+                .replace("{1}", String.valueOf(group.getDeliveredCount())));
+            if (group.isItemsAttached()) {
+                lore.add(ChatColor.GOLD + i18n("lore_group_claimed")
+                    .replace("{0}", String.valueOf(group.getClaimedCount()))
+                    .replace("{1}", String.valueOf(group.getDeliveredCount())));
             }
             
             meta.setLore(lore);
@@ -95,6 +98,21 @@ public class SentboxGUI extends BasePaginationPage {
         }
         
         Icon icon = new Icon(itemStack);
+        icon.onClick(e -> {
+            player.sendMessage(ChatColor.GRAY + "---");
+            player.sendMessage(ChatColor.YELLOW + i18n("sentbox_broadcast") + " " + group.getSubject());
+            player.sendMessage(ChatColor.WHITE + group.getContent());
+            player.sendMessage(ChatColor.GRAY + "---");
+        });
+        
+        return icon;
+    }
+    
+    /**
+     * Creates an icon for a sent mail item from its cached render.
+     */
+    private Icon createMailIcon(MailData mail) {
+        Icon icon = new Icon(renders.get(View.SENTBOX, mail, labels, SentboxGUI::render).toItem());
         // Sent mails are read-only in GUI
         icon.onClick(e -> {
             // Just show message, no action
@@ -107,6 +125,46 @@ public class SentboxGUI extends BasePaginationPage {
         return icon;
     }
     
+    /**
+     * Display data of a sent mail. Only reads the mail and the labels, so it can run
+     * off the main thread.
+     */
+    static MailRender render(MailData mail, MailLabels labels) {
+        // Sent mails use paper icon
+        Material material = mail.isRead() ? Material.MAP : Material.PAPER;
+        
+        // Title with read status (by receiver)
+        String status = mail.isRead() ? 
+            ChatColor.GREEN + labels.get("inbox_status_read") : 
+            ChatColor.GRAY + labels.get("inbox_status_unread");
+        
+        // Lore
+        List<String> lore = new ArrayList<>();
+        lore.add(ChatColor.GRAY + labels.get("lore_to").replace("{0}", mail.getReceiverName()));
+        lore.add(ChatColor.GRAY + labels.get("lore_time").replace("{0}", TimestampFormat.format(mail.getSentTime())));
+        lore.add("");
+        
+        // Content preview
+        String contentPreview = mail.getContent();
+        if (contentPreview.length() > 30) {
+            contentPreview = contentPreview.substring(0, 30) + "...";
+        }
+        lore.add(ChatColor.YELLOW + labels.get("lore_content"));
+        lore.add(ChatColor.WHITE + contentPreview);
+        
+        // Items info
+        if (mail.hasItems()) {
+            lore.add("");
+            if (mail.isClaimed()) {
+                lore.add(ChatColor.GREEN + labels.get("inbox_status_claimed"));
+            } else {
+                lore.add(ChatColor.GOLD + labels.get("inbox_status_has_items"));
+            }
+        }
+        
+        return new MailRender(material, status + " " + ChatColor.WHITE + mail.getSubject(), lore);
+    }
+    
     private String i18n(String key) {
         return plugin.i18n(key);
     }
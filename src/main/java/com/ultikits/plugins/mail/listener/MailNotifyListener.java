@@ -1,6 +1,7 @@
 package com.ultikits.plugins.mail.listener;
 
 import com.ultikits.plugins.mail.config.MailConfig;
+import com.ultikits.plugins.mail.service.CommandDispatcher;
 import com.ultikits.plugins.mail.service.MailService;
 import com.ultikits.ultitools.abstracts.UltiToolsPlugin;
 import com.ultikits.ultitools.annotations.Autowired;
@@ -38,15 +39,21 @@ public class MailNotifyListener implements Listener {
 
     @Autowired
     private MailConfig config;
+
+    @Autowired
+    private CommandDispatcher commandDispatcher;
     
     @EventHandler
     public void onPlayerJoin(PlayerJoinEvent event) {
+        Player player = event.getPlayer();
+
+        // Run mail commands that came up while the player was away
+        commandDispatcher.resume(player);
+
         if (!config.isNotifyOnJoin()) {
             return;
         }
         
-        Player player = event.getPlayer();
-        
         // Lazy init bukkitPlugin
         if (bukkitPlugin == null) {
             bukkitPlugin = Bukkit.getPluginManager().getPlugin("UltiTools");
@@ -0,0 +1,124 @@
+package com.ultikits.plugins.mail.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import java.util.function.LongSupplier;
+
+/**
+ * The Flight Recorder event types behind {@link MailEvents}.
+ * <p>
+ * Only loaded once {@link MailEvents} has found {@code jdk.jfr}, so the plugin still
+ * runs on JVMs without it.
+ *
+ * @author wisdomme
+ * @version 1.0.0
+ */
+final class JfrMailEvents {
+
+    private static final String CATEGORY = "UltiMail";
+
+    private JfrMailEvents() {
+    }
+
+    static MailEvents.Span begin(MailEvents.Kind kind) {
+        MailEvent event = create(kind);
+        if (!event.isEnabled()) {
+            return MailEvents.NOOP;
+        }
+        event.begin();
+        return event;
+    }
+
+    private static MailEvent create(MailEvents.Kind kind) {
+        switch (kind) {
+            case SEND:
+                return new SendEvent();
+            case INBOX_LOAD:
+                return new InboxLoadEvent();
+            case DECODE:
+                return new DecodeEvent();
+            case CLAIM:
+                return new ClaimEvent();
+            case BROADCAST_CHUNK:
+                return new BroadcastChunkEvent();
+            case RECALL_CHUNK:
+                return new RecallChunkEvent();
+            default:
+                throw new IllegalArgumentException("Unknown mail event: " + kind);
+        }
+    }
+
+    /**
+     * Fields shared by every mail event.
+     */
+    abstract static class MailEvent extends Event implements MailEvents.Span {
+
+        @Label("Player")
+        String player;
+
+        @Label("Rows")
+        long rows;
+
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+
+        @Override
+        public void end(String player, long rows, LongSupplier bytes) {
+            end();
+            if (shouldCommit()) {
+                this.player = player;
+                this.rows = rows;
+                this.bytes = bytes.getAsLong();
+                commit();
+            }
+        }
+    }
+
+    @Name("ultimail.Send")
+    @Label("Mail Send")
+    @Category(CATEGORY)
+    @Description("A mail written and stored; rows is 0 when it was rejected.")
+    static class SendEvent extends MailEvent {
+    }
+
+    @Name("ultimail.InboxLoad")
+    @Label("Inbox Load")
+    @Category(CATEGORY)
+    @Description("A player's inbox read from the store.")
+    static class InboxLoadEvent extends MailEvent {
+    }
+
+    @Name("ultimail.Decode")
+    @Label("Attachment Decode")
+    @Category(CATEGORY)
+    @Description("Attachments of one mail deserialized; rows is the item count.")
+    static class DecodeEvent extends MailEvent {
+    }
+
+    @Name("ultimail.Claim")
+    @Label("Attachment Claim")
+    @Category(CATEGORY)
+    @Description("Attachments of one mail claimed into an inventory.")
+    static class ClaimEvent extends MailEvent {
+    }
+
+    @Name("ultimail.BroadcastChunk")
+    @Label("Broadcast Chunk")
+    @Category(CATEGORY)
+    @Description("A run of recipients of a broadcast; player is the sender.")
+    static class BroadcastChunkEvent extends MailEvent {
+    }
+
+    @Name("ultimail.RecallChunk")
+    @Label("Recall Chunk")
+    @Category(CATEGORY)
+    @Description("A run of recipients of a recall; player is the sender.")
+    static class RecallChunkEvent extends MailEvent {
+    }
+}
@@ -0,0 +1,110 @@
+package com.ultikits.plugins.mail.metrics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram with fixed bucket bounds.
+ * <p>
+ * Each bucket is a {@link LongAdder}, so recording from many threads does not
+ * contend. Percentiles are answered with the upper bound of the bucket they fall
+ * in, which is accurate to the bucket width.
+ *
+ * @author wisdomme
+ * @version 1.0.0
+ */
+public class LatencyHistogram {
+
+    /**
+     * Bucket upper bounds in nanoseconds, from 10µs to 10s. Anything slower lands
+     * in the overflow bucket after the last bound.
+     */
+    private static final long[] BOUNDS_NANOS = {
+        10_000L, 25_000L, 50_000L, 100_000L, 250_000L, 500_000L,
+        1_000_000L, 2_500_000L, 5_000_000L, 10_000_000L, 25_000_000L, 50_000_000L,
+        100_000_000L, 250_000_000L, 500_000_000L,
+        1_000_000_000L, 2_500_000_000L, 5_000_000_000L, 10_000_000_000L
+    };
+
+    private final LongAdder[] buckets = new LongAdder[BOUNDS_NANOS.length + 1];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sumNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Long::max, 0L);
+
+    public LatencyHistogram() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Record one observation.
+     */
+    public void record(long nanos) {
+        int bucket = 0;
+        while (bucket < BOUNDS_NANOS.length && nanos > BOUNDS_NANOS[bucket]) {
+            bucket++;
+        }
+        buckets[bucket].increment();
+        count.increment();
+        sumNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getSumNanos() {
+        return sumNanos.sum();
+    }
+
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    /**
+     * Upper bounds of the buckets in nanoseconds, without the overflow bucket.
+     */
+    public static long[] getBoundsNanos() {
+        return BOUNDS_NANOS.clone();
+    }
+
+    /**
+     * Observations per bucket; the last entry is the overflow bucket.
+     */
+    public long[] getBucketCounts() {
+        long[] counts = new long[buckets.length];
+        for (int i = 0; i < buckets.length; i++) {
+            counts[i] = buckets[i].sum();
+        }
+        return counts;
+    }
+
+    /**
+     * Approximate percentile in nanoseconds.
+     *
+     * @param percentile 0 to 100
+     * @return the upper bound of the bucket holding the percentile, the largest
+     *         observation for the overflow bucket, or 0 with no observations
+     */
+    public long getPercentileNanos(double percentile) {
+        long[] counts = getBucketCounts();
+        long total = 0;
+        for (long c : counts) {
+            total += c;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < BOUNDS_NANOS.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(BOUNDS_NANOS[i], getMaxNanos());
+            }
+        }
+        return getMaxNanos();
+    }
+}
@@ -0,0 +1,75 @@
+package com.ultikits.plugins.mail.metrics;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Java Flight Recorder events for mail operations.
+ * <p>
+ * An operation is bracketed with {@link #begin(Kind)} and {@link Span#end}. Events
+ * carry the player, the number of rows or mails touched and their size in bytes, and
+ * show up under the "UltiMail" category of a recording. When no recording has an event
+ * enabled, {@link #begin(Kind)} hands out a shared no-op span, so the size is never
+ * computed. On JVMs without {@code jdk.jfr} every span is the no-op one.
+ *
+ * @author wisdomme
+ * @version 1.0.0
+ */
+public final class MailEvents {
+
+    /**
+     * Recorded operations, each its own event type.
+     */
+    public enum Kind {
+        SEND,
+        INBOX_LOAD,
+        DECODE,
+        CLAIM,
+        BROADCAST_CHUNK,
+        RECALL_CHUNK
+    }
+
+    /**
+     * One operation in progress.
+     */
+    public interface Span {
+
+        /**
+         * End the operation and commit the event if it is being recorded.
+         *
+         * @param player Player the operation was for, may be null
+         * @param rows   Number of rows or mails the operation touched
+         * @param bytes  Size of those rows, only evaluated when the event is committed
+         */
+        void end(String player, long rows, LongSupplier bytes);
+    }
+
+    static final Span NOOP = (player, rows, bytes) -> { };
+
+    private static final boolean AVAILABLE = detect();
+
+    private MailEvents() {
+    }
+
+    /**
+     * Start timing an operation.
+     */
+    public static Span begin(Kind kind) {
+        return AVAILABLE ? JfrMailEvents.begin(kind) : NOOP;
+    }
+
+    /**
+     * Whether this JVM has Flight Recorder support.
+     */
+    public static boolean isAvailable() {
+        return AVAILABLE;
+    }
+
+    private static boolean detect() {
+        try {
+            Class.forName("jdk.jfr.Event", false, MailEvents.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,372 @@
+package com.ultikits.plugins.mail.metrics;
+
+import com.ultikits.ultitools.annotations.Service;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Operation-level metrics for the mail system.
+ * <p>
+ * Operations get a latency histogram and a failure count, counters are plain
+ * {@link LongAdder}s, and gauges and caches are read from their owners only when a
+ * snapshot is taken. Long-running jobs such as broadcasts and recalls also report
+ * their progress while they run, and main-thread time is kept per operation and per
+ * tick for the last {@value #TICK_WINDOW} ticks. Recording costs a few uncontended
+ * adds, so metrics are always on.
+ *
+ * @author wisdomme
+ * @version 1.0.0
+ */
+@Service
+public class MailMetrics {
+
+    /**
+     * Timed operations.
+     */
+    public enum Operation {
+        SEND("send"),
+        INBOX_LOAD("inbox_load"),
+        UNREAD_COUNT("unread_count"),
+        CLAIM("claim"),
+        CLAIM_ALL("claim_all"),
+        COMMAND("command"),
+        BROADCAST("broadcast"),
+        RECALL("recall"),
+        NOTIFY("notify");
+
+        private final String key;
+
+        Operation(String key) {
+            this.key = key;
+        }
+
+        public String getKey() {
+            return key;
+        }
+    }
+
+    /**
+     * Monotonic counters.
+     */
+    public enum Counter {
+        BROADCAST_MAILS("broadcast_mails"),
+        RECALL_MAILS("recall_mails"),
+        RECEIVER_FILTER_HITS("receiver_filter_hits"),
+        RECEIVER_FILTER_MISSES("receiver_filter_misses"),
+        GUI_ICON_BUILDS("gui_icon_builds"),
+        GUI_ICON_REUSES("gui_icon_reuses");
+
+        private final String key;
+
+        Counter(String key) {
+            this.key = key;
+        }
+
+        public String getKey() {
+            return key;
+        }
+    }
+
+    /**
+     * Number of ticks kept for the rolling main-thread totals, one minute at 20 TPS.
+     */
+    public static final int TICK_WINDOW = 1200;
+
+    private final long startedAt = System.currentTimeMillis();
+    private final Map<Operation, LatencyHistogram> latencies = new EnumMap<>(Operation.class);
+    private final Map<Operation, LongAdder> failures = new EnumMap<>(Operation.class);
+    private final Map<Counter, LongAdder> counters = new EnumMap<>(Counter.class);
+    private final Map<String, LongSupplier> gauges = new ConcurrentSkipListMap<>();
+    private final Map<String, CacheStats> caches = new ConcurrentSkipListMap<>();
+    private final Set<Job> runningJobs = ConcurrentHashMap.newKeySet();
+
+    // Main-thread time per operation, and per tick in a ring buffer
+    private final Map<Operation, LongAdder> mainThreadNanos = new EnumMap<>(Operation.class);
+    private final LongAdder currentTickNanos = new LongAdder();
+    private final long[] tickNanos = new long[TICK_WINDOW];
+    private int tickCursor;
+    private long ticks;
+
+    public MailMetrics() {
+        for (Operation operation : Operation.values()) {
+            latencies.put(operation, new LatencyHistogram());
+            failures.put(operation, new LongAdder());
+            mainThreadNanos.put(operation, new LongAdder());
+        }
+        for (Counter counter : Counter.values()) {
+            counters.put(counter, new LongAdder());
+        }
+    }
+
+    // ==================== Recording ====================
+
+    /**
+     * Record a successful operation.
+     *
+     * @param startNanos {@link System#nanoTime()} when the operation started
+     */
+    public void record(Operation operation, long startNanos) {
+        latencies.get(operation).record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Record an operation that may have failed; failures are timed as well.
+     */
+    public void record(Operation operation, long startNanos, boolean succeeded) {
+        record(operation, startNanos);
+        if (!succeeded) {
+            failures.get(operation).increment();
+        }
+    }
+
+    public void increment(Counter counter) {
+        counters.get(counter).increment();
+    }
+
+    public void add(Counter counter, long amount) {
+        counters.get(counter).add(amount);
+    }
+
+    /**
+     * Add main-thread time spent in an operation.
+     *
+     * @param countsForTick false for calls nested in another accounted call, whose
+     *                      time is already part of the outer call
+     */
+    public void recordMainThread(Operation operation, long nanos, boolean countsForTick) {
+        mainThreadNanos.get(operation).add(nanos);
+        if (countsForTick) {
+            currentTickNanos.add(nanos);
+        }
+    }
+
+    /**
+     * Close the current tick and move its main-thread total into the rolling window.
+     * Called once per server tick.
+     */
+    public synchronized void rollTick() {
+        tickNanos[tickCursor] = currentTickNanos.sumThenReset();
+        tickCursor = (tickCursor + 1) % TICK_WINDOW;
+        ticks++;
+    }
+
+    /**
+     * Start tracking a job that works through a known number of items.
+     * The job is timed as {@code operation} when it finishes.
+     */
+    public Job startJob(Operation operation, long totalItems) {
+        Job job = new Job(operation, totalItems);
+        runningJobs.add(job);
+        return job;
+    }
+
+    /**
+     * Register a value read on every snapshot, such as a queue depth.
+     * A gauge registered again under the same name replaces the old one.
+     * Negative values mean the value is unknown.
+     */
+    public void registerGauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+    }
+
+    /**
+     * Register a cache whose hit and miss counts are read on every snapshot.
+     */
+    public void registerCache(String name, LongSupplier hits, LongSupplier misses) {
+        caches.put(name, new CacheStats(hits, misses));
+    }
+
+    // ==================== Reading ====================
+
+    public long getUptimeMillis() {
+        return System.currentTimeMillis() - startedAt;
+    }
+
+    public LatencyHistogram getLatency(Operation operation) {
+        return latencies.get(operation);
+    }
+
+    public long getCount(Operation operation) {
+        return latencies.get(operation).getCount();
+    }
+
+    public long getFailures(Operation operation) {
+        return failures.get(operation).sum();
+    }
+
+    /**
+     * Average operations per second since startup.
+     */
+    public double getRate(Operation operation) {
+        long uptime = Math.max(getUptimeMillis(), 1L);
+        return getCount(operation) * 1000.0 / uptime;
+    }
+
+    public long getCounter(Counter counter) {
+        return counters.get(counter).sum();
+    }
+
+    /**
+     * Current gauge values by name. Unknown values and gauges that throw are left out.
+     */
+    public Map<String, Long> getGauges() {
+        Map<String, Long> values = new LinkedHashMap<>();
+        for (Map.Entry<String, LongSupplier> entry : gauges.entrySet()) {
+            try {
+                long value = entry.getValue().getAsLong();
+                if (value >= 0) {
+                    values.put(entry.getKey(), value);
+                }
+            } catch (RuntimeException ignored) {
+                // A broken gauge must not break the snapshot
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Registered caches by name.
+     */
+    public Map<String, CacheStats> getCaches() {
+        return new TreeMap<>(caches);
+    }
+
+    /**
+     * Total main-thread time spent in an operation.
+     */
+    public long getMainThreadNanos(Operation operation) {
+        return mainThreadNanos.get(operation).sum();
+    }
+
+    /**
+     * Main-thread mail time of the last completed tick.
+     */
+    public synchronized long getLastTickNanos() {
+        return ticks == 0 ? 0 : tickNanos[(tickCursor + TICK_WINDOW - 1) % TICK_WINDOW];
+    }
+
+    /**
+     * Average main-thread mail time per tick over the most recent ticks.
+     *
+     * @param window Number of ticks, at most {@link #TICK_WINDOW}
+     */
+    public synchronized long getAverageTickNanos(int window) {
+        int n = recentTicks(window);
+        if (n == 0) {
+            return 0;
+        }
+        long sum = 0;
+        for (int i = 1; i <= n; i++) {
+            sum += tickNanos[(tickCursor + TICK_WINDOW - i) % TICK_WINDOW];
+        }
+        return sum / n;
+    }
+
+    /**
+     * Largest main-thread mail time of a single tick over the most recent ticks.
+     *
+     * @param window Number of ticks, at most {@link #TICK_WINDOW}
+     */
+    public synchronized long getMaxTickNanos(int window) {
+        int n = recentTicks(window);
+        long max = 0;
+        for (int i = 1; i <= n; i++) {
+            max = Math.max(max, tickNanos[(tickCursor + TICK_WINDOW - i) % TICK_WINDOW]);
+        }
+        return max;
+    }
+
+    private int recentTicks(int window) {
+        return (int) Math.min(Math.min(window, TICK_WINDOW), ticks);
+    }
+
+    /**
+     * Jobs that have started and not finished yet.
+     */
+    public List<Job> getRunningJobs() {
+        return new ArrayList<>(runningJobs);
+    }
+
+    /**
+     * Progress of one running job.
+     */
+    public class Job {
+        private final Operation operation;
+        private final long totalItems;
+        private final long startNanos = System.nanoTime();
+        private final LongAdder doneItems = new LongAdder();
+
+        Job(Operation operation, long totalItems) {
+            this.operation = operation;
+            this.totalItems = totalItems;
+        }
+
+        /**
+         * Count one item as processed, whether it succeeded or was skipped.
+         */
+        public void advance() {
+            doneItems.increment();
+        }
+
+        /**
+         * Stop tracking the job and record its duration.
+         */
+        public void finish(boolean succeeded) {
+            if (runningJobs.remove(this)) {
+                record(operation, startNanos, succeeded);
+            }
+        }
+
+        public Operation getOperation() {
+            return operation;
+        }
+
+        public long getTotalItems() {
+            return totalItems;
+        }
+
+        public long getDoneItems() {
+            return doneItems.sum();
+        }
+    }
+
+    /**
+     * Hit and miss counts of one cache.
+     */
+    public static class CacheStats {
+        private final LongSupplier hits;
+        private final LongSupplier misses;
+
+        CacheStats(LongSupplier hits, LongSupplier misses) {
+            this.hits = hits;
+            this.misses = misses;
+        }
+
+        public long getHits() {
+            return hits.getAsLong();
+        }
+
+        public long getMisses() {
+            return misses.getAsLong();
+        }
+
+        /**
+         * Share of lookups served by the cache, from 0 to 1; 0 before the first lookup.
+         */
+        public double getHitRatio() {
+            long h = getHits();
+            long total = h + getMisses();
+            return total == 0 ? 0 : (double) h / total;
+        }
+    }
+}
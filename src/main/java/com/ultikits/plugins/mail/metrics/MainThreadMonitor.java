@@ -0,0 +1,94 @@
+package com.ultikits.plugins.mail.metrics;
+
+import com.ultikits.plugins.mail.config.MailConfig;
+import com.ultikits.plugins.mail.metrics.MailMetrics.Operation;
+import com.ultikits.ultitools.abstracts.UltiToolsPlugin;
+import com.ultikits.ultitools.annotations.Autowired;
+import com.ultikits.ultitools.annotations.Service;
+
+import org.bukkit.Bukkit;
+import org.bukkit.plugin.Plugin;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Accounts the main-thread time of mail operations.
+ * <p>
+ * Callers bracket an operation with {@link #begin()} and {@link #end}. Calls made on
+ * the main thread add their time to {@link MailMetrics}; nested calls, such as the
+ * notification inside a send, only count once towards the tick total. A call slower
+ * than {@code slow-operation-micros} is logged with the player, mail count and payload
+ * size. A per-tick timer, started on first use, rolls the tick totals.
+ *
+ * @author wisdomme
+ * @version 1.0.0
+ */
+@Service
+public class MainThreadMonitor {
+
+    @Autowired
+    private UltiToolsPlugin plugin;
+
+    @Autowired
+    private MailConfig config;
+
+    @Autowired
+    private MailMetrics metrics;
+
+    private Plugin bukkitPlugin;
+    private boolean started = false;
+
+    // Accounted calls currently open on the main thread
+    private int depth;
+
+    /**
+     * Mark the start of an operation.
+     *
+     * @return the start time to pass to {@link #end}
+     */
+    public long begin() {
+        if (Bukkit.isPrimaryThread()) {
+            depth++;
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * Mark the end of an operation started with {@link #begin()}.
+     * Does nothing off the main thread.
+     *
+     * @param startNanos   Value returned by {@link #begin()}
+     * @param player       Player the operation was for, may be null
+     * @param mails        Number of mails the operation touched
+     * @param payloadBytes Size of those mails, only evaluated for slow calls
+     */
+    public void end(Operation operation, long startNanos, String player, int mails, LongSupplier payloadBytes) {
+        if (!Bukkit.isPrimaryThread()) {
+            return;
+        }
+        long nanos = System.nanoTime() - startNanos;
+        depth = Math.max(0, depth - 1);
+        metrics.recordMainThread(operation, nanos, depth == 0);
+        ensureStarted();
+
+        long threshold = config.getSlowOperationMicros() * 1000L;
+        if (threshold > 0 && nanos >= threshold) {
+            plugin.getLogger().warn(String.format(
+                "Slow mail operation %s took %.2fms on the main thread (player: %s, mails: %d, payload: %d bytes)",
+                operation.getKey(), nanos / 1e6, player != null ? player : "-", mails, payloadBytes.getAsLong()));
+        }
+    }
+
+    private void ensureStarted() {
+        if (started) {
+            return;
+        }
+        started = true;
+
+        // Lazy init bukkitPlugin
+        if (bukkitPlugin == null) {
+            bukkitPlugin = Bukkit.getPluginManager().getPlugin("UltiTools");
+        }
+        Bukkit.getScheduler().runTaskTimer(bukkitPlugin, metrics::rollTick, 1L, 1L);
+    }
+}
@@ -0,0 +1,132 @@
+package com.ultikits.plugins.mail.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.ultikits.plugins.mail.config.MailConfig;
+import com.ultikits.ultitools.abstracts.UltiToolsPlugin;
+import com.ultikits.ultitools.annotations.Autowired;
+import com.ultikits.ultitools.annotations.PostConstruct;
+import com.ultikits.ultitools.annotations.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves {@link MailMetrics} at {@code /metrics} in the Prometheus text format.
+ * <p>
+ * Off unless {@code metrics.exporter-enabled} is set. Uses the JDK's built-in HTTP
+ * server on a single daemon thread, so scrapes never touch the main thread and the
+ * server does not hold up shutdown. It listens on {@code 127.0.0.1} by default.
+ *
+ * @author wisdomme
+ * @version 1.0.0
+ */
+@Service
+public class MetricsExporter {
+
+    private static final String PATH = "/metrics";
+
+    @Autowired
+    private UltiToolsPlugin plugin;
+
+    @Autowired
+    private MailConfig config;
+
+    @Autowired
+    private MailMetrics metrics;
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    /**
+     * Start the exporter if it is enabled in the config.
+     */
+    @PostConstruct
+    public void init() {
+        if (!config.isMetricsExporterEnabled()) {
+            return;
+        }
+        try {
+            start(config.getMetricsExporterHost(), config.getMetricsExporterPort());
+            plugin.getLogger().info("Mail metrics exporter listening on "
+                + config.getMetricsExporterHost() + ":" + getPort() + PATH);
+        } catch (IOException e) {
+            plugin.getLogger().error("Failed to start mail metrics exporter: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Bind the HTTP server.
+     *
+     * @param port Port to listen on, 0 picks a free one
+     */
+    synchronized void start(String host, int port) throws IOException {
+        if (server != null) {
+            return;
+        }
+        HttpServer created = HttpServer.create(new InetSocketAddress(host, port), 0);
+        created.createContext(PATH, this::handle);
+        executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "UltiMail-MetricsExporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        created.setExecutor(executor);
+        created.start();
+        server = created;
+    }
+
+    /**
+     * Stop the HTTP server, if running.
+     */
+    public synchronized void stop() {
+        if (server == null) {
+            return;
+        }
+        server.stop(0);
+        executor.shutdownNow();
+        server = null;
+        executor = null;
+    }
+
+    public synchronized boolean isRunning() {
+        return server != null;
+    }
+
+    /**
+     * Port the server is bound to, or -1 if it is not running.
+     */
+    public synchronized int getPort() {
+        return server != null ? server.getAddress().getPort() : -1;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String method = exchange.getRequestMethod();
+            if (!"GET".equals(method) && !"HEAD".equals(method)) {
+                exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = PrometheusWriter.write(metrics).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", PrometheusWriter.CONTENT_TYPE);
+            if ("HEAD".equals(method)) {
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } catch (RuntimeException e) {
+            plugin.getLogger().error("Failed to render mail metrics: " + e.getMessage());
+            exchange.sendResponseHeaders(500, -1);
+        } finally {
+            exchange.close();
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.ultikits.plugins.mail.metrics;
+
+import com.ultikits.plugins.mail.metrics.MailMetrics.Counter;
+import com.ultikits.plugins.mail.metrics.MailMetrics.Operation;
+
+import java.math.BigDecimal;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Renders {@link MailMetrics} in the Prometheus text exposition format (version 0.0.4).
+ * <p>
+ * Every metric is prefixed with {@code ultimail_}. Operation latencies become
+ * cumulative histograms in seconds; rates are left to the scraper, which derives them
+ * from the counters.
+ *
+ * @author wisdomme
+ * @version 1.0.0
+ */
+public final class PrometheusWriter {
+
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final String PREFIX = "ultimail_";
+
+    private PrometheusWriter() {
+    }
+
+    /**
+     * Render a snapshot of the metrics.
+     */
+    public static String write(MailMetrics metrics) {
+        StringBuilder out = new StringBuilder(8192);
+
+        header(out, "uptime_seconds", "gauge", "Seconds since the mail metrics were created.");
+        sample(out, "uptime_seconds", "", seconds(metrics.getUptimeMillis() * 1_000_000L));
+
+        header(out, "operations_total", "counter", "Mail operations completed, including failed ones.");
+        for (Operation operation : Operation.values()) {
+            sample(out, "operations_total", label("operation", operation.getKey()),
+                String.valueOf(metrics.getCount(operation)));
+        }
+
+        header(out, "operation_failures_total", "counter", "Mail operations that failed.");
+        for (Operation operation : Operation.values()) {
+            sample(out, "operation_failures_total", label("operation", operation.getKey()),
+                String.valueOf(metrics.getFailures(operation)));
+        }
+
+        writeLatencies(out, metrics);
+        writeMainThread(out, metrics);
+
+        for (Counter counter : Counter.values()) {
+            String name = counter.getKey() + "_total";
+            header(out, name, "counter", "Mail counter " + counter.getKey() + ".");
+            sample(out, name, "", String.valueOf(metrics.getCounter(counter)));
+        }
+
+        for (Map.Entry<String, Long> gauge : metrics.getGauges().entrySet()) {
+            header(out, gauge.getKey(), "gauge", "Mail gauge " + gauge.getKey() + ".");
+            sample(out, gauge.getKey(), "", String.valueOf(gauge.getValue()));
+        }
+
+        writeCaches(out, metrics);
+        writeJobs(out, metrics);
+        return out.toString();
+    }
+
+    private static void writeLatencies(StringBuilder out, MailMetrics metrics) {
+        String name = "operation_duration_seconds";
+        header(out, name, "histogram", "Latency of mail operations.");
+        long[] bounds = LatencyHistogram.getBoundsNanos();
+        for (Operation operation : Operation.values()) {
+            LatencyHistogram histogram = metrics.getLatency(operation);
+            String op = "operation=\"" + operation.getKey() + "\"";
+            long[] counts = histogram.getBucketCounts();
+            long cumulative = 0;
+            for (int i = 0; i < bounds.length; i++) {
+                cumulative += counts[i];
+                sample(out, name + "_bucket", "{" + op + ",le=\"" + seconds(bounds[i]) + "\"}",
+                    String.valueOf(cumulative));
+            }
+            cumulative += counts[bounds.length];
+            sample(out, name + "_bucket", "{" + op + ",le=\"+Inf\"}", String.valueOf(cumulative));
+            sample(out, name + "_sum", "{" + op + "}", seconds(histogram.getSumNanos()));
+            sample(out, name + "_count", "{" + op + "}", String.valueOf(cumulative));
+        }
+    }
+
+    private static void writeMainThread(StringBuilder out, MailMetrics metrics) {
+        header(out, "main_thread_seconds_total", "counter", "Main-thread time spent in mail operations.");
+        for (Operation operation : Operation.values()) {
+            sample(out, "main_thread_seconds_total", label("operation", operation.getKey()),
+                seconds(metrics.getMainThreadNanos(operation)));
+        }
+        header(out, "main_thread_tick_seconds", "gauge",
+            "Main-thread mail time per tick: last tick, and averages over 1s and 1m.");
+        sample(out, "main_thread_tick_seconds", label("window", "last"), seconds(metrics.getLastTickNanos()));
+        sample(out, "main_thread_tick_seconds", label("window", "1s"), seconds(metrics.getAverageTickNanos(20)));
+        sample(out, "main_thread_tick_seconds", label("window", "1m"),
+            seconds(metrics.getAverageTickNanos(MailMetrics.TICK_WINDOW)));
+        header(out, "main_thread_tick_max_seconds", "gauge",
+            "Largest main-thread mail time of a tick in the last minute.");
+        sample(out, "main_thread_tick_max_seconds", "", seconds(metrics.getMaxTickNanos(MailMetrics.TICK_WINDOW)));
+    }
+
+    private static void writeCaches(StringBuilder out, MailMetrics metrics) {
+        Map<String, MailMetrics.CacheStats> caches = metrics.getCaches();
+        header(out, "cache_hits_total", "counter", "Cache lookups served by the cache.");
+        for (Map.Entry<String, MailMetrics.CacheStats> cache : caches.entrySet()) {
+            sample(out, "cache_hits_total", label("cache", cache.getKey()),
+                String.valueOf(cache.getValue().getHits()));
+        }
+        header(out, "cache_misses_total", "counter", "Cache lookups that fell through to the source.");
+        for (Map.Entry<String, MailMetrics.CacheStats> cache : caches.entrySet()) {
+            sample(out, "cache_misses_total", label("cache", cache.getKey()),
+                String.valueOf(cache.getValue().getMisses()));
+        }
+    }
+
+    /**
+     * Running broadcast and recall jobs, summed per operation.
+     */
+    private static void writeJobs(StringBuilder out, MailMetrics metrics) {
+        Map<Operation, long[]> jobs = new EnumMap<>(Operation.class);
+        jobs.put(Operation.BROADCAST, new long[3]);
+        jobs.put(Operation.RECALL, new long[3]);
+        for (MailMetrics.Job job : metrics.getRunningJobs()) {
+            long[] sums = jobs.computeIfAbsent(job.getOperation(), operation -> new long[3]);
+            sums[0]++;
+            sums[1] += job.getTotalItems();
+            sums[2] += job.getDoneItems();
+        }
+        String[] names = {"jobs_running", "job_items", "job_items_done"};
+        String[] help = {
+            "Jobs currently running.",
+            "Items the running jobs have to process.",
+            "Items the running jobs have processed."
+        };
+        for (int i = 0; i < names.length; i++) {
+            header(out, names[i], "gauge", help[i]);
+            for (Map.Entry<Operation, long[]> job : jobs.entrySet()) {
+                sample(out, names[i], label("job", job.getKey().getKey()), String.valueOf(job.getValue()[i]));
+            }
+        }
+    }
+
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(PREFIX).append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(PREFIX).append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, String value) {
+        out.append(PREFIX).append(name).append(labels).append(' ').append(value).append('\n');
+    }
+
+    private static String label(String name, String value) {
+        return "{" + name + "=\"" + escape(value) + "\"}";
+    }
+
+    static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    static String seconds(long nanos) {
+        BigDecimal seconds = BigDecimal.valueOf(nanos, 9).stripTrailingZeros();
+        return seconds.signum() == 0 ? "0" : seconds.toPlainString();
+    }
+}
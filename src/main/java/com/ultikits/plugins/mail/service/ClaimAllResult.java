@@ -0,0 +1,72 @@
+package com.ultikits.plugins.mail.service;
+
+/**
+ * Outcome of a claim-all operation.
+ *
+ * @author wisdomme
+ * @version 1.0.0
+ */
+public class ClaimAllResult {
+
+    private final boolean busy;
+    private final boolean failed;
+    private final int claimedMails;
+    private final int claimedItems;
+    private final int skippedMails;
+
+    public ClaimAllResult(boolean busy, int claimedMails, int claimedItems, int skippedMails) {
+        this(busy, false, claimedMails, claimedItems, skippedMails);
+    }
+
+    private ClaimAllResult(boolean busy, boolean failed, int claimedMails, int claimedItems, int skippedMails) {
+        this.busy = busy;
+        this.failed = failed;
+        this.claimedMails = claimedMails;
+        this.claimedItems = claimedItems;
+        this.skippedMails = skippedMails;
+    }
+
+    static ClaimAllResult busy() {
+        return new ClaimAllResult(true, 0, 0, 0);
+    }
+
+    static ClaimAllResult failed() {
+        return new ClaimAllResult(false, true, 0, 0, 0);
+    }
+
+    /**
+     * Whether another claim-all for the same player was still running.
+     */
+    public boolean isBusy() {
+        return busy;
+    }
+
+    /**
+     * Whether the claim-all failed before any item was handed out.
+     * Claims it had already won are released again.
+     */
+    public boolean isFailed() {
+        return failed;
+    }
+
+    /**
+     * Number of mails whose attachments were claimed.
+     */
+    public int getClaimedMails() {
+        return claimedMails;
+    }
+
+    /**
+     * Number of item stacks given to the player.
+     */
+    public int getClaimedItems() {
+        return claimedItems;
+    }
+
+    /**
+     * Number of mails left unclaimed because their items did not fit.
+     */
+    public int getSkippedMails() {
+        return skippedMails;
+    }
+}
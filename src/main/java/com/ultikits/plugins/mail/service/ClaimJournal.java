@@ -0,0 +1,331 @@
+package com.ultikits.plugins.mail.service;
+
+import com.ultikits.plugins.mail.config.MailConfig;
+import com.ultikits.ultitools.abstracts.UltiToolsPlugin;
+import com.ultikits.ultitools.annotations.Autowired;
+import com.ultikits.ultitools.annotations.Service;
+
+import org.bukkit.Bukkit;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Append-only local journal that makes attachment claims at-least-once.
+ * <p>
+ * An intent record (mail id, player, expected row version) is appended before the
+ * claimed flag is written and a done record after the items were handed out. Appends
+ * are plain writes, so they cost a few microseconds and survive a process crash;
+ * fsync runs in group-committed batches, either on the {@code claim-journal-sync-ticks}
+ * timer, off the main thread for the actions queued with {@link #afterSync(Runnable)},
+ * or when a caller waits with {@link #sync()}. Intents still open at startup are
+ * claims that were persisted but never delivered, and are handed to
+ * {@link MailService#recoverClaims()} to reopen.
+ * <p>
+ * Intents are synced before their items are handed out, done records are not. A
+ * crash after delivery but before the next timer fsync therefore reopens a claim
+ * whose items the player already received, so a claim is delivered at least once,
+ * not exactly once. The window is at most {@code claim-journal-sync-ticks}, and the
+ * server has usually not saved the player's inventory within it either, so the
+ * reopened claim usually replaces items the crash took back.
+ * <p>
+ * The file is truncated once no intent is open and it has grown past 1 MiB.
+ *
+ * @author wisdomme
+ * @version 1.0.0
+ */
+@Service
+public class ClaimJournal {
+
+    private static final String FILE_NAME = "claims.journal";
+    private static final long COMPACT_BYTES = 1L << 20;
+
+    private static final char INTENT = 'I';
+    private static final char DONE = 'D';
+
+    @Autowired
+    private UltiToolsPlugin plugin;
+
+    @Autowired
+    private MailConfig config;
+
+    private Plugin bukkitPlugin;
+
+    private FileChannel channel;
+    private BukkitTask syncTask;
+
+    // Intents written by this run that are not done yet
+    private final Set<String> live = new HashSet<>();
+
+    // Intents left open by the previous run
+    private final Map<String, Intent> recovered = new LinkedHashMap<>();
+
+    private long written;
+    private final Object syncLock = new Object();
+    private long synced;
+    // Bumped by compaction so an fsync started before it does not count afterwards
+    private long epoch;
+
+    // Actions waiting for the next shared fsync, and whether a flush is already scheduled
+    private final List<Runnable> syncWaiters = new ArrayList<>();
+    private boolean flushScheduled;
+
+    /**
+     * Record the intent to claim a mail. Called right before the claimed flag is written.
+     *
+     * @param mailId     Mail id, mails without an id are not journaled
+     * @param playerUuid Claiming player
+     * @param version    Row version the claim write will carry
+     * @return false if the intent could not be recorded and the claim must not proceed
+     */
+    public synchronized boolean begin(String mailId, UUID playerUuid, long version) {
+        if (mailId == null) {
+            return true;
+        }
+        try {
+            append(INTENT + "\t" + mailId + "\t" + playerUuid + "\t" + version + "\n");
+            live.add(mailId);
+            return true;
+        } catch (IOException e) {
+            plugin.getLogger().error("Failed to write claim journal: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Record that a claim is finished: its items were handed out, or the claim was released.
+     */
+    public synchronized void complete(String mailId) {
+        if (mailId == null || (!live.remove(mailId) && recovered.remove(mailId) == null)) {
+            return;
+        }
+        try {
+            append(DONE + "\t" + mailId + "\n");
+            if (live.isEmpty() && recovered.isEmpty() && written > COMPACT_BYTES) {
+                compact();
+            }
+        } catch (IOException e) {
+            plugin.getLogger().error("Failed to write claim journal: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Intents the previous run left open, in journal order.
+     */
+    public synchronized List<Intent> getRecoveredIntents() {
+        ensureOpen();
+        return new ArrayList<>(recovered.values());
+    }
+
+    /**
+     * Number of intents from this run that are not done yet.
+     */
+    public synchronized int getOpenCount() {
+        return live.size();
+    }
+
+    /**
+     * Force everything appended so far to disk.
+     * Concurrent callers share one fsync.
+     */
+    public void sync() {
+        long target;
+        long targetEpoch;
+        FileChannel current;
+        synchronized (this) {
+            target = written;
+            current = channel;
+            targetEpoch = epoch;
+        }
+        synchronized (syncLock) {
+            if (current == null || targetEpoch != epoch || synced >= target) {
+                return;
+            }
+            try {
+                current.force(false);
+                synced = target;
+            } catch (IOException e) {
+                plugin.getLogger().error("Failed to sync claim journal: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Run an action once everything appended so far is on disk.
+     * The fsync runs off the main thread and is shared by all actions queued until
+     * it starts; the action runs on that async thread.
+     */
+    public void afterSync(Runnable action) {
+        synchronized (syncWaiters) {
+            syncWaiters.add(action);
+            if (flushScheduled) {
+                return;
+            }
+            flushScheduled = true;
+        }
+        Bukkit.getScheduler().runTaskAsynchronously(bukkitPlugin, this::flushWaiters);
+    }
+
+    private void flushWaiters() {
+        List<Runnable> batch;
+        synchronized (syncWaiters) {
+            batch = new ArrayList<>(syncWaiters);
+            syncWaiters.clear();
+            flushScheduled = false;
+        }
+        sync();
+        for (Runnable action : batch) {
+            try {
+                action.run();
+            } catch (RuntimeException e) {
+                plugin.getLogger().error("Claim journal sync action failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private void append(String record) throws IOException {
+        ensureOpen();
+        if (channel == null) {
+            throw new IOException("claim journal is not open");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(record.getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        written = channel.position();
+    }
+
+    private void compact() throws IOException {
+        channel.truncate(0);
+        channel.position(0);
+        written = 0;
+        synchronized (syncLock) {
+            synced = 0;
+            epoch++;
+        }
+    }
+
+    private void ensureOpen() {
+        if (channel != null) {
+            return;
+        }
+        // Lazy init bukkitPlugin
+        if (bukkitPlugin == null) {
+            bukkitPlugin = Bukkit.getPluginManager().getPlugin("UltiTools");
+        }
+        File dir = new File(bukkitPlugin.getDataFolder(), "mail");
+        try {
+            open(new File(dir, FILE_NAME));
+            syncTask = Bukkit.getScheduler().runTaskTimerAsynchronously(bukkitPlugin, this::sync,
+                config.getClaimJournalSyncTicks(), config.getClaimJournalSyncTicks());
+        } catch (IOException e) {
+            plugin.getLogger().error("Failed to open claim journal: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Open a journal file and load the intents it left open.
+     * A torn record at the end of the file is dropped.
+     */
+    synchronized void open(File file) throws IOException {
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("cannot create " + parent);
+        }
+        FileChannel opened = FileChannel.open(file.toPath(),
+            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        ByteBuffer content = ByteBuffer.allocate((int) opened.size());
+        while (content.hasRemaining() && opened.read(content) >= 0) {
+            // read fully
+        }
+        byte[] bytes = content.array();
+        int end = 0;
+        int start = 0;
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] == '\n') {
+                replay(new String(bytes, start, i - start, StandardCharsets.UTF_8));
+                start = i + 1;
+                end = start;
+            }
+        }
+        if (end < bytes.length) {
+            opened.truncate(end);
+        }
+        opened.position(end);
+
+        channel = opened;
+        written = end;
+        synchronized (syncLock) {
+            synced = end;
+        }
+    }
+
+    private void replay(String line) {
+        if (line.isEmpty()) {
+            return;
+        }
+        String[] parts = line.split("\t");
+        try {
+            if (parts.length == 4 && parts[0].charAt(0) == INTENT) {
+                recovered.put(parts[1], new Intent(parts[1], UUID.fromString(parts[2]), Long.parseLong(parts[3])));
+            } else if (parts.length == 2 && parts[0].charAt(0) == DONE) {
+                recovered.remove(parts[1]);
+            }
+        } catch (IllegalArgumentException e) {
+            plugin.getLogger().warn("Skipping malformed claim journal record: " + line);
+        }
+    }
+
+    /**
+     * Stop the sync timer and close the journal file, syncing it first.
+     */
+    public synchronized void close() throws IOException {
+        if (syncTask != null) {
+            syncTask.cancel();
+            syncTask = null;
+        }
+        if (channel != null) {
+            sync();
+            channel.close();
+            channel = null;
+        }
+    }
+
+    /**
+     * A claim recorded in the journal.
+     */
+    public static class Intent {
+        private final String mailId;
+        private final UUID playerUuid;
+        private final long version;
+
+        Intent(String mailId, UUID playerUuid, long version) {
+            this.mailId = mailId;
+            this.playerUuid = playerUuid;
+            this.version = version;
+        }
+
+        public String getMailId() {
+            return mailId;
+        }
+
+        public UUID getPlayerUuid() {
+            return playerUuid;
+        }
+
+        /**
+         * Row version written by the claim.
+         */
+        public long getVersion() {
+            return version;
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package com.ultikits.plugins.mail.service;
+
+import com.ultikits.plugins.mail.config.MailConfig;
+import com.ultikits.plugins.mail.metrics.MailMetrics;
+import com.ultikits.plugins.mail.metrics.MailMetrics.Operation;
+import com.ultikits.plugins.mail.metrics.MainThreadMonitor;
+import com.ultikits.ultitools.abstracts.UltiToolsPlugin;
+import com.ultikits.ultitools.annotations.Autowired;
+import com.ultikits.ultitools.annotations.Service;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Throttled main-thread dispatcher for mail commands.
+ * <p>
+ * Commands are queued and run on the main thread, at most
+ * {@code commands-per-tick} per tick and within the per-tick time budget
+ * ({@code tick-budget-micros}). Opening many reward mails at once therefore
+ * spreads the command batches over several ticks.
+ * <p>
+ * The mail is marked executed when its commands are queued, so player commands
+ * are never dropped: if the player is offline when one comes up, it is parked
+ * until {@link #resume(Player)} is called on their next join. Parked commands are
+ * rendered and written to {@code mail/parked-commands.txt} whenever the parked set
+ * changes, and {@link #load()} reads them back on enable, so they survive a
+ * restart or reload. Commands still in the queue are not persisted; they run
+ * within a tick or two of being queued.
+ *
+ * @author wisdomme
+ * @version 1.0.0
+ */
+@Service
+public class CommandDispatcher {
+
+    @Autowired
+    private UltiToolsPlugin plugin;
+
+    @Autowired
+    private MailConfig config;
+
+    @Autowired
+    private MailMetrics metrics;
+
+    @Autowired
+    private MainThreadMonitor mainThread;
+
+    private static final String PARKED_FILE = "parked-commands.txt";
+
+    private Plugin bukkitPlugin;
+
+    private final Queue<PendingCommand> queue = new ConcurrentLinkedQueue<>();
+    // Player commands waiting for their player to rejoin; main thread only
+    private final Map<UUID, List<CompiledCommand>> parked = new HashMap<>();
+    // Null until load() picked the file, so parked commands are then kept in memory only
+    private File parkedFile;
+    private boolean started = false;
+    private BukkitTask timer;
+
+    // Statistics
+    private final AtomicLong dispatchedCommands = new AtomicLong();
+    private volatile int lastTickCommands;
+
+    /**
+     * Queue commands to run for a player.
+     * Safe to call from any thread.
+     *
+     * @param player   Player the commands are rendered for
+     * @param commands Compiled commands
+     */
+    public void dispatch(Player player, List<CompiledCommand> commands) {
+        if (commands.isEmpty()) {
+            return;
+        }
+        for (CompiledCommand command : commands) {
+            queue.add(new PendingCommand(player, command));
+        }
+        ensureStarted();
+    }
+
+    /**
+     * Queue the commands parked while a player was offline.
+     * Called on the main thread when the player joins.
+     */
+    public void resume(Player player) {
+        List<CompiledCommand> commands = parked.remove(player.getUniqueId());
+        if (commands != null) {
+            saveParked();
+            dispatch(player, commands);
+        }
+    }
+
+    /**
+     * Load the commands parked before the last shutdown.
+     * Called on the main thread when the service starts.
+     */
+    public void load() {
+        // Lazy init bukkitPlugin
+        if (bukkitPlugin == null) {
+            bukkitPlugin = Bukkit.getPluginManager().getPlugin("UltiTools");
+        }
+        try {
+            load(new File(new File(bukkitPlugin.getDataFolder(), "mail"), PARKED_FILE));
+        } catch (IOException e) {
+            plugin.getLogger().error("Failed to load parked mail commands: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Load parked commands from a file and keep writing them there.
+     * Lines that cannot be parsed are skipped.
+     */
+    void load(File file) throws IOException {
+        parkedFile = file;
+        parked.clear();
+        if (!file.exists()) {
+            return;
+        }
+        for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+            String[] parts = line.split("\t", 2);
+            if (parts.length != 2 || parts[1].isEmpty()) {
+                continue;
+            }
+            try {
+                parked.computeIfAbsent(UUID.fromString(parts[0]), uuid -> new ArrayList<>())
+                    .add(CompiledCommand.compile(parts[1]));
+            } catch (IllegalArgumentException e) {
+                plugin.getLogger().warn("Skipping malformed parked mail command: " + line);
+            }
+        }
+    }
+
+    /**
+     * Rewrite the parked file from the parked map.
+     * The file is replaced atomically, so a crash leaves either the old or the new set.
+     */
+    private void saveParked() {
+        if (parkedFile == null) {
+            return;
+        }
+        try {
+            if (parked.isEmpty()) {
+                Files.deleteIfExists(parkedFile.toPath());
+                return;
+            }
+            StringBuilder content = new StringBuilder();
+            for (Map.Entry<UUID, List<CompiledCommand>> entry : parked.entrySet()) {
+                for (CompiledCommand command : entry.getValue()) {
+                    // Already rendered, so the stored text has no placeholder left
+                    content.append(entry.getKey()).append('\t').append(command.render("")).append('\n');
+                }
+            }
+            File parent = parkedFile.getParentFile();
+            if (parent != null && !parent.exists() && !parent.mkdirs()) {
+                throw new IOException("cannot create " + parent);
+            }
+            File temp = new File(parkedFile.getPath() + ".tmp");
+            Files.write(temp.toPath(), content.toString().getBytes(StandardCharsets.UTF_8));
+            Files.move(temp.toPath(), parkedFile.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            plugin.getLogger().error("Failed to save parked mail commands: " + e.getMessage());
+        }
+    }
+
+    private synchronized void ensureStarted() {
+        if (started) {
+            return;
+        }
+        started = true;
+
+        // Lazy init bukkitPlugin
+        if (bukkitPlugin == null) {
+            bukkitPlugin = Bukkit.getPluginManager().getPlugin("UltiTools");
+        }
+        timer = Bukkit.getScheduler().runTaskTimer(bukkitPlugin, this::tick, 1L, 1L);
+    }
+
+    /**
+     * Cancel the per-tick timer. Queued commands stay queued and run once the
+     * next {@link #dispatch(Player, List)} starts the timer again.
+     */
+    public synchronized void stop() {
+        if (timer != null) {
+            timer.cancel();
+            timer = null;
+        }
+        started = false;
+    }
+
+    /**
+     * Run queued commands up to the per-tick limit and time budget.
+     * Called once per tick by the timer.
+     */
+    public void tick() {
+        if (queue.isEmpty()) {
+            return;
+        }
+        int limit = config.getCommandsPerTick();
+        long budget = config.getTickBudgetMicros() * 1000L;
+        long start = System.nanoTime();
+        int count = 0;
+        boolean parkedAny = false;
+
+        PendingCommand pending;
+        while (count < limit && (count == 0 || System.nanoTime() - start < budget)
+                && (pending = queue.poll()) != null) {
+            if (!pending.command.isConsole() && !pending.player.isOnline()) {
+                // Rendered now, so it can be written out and read back without the player
+                parked.computeIfAbsent(pending.player.getUniqueId(), uuid -> new ArrayList<>())
+                    .add(CompiledCommand.compile(pending.command.render(pending.player.getName())));
+                parkedAny = true;
+                continue;
+            }
+            long commandStart = mainThread.begin();
+            try {
+                run(pending);
+                metrics.record(Operation.COMMAND, commandStart);
+            } catch (Exception e) {
+                metrics.record(Operation.COMMAND, commandStart, false);
+                plugin.getLogger().error("Failed to execute mail command: " + e.getMessage());
+            } finally {
+                PendingCommand done = pending;
+                mainThread.end(Operation.COMMAND, commandStart, done.player.getName(), 0,
+                    () -> done.command.render(done.player.getName()).length());
+            }
+            count++;
+        }
+        if (parkedAny) {
+            saveParked();
+        }
+
+        lastTickCommands = count;
+        dispatchedCommands.addAndGet(count);
+    }
+
+    private void run(PendingCommand pending) {
+        Player player = pending.player;
+        String command = pending.command.render(player.getName());
+        if (pending.command.isConsole()) {
+            Bukkit.dispatchCommand(Bukkit.getConsoleSender(), command);
+        } else {
+            player.performCommand(command);
+        }
+    }
+
+    /**
+     * Number of commands waiting to run.
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * Number of player commands waiting for their player to rejoin.
+     */
+    public int getParkedCount() {
+        int count = 0;
+        for (List<CompiledCommand> commands : parked.values()) {
+            count += commands.size();
+        }
+        return count;
+    }
+
+    /**
+     * Total number of commands run.
+     */
+    public long getDispatchedCommands() {
+        return dispatchedCommands.get();
+    }
+
+    /**
+     * Number of commands run in the most recent tick that had work.
+     */
+    public int getLastTickCommands() {
+        return lastTickCommands;
+    }
+
+    private static class PendingCommand {
+        final Player player;
+        final CompiledCommand command;
+
+        PendingCommand(Player player, CompiledCommand command) {
+            this.player = player;
+            this.command = command;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.ultikits.plugins.mail.service;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import java.lang.reflect.Type;
+import java.util.*;
+
+/**
+ * Cache of compiled command payloads.
+ * <p>
+ * Reward mails sent in bulk share the same {@code commands} JSON, so each payload
+ * is parsed and compiled once and then reused for every receiver. Entries are
+ * keyed by the payload string itself (whose hash is cached by {@link String}),
+ * so two payloads never share a template by accident. The cache is a small LRU.
+ *
+ * @author wisdomme
+ * @version 1.0.0
+ */
+public class CommandTemplateCache {
+
+    private static final int DEFAULT_CAPACITY = 256;
+    private static final Gson GSON = new Gson();
+    private static final Type STRING_LIST_TYPE = new TypeToken<List<String>>(){}.getType();
+
+    private final Map<String, List<CompiledCommand>> cache;
+
+    // Statistics
+    private long hits;
+    private long misses;
+
+    public CommandTemplateCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public CommandTemplateCache(final int capacity) {
+        this.cache = new LinkedHashMap<String, List<CompiledCommand>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, List<CompiledCommand>> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Get the compiled commands for a payload, compiling it on first use.
+     *
+     * @param payload Commands JSON array
+     * @return Compiled commands, empty if the payload has none
+     * @throws com.google.gson.JsonParseException if the payload is not a JSON string array
+     */
+    public synchronized List<CompiledCommand> get(String payload) {
+        List<CompiledCommand> compiled = cache.get(payload);
+        if (compiled != null) {
+            hits++;
+            return compiled;
+        }
+        misses++;
+        compiled = compile(payload);
+        cache.put(payload, compiled);
+        return compiled;
+    }
+
+    private static List<CompiledCommand> compile(String payload) {
+        List<String> commands = GSON.fromJson(payload, STRING_LIST_TYPE);
+        if (commands == null || commands.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<CompiledCommand> compiled = new ArrayList<>(commands.size());
+        for (String command : commands) {
+            if (command != null) {
+                compiled.add(CompiledCommand.compile(command));
+            }
+        }
+        return Collections.unmodifiableList(compiled);
+    }
+
+    /**
+     * Number of cached payloads.
+     */
+    public synchronized int size() {
+        return cache.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+}
@@ -0,0 +1,88 @@
+package com.ultikits.plugins.mail.service;
+
+/**
+ * A mail command parsed once into a reusable template.
+ * <p>
+ * The {@code console:} prefix is resolved at compile time and the command text is
+ * split around {@code %player%}, so rendering for a player only joins the literal
+ * segments with the player name.
+ *
+ * @author wisdomme
+ * @version 1.0.0
+ */
+public final class CompiledCommand {
+
+    static final String PLAYER_PLACEHOLDER = "%player%";
+    private static final String CONSOLE_PREFIX = "console:";
+
+    private final boolean console;
+    private final String[] segments;
+
+    private CompiledCommand(boolean console, String[] segments) {
+        this.console = console;
+        this.segments = segments;
+    }
+
+    /**
+     * Compile a raw command string.
+     *
+     * @param raw Raw command, optionally prefixed with {@code console:} (any case)
+     * @return Compiled command
+     */
+    public static CompiledCommand compile(String raw) {
+        boolean console = raw.regionMatches(true, 0, CONSOLE_PREFIX, 0, CONSOLE_PREFIX.length());
+        String body = console ? raw.substring(CONSOLE_PREFIX.length()).trim() : raw;
+        return new CompiledCommand(console, split(body));
+    }
+
+    private static String[] split(String body) {
+        int count = 1;
+        int from = 0;
+        while ((from = body.indexOf(PLAYER_PLACEHOLDER, from)) >= 0) {
+            count++;
+            from += PLAYER_PLACEHOLDER.length();
+        }
+
+        String[] segments = new String[count];
+        int start = 0;
+        for (int i = 0; i < count - 1; i++) {
+            int end = body.indexOf(PLAYER_PLACEHOLDER, start);
+            segments[i] = body.substring(start, end);
+            start = end + PLAYER_PLACEHOLDER.length();
+        }
+        segments[count - 1] = body.substring(start);
+        return segments;
+    }
+
+    /**
+     * Whether the command runs as console.
+     */
+    public boolean isConsole() {
+        return console;
+    }
+
+    /**
+     * Number of {@code %player%} slots in the command.
+     */
+    public int getPlaceholderCount() {
+        return segments.length - 1;
+    }
+
+    /**
+     * Render the command for a player.
+     *
+     * @param playerName Player name filled into the placeholder slots
+     * @return Command text without the {@code console:} prefix
+     */
+    public String render(String playerName) {
+        if (segments.length == 1) {
+            return segments[0];
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append(segments[0]);
+        for (int i = 1; i < segments.length; i++) {
+            sb.append(playerName).append(segments[i]);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,105 @@
+package com.ultikits.plugins.mail.service;
+
+import com.ultikits.plugins.mail.entity.MailData;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Short-lived per-player snapshots of the inbox order listed by {@code /mail inbox}.
+ * <p>
+ * Index commands such as {@code /mail read 3} resolve the index against the list
+ * the player actually saw: one map lookup gives the mail id, so the inbox is not
+ * reloaded and sorted again, and mails arriving after the listing cannot shift the
+ * indexes. A snapshot is replaced by the next listing and expires after five
+ * minutes; expired snapshots are swept when new ones are recorded.
+ *
+ * @author wisdomme
+ * @version 1.0.0
+ */
+public class InboxSnapshots {
+
+    private static final long DEFAULT_TTL_MILLIS = 5 * 60_000L;
+    private static final int SWEEP_THRESHOLD = 256;
+
+    private final Map<UUID, Snapshot> snapshots = new ConcurrentHashMap<>();
+    private final long ttlMillis;
+    private final LongSupplier clock;
+
+    public InboxSnapshots() {
+        this(DEFAULT_TTL_MILLIS, System::currentTimeMillis);
+    }
+
+    InboxSnapshots(long ttlMillis, LongSupplier clock) {
+        this.ttlMillis = ttlMillis;
+        this.clock = clock;
+    }
+
+    /**
+     * Remember the order of a listed inbox.
+     */
+    public void record(UUID playerUuid, List<MailData> mails) {
+        String[] ids = new String[mails.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = mails.get(i).getId();
+        }
+        long now = clock.getAsLong();
+        if (snapshots.size() >= SWEEP_THRESHOLD) {
+            snapshots.values().removeIf(snapshot -> snapshot.isExpired(now));
+        }
+        snapshots.put(playerUuid, new Snapshot(ids, now + ttlMillis));
+    }
+
+    /**
+     * The player's live snapshot, or null if there is none or it expired.
+     */
+    public Snapshot get(UUID playerUuid) {
+        Snapshot snapshot = snapshots.get(playerUuid);
+        if (snapshot == null) {
+            return null;
+        }
+        if (snapshot.isExpired(clock.getAsLong())) {
+            snapshots.remove(playerUuid, snapshot);
+            return null;
+        }
+        return snapshot;
+    }
+
+    /**
+     * Number of snapshots held, expired ones included until swept.
+     */
+    public int size() {
+        return snapshots.size();
+    }
+
+    /**
+     * Mail ids of one listing, in the order shown.
+     */
+    public static final class Snapshot {
+        private final String[] ids;
+        private final long expiresAt;
+
+        private Snapshot(String[] ids, long expiresAt) {
+            this.ids = ids;
+            this.expiresAt = expiresAt;
+        }
+
+        /**
+         * The mail id at a 1-based index, or null if the index is out of range.
+         */
+        public String idAt(int index) {
+            return index >= 1 && index <= ids.length ? ids[index - 1] : null;
+        }
+
+        public int size() {
+            return ids.length;
+        }
+
+        private boolean isExpired(long now) {
+            return now >= expiresAt;
+        }
+    }
+}
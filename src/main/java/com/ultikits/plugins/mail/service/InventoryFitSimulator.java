@@ -0,0 +1,272 @@
+package com.ultikits.plugins.mail.service;
+
+import org.bukkit.Material;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.ItemStack;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Stack-aware model of an inventory for "will these items fit" checks.
+ * <p>
+ * Slots are kept as primitive arrays (material id, durability, amount and max
+ * stack size), plus a copy of the stack for slots that carry item meta, so a
+ * loaded simulator holds no references to live item stacks and can be handed to
+ * another thread. Items merge into similar stacks before they take empty slots,
+ * the same way {@link Inventory#addItem(ItemStack...)} does: material and
+ * durability are compared first and {@link ItemStack#isSimilar(ItemStack)} only
+ * runs when both sides have meta. Durability is read only on servers before 1.13,
+ * where it is a field of the stack; later versions keep damage in the meta.
+ * Trial placements run on preallocated scratch arrays.
+ * <p>
+ * Not thread-safe; use one instance per check.
+ *
+ * @author wisdomme
+ * @version 1.0.0
+ */
+public final class InventoryFitSimulator {
+
+    /**
+     * Number of storage slots in a player inventory (hotbar + main area).
+     */
+    public static final int PLAYER_STORAGE_SIZE = 36;
+
+    private static final int EMPTY = -1;
+
+    // Damage moved into ItemMeta (Damageable) in 1.13
+    private static final boolean LEGACY_DURABILITY = !hasClass("org.bukkit.inventory.meta.Damageable");
+
+    private final int size;
+    private final boolean legacyDurability;
+    private int[] materials;
+    private int[] durabilities;
+    private int[] amounts;
+    private int[] maxStacks;
+    // Copy of the stack for slots with item meta, null otherwise
+    private ItemStack[] metaStacks;
+
+    // Scratch copies used for trial placements
+    private int[] trialMaterials;
+    private int[] trialDurabilities;
+    private int[] trialAmounts;
+    private int[] trialMaxStacks;
+    private ItemStack[] trialMetaStacks;
+
+    public InventoryFitSimulator() {
+        this(PLAYER_STORAGE_SIZE);
+    }
+
+    public InventoryFitSimulator(int size) {
+        this(size, LEGACY_DURABILITY);
+    }
+
+    InventoryFitSimulator(int size, boolean legacyDurability) {
+        this.size = size;
+        this.legacyDurability = legacyDurability;
+        this.materials = new int[size];
+        this.durabilities = new int[size];
+        this.amounts = new int[size];
+        this.maxStacks = new int[size];
+        this.metaStacks = new ItemStack[size];
+        this.trialMaterials = new int[size];
+        this.trialDurabilities = new int[size];
+        this.trialAmounts = new int[size];
+        this.trialMaxStacks = new int[size];
+        this.trialMetaStacks = new ItemStack[size];
+        Arrays.fill(materials, EMPTY);
+    }
+
+    /**
+     * Load the storage slots of an inventory. Must run on the main thread.
+     * Reads slot by slot instead of copying the whole contents array.
+     */
+    public InventoryFitSimulator load(Inventory inventory) {
+        for (int i = 0; i < size; i++) {
+            setSlot(i, inventory.getItem(i));
+        }
+        return this;
+    }
+
+    /**
+     * Load slots from a contents array. Missing trailing slots count as empty.
+     */
+    public InventoryFitSimulator load(ItemStack[] contents) {
+        for (int i = 0; i < size; i++) {
+            setSlot(i, i < contents.length ? contents[i] : null);
+        }
+        return this;
+    }
+
+    private void setSlot(int slot, ItemStack item) {
+        if (isEmpty(item)) {
+            materials[slot] = EMPTY;
+            durabilities[slot] = 0;
+            amounts[slot] = 0;
+            maxStacks[slot] = 0;
+            metaStacks[slot] = null;
+        } else {
+            materials[slot] = item.getType().ordinal();
+            durabilities[slot] = durability(item);
+            amounts[slot] = item.getAmount();
+            maxStacks[slot] = maxStack(item);
+            metaStacks[slot] = item.hasItemMeta() ? item.clone() : null;
+        }
+    }
+
+    /**
+     * Number of empty slots.
+     */
+    public int getEmptySlots() {
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (materials[i] == EMPTY) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Check whether all items fit, without changing the model.
+     */
+    public boolean fits(ItemStack... items) {
+        return place(items) == 0;
+    }
+
+    /**
+     * Place all items if they fit.
+     *
+     * @return true if the items fit and the model was updated
+     */
+    public boolean add(ItemStack... items) {
+        if (place(items) != 0) {
+            return false;
+        }
+        commit();
+        return true;
+    }
+
+    /**
+     * Number of extra empty slots needed to fit all items, 0 if they fit.
+     */
+    public int getMissingSlots(ItemStack... items) {
+        return place(items);
+    }
+
+    /**
+     * Greedily place item groups in the given order, skipping groups that do not fit.
+     * The model keeps every accepted group.
+     *
+     * @return for each group, whether it was accepted
+     */
+    public boolean[] selectFitting(List<ItemStack[]> groups) {
+        boolean[] accepted = new boolean[groups.size()];
+        for (int i = 0; i < accepted.length; i++) {
+            accepted[i] = add(groups.get(i));
+        }
+        return accepted;
+    }
+
+    /**
+     * Place items on the scratch arrays.
+     *
+     * @return number of extra slots the leftover items would need
+     */
+    private int place(ItemStack[] items) {
+        System.arraycopy(materials, 0, trialMaterials, 0, size);
+        System.arraycopy(amounts, 0, trialAmounts, 0, size);
+        System.arraycopy(maxStacks, 0, trialMaxStacks, 0, size);
+        System.arraycopy(durabilities, 0, trialDurabilities, 0, size);
+        System.arraycopy(metaStacks, 0, trialMetaStacks, 0, size);
+
+        int missing = 0;
+        for (ItemStack item : items) {
+            if (isEmpty(item)) {
+                continue;
+            }
+            int material = item.getType().ordinal();
+            int durability = durability(item);
+            boolean hasMeta = item.hasItemMeta();
+            int maxStack = maxStack(item);
+            int remaining = item.getAmount();
+
+            // Merge into similar stacks first
+            for (int i = 0; i < size && remaining > 0; i++) {
+                if (trialMaterials[i] == material && trialDurabilities[i] == durability
+                        && trialAmounts[i] < trialMaxStacks[i] && isSimilar(trialMetaStacks[i], item, hasMeta)) {
+                    int moved = Math.min(remaining, trialMaxStacks[i] - trialAmounts[i]);
+                    trialAmounts[i] += moved;
+                    remaining -= moved;
+                }
+            }
+            // Then take empty slots
+            for (int i = 0; i < size && remaining > 0; i++) {
+                if (trialMaterials[i] == EMPTY) {
+                    int moved = Math.min(remaining, maxStack);
+                    trialMaterials[i] = material;
+                    trialDurabilities[i] = durability;
+                    trialAmounts[i] = moved;
+                    trialMaxStacks[i] = maxStack;
+                    trialMetaStacks[i] = hasMeta ? item : null;
+                    remaining -= moved;
+                }
+            }
+            if (remaining > 0) {
+                missing += (remaining + maxStack - 1) / maxStack;
+            }
+        }
+        return missing;
+    }
+
+    private void commit() {
+        int[] swap = materials;
+        materials = trialMaterials;
+        trialMaterials = swap;
+        swap = amounts;
+        amounts = trialAmounts;
+        trialAmounts = swap;
+        swap = maxStacks;
+        maxStacks = trialMaxStacks;
+        trialMaxStacks = swap;
+        swap = durabilities;
+        durabilities = trialDurabilities;
+        trialDurabilities = swap;
+        ItemStack[] swapStacks = metaStacks;
+        metaStacks = trialMetaStacks;
+        trialMetaStacks = swapStacks;
+    }
+
+    /**
+     * Whether an item with the same material and durability stacks onto a slot.
+     * Only stacks that both carry meta need the full comparison.
+     */
+    private static boolean isSimilar(ItemStack slotStack, ItemStack item, boolean hasMeta) {
+        if (slotStack == null) {
+            return !hasMeta;
+        }
+        return hasMeta && slotStack.isSimilar(item);
+    }
+
+    private static boolean isEmpty(ItemStack item) {
+        return item == null || item.getType() == null || item.getType() == Material.AIR || item.getAmount() <= 0;
+    }
+
+    private static int maxStack(ItemStack item) {
+        return Math.max(1, item.getMaxStackSize());
+    }
+
+    @SuppressWarnings("deprecation")
+    private int durability(ItemStack item) {
+        return legacyDurability ? item.getDurability() : 0;
+    }
+
+    private static boolean hasClass(String name) {
+        try {
+            Class.forName(name, false, InventoryFitSimulator.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package com.ultikits.plugins.mail.service;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.ultikits.plugins.mail.entity.MailArchiveBlob;
+import com.ultikits.plugins.mail.entity.MailArchiveData;
+import com.ultikits.plugins.mail.entity.MailData;
+import com.ultikits.plugins.mail.store.MailStore;
+import com.ultikits.ultitools.interfaces.DataOperator;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Moves old read mails out of the live store into compressed per-player monthly archives.
+ * <p>
+ * A mail is archived once it is read, its attachments are claimed and its commands
+ * have run. The mails of one receiver and month are kept as a single GZIP compressed
+ * JSON blob, and a small summary row per month lets the archive view list months
+ * without loading the blobs.
+ * <p>
+ * The blob is written before the live rows are removed, and each row is only removed
+ * if its version is unchanged since the scan; rows that changed meanwhile are taken out
+ * of the blob again. A crash in between leaves a mail in both places until the next
+ * run, which merges by id, so mails are never lost.
+ * <p>
+ * Only mails sent before the cutoff are loaded, through
+ * {@link MailStore#findSentBefore(long)}. Archived mails are hidden from the sender's
+ * sentbox on purpose: archives are kept per receiver and the sender cannot open them,
+ * so the row is marked deleted by both sides and removed.
+ *
+ * @author wisdomme
+ * @version 1.0.0
+ */
+public class MailArchiver {
+
+    private static final Gson GSON = new Gson();
+    private static final Type MAIL_LIST = new TypeToken<List<MailData>>() { }.getType();
+
+    private final MailStore store;
+    private final DataOperator<MailArchiveData> summaries;
+    private final DataOperator<MailArchiveBlob> blobs;
+    private final ZoneId zone;
+
+    public MailArchiver(MailStore store, DataOperator<MailArchiveData> summaries,
+                        DataOperator<MailArchiveBlob> blobs) {
+        this(store, summaries, blobs, ZoneId.systemDefault());
+    }
+
+    MailArchiver(MailStore store, DataOperator<MailArchiveData> summaries,
+                 DataOperator<MailArchiveBlob> blobs, ZoneId zone) {
+        this.store = store;
+        this.summaries = summaries;
+        this.blobs = blobs;
+        this.zone = zone;
+    }
+
+    /**
+     * Whether a mail no longer needs anything from its receiver.
+     */
+    static boolean isArchivable(MailData mail, long cutoff) {
+        return mail.getSentTime() < cutoff
+            && mail.isRead()
+            && !mail.isDeletedByReceiver()
+            && (!mail.hasItems() || mail.isClaimed())
+            && (!mail.hasCommands() || mail.isCommandsExecuted());
+    }
+
+    /**
+     * Archive every archivable mail sent before a cutoff.
+     *
+     * @param cutoff Epoch millis
+     * @return number of mails moved out of the live store
+     * @throws IllegalAccessException if an archive or a live row could not be written
+     */
+    public synchronized int archive(long cutoff) throws IllegalAccessException {
+        // Receiver and month -> mails, in scan order
+        Map<String, List<MailData>> groups = new LinkedHashMap<>();
+        for (MailData mail : store.findSentBefore(cutoff)) {
+            if (isArchivable(mail, cutoff)) {
+                groups.computeIfAbsent(MailArchiveData.idOf(mail.getReceiverUuid(), monthOf(mail.getSentTime())),
+                    key -> new ArrayList<>()).add(mail);
+            }
+        }
+        int archived = 0;
+        for (List<MailData> group : groups.values()) {
+            archived += archiveGroup(group);
+        }
+        return archived;
+    }
+
+    private int archiveGroup(List<MailData> mails) throws IllegalAccessException {
+        String player = mails.get(0).getReceiverUuid();
+        String month = monthOf(mails.get(0).getSentTime());
+        String id = MailArchiveData.idOf(player, month);
+
+        Map<String, MailData> merged = new LinkedHashMap<>();
+        MailArchiveBlob blob = blobs.getById(id);
+        if (blob != null) {
+            for (MailData mail : decode(blob.getData())) {
+                merged.put(mail.getId(), mail);
+            }
+        }
+        for (MailData mail : mails) {
+            merged.put(mail.getId(), mail);
+        }
+        // Written before any live row is removed
+        save(player, month, merged, blob != null);
+
+        int removed = 0;
+        List<String> changed = new ArrayList<>();
+        for (MailData mail : mails) {
+            long version = mail.getVersion();
+            MailData probe = new MailData();
+            probe.setId(mail.getId());
+            if (store.update(probe, m -> m.getVersion() == version, MailArchiver::markArchived)) {
+                removed++;
+            } else {
+                changed.add(mail.getId());
+            }
+        }
+        if (!changed.isEmpty()) {
+            for (String changedId : changed) {
+                merged.remove(changedId);
+            }
+            save(player, month, merged, true);
+        }
+        return removed;
+    }
+
+    /**
+     * Take an archived mail off both sides: the receiver reads it from the archive,
+     * and the sender's sentbox no longer lists it.
+     */
+    private static void markArchived(MailData mail) {
+        mail.setDeletedByReceiver(true);
+        mail.setDeletedBySender(true);
+    }
+
+    private void save(String player, String month, Map<String, MailData> mails, boolean exists)
+            throws IllegalAccessException {
+        String id = MailArchiveData.idOf(player, month);
+        List<MailData> sorted = new ArrayList<>(mails.values());
+        sorted.sort(Comparator.comparingLong(MailData::getSentTime).reversed());
+
+        MailArchiveBlob blob = new MailArchiveBlob();
+        blob.setId(id);
+        blob.setData(encode(sorted));
+        MailArchiveData summary = new MailArchiveData();
+        summary.setId(id);
+        summary.setPlayerUuid(player);
+        summary.setMonth(month);
+        summary.setMailCount(sorted.size());
+        summary.setUpdatedTime(System.currentTimeMillis());
+        if (exists) {
+            blobs.update(blob);
+        } else {
+            blobs.insert(blob);
+        }
+        // The summary goes last, so a listed month always has its blob
+        if (summaries.getById(id) != null) {
+            summaries.update(summary);
+        } else {
+            summaries.insert(summary);
+        }
+    }
+
+    /**
+     * Archived months of a player, newest first.
+     */
+    public List<MailArchiveData> getMonths(String playerUuid) {
+        List<MailArchiveData> months = new ArrayList<>(summaries.query()
+            .where("player_uuid").eq(playerUuid)
+            .list());
+        months.sort(Comparator.comparing(MailArchiveData::getMonth).reversed());
+        return months;
+    }
+
+    /**
+     * Archived mails of a player in one month, newest first.
+     *
+     * @param month Month as {@code yyyy-MM}
+     */
+    public List<MailData> load(String playerUuid, String month) {
+        MailArchiveBlob blob = blobs.getById(MailArchiveData.idOf(playerUuid, month));
+        return blob != null ? decode(blob.getData()) : new ArrayList<>();
+    }
+
+    /**
+     * Remove archives whose month ended before a cutoff.
+     *
+     * @param cutoff Epoch millis
+     * @return number of archives removed
+     */
+    public synchronized int purge(long cutoff) {
+        int removed = 0;
+        for (MailArchiveData summary : summaries.getAll()) {
+            long monthEnd = YearMonth.parse(summary.getMonth()).plusMonths(1).atDay(1)
+                .atStartOfDay(zone).toInstant().toEpochMilli();
+            if (monthEnd <= cutoff) {
+                summaries.delById(summary.getId());
+                blobs.delById(summary.getId());
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Month a mail sent at the given time is archived under.
+     */
+    String monthOf(long sentTime) {
+        return YearMonth.from(Instant.ofEpochMilli(sentTime).atZone(zone)).toString();
+    }
+
+    static String encode(List<MailData> mails) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (Writer out = new OutputStreamWriter(new GZIPOutputStream(bytes), StandardCharsets.UTF_8)) {
+            GSON.toJson(mails, MAIL_LIST, out);
+        } catch (IOException e) {
+            // In-memory streams do not fail
+            throw new IllegalStateException(e);
+        }
+        return Base64.getEncoder().encodeToString(bytes.toByteArray());
+    }
+
+    static List<MailData> decode(String data) {
+        if (data == null || data.isEmpty()) {
+            return new ArrayList<>();
+        }
+        byte[] bytes = Base64.getDecoder().decode(data);
+        try (Reader in = new InputStreamReader(new GZIPInputStream(new ByteArrayInputStream(bytes)),
+                StandardCharsets.UTF_8)) {
+            List<MailData> mails = GSON.fromJson(in, MAIL_LIST);
+            return mails != null ? mails : new ArrayList<>();
+        } catch (IOException e) {
+            throw new IllegalStateException("Corrupt mail archive: " + e.getMessage(), e);
+        }
+    }
+}
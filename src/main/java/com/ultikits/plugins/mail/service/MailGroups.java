@@ -0,0 +1,171 @@
+package com.ultikits.plugins.mail.service;
+
+import com.ultikits.plugins.mail.entity.MailGroupData;
+import com.ultikits.ultitools.interfaces.DataOperator;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Sentbox entries of broadcasts and their delivered, read and claimed counters.
+ * <p>
+ * Counter changes are collected in memory without touching the table and written
+ * by {@link #flush()}, so a broadcast to thousands of players or a burst of reads
+ * costs one row write per group. Reads add the changes not yet written, so the
+ * counters are always current.
+ *
+ * @author wisdomme
+ * @version 1.0.0
+ */
+public class MailGroups {
+
+    private static final int DELIVERED = 0;
+    private static final int READ = 1;
+    private static final int CLAIMED = 2;
+
+    private final DataOperator<MailGroupData> groups;
+
+    // Group id -> counter changes not written yet
+    private final Map<String, int[]> pending = new ConcurrentHashMap<>();
+    private final AtomicBoolean flushPending = new AtomicBoolean();
+
+    public MailGroups(DataOperator<MailGroupData> groups) {
+        this.groups = groups;
+    }
+
+    /**
+     * Create the sentbox entry of a new broadcast, with all counters at zero.
+     */
+    public MailGroupData create(String senderUuid, String senderName, String subject, String content,
+                                boolean itemsAttached) {
+        MailGroupData group = new MailGroupData();
+        group.setId(UUID.randomUUID().toString());
+        group.setSenderUuid(senderUuid);
+        group.setSenderName(senderName);
+        group.setSubject(subject);
+        group.setContent(content);
+        group.setItemsAttached(itemsAttached);
+        group.setSentTime(System.currentTimeMillis());
+        groups.insert(group);
+        return group;
+    }
+
+    /**
+     * Count mails delivered to recipients.
+     *
+     * @return true if no flush is pending yet and the caller should schedule one
+     */
+    public boolean recordDelivered(String groupId, int delta) {
+        return record(groupId, DELIVERED, delta);
+    }
+
+    /**
+     * Count a recipient reading their copy.
+     *
+     * @return true if no flush is pending yet and the caller should schedule one
+     */
+    public boolean recordRead(String groupId) {
+        return record(groupId, READ, 1);
+    }
+
+    /**
+     * Count a recipient claiming the attachments, or a claim being undone.
+     *
+     * @return true if no flush is pending yet and the caller should schedule one
+     */
+    public boolean recordClaimed(String groupId, int delta) {
+        return record(groupId, CLAIMED, delta);
+    }
+
+    private boolean record(String groupId, int counter, int delta) {
+        pending.compute(groupId, (id, counts) -> {
+            int[] updated = counts != null ? counts : new int[3];
+            updated[counter] += delta;
+            return updated;
+        });
+        return flushPending.compareAndSet(false, true);
+    }
+
+    /**
+     * Write the collected counter changes, one update per group.
+     *
+     * @throws IllegalAccessException if a group could not be written; its changes are kept for the next flush
+     */
+    public synchronized void flush() throws IllegalAccessException {
+        flushPending.set(false);
+        for (String id : new ArrayList<>(pending.keySet())) {
+            int[] counts = pending.remove(id);
+            if (counts == null) {
+                continue;
+            }
+            MailGroupData group = groups.getById(id);
+            if (group == null) {
+                // Purged meanwhile
+                continue;
+            }
+            apply(group, counts);
+            try {
+                groups.update(group);
+            } catch (IllegalAccessException e) {
+                pending.merge(id, counts, MailGroups::sum);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * A player's broadcasts, newest first, with the counters as of now.
+     */
+    public synchronized List<MailGroupData> getGroups(String senderUuid) {
+        List<MailGroupData> result = new ArrayList<>(groups.query()
+            .where("sender_uuid").eq(senderUuid)
+            .list());
+        for (MailGroupData group : result) {
+            int[] counts = pending.get(group.getId());
+            if (counts != null) {
+                apply(group, counts);
+            }
+        }
+        result.sort(Comparator.comparingLong(MailGroupData::getSentTime).reversed());
+        return result;
+    }
+
+    /**
+     * Remove broadcasts sent before a cutoff. Ones with attachments still unclaimed
+     * are kept, like their mails.
+     *
+     * @param cutoff Epoch millis
+     * @return number of groups removed
+     */
+    public synchronized int purge(long cutoff) {
+        int removed = 0;
+        for (MailGroupData group : groups.getAll()) {
+            int[] counts = pending.get(group.getId());
+            if (counts != null) {
+                apply(group, counts);
+            }
+            boolean unclaimed = group.isItemsAttached() && group.getClaimedCount() < group.getDeliveredCount();
+            if (group.getSentTime() < cutoff && !unclaimed) {
+                groups.delById(group.getId());
+                pending.remove(group.getId());
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    private static void apply(MailGroupData group, int[] counts) {
+        group.setDeliveredCount(group.getDeliveredCount() + counts[DELIVERED]);
+        group.setReadCount(group.getReadCount() + counts[READ]);
+        group.setClaimedCount(group.getClaimedCount() + counts[CLAIMED]);
+    }
+
+    private static int[] sum(int[] a, int[] b) {
+        return new int[]{a[DELIVERED] + b[DELIVERED], a[READ] + b[READ], a[CLAIMED] + b[CLAIMED]};
+    }
+}
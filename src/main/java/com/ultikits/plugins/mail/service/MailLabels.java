@@ -0,0 +1,57 @@
+package com.ultikits.plugins.mail.service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * The translated texts mail icons are rendered from, resolved once per GUI open
+ * instead of once per mail.
+ * <p>
+ * A snapshot stands for the language in use: when any text changes, for example
+ * after a language reload, a new snapshot is taken and renders made from the old
+ * one are no longer reused.
+ *
+ * @author wisdomme
+ * @version 1.0.0
+ */
+public final class MailLabels {
+
+    static final String[] KEYS = {
+        "lore_read", "lore_unread", "lore_from", "lore_to", "lore_time", "lore_content",
+        "lore_click_to_read", "lore_click_to_claim",
+        "inbox_status_read", "inbox_status_unread", "inbox_status_claimed", "inbox_status_has_items"
+    };
+
+    private final Map<String, String> texts;
+
+    private MailLabels(Map<String, String> texts) {
+        this.texts = texts;
+    }
+
+    static MailLabels resolve(Function<String, String> i18n) {
+        Map<String, String> texts = new HashMap<>();
+        for (String key : KEYS) {
+            texts.put(key, i18n.apply(key));
+        }
+        return new MailLabels(texts);
+    }
+
+    /**
+     * The text of a key, or the key itself if it is not part of the snapshot.
+     */
+    public String get(String key) {
+        String text = texts.get(key);
+        return text != null ? text : key;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof MailLabels && texts.equals(((MailLabels) other).texts);
+    }
+
+    @Override
+    public int hashCode() {
+        return texts.hashCode();
+    }
+}
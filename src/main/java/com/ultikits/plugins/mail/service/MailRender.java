@@ -0,0 +1,57 @@
+package com.ultikits.plugins.mail.service;
+
+import org.bukkit.Material;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.ItemMeta;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Prebuilt display data of a mail icon: material, name and lore.
+ * <p>
+ * Immutable, so one render can be shared by every GUI showing the mail and can be
+ * built off the main thread. Only {@link #toItem()} touches Bukkit items.
+ *
+ * @author wisdomme
+ * @version 1.0.0
+ */
+public final class MailRender {
+
+    private final Material material;
+    private final String name;
+    private final List<String> lore;
+
+    public MailRender(Material material, String name, List<String> lore) {
+        this.material = material;
+        this.name = name;
+        this.lore = Collections.unmodifiableList(new ArrayList<>(lore));
+    }
+
+    public Material getMaterial() {
+        return material;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<String> getLore() {
+        return lore;
+    }
+
+    /**
+     * A new item showing this render.
+     */
+    public ItemStack toItem() {
+        ItemStack item = new ItemStack(material);
+        ItemMeta meta = item.getItemMeta();
+        if (meta != null) {
+            meta.setDisplayName(name);
+            meta.setLore(lore);
+            item.setItemMeta(meta);
+        }
+        return item;
+    }
+}
@@ -0,0 +1,126 @@
+package com.ultikits.plugins.mail.service;
+
+import com.ultikits.plugins.mail.entity.MailData;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Cache of mail icon renders, shared by all players' GUIs.
+ * <p>
+ * A render is keyed by the view it is shown in and the mail id, and is reused as
+ * long as the mail version and the {@link MailLabels} snapshot it was built from
+ * are unchanged. Every store update bumps the version, so a changed mail is always
+ * rendered again. Renders are immutable and the cache is thread-safe, so pages can
+ * be prepared off the main thread. Each view keeps a small LRU.
+ *
+ * @author wisdomme
+ * @version 1.0.0
+ */
+public class MailRenderCache {
+
+    /**
+     * GUIs with their own rendering of a mail.
+     */
+    public enum View {
+        INBOX,
+        SENTBOX
+    }
+
+    private static final int DEFAULT_CAPACITY = 2048;
+
+    private final Map<View, Map<String, Entry>> renders = new EnumMap<>(View.class);
+    private volatile MailLabels labels;
+
+    // Statistics
+    private long hits;
+    private long misses;
+
+    public MailRenderCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public MailRenderCache(final int capacity) {
+        for (View view : View.values()) {
+            renders.put(view, new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                    return size() > capacity;
+                }
+            });
+        }
+    }
+
+    /**
+     * The current label snapshot, replaced only when a translated text changed.
+     */
+    public MailLabels labels(Function<String, String> i18n) {
+        MailLabels fresh = MailLabels.resolve(i18n);
+        MailLabels current = labels;
+        if (fresh.equals(current)) {
+            return current;
+        }
+        labels = fresh;
+        return fresh;
+    }
+
+    /**
+     * The render of a mail in a view, built only if the mail or the labels changed
+     * since it was last rendered.
+     */
+    public MailRender get(View view, MailData mail, MailLabels labels,
+                          BiFunction<MailData, MailLabels, MailRender> renderer) {
+        String id = mail.getId();
+        long version = mail.getVersion();
+        synchronized (this) {
+            Entry entry = id != null ? renders.get(view).get(id) : null;
+            if (entry != null && entry.version == version && entry.labels == labels) {
+                hits++;
+                return entry.render;
+            }
+            misses++;
+        }
+        // Rendered outside the lock, a racing render of the same mail is equivalent
+        MailRender render = renderer.apply(mail, labels);
+        if (id != null) {
+            synchronized (this) {
+                renders.get(view).put(id, new Entry(version, labels, render));
+            }
+        }
+        return render;
+    }
+
+    /**
+     * Number of cached renders across all views.
+     */
+    public synchronized int size() {
+        int size = 0;
+        for (Map<String, Entry> view : renders.values()) {
+            size += view.size();
+        }
+        return size;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    private static final class Entry {
+        private final long version;
+        private final MailLabels labels;
+        private final MailRender render;
+
+        private Entry(long version, MailLabels labels, MailRender render) {
+            this.version = version;
+            this.labels = labels;
+            this.render = render;
+        }
+    }
+}
@@ -1,14 +1,28 @@
 package com.ultikits.plugins.mail.service;
 
 import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
 import com.ultikits.plugins.mail.config.MailConfig;
+import com.ultikits.plugins.mail.entity.MailArchiveBlob;
+import com.ultikits.plugins.mail.entity.MailArchiveData;
 import com.ultikits.plugins.mail.entity.MailData;
+import com.ultikits.plugins.mail.entity.MailGroupData;
+import com.ultikits.plugins.mail.metrics.MailEvents;
+import com.ultikits.plugins.mail.metrics.MailMetrics;
+import com.ultikits.plugins.mail.metrics.MailMetrics.Counter;
+import com.ultikits.plugins.mail.metrics.MailMetrics.Operation;
+import com.ultikits.plugins.mail.metrics.MainThreadMonitor;
+import com.ultikits.plugins.mail.store.DataOperatorMailStore;
+import com.ultikits.plugins.mail.store.InboxDeletion;
+import com.ultikits.plugins.mail.store.MailStore;
+import com.ultikits.plugins.mail.store.SegmentMailStore;
+import com.ultikits.plugins.mail.store.migration.DataSources;
+import com.ultikits.plugins.mail.store.migration.MailMigrations;
+import com.ultikits.plugins.mail.store.migration.MigrationRunner;
+import com.ultikits.ultitools.UltiTools;
 import com.ultikits.ultitools.abstracts.UltiToolsPlugin;
 import com.ultikits.ultitools.annotations.Autowired;
 import com.ultikits.ultitools.annotations.PostConstruct;
 import com.ultikits.ultitools.annotations.Service;
-import com.ultikits.ultitools.interfaces.DataOperator;
 
 import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
@@ -18,15 +32,22 @@ import org.bukkit.entity.Player;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.plugin.Plugin;
 import org.bukkit.scheduler.BukkitRunnable;
+import org.bukkit.scheduler.BukkitTask;
 import org.bukkit.util.io.BukkitObjectInputStream;
 import org.bukkit.util.io.BukkitObjectOutputStream;
 import org.yaml.snakeyaml.external.biz.base64Coder.Base64Coder;
+import javax.sql.DataSource;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
-import java.lang.reflect.Type;
+import java.io.File;
+import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
 /**
  * Service for managing mail system.
@@ -46,24 +67,407 @@ public class MailService {
     @Autowired
     private MailConfig config;
 
+    @Autowired
+    private NotificationAggregator notificationAggregator;
+
+    @Autowired
+    private MailTaskScheduler taskScheduler;
+
+    @Autowired
+    private CommandDispatcher commandDispatcher;
+
+    @Autowired
+    private ClaimJournal claimJournal;
+
+    @Autowired
+    private MailMetrics metrics;
+
+    @Autowired
+    private MainThreadMonitor mainThread;
+
     private Plugin bukkitPlugin;
-    private DataOperator<MailData> dataOperator;
+    private MailStore store;
+    private MailArchiver archiver;
+    private MailGroups groups;
+    private BukkitTask archiveTask;
 
     // Cooldown tracking
     private final Map<UUID, Long> sendCooldowns = new ConcurrentHashMap<>();
 
+    // Players with a claim-all in flight
+    private final Set<UUID> claimAllInProgress = ConcurrentHashMap.newKeySet();
+
+    // Receivers that may have mail, lets empty mailboxes skip the database
+    private final ReceiverFilter receiverFilter = new ReceiverFilter();
+
+    // Parsed command payloads, shared by every receiver of a reward mail
+    private final CommandTemplateCache commandTemplates = new CommandTemplateCache();
+
+    // Icon renders, shared by every player's GUIs
+    private final MailRenderCache renderCache = new MailRenderCache();
+
+    // Inbox order last listed to each player, for index commands
+    private final InboxSnapshots inboxSnapshots = new InboxSnapshots();
+
     private static final Gson GSON = new Gson();
-    private static final Type STRING_LIST_TYPE = new TypeToken<List<String>>(){}.getType();
+
+    // Recipients covered by one broadcast chunk event
+    private static final int EVENT_CHUNK = 50;
+
+    // First archive run a minute after startup, then every six hours
+    private static final long ARCHIVE_DELAY_TICKS = 20L * 60;
+    private static final long ARCHIVE_PERIOD_TICKS = 20L * 60 * 60 * 6;
 
     /**
      * Initialize the mail service.
      */
     @PostConstruct
     public void init() {
-        dataOperator = plugin.getDataOperator(MailData.class);
         bukkitPlugin = Bukkit.getPluginManager().getPlugin("UltiTools");
+        store = createStore();
+        // Before anything writes: rows of older installs lack the columns the entity maps
+        migrateSchema();
+        registerMetrics();
+        commandDispatcher.load();
+        Bukkit.getScheduler().runTaskAsynchronously(bukkitPlugin, this::rebuildReceiverFilter);
+        Bukkit.getScheduler().runTaskAsynchronously(bukkitPlugin, this::recoverClaims);
+        if (config.isPurgeExpiredMails() && config.getMailExpireDays() > 0) {
+            Bukkit.getScheduler().runTaskAsynchronously(bukkitPlugin, this::purgeExpiredMails);
+        }
+        if (config.getArchiveAfterDays() > 0) {
+            archiveTask = Bukkit.getScheduler().runTaskTimerAsynchronously(bukkitPlugin, this::archiveOldMails,
+                ARCHIVE_DELAY_TICKS, ARCHIVE_PERIOD_TICKS);
+        }
     }
-    
+
+    /**
+     * Stop the background work of the service and close the store and claim journal.
+     * Called when the module is disabled or reloaded; the tasks run under the
+     * UltiTools plugin and would otherwise outlive the module.
+     */
+    public void shutdown() {
+        if (archiveTask != null) {
+            archiveTask.cancel();
+            archiveTask = null;
+        }
+        taskScheduler.stop();
+        commandDispatcher.stop();
+        if (store != null) {
+            try {
+                store.close();
+            } catch (Exception e) {
+                plugin.getLogger().error("Failed to close mail store: " + e.getMessage());
+            }
+        }
+        try {
+            claimJournal.close();
+        } catch (IOException e) {
+            plugin.getLogger().error("Failed to close claim journal: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Expose queue depths and cache counters of this service and its helpers.
+     */
+    private void registerMetrics() {
+        metrics.registerGauge("task_queue_depth", taskScheduler::getQueueDepth);
+        metrics.registerGauge("command_queue_depth", commandDispatcher::getQueueDepth);
+        metrics.registerGauge("pending_notifications", notificationAggregator::getPendingCount);
+        metrics.registerGauge("open_claims", claimJournal::getOpenCount);
+        metrics.registerGauge("claim_all_in_progress", claimAllInProgress::size);
+        metrics.registerGauge("store_rows", () -> store.estimateSize());
+        metrics.registerGauge("inbox_snapshots", inboxSnapshots::size);
+        metrics.registerCache("receiver_filter",
+            () -> metrics.getCounter(Counter.RECEIVER_FILTER_HITS),
+            () -> metrics.getCounter(Counter.RECEIVER_FILTER_MISSES));
+        metrics.registerCache("command_templates", commandTemplates::getHits, commandTemplates::getMisses);
+        metrics.registerCache("mail_renders", renderCache::getHits, renderCache::getMisses);
+        metrics.registerCache("gui_icons",
+            () -> metrics.getCounter(Counter.GUI_ICON_REUSES),
+            () -> metrics.getCounter(Counter.GUI_ICON_BUILDS));
+    }
+
+    /**
+     * Create the store selected by {@code storage.backend}.
+     * <p>
+     * If the segment files cannot be opened the module fails to start. Falling back to
+     * the UltiTools data source would serve an empty mailbox and split new mail from
+     * the mail already in the segment files.
+     *
+     * @throws IllegalStateException if the segment store cannot be opened
+     */
+    private MailStore createStore() {
+        if ("segment".equalsIgnoreCase(config.getStorageBackend())) {
+            File dir = new File(new File(bukkitPlugin.getDataFolder(), "mail"), "store");
+            try {
+                return new SegmentMailStore(dir, message -> plugin.getLogger().error(message));
+            } catch (IOException | RuntimeException e) {
+                plugin.getLogger().error("Failed to open segment mail store in " + dir + ": " + e.getMessage()
+                    + ". UltiMail stays disabled until the files can be opened"
+                    + " or storage.backend is changed.");
+                throw new IllegalStateException("segment mail store unavailable: " + e.getMessage(), e);
+            }
+        }
+        return new DataOperatorMailStore(plugin.getDataOperator(MailData.class));
+    }
+
+    /**
+     * Bring the mail tables up to the latest schema version.
+     * Only SQL data sources have a schema; other stores keep their own indexes.
+     * <p>
+     * Runs synchronously in {@link #init()} on the enabling thread, so no mail is written
+     * before the columns it maps exist. Building an index on a large {@code mail_messages}
+     * table therefore blocks server startup until the database finishes it.
+     */
+    public void migrateSchema() {
+        if (!(store instanceof DataOperatorMailStore)) {
+            return;
+        }
+        DataSource dataSource = DataSources.find(((DataOperatorMailStore) store).getDataOperator());
+        if (dataSource == null) {
+            dataSource = DataSources.find(UltiTools.getInstance());
+        }
+        if (dataSource == null) {
+            return;
+        }
+        // Lets the store use set-based statements where the DataOperator API has none
+        ((DataOperatorMailStore) store).setDataSource(dataSource);
+        new MigrationRunner(dataSource, plugin.getLogger()).run(MailMigrations.all());
+    }
+
+    /**
+     * Operation metrics of the mail system.
+     */
+    public MailMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Shared cache of mail icon renders for the GUIs.
+     */
+    public MailRenderCache getRenderCache() {
+        return renderCache;
+    }
+
+    /**
+     * The store mails are persisted in.
+     */
+    public MailStore getStore() {
+        return store;
+    }
+
+    /**
+     * The archiver, created on first use because it needs the store.
+     */
+    private MailArchiver archiver() {
+        if (archiver == null) {
+            archiver = new MailArchiver(store, plugin.getDataOperator(MailArchiveData.class),
+                plugin.getDataOperator(MailArchiveBlob.class));
+        }
+        return archiver;
+    }
+
+    /**
+     * The broadcast groups, created on first use like the archiver.
+     */
+    private MailGroups groups() {
+        if (groups == null) {
+            groups = new MailGroups(plugin.getDataOperator(MailGroupData.class));
+        }
+        return groups;
+    }
+
+    /**
+     * Write the collected broadcast counters off-thread, unless a write is already pending.
+     */
+    private void scheduleGroupFlush(boolean needed) {
+        if (needed) {
+            Bukkit.getScheduler().runTaskAsynchronously(bukkitPlugin, this::flushGroups);
+        }
+    }
+
+    /**
+     * Write the collected broadcast counters.
+     */
+    public void flushGroups() {
+        try {
+            groups().flush();
+        } catch (Exception e) {
+            plugin.getLogger().warn("Failed to update broadcast counters: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Remove mails older than {@code mail-expire-days}, along with archived months that ended
+     * and broadcasts sent before then. Only runs at startup when {@code purge-expired-mails}
+     * is on. Unread mails, unclaimed attachments and commands not yet run are kept.
+     */
+    public void purgeExpiredMails() {
+        long cutoff = System.currentTimeMillis() - config.getMailExpireDays() * 86_400_000L;
+        try {
+            int removed = store.deleteExpired(cutoff);
+            if (removed > 0) {
+                rebuildReceiverFilter();
+            }
+            archiver().purge(cutoff);
+            groups().purge(cutoff);
+        } catch (Exception e) {
+            plugin.getLogger().warn("Failed to purge expired mails: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Move read, claimed mails older than {@code archive.after-days} into the monthly archives.
+     */
+    public void archiveOldMails() {
+        long cutoff = System.currentTimeMillis() - config.getArchiveAfterDays() * 86_400_000L;
+        long start = System.nanoTime();
+        try {
+            int archived = archiver().archive(cutoff);
+            if (archived > 0) {
+                plugin.getLogger().info("Archived " + archived + " mails in "
+                    + (System.nanoTime() - start) / 1_000_000 + " ms");
+            }
+        } catch (Exception e) {
+            plugin.getLogger().warn("Failed to archive mails: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Load the inbox of a player off-thread.
+     *
+     * @param prepare  Run on the worker with the loaded mails before the callback, may be null
+     * @param callback Called on the main thread with the mails, newest first
+     */
+    public void loadInbox(UUID playerUuid, Consumer<List<MailData>> prepare, Consumer<List<MailData>> callback) {
+        Bukkit.getScheduler().runTaskAsynchronously(bukkitPlugin, () -> {
+            List<MailData> mails;
+            try {
+                mails = getInbox(playerUuid);
+            } catch (Exception e) {
+                plugin.getLogger().error("Failed to load inbox: " + e.getMessage());
+                mails = new ArrayList<>();
+            }
+            if (prepare != null) {
+                try {
+                    prepare.accept(mails);
+                } catch (Exception e) {
+                    // Only a warm-up, the callback renders whatever is missing
+                    plugin.getLogger().warn("Failed to prepare inbox: " + e.getMessage());
+                }
+            }
+            List<MailData> loaded = mails;
+            taskScheduler.submit(() -> callback.accept(loaded));
+        });
+    }
+
+    /**
+     * Load the archived months of a player off-thread.
+     *
+     * @param callback Called on the main thread with the months, newest first
+     */
+    public void loadArchiveMonths(UUID playerUuid, Consumer<List<MailArchiveData>> callback) {
+        Bukkit.getScheduler().runTaskAsynchronously(bukkitPlugin, () -> {
+            List<MailArchiveData> months;
+            try {
+                months = archiver().getMonths(playerUuid.toString());
+            } catch (Exception e) {
+                plugin.getLogger().error("Failed to load mail archives: " + e.getMessage());
+                months = new ArrayList<>();
+            }
+            List<MailArchiveData> loaded = months;
+            taskScheduler.submit(() -> callback.accept(loaded));
+        });
+    }
+
+    /**
+     * Load and decompress one archived month of a player off-thread.
+     *
+     * @param month    Month as {@code yyyy-MM}
+     * @param callback Called on the main thread with the mails, newest first
+     */
+    public void loadArchive(UUID playerUuid, String month, Consumer<List<MailData>> callback) {
+        Bukkit.getScheduler().runTaskAsynchronously(bukkitPlugin, () -> {
+            List<MailData> mails;
+            try {
+                mails = archiver().load(playerUuid.toString(), month);
+            } catch (Exception e) {
+                plugin.getLogger().error("Failed to load mail archive: " + e.getMessage());
+                mails = new ArrayList<>();
+            }
+            List<MailData> loaded = mails;
+            taskScheduler.submit(() -> callback.accept(loaded));
+        });
+    }
+
+    /**
+     * Reopen claims the previous run persisted but never delivered.
+     * <p>
+     * A claim is reopened only if the row still carries the version the claim wrote,
+     * so a mail changed or claimed again since is left alone. A crash right after
+     * delivery can reopen a delivered claim; see {@link ClaimJournal} for that window.
+     */
+    public void recoverClaims() {
+        for (ClaimJournal.Intent intent : claimJournal.getRecoveredIntents()) {
+            try {
+                settleIntent(intent.getMailId(), intent.getPlayerUuid(), intent.getVersion());
+            } catch (Exception e) {
+                plugin.getLogger().error("Failed to recover claim: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Close a claim intent whose items were never handed out.
+     * The claim is reopened if the row still carries the version it wrote.
+     *
+     * @throws IllegalAccessException if the row cannot be written; the intent stays open
+     */
+    private void settleIntent(String mailId, UUID playerUuid, long version) throws IllegalAccessException {
+        MailData mail = store.getById(mailId);
+        if (mail != null && compareAndSet(mail,
+                m -> m.isClaimed() && m.getVersion() == version,
+                m -> m.setClaimed(false))) {
+            plugin.getLogger().warn("Reopened interrupted claim of mail " + mailId + " for " + playerUuid);
+            if (mail.getGroupId() != null) {
+                scheduleGroupFlush(groups().recordClaimed(mail.getGroupId(), -1));
+            }
+        }
+        claimJournal.complete(mailId);
+    }
+
+    /**
+     * Rebuild the receiver filter from the receivers of all stored mails.
+     * The rebuild begins before the scan, so mails sent while it runs are not missed.
+     * Does nothing while the filter is not {@linkplain #isReceiverFilterEnabled() enabled}.
+     */
+    public void rebuildReceiverFilter() {
+        if (!isReceiverFilterEnabled()) {
+            return;
+        }
+        ReceiverFilter.Rebuild fresh = receiverFilter.beginRebuild();
+        try {
+            store.forEachReceiver(fresh::add);
+        } catch (Exception e) {
+            receiverFilter.abortRebuild(fresh);
+            plugin.getLogger().warn("Failed to build receiver filter: " + e.getMessage());
+            return;
+        }
+        receiverFilter.finishRebuild(fresh);
+    }
+
+    /**
+     * Whether the receiver filter answers "no mail" lookups.
+     * <p>
+     * The filter only sees inserts made by this process, so on a database that other
+     * servers or a web panel also write to, it would hide their new mails. It is
+     * therefore used only for stores this process writes alone, or when
+     * {@code storage.receiver-filter} says the shared database has no other writer.
+     */
+    boolean isReceiverFilterEnabled() {
+        return store.isSoleWriter() || config.isReceiverFilterEnabled();
+    }
+
     /**
      * Get the mail configuration.
      */
@@ -99,22 +503,41 @@ public class MailService {
      */
     public boolean sendMail(Player sender, String receiverName, String subject, String content, 
                            ItemStack[] items, List<String> commands) {
+        long start = mainThread.begin();
+        MailEvents.Span event = MailEvents.begin(MailEvents.Kind.SEND);
+        MailData sent = null;
+        try {
+            sent = doSendMail(sender, receiverName, subject, content, items, commands);
+            return sent != null;
+        } finally {
+            metrics.record(Operation.SEND, start, sent != null);
+            MailData mail = sent;
+            event.end(sender.getName(), mail != null ? 1 : 0, () -> payloadSize(mail));
+            mainThread.end(Operation.SEND, start, sender.getName(), mail != null ? 1 : 0, () -> payloadSize(mail));
+        }
+    }
+    
+    /**
+     * @return the mail sent, or null if it was rejected
+     */
+    private MailData doSendMail(Player sender, String receiverName, String subject, String content,
+                               ItemStack[] items, List<String> commands) {
         // Check cooldown
         if (isOnCooldown(sender.getUniqueId())) {
             sender.sendMessage(ChatColor.RED + i18n("send_cooldown"));
-            return false;
+            return null;
         }
         
         // Validate subject and content
         if (subject.length() > config.getMaxSubjectLength()) {
             sender.sendMessage(ChatColor.RED + i18n("send_subject_too_long")
                 .replace("{0}", String.valueOf(config.getMaxSubjectLength())));
-            return false;
+            return null;
         }
         if (content.length() > config.getMaxContentLength()) {
             sender.sendMessage(ChatColor.RED + i18n("send_content_too_long")
                 .replace("{0}", String.valueOf(config.getMaxContentLength())));
-            return false;
+            return null;
         }
         
         // Get receiver UUID (may be offline)
@@ -122,7 +545,7 @@ public class MailService {
         if (receiverUuid == null) {
             sender.sendMessage(ChatColor.RED + i18n("send_player_not_found")
                 .replace("{0}", receiverName));
-            return false;
+            return null;
         }
         
         // Create mail data
@@ -132,19 +555,19 @@ public class MailService {
         if (mail == null) {
             sender.sendMessage(ChatColor.RED + i18n("send_items_too_many")
                 .replace("{0}", String.valueOf(config.getMaxItems())));
-            return false;
+            return null;
         }
         
         // Save to database
-        dataOperator.insert(mail);
+        insertMail(mail);
         
         // Set cooldown
         sendCooldowns.put(sender.getUniqueId(), System.currentTimeMillis());
         
         // Notify receiver if online
-        notifyReceiver(receiverName, sender.getName());
+        notifyReceiver(receiverUuid, sender.getName());
         
-        return true;
+        return mail;
     }
     
     /**
@@ -162,54 +585,76 @@ public class MailService {
         new BukkitRunnable() {
             @Override
             public void run() {
+                // One sentbox entry for the whole broadcast instead of a row per player
+                MailGroupData group = groups().create(senderUuid, senderName, subject, content,
+                    items != null && Arrays.stream(items).anyMatch(item -> item != null && item.getType() != Material.AIR));
                 OfflinePlayer[] players = Bukkit.getOfflinePlayers();
                 int total = players.length;
                 int sent = 0;
+                MailMetrics.Job job = metrics.startJob(Operation.BROADCAST, total);
+                MailEvents.Span chunk = MailEvents.begin(MailEvents.Kind.BROADCAST_CHUNK);
+                int processed = 0;
+                int chunkMails = 0;
+                long chunkBytes = 0;
                 
-                for (OfflinePlayer offline : players) {
-                    if (offline.getUniqueId().equals(sender.getUniqueId())) {
-                        continue; // Skip sender
-                    }
+                boolean completed = false;
+                try {
+                    for (OfflinePlayer offline : players) {
+                        if (processed > 0 && processed % EVENT_CHUNK == 0) {
+                            long bytes = chunkBytes;
+                            chunk.end(senderName, chunkMails, () -> bytes);
+                            chunk = MailEvents.begin(MailEvents.Kind.BROADCAST_CHUNK);
+                            chunkMails = 0;
+                            chunkBytes = 0;
+                        }
+                        processed++;
+                        job.advance();
+                        if (offline.getUniqueId().equals(sender.getUniqueId())) {
+                            continue; // Skip sender
+                        }
                     
-                    MailData mail = createMailData(senderUuid, senderName,
-                        offline.getUniqueId().toString(), 
-                        offline.getName() != null ? offline.getName() : "Unknown",
-                        subject, content, items, null);
+                        MailData mail = createMailData(senderUuid, senderName,
+                            offline.getUniqueId().toString(), 
+                            offline.getName() != null ? offline.getName() : "Unknown",
+                            subject, content, items, null);
                     
-                    if (mail != null) {
-                        dataOperator.insert(mail);
-                        sent++;
+                        if (mail != null) {
+                            mail.setGroupId(group.getId());
+                            mail.setDeletedBySender(true);
+                            insertMail(mail);
+                            groups().recordDelivered(group.getId(), 1);
+                            sent++;
+                            chunkMails++;
+                            chunkBytes += payloadSize(mail);
                         
-                        // Notify if online
-                        if (offline.isOnline()) {
-                            Player onlinePlayer = offline.getPlayer();
-                            if (onlinePlayer != null) {
-                                notifyReceiver(onlinePlayer.getName(), senderName);
+                            // Notify if online
+                            if (offline.isOnline()) {
+                                Player onlinePlayer = offline.getPlayer();
+                                if (onlinePlayer != null) {
+                                    notifyReceiver(onlinePlayer.getUniqueId().toString(), senderName);
+                                }
                             }
-                        }
-                    }
-                    
-                    // Progress update every 50 players
-                    if (sent % 50 == 0) {
-                        final int currentSent = sent;
-                        new BukkitRunnable() {
-                            @Override
-                            public void run() {
-                                sender.sendMessage(ChatColor.YELLOW + i18n("sendall_progress")
+                        
+                            // Progress update every 50 players
+                            if (sent % 50 == 0) {
+                                final int currentSent = sent;
+                                taskScheduler.submit(() -> sender.sendMessage(ChatColor.YELLOW + i18n("sendall_progress")
                                     .replace("{0}", String.valueOf(currentSent))
-                                    .replace("{1}", String.valueOf(total)));
+                                    .replace("{1}", String.valueOf(total))));
                             }
-                        }.runTask(bukkitPlugin);
+                        }
                     }
+                    completed = true;
+                } finally {
+                    long bytes = chunkBytes;
+                    chunk.end(senderName, chunkMails, () -> bytes);
+                    job.finish(completed);
+                    metrics.add(Counter.BROADCAST_MAILS, sent);
+                    flushGroups();
                 }
                 
                 // Final notification
-                new BukkitRunnable() {
-                    @Override
-                    public void run() {
-                        sender.sendMessage(ChatColor.GREEN + i18n("sendall_success"));
-                    }
-                }.runTask(bukkitPlugin);
+                taskScheduler.submit(() -> sender.sendMessage(ChatColor.GREEN + i18n("sendall_success")));
             }
         }.runTaskAsynchronously(bukkitPlugin);
     }
@@ -254,14 +699,25 @@ public class MailService {
         return mail;
     }
     
+    /**
+     * Insert a mail and record its receiver in the filter.
+     * Used for mails built outside of this service, such as recall mails.
+     */
+    public void insertMail(MailData mail) {
+        store.insert(mail);
+        receiverFilter.recordInsert(mail.getReceiverUuid());
+    }
+    
     /**
      * Notify receiver about new mail.
+     * Notifications are merged per receiver and sent once per merge window.
      */
-    private void notifyReceiver(String receiverName, String senderName) {
-        Player receiver = Bukkit.getPlayerExact(receiverName);
-        if (receiver != null && receiver.isOnline()) {
-            String message = config.getMailReceivedMessage().replace("{SENDER}", senderName);
-            receiver.sendMessage(ChatColor.translateAlternateColorCodes('&', message));
+    private void notifyReceiver(String receiverUuid, String senderName) {
+        long start = mainThread.begin();
+        try {
+            notificationAggregator.enqueue(UUID.fromString(receiverUuid), senderName);
+        } finally {
+            mainThread.end(Operation.NOTIFY, start, receiverUuid, 1, () -> 0);
         }
     }
     
@@ -272,9 +728,64 @@ public class MailService {
      * @return List of received mails
      */
     public List<MailData> getInbox(UUID playerUuid) {
-        List<MailData> mails = dataOperator.query()
-            .where("receiver_uuid").eq(playerUuid.toString())
-            .list();
+        long start = mainThread.begin();
+        MailEvents.Span event = MailEvents.begin(MailEvents.Kind.INBOX_LOAD);
+        List<MailData> inbox = null;
+        try {
+            inbox = findInbox(playerUuid);
+            return inbox;
+        } finally {
+            metrics.record(Operation.INBOX_LOAD, start);
+            List<MailData> loaded = inbox != null ? inbox : Collections.emptyList();
+            event.end(playerUuid.toString(), loaded.size(), () -> payloadSize(loaded));
+            mainThread.end(Operation.INBOX_LOAD, start, playerUuid.toString(), loaded.size(),
+                () -> payloadSize(loaded));
+        }
+    }
+    
+    /**
+     * Get the inbox for a listing and remember its order, so later index commands
+     * resolve against what the player saw.
+     *
+     * @param playerUuid Player UUID
+     * @return List of received mails, newest first
+     */
+    public List<MailData> listInbox(UUID playerUuid) {
+        List<MailData> mails = getInbox(playerUuid);
+        inboxSnapshots.record(playerUuid, mails);
+        return mails;
+    }
+    
+    /**
+     * Resolve a 1-based index from the player's last inbox listing with a single
+     * fetch by id. Without a live listing the inbox is listed again.
+     *
+     * @param playerUuid Player UUID
+     * @param index      Index as shown by the listing
+     * @return The mail, or null if the index is out of range or the mail is gone
+     */
+    public MailData getInboxMail(UUID playerUuid, int index) {
+        InboxSnapshots.Snapshot snapshot = inboxSnapshots.get(playerUuid);
+        if (snapshot == null) {
+            List<MailData> mails = listInbox(playerUuid);
+            return index >= 1 && index <= mails.size() ? mails.get(index - 1) : null;
+        }
+        String id = snapshot.idAt(index);
+        if (id == null) {
+            return null;
+        }
+        MailData mail = store.getById(id);
+        if (mail == null || mail.isDeletedByReceiver() || !playerUuid.toString().equals(mail.getReceiverUuid())) {
+            return null;
+        }
+        return mail;
+    }
+    
+    private List<MailData> findInbox(UUID playerUuid) {
+        if (!mightHaveMail(playerUuid)) {
+            return new ArrayList<>();
+        }
+        List<MailData> mails = store.findByReceiver(playerUuid.toString());
 
         // Filter out deleted
         List<MailData> result = new ArrayList<>();
@@ -296,43 +807,63 @@ public class MailService {
      * @return List of sent mails
      */
     public List<MailData> getSentMails(UUID playerUuid) {
-        List<MailData> mails = dataOperator.query()
-            .where("sender_uuid").eq(playerUuid.toString())
-            .list();
-
-        // Filter out deleted
-        List<MailData> result = new ArrayList<>();
-        for (MailData mail : mails) {
-            if (!mail.isDeletedBySender()) {
-                result.add(mail);
-            }
+        return store.findSentbox(playerUuid.toString());
+    }
+    
+    /**
+     * Get the broadcasts a player sent, one entry per broadcast.
+     *
+     * @param playerUuid Player UUID
+     * @return Broadcasts, newest first, with their current counters
+     */
+    public List<MailGroupData> getSentGroups(UUID playerUuid) {
+        try {
+            return groups().getGroups(playerUuid.toString());
+        } catch (Exception e) {
+            plugin.getLogger().error("Failed to load broadcasts: " + e.getMessage());
+            return new ArrayList<>();
         }
-
-        result.sort((a, b) -> Long.compare(b.getSentTime(), a.getSentTime()));
-        return result;
     }
     
     /**
      * Get unread mail count.
+     * Players without any mail are answered from the receiver filter.
      */
     public int getUnreadCount(UUID playerUuid) {
-        List<MailData> inbox = getInbox(playerUuid);
-        int count = 0;
-        for (MailData mail : inbox) {
-            if (!mail.isRead()) {
-                count++;
+        long start = mainThread.begin();
+        int unread = 0;
+        try {
+            if (mightHaveMail(playerUuid)) {
+                unread = store.countUnread(playerUuid.toString());
             }
+            return unread;
+        } finally {
+            metrics.record(Operation.UNREAD_COUNT, start);
+            mainThread.end(Operation.UNREAD_COUNT, start, playerUuid.toString(), unread, () -> 0);
+        }
+    }
+    
+    /**
+     * Ask the receiver filter, counting lookups it answered without the store as hits.
+     * Without the filter every player might have mail.
+     */
+    private boolean mightHaveMail(UUID playerUuid) {
+        if (!isReceiverFilterEnabled()) {
+            return true;
         }
-        return count;
+        boolean might = receiverFilter.mightHaveMail(playerUuid);
+        metrics.increment(might ? Counter.RECEIVER_FILTER_MISSES : Counter.RECEIVER_FILTER_HITS);
+        return might;
     }
     
     /**
      * Mark mail as read.
      */
     public void markAsRead(MailData mail) {
-        mail.setRead(true);
         try {
-            dataOperator.update(mail);
+            if (compareAndSet(mail, m -> !m.isRead(), m -> m.setRead(true)) && mail.getGroupId() != null) {
+                scheduleGroupFlush(groups().recordRead(mail.getGroupId()));
+            }
         } catch (IllegalAccessException e) {
             plugin.getLogger().error("Failed to mark mail as read: " + e.getMessage());
         }
@@ -345,42 +876,341 @@ public class MailService {
         if (!mail.hasItems()) {
             return 0;
         }
-        ItemStack[] items = deserializeItems(mail.getItems());
-        return items != null ? items.length : 0;
+        return decodeItems(mail).length;
+    }
+    
+    /**
+     * Number of extra empty slots the player needs to claim a mail's items.
+     * Items merge into similar stacks already in the inventory.
+     *
+     * @return 0 if the items fit
+     */
+    public int getMissingSlots(MailData mail, Player player) {
+        if (!mail.hasItems()) {
+            return 0;
+        }
+        return new InventoryFitSimulator().load(player.getInventory()).getMissingSlots(decodeItems(mail));
     }
     
     /**
      * Claim items from mail.
-     * Does NOT check for inventory space - caller should check first.
-     * 
-     * @return claimed items, or empty array if already claimed
+     * Does NOT check for inventory space - caller should check first
+     * with {@link #getMissingSlots(MailData, Player)}.
+     * <p>
+     * Must be called on the main thread. The claim is won here; the journal intent is
+     * then fsynced off the main thread together with other pending claims, and the
+     * items are handed out on the main thread once it is on disk. If the player left
+     * meanwhile, the claim is released and the callback is not called.
+     *
+     * @param callback Called on the main thread with the claimed items, or an empty
+     *                 array if already claimed (here or elsewhere)
      */
-    public ItemStack[] claimItems(MailData mail, Player player) {
+    public void claimItems(MailData mail, Player player, Consumer<ItemStack[]> callback) {
+        long start = mainThread.begin();
+        MailEvents.Span event = MailEvents.begin(MailEvents.Kind.CLAIM);
+        Consumer<ItemStack[]> timed = items -> {
+            boolean claimed = items.length > 0;
+            metrics.record(Operation.CLAIM, start, claimed);
+            event.end(player.getName(), claimed ? 1 : 0, () -> payloadSize(mail));
+            callback.accept(items);
+        };
+        try {
+            startClaimItems(mail, player, timed);
+        } finally {
+            mainThread.end(Operation.CLAIM, start, player.getName(), 1, () -> payloadSize(mail));
+        }
+    }
+    
+    private void startClaimItems(MailData mail, Player player, Consumer<ItemStack[]> callback) {
         if (mail.isClaimed() || mail.getItems() == null || mail.getItems().isEmpty()) {
-            return new ItemStack[0];
+            callback.accept(new ItemStack[0]);
+            return;
         }
         
-        ItemStack[] items = deserializeItems(mail.getItems());
-        if (items == null || items.length == 0) {
-            return new ItemStack[0];
+        ItemStack[] items = decodeItems(mail);
+        if (items.length == 0) {
+            callback.accept(new ItemStack[0]);
+            return;
+        }
+        
+        // Win the claim before handing anything out
+        if (!tryClaim(mail, player.getUniqueId())) {
+            callback.accept(new ItemStack[0]);
+            return;
+        }
+        // The intent must be on disk before the items exist
+        claimJournal.afterSync(() -> taskScheduler.submit(() -> applyClaim(player, mail, items, callback)));
+    }
+    
+    /**
+     * Hand out the attachments of a mail whose claim intent is on disk.
+     * If the player left meanwhile, the claim is released again.
+     */
+    private void applyClaim(Player player, MailData mail, ItemStack[] items, Consumer<ItemStack[]> callback) {
+        long start = mainThread.begin();
+        try {
+            if (!player.isOnline()) {
+                Bukkit.getScheduler().runTaskAsynchronously(bukkitPlugin, () -> {
+                    releaseClaim(mail);
+                    claimJournal.complete(mail.getId());
+                });
+                return;
+            }
+            
+            HashMap<Integer, ItemStack> overflow = player.getInventory().addItem(items);
+            
+            // Drop overflow items (should not happen if caller checked space)
+            for (ItemStack item : overflow.values()) {
+                player.getWorld().dropItemNaturally(player.getLocation(), item);
+            }
+            claimJournal.complete(mail.getId());
+            
+            callback.accept(items);
+        } finally {
+            mainThread.end(Operation.CLAIM, start, player.getName(), 1, () -> payloadSize(mail));
+        }
+    }
+    
+    /**
+     * Claim the attachments of every unclaimed mail in the player's inbox.
+     *
+     * @see #claimAll(Player, List, Consumer)
+     */
+    public void claimAll(Player player, Consumer<ClaimAllResult> callback) {
+        claimAll(player, null, callback);
+    }
+    
+    /**
+     * Claim as many unclaimed attachments as fit in the player's inventory.
+     * <p>
+     * Must be called on the main thread. The inventory is snapshotted into an
+     * {@link InventoryFitSimulator} here, then attachments are decoded in parallel
+     * off-thread and the largest set of mails that fits the snapshot is chosen.
+     * The claimed flags are written off-thread, with one journal fsync for the
+     * whole batch, and the items are then handed out on the main thread. If the
+     * off-thread part fails, the claims it already won are released and the
+     * callback gets a {@linkplain ClaimAllResult#isFailed() failed} result.
+     *
+     * @param player   Player claiming
+     * @param mails    Mails to claim from, or null to load the inbox off-thread
+     * @param callback Called on the main thread with the result
+     */
+    public void claimAll(Player player, List<MailData> mails, Consumer<ClaimAllResult> callback) {
+        long start = mainThread.begin();
+        Consumer<ClaimAllResult> timed = result -> {
+            metrics.record(Operation.CLAIM_ALL, start, !result.isBusy() && !result.isFailed());
+            callback.accept(result);
+        };
+        try {
+            startClaimAll(player, mails, timed);
+        } finally {
+            mainThread.end(Operation.CLAIM_ALL, start, player.getName(), mails != null ? mails.size() : 0,
+                () -> mails != null ? payloadSize(mails) : 0);
+        }
+    }
+    
+    private void startClaimAll(Player player, List<MailData> mails, Consumer<ClaimAllResult> callback) {
+        UUID playerUuid = player.getUniqueId();
+        if (!claimAllInProgress.add(playerUuid)) {
+            callback.accept(ClaimAllResult.busy());
+            return;
         }
         
-        // Give items to player
-        HashMap<Integer, ItemStack> overflow = player.getInventory().addItem(items);
+        // Primitive snapshot of the storage, safe to use off-thread
+        InventoryFitSimulator simulator = new InventoryFitSimulator().load(player.getInventory());
         
-        // Drop overflow items (should not happen if caller checked space)
-        for (ItemStack item : overflow.values()) {
-            player.getWorld().dropItemNaturally(player.getLocation(), item);
+        Bukkit.getScheduler().runTaskAsynchronously(bukkitPlugin, () -> {
+            List<MailData> won = new ArrayList<>();
+            try {
+                List<MailData> candidates = new ArrayList<>();
+                for (MailData mail : mails != null ? mails : getInbox(playerUuid)) {
+                    if (mail.hasItems() && !mail.isClaimed()) {
+                        candidates.add(mail);
+                    }
+                }
+                
+                List<ItemStack[]> decoded = candidates.parallelStream()
+                    .map(this::decodeItems)
+                    .collect(Collectors.toList());
+                
+                // Fewest stacks first, so the chosen set holds as many mails as possible
+                Integer[] order = new Integer[candidates.size()];
+                for (int i = 0; i < order.length; i++) {
+                    order[i] = i;
+                }
+                Arrays.sort(order, Comparator.comparingInt(i -> decoded.get(i).length));
+                
+                List<ItemStack[]> ordered = new ArrayList<>(order.length);
+                for (int i : order) {
+                    ordered.add(decoded.get(i));
+                }
+                boolean[] fitting = simulator.selectFitting(ordered);
+                
+                List<MailData> selected = new ArrayList<>();
+                List<ItemStack[]> selectedItems = new ArrayList<>();
+                for (int k = 0; k < order.length; k++) {
+                    if (fitting[k]) {
+                        selected.add(candidates.get(order[k]));
+                        selectedItems.add(ordered.get(k));
+                    }
+                }
+                int skipped = candidates.size() - selected.size();
+                
+                // Win every claim before any item is handed out
+                List<ItemStack[]> wonItems = new ArrayList<>();
+                for (int k = 0; k < selected.size(); k++) {
+                    if (tryClaim(selected.get(k), playerUuid)) {
+                        won.add(selected.get(k));
+                        wonItems.add(selectedItems.get(k));
+                    }
+                }
+                // One fsync covers the whole batch of intents
+                claimJournal.sync();
+                
+                taskScheduler.submit(() -> applyClaims(player, won, wonItems, skipped, callback));
+            } catch (Exception e) {
+                plugin.getLogger().error("Failed to prepare claim all: " + e.getMessage());
+                // Nothing was handed out yet, so undo the claims won so far
+                for (MailData mail : won) {
+                    releaseClaim(mail);
+                    claimJournal.complete(mail.getId());
+                }
+                claimAllInProgress.remove(playerUuid);
+                taskScheduler.submit(() -> callback.accept(ClaimAllResult.failed()));
+            }
+        });
+    }
+    
+    /**
+     * Hand out the attachments of mails already claimed off-thread.
+     * If the player left meanwhile, the claims are released again.
+     */
+    private void applyClaims(Player player, List<MailData> mails, List<ItemStack[]> items,
+                             int skipped, Consumer<ClaimAllResult> callback) {
+        long start = mainThread.begin();
+        try {
+            handOutClaims(player, mails, items, skipped, callback);
+        } finally {
+            mainThread.end(Operation.CLAIM_ALL, start, player.getName(), mails.size(), () -> payloadSize(mails));
+        }
+    }
+    
+    private void handOutClaims(Player player, List<MailData> mails, List<ItemStack[]> items,
+                               int skipped, Consumer<ClaimAllResult> callback) {
+        claimAllInProgress.remove(player.getUniqueId());
+        if (!player.isOnline()) {
+            Bukkit.getScheduler().runTaskAsynchronously(bukkitPlugin, () -> {
+                for (MailData mail : mails) {
+                    releaseClaim(mail);
+                    claimJournal.complete(mail.getId());
+                }
+            });
+            return;
+        }
+        
+        int itemCount = 0;
+        for (int i = 0; i < mails.size(); i++) {
+            HashMap<Integer, ItemStack> overflow = player.getInventory().addItem(items.get(i));
+            // The inventory may have changed since the snapshot
+            for (ItemStack item : overflow.values()) {
+                player.getWorld().dropItemNaturally(player.getLocation(), item);
+            }
+            claimJournal.complete(mails.get(i).getId());
+            itemCount += items.get(i).length;
         }
         
-        // Mark as claimed
-        mail.setClaimed(true);
+        callback.accept(new ClaimAllResult(false, mails.size(), itemCount, skipped));
+    }
+    
+    /**
+     * Mark a mail as claimed if nobody claimed it yet.
+     * <p>
+     * The journal intent is written under the mail lock, after the guard passed and
+     * right before the claimed flag, and carries the version that write will have.
+     * The caller completes the intent once the items are handed out. An intent
+     * whose write lost the race is completed here; if the write failed, the claim is
+     * settled right away and only left to {@link #recoverClaims()} if that fails too.
+     *
+     * @return true if this call won the claim
+     */
+    private boolean tryClaim(MailData mail, UUID playerUuid) {
+        // Version of the last intent begun, or -1 if the guard never began one
+        long[] intent = {-1};
         try {
-            dataOperator.update(mail);
+            boolean won = compareAndSet(mail, m -> {
+                if (m.isClaimed() || !claimJournal.begin(m.getId(), playerUuid, m.getVersion() + 1)) {
+                    return false;
+                }
+                if (m.getId() != null) {
+                    intent[0] = m.getVersion() + 1;
+                }
+                return true;
+            }, m -> m.setClaimed(true));
+            if (won && mail.getGroupId() != null) {
+                scheduleGroupFlush(groups().recordClaimed(mail.getGroupId(), 1));
+            } else if (!won && intent[0] >= 0) {
+                claimJournal.complete(mail.getId());
+            }
+            return won;
         } catch (IllegalAccessException e) {
+            mail.setClaimed(false);
             plugin.getLogger().error("Failed to claim items: " + e.getMessage());
+            if (intent[0] >= 0) {
+                try {
+                    settleIntent(mail.getId(), playerUuid, intent[0]);
+                } catch (IllegalAccessException retry) {
+                    plugin.getLogger().error("Claim of mail " + mail.getId()
+                        + " stays open until restart: " + retry.getMessage());
+                }
+            }
+            return false;
         }
-        
+    }
+    
+    /**
+     * Undo a claim whose items were never handed out.
+     */
+    private void releaseClaim(MailData mail) {
+        try {
+            if (compareAndSet(mail, MailData::isClaimed, m -> m.setClaimed(false)) && mail.getGroupId() != null) {
+                scheduleGroupFlush(groups().recordClaimed(mail.getGroupId(), -1));
+            }
+        } catch (IllegalAccessException e) {
+            plugin.getLogger().error("Failed to release claim: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Apply a state change as a compare-and-set on the row version.
+     * <p>
+     * The store reloads the row's flags and version into {@code mail}, so a stale copy
+     * never overwrites newer state, and applies the change only if {@code guard} accepts
+     * the stored state. A change that leaves the mail deleted by both sides removes the row.
+     *
+     * @return true if the change was applied
+     * @see MailStore#update(MailData, Predicate, Consumer)
+     */
+    private boolean compareAndSet(MailData mail, Predicate<MailData> guard, Consumer<MailData> change)
+            throws IllegalAccessException {
+        if (!store.update(mail, guard, change)) {
+            return false;
+        }
+        if (mail.isDeletedBySender() && mail.isDeletedByReceiver()) {
+            receiverFilter.recordDelete(mail.getReceiverUuid());
+        }
+        return true;
+    }
+    
+    /**
+     * Decode the attachments of a mail.
+     */
+    ItemStack[] decodeItems(MailData mail) {
+        MailEvents.Span event = MailEvents.begin(MailEvents.Kind.DECODE);
+        ItemStack[] items = deserializeItems(mail.getItems());
+        if (items == null) {
+            items = new ItemStack[0];
+        }
+        event.end(mail.getReceiverName(), items.length, () -> length(mail.getItems()));
         return items;
     }
     
@@ -388,6 +1218,10 @@ public class MailService {
      * Execute commands attached to a mail.
      * Supports mixed mode: normal commands run as player, console: prefixed commands run as console.
      * Supports %player% placeholder.
+     * <p>
+     * The mail is marked as executed right away; the commands themselves are queued on
+     * the {@link CommandDispatcher} so a large batch is spread over several ticks.
+     * Player commands that come up while the player is offline wait for their rejoin.
      */
     public void executeMailCommands(Player player, MailData mail) {
         if (!mail.hasCommands() || mail.isCommandsExecuted()) {
@@ -395,27 +1229,23 @@ public class MailService {
         }
         
         try {
-            List<String> commands = GSON.fromJson(mail.getCommands(), STRING_LIST_TYPE);
-            if (commands == null || commands.isEmpty()) {
+            List<CompiledCommand> commands = commandTemplates.get(mail.getCommands());
+            if (commands.isEmpty()) {
                 return;
             }
             
-            for (String command : commands) {
-                // Replace placeholders
-                String processedCmd = command.replace("%player%", player.getName());
-                
-                // Check if console command
-                if (processedCmd.toLowerCase().startsWith("console:")) {
-                    String consoleCmd = processedCmd.substring(8).trim();
-                    Bukkit.dispatchCommand(Bukkit.getConsoleSender(), consoleCmd);
-                } else {
-                    player.performCommand(processedCmd);
-                }
+            // Mark commands as executed; only the caller that wins runs them
+            boolean won;
+            try {
+                won = compareAndSet(mail, m -> !m.isCommandsExecuted(), m -> m.setCommandsExecuted(true));
+            } catch (IllegalAccessException e) {
+                plugin.getLogger().error("Failed to mark mail commands as executed: " + e.getMessage());
+                return;
             }
             
-            // Mark commands as executed
-            mail.setCommandsExecuted(true);
-            dataOperator.update(mail);
+            if (won) {
+                commandDispatcher.dispatch(player, commands);
+            }
             
         } catch (Exception e) {
             plugin.getLogger().error("Failed to execute mail commands: " + e.getMessage());
@@ -426,75 +1256,69 @@ public class MailService {
      * Delete mail (soft delete).
      */
     public void deleteMail(MailData mail, UUID playerUuid) {
-        if (mail.getSenderUuid().equals(playerUuid.toString())) {
-            mail.setDeletedBySender(true);
-        }
-        if (mail.getReceiverUuid().equals(playerUuid.toString())) {
-            mail.setDeletedByReceiver(true);
-        }
+        boolean isSender = mail.getSenderUuid().equals(playerUuid.toString());
+        boolean isReceiver = mail.getReceiverUuid().equals(playerUuid.toString());
         
-        // If both deleted, really delete
-        if (mail.isDeletedBySender() && mail.isDeletedByReceiver()) {
-            dataOperator.delById(mail.getId());
-        } else {
-            try {
-                dataOperator.update(mail);
-            } catch (IllegalAccessException e) {
-                plugin.getLogger().error("Failed to update mail: " + e.getMessage());
-            }
+        // If both sides end up deleted, the row is really deleted
+        try {
+            compareAndSet(mail, m -> true, m -> {
+                if (isSender) {
+                    m.setDeletedBySender(true);
+                }
+                if (isReceiver) {
+                    m.setDeletedByReceiver(true);
+                }
+            });
+        } catch (IllegalAccessException e) {
+            plugin.getLogger().error("Failed to update mail: " + e.getMessage());
         }
     }
     
     /**
-     * Delete all mails for a player (receiver side).
-     * 
-     * @return number of mails deleted
+     * Delete all mails for a player (receiver side), skipping unclaimed attachments.
+     *
+     * @param callback Called on the main thread with the number of mails deleted
+     * @see #deleteInbox(UUID, boolean, IntConsumer)
      */
-    public int deleteAllByReceiver(UUID playerUuid) {
-        List<MailData> mails = getInbox(playerUuid);
-        int count = 0;
-        
-        for (MailData mail : mails) {
-            // Skip if has unclaimed items
-            if (mail.hasItems() && !mail.isClaimed()) {
-                continue;
-            }
-            deleteMail(mail, playerUuid);
-            count++;
-        }
-        
-        return count;
+    public void deleteAllByReceiver(UUID playerUuid, IntConsumer callback) {
+        deleteInbox(playerUuid, false, callback);
     }
     
     /**
-     * Delete all read mails for a player (receiver side).
-     * 
-     * @return number of mails deleted
+     * Delete all read mails for a player (receiver side), skipping unclaimed attachments.
+     *
+     * @param callback Called on the main thread with the number of mails deleted
+     * @see #deleteInbox(UUID, boolean, IntConsumer)
      */
-    public int deleteReadByReceiver(UUID playerUuid) {
-        List<MailData> mails = getInbox(playerUuid);
-        int count = 0;
-        
-        for (MailData mail : mails) {
-            if (!mail.isRead()) {
-                continue;
-            }
-            // Skip if has unclaimed items
-            if (mail.hasItems() && !mail.isClaimed()) {
-                continue;
+    public void deleteReadByReceiver(UUID playerUuid, IntConsumer callback) {
+        deleteInbox(playerUuid, true, callback);
+    }
+    
+    /**
+     * Delete a player's inbox off-thread with one set-based store write.
+     */
+    private void deleteInbox(UUID playerUuid, boolean readOnly, IntConsumer callback) {
+        Bukkit.getScheduler().runTaskAsynchronously(bukkitPlugin, () -> {
+            int deleted = 0;
+            try {
+                InboxDeletion result = store.deleteInbox(playerUuid.toString(), readOnly);
+                for (int i = 0; i < result.getRemoved(); i++) {
+                    receiverFilter.recordDelete(playerUuid.toString());
+                }
+                deleted = result.getDeleted();
+            } catch (Exception e) {
+                plugin.getLogger().error("Failed to delete mails: " + e.getMessage());
             }
-            deleteMail(mail, playerUuid);
-            count++;
-        }
-        
-        return count;
+            int count = deleted;
+            taskScheduler.submit(() -> callback.accept(count));
+        });
     }
     
     /**
      * Get mail by ID.
      */
     public MailData getMail(String id) {
-        return dataOperator.getById(id);
+        return store.getById(id);
     }
     
     /**
@@ -511,10 +1335,29 @@ public class MailService {
      */
     public boolean sendMailInternal(UUID senderUuid, String senderName, String receiverName, 
                                     String subject, String content, ItemStack[] items) {
+        long start = mainThread.begin();
+        MailEvents.Span event = MailEvents.begin(MailEvents.Kind.SEND);
+        MailData sent = null;
+        try {
+            sent = doSendMailInternal(senderUuid, senderName, receiverName, subject, content, items);
+            return sent != null;
+        } finally {
+            metrics.record(Operation.SEND, start, sent != null);
+            MailData mail = sent;
+            event.end(senderName, mail != null ? 1 : 0, () -> payloadSize(mail));
+            mainThread.end(Operation.SEND, start, senderName, mail != null ? 1 : 0, () -> payloadSize(mail));
+        }
+    }
+    
+    /**
+     * @return the mail sent, or null if it could not be created
+     */
+    private MailData doSendMailInternal(UUID senderUuid, String senderName, String receiverName,
+                                       String subject, String content, ItemStack[] items) {
         // Get receiver UUID (may be offline)
         String receiverUuid = getPlayerUuid(receiverName);
         if (receiverUuid == null) {
-            return false;
+            return null;
         }
         
         // Create mail data
@@ -530,16 +1373,39 @@ public class MailService {
         );
         
         if (mail == null) {
-            return false;
+            return null;
         }
         
         // Save to database
-        dataOperator.insert(mail);
+        insertMail(mail);
         
         // Notify receiver if online
-        notifyReceiver(receiverName, senderName);
+        notifyReceiver(receiverUuid, senderName);
         
-        return true;
+        return mail;
+    }
+    
+    /**
+     * Approximate stored size of a mail in bytes, for the slow-operation log.
+     */
+    private static long payloadSize(MailData mail) {
+        if (mail == null) {
+            return 0;
+        }
+        return length(mail.getSubject()) + length(mail.getContent())
+            + length(mail.getItems()) + length(mail.getCommands());
+    }
+    
+    private static long payloadSize(List<MailData> mails) {
+        long size = 0;
+        for (MailData mail : mails) {
+            size += payloadSize(mail);
+        }
+        return size;
+    }
+    
+    private static long length(String value) {
+        return value != null ? value.length() : 0;
     }
     
     /**
@@ -0,0 +1,182 @@
+package com.ultikits.plugins.mail.service;
+
+import com.ultikits.plugins.mail.config.MailConfig;
+import com.ultikits.ultitools.abstracts.UltiToolsPlugin;
+import com.ultikits.ultitools.annotations.Autowired;
+import com.ultikits.ultitools.annotations.Service;
+
+import org.bukkit.Bukkit;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cooperative main-thread scheduler for mail work.
+ * <p>
+ * Queued tasks run on the main thread, a few per tick, until the per-tick time
+ * budget ({@code tick-budget-micros}) is used up. The rest of the queue waits for
+ * the next tick, so a large burst of mail work is spread over several ticks
+ * instead of stalling one.
+ * <p>
+ * At least one task runs per tick, so a single slow task cannot starve the queue.
+ *
+ * @author wisdomme
+ * @version 1.0.0
+ */
+@Service
+public class MailTaskScheduler {
+
+    @Autowired
+    private UltiToolsPlugin plugin;
+
+    @Autowired
+    private MailConfig config;
+
+    private Plugin bukkitPlugin;
+
+    private final Queue<Runnable> queue = new ConcurrentLinkedQueue<>();
+    private boolean started = false;
+    private BukkitTask timer;
+
+    // Statistics
+    private volatile long lastTickNanos;
+    private volatile int lastTickTasks;
+    private volatile long maxTickNanos;
+    private final AtomicLong executedTasks = new AtomicLong();
+    private final AtomicLong busyTicks = new AtomicLong();
+    private final AtomicLong busyNanos = new AtomicLong();
+    private final AtomicLong overBudgetTicks = new AtomicLong();
+
+    /**
+     * Queue a task to run on the main thread within the tick budget.
+     * Safe to call from any thread.
+     */
+    public void submit(Runnable task) {
+        queue.add(task);
+        ensureStarted();
+    }
+
+    private synchronized void ensureStarted() {
+        if (started) {
+            return;
+        }
+        started = true;
+
+        // Lazy init bukkitPlugin
+        if (bukkitPlugin == null) {
+            bukkitPlugin = Bukkit.getPluginManager().getPlugin("UltiTools");
+        }
+        timer = Bukkit.getScheduler().runTaskTimer(bukkitPlugin, this::tick, 1L, 1L);
+    }
+
+    /**
+     * Cancel the per-tick timer. Tasks still queued stay queued and run once the
+     * next {@link #submit(Runnable)} starts the timer again.
+     */
+    public synchronized void stop() {
+        if (timer != null) {
+            timer.cancel();
+            timer = null;
+        }
+        started = false;
+    }
+
+    /**
+     * Run queued tasks until the tick budget is used up.
+     * Called once per tick by the timer.
+     */
+    public void tick() {
+        if (queue.isEmpty()) {
+            return;
+        }
+        long budget = getBudgetNanos();
+        long start = System.nanoTime();
+        long elapsed = 0;
+        int tasks = 0;
+
+        Runnable task;
+        while ((tasks == 0 || elapsed < budget) && (task = queue.poll()) != null) {
+            try {
+                task.run();
+            } catch (Exception e) {
+                plugin.getLogger().error("Mail task failed: " + e.getMessage());
+            }
+            tasks++;
+            elapsed = System.nanoTime() - start;
+        }
+
+        lastTickNanos = elapsed;
+        lastTickTasks = tasks;
+        if (elapsed > maxTickNanos) {
+            maxTickNanos = elapsed;
+        }
+        executedTasks.addAndGet(tasks);
+        busyTicks.incrementAndGet();
+        busyNanos.addAndGet(elapsed);
+        if (elapsed > budget) {
+            overBudgetTicks.incrementAndGet();
+        }
+    }
+
+    /**
+     * Number of tasks waiting to run.
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * Per-tick time budget in nanoseconds.
+     */
+    public long getBudgetNanos() {
+        return config.getTickBudgetMicros() * 1000L;
+    }
+
+    /**
+     * Time spent in the most recent tick that had work, in nanoseconds.
+     */
+    public long getLastTickNanos() {
+        return lastTickNanos;
+    }
+
+    /**
+     * Number of tasks run in the most recent tick that had work.
+     */
+    public int getLastTickTasks() {
+        return lastTickTasks;
+    }
+
+    /**
+     * Longest time spent in a single tick, in nanoseconds.
+     */
+    public long getMaxTickNanos() {
+        return maxTickNanos;
+    }
+
+    /**
+     * Average time spent per tick that had work, in nanoseconds.
+     */
+    public long getAverageTickNanos() {
+        long ticks = busyTicks.get();
+        return ticks == 0 ? 0 : busyNanos.get() / ticks;
+    }
+
+    /**
+     * Total number of tasks run.
+     */
+    public long getExecutedTasks() {
+        return executedTasks.get();
+    }
+
+    /**
+     * Number of ticks with work whose total run time exceeded the budget.
+     * The loop checks the budget only between tasks, so this counts the ticks
+     * in which the last task run (or a single slow task) pushed past it.
+     */
+    public long getOverBudgetTicks() {
+        return overBudgetTicks.get();
+    }
+}
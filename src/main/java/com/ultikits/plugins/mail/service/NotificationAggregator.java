@@ -0,0 +1,121 @@
+package com.ultikits.plugins.mail.service;
+
+import com.ultikits.plugins.mail.config.MailConfig;
+import com.ultikits.ultitools.annotations.Autowired;
+import com.ultikits.ultitools.annotations.Service;
+
+import org.bukkit.Bukkit;
+import org.bukkit.ChatColor;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+
+import java.util.*;
+
+/**
+ * Coalesces new-mail notifications per receiver.
+ * <p>
+ * Deliveries are collected by receiver UUID and flushed once per merge window
+ * on the main thread, so a receiver gets a single "you received N mails from X, Y…"
+ * line instead of one chat message per mail.
+ *
+ * @author wisdomme
+ * @version 1.0.0
+ */
+@Service
+public class NotificationAggregator {
+
+    private static final int MAX_LISTED_SENDERS = 3;
+
+    @Autowired
+    private MailConfig config;
+
+    private Plugin bukkitPlugin;
+
+    private Map<UUID, PendingNotice> pending = new LinkedHashMap<>();
+    private boolean flushScheduled = false;
+
+    /**
+     * Queue a new-mail notification for a receiver.
+     * Safe to call from any thread.
+     *
+     * @param receiverUuid Receiver UUID
+     * @param senderName   Sender name
+     */
+    public synchronized void enqueue(UUID receiverUuid, String senderName) {
+        pending.computeIfAbsent(receiverUuid, k -> new PendingNotice()).add(senderName);
+        if (flushScheduled) {
+            return;
+        }
+        flushScheduled = true;
+
+        // Lazy init bukkitPlugin
+        if (bukkitPlugin == null) {
+            bukkitPlugin = Bukkit.getPluginManager().getPlugin("UltiTools");
+        }
+        Bukkit.getScheduler().runTaskLater(bukkitPlugin, this::flush, config.getNotifyMergeTicks());
+    }
+
+    /**
+     * Number of receivers waiting for a notification.
+     */
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Send all pending notifications. Must run on the main thread.
+     */
+    public void flush() {
+        Map<UUID, PendingNotice> batch;
+        synchronized (this) {
+            batch = pending;
+            pending = new LinkedHashMap<>();
+            flushScheduled = false;
+        }
+
+        for (Map.Entry<UUID, PendingNotice> entry : batch.entrySet()) {
+            Player receiver = Bukkit.getPlayer(entry.getKey());
+            if (receiver != null && receiver.isOnline()) {
+                receiver.sendMessage(ChatColor.translateAlternateColorCodes('&', format(entry.getValue())));
+            }
+        }
+    }
+
+    private String format(PendingNotice notice) {
+        if (notice.count == 1) {
+            return config.getMailReceivedMessage().replace("{SENDER}", notice.senders.iterator().next());
+        }
+        StringBuilder senders = new StringBuilder();
+        int listed = 0;
+        for (String sender : notice.senders) {
+            if (listed == MAX_LISTED_SENDERS) {
+                senders.append("…");
+                break;
+            }
+            if (listed > 0) {
+                senders.append(", ");
+            }
+            senders.append(sender);
+            listed++;
+        }
+        return config.getMailReceivedBatchMessage()
+            .replace("{COUNT}", String.valueOf(notice.count))
+            .replace("{SENDERS}", senders.toString());
+    }
+
+    /**
+     * Deliveries merged for one receiver.
+     */
+    private static class PendingNotice {
+        int count;
+        final Set<String> senders = new LinkedHashSet<>();
+
+        void add(String senderName) {
+            count++;
+            // One extra name is enough to know the list needs an ellipsis
+            if (senders.size() <= MAX_LISTED_SENDERS) {
+                senders.add(senderName != null ? senderName : "System");
+            }
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.ultikits.plugins.mail.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Negative-result filter for receivers with live mail.
+ * <p>
+ * A counting bloom filter keyed by receiver UUID. A receiver is counted once per
+ * stored mail row: inserts increment, hard deletes decrement. A {@code false} from
+ * {@link #mightHaveMail(UUID)} is definite, so callers can answer "no mail" without
+ * a database round trip. Until the first rebuild completes every receiver is reported
+ * as possibly having mail.
+ * <p>
+ * A rebuild begins before the store is scanned and finishes after it, and inserts
+ * recorded in between are replayed on top of the new counters, so a mail inserted
+ * during the scan is counted whether or not the scan saw it.
+ * <p>
+ * Counters saturate at 255 and are then never decremented, which only ever causes
+ * false positives.
+ *
+ * @author wisdomme
+ * @version 1.0.0
+ */
+public class ReceiverFilter {
+
+    private static final int DEFAULT_SIZE_BITS = 20; // 1M counters, 1 MB
+    private static final int HASH_COUNT = 3;
+    private static final int SATURATED = 0xFF;
+
+    private final int mask;
+    private byte[] counters;
+    private boolean ready = false;
+    // Rebuilds between begin and finish; inserts are recorded while any is running
+    private int activeRebuilds = 0;
+    private final List<UUID> pendingInserts = new ArrayList<>();
+
+    public ReceiverFilter() {
+        this(DEFAULT_SIZE_BITS);
+    }
+
+    /**
+     * @param sizeBits log2 of the number of counters
+     */
+    public ReceiverFilter(int sizeBits) {
+        this.mask = (1 << sizeBits) - 1;
+        this.counters = new byte[1 << sizeBits];
+    }
+
+    /**
+     * Start a rebuild. Inserts recorded from now on are replayed on top of the new
+     * counters, so the store must be scanned only after this returns.
+     */
+    public synchronized Rebuild beginRebuild() {
+        if (activeRebuilds++ == 0) {
+            pendingInserts.clear();
+        }
+        return new Rebuild(pendingInserts.size());
+    }
+
+    /**
+     * Replace the counters with a completed rebuild.
+     */
+    public synchronized void finishRebuild(Rebuild fresh) {
+        for (UUID receiver : pendingInserts.subList(fresh.firstPending, pendingInserts.size())) {
+            increment(fresh.counters, receiver);
+        }
+        counters = fresh.counters;
+        ready = true;
+        endRebuild();
+    }
+
+    /**
+     * Give up a rebuild whose scan failed, keeping the current counters.
+     */
+    public synchronized void abortRebuild(Rebuild fresh) {
+        endRebuild();
+    }
+
+    private void endRebuild() {
+        if (--activeRebuilds == 0) {
+            pendingInserts.clear();
+        }
+    }
+
+    /**
+     * Record a newly inserted mail row.
+     */
+    public synchronized void recordInsert(String receiverUuid) {
+        UUID receiver = parse(receiverUuid);
+        if (receiver == null) {
+            return;
+        }
+        if (activeRebuilds > 0) {
+            pendingInserts.add(receiver);
+        }
+        increment(counters, receiver);
+    }
+
+    /**
+     * Record a hard-deleted mail row.
+     * Ignored while a rebuild is running; the stale count only causes false positives.
+     */
+    public synchronized void recordDelete(String receiverUuid) {
+        UUID receiver = parse(receiverUuid);
+        if (receiver == null || activeRebuilds > 0) {
+            return;
+        }
+        long h1 = hash1(receiver);
+        long h2 = hash2(receiver);
+        for (int i = 0; i < HASH_COUNT; i++) {
+            if ((counters[index(h1, h2, i)] & 0xFF) == 0) {
+                return; // Not counted, nothing to undo
+            }
+        }
+        for (int i = 0; i < HASH_COUNT; i++) {
+            int idx = index(h1, h2, i);
+            int value = counters[idx] & 0xFF;
+            if (value != SATURATED) {
+                counters[idx] = (byte) (value - 1);
+            }
+        }
+    }
+
+    /**
+     * Check whether a receiver may have stored mail.
+     *
+     * @return false only if the receiver definitely has no mail rows
+     */
+    public synchronized boolean mightHaveMail(UUID receiver) {
+        if (!ready) {
+            return true;
+        }
+        long h1 = hash1(receiver);
+        long h2 = hash2(receiver);
+        for (int i = 0; i < HASH_COUNT; i++) {
+            if (counters[index(h1, h2, i)] == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Whether the initial rebuild has completed.
+     */
+    public synchronized boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Counters of a rebuild in progress, filled from a scan of the store.
+     */
+    public final class Rebuild {
+        private final byte[] counters = new byte[mask + 1];
+        // Pending inserts recorded before this rebuild began, already in the scan
+        private final int firstPending;
+
+        private Rebuild(int firstPending) {
+            this.firstPending = firstPending;
+        }
+
+        /**
+         * Count one stored mail row of a receiver.
+         */
+        public void add(String receiverUuid) {
+            UUID receiver = parse(receiverUuid);
+            if (receiver != null) {
+                increment(counters, receiver);
+            }
+        }
+    }
+
+    private void increment(byte[] target, UUID receiver) {
+        long h1 = hash1(receiver);
+        long h2 = hash2(receiver);
+        for (int i = 0; i < HASH_COUNT; i++) {
+            int idx = index(h1, h2, i);
+            int value = target[idx] & 0xFF;
+            if (value != SATURATED) {
+                target[idx] = (byte) (value + 1);
+            }
+        }
+    }
+
+    private int index(long h1, long h2, int i) {
+        return (int) ((h1 + i * h2) & mask);
+    }
+
+    private static long hash1(UUID uuid) {
+        return mix(uuid.getMostSignificantBits() ^ Long.rotateLeft(uuid.getLeastSignificantBits(), 17));
+    }
+
+    private static long hash2(UUID uuid) {
+        // Odd so that successive probes never collapse onto the same counter
+        return mix(uuid.getLeastSignificantBits() + 0x9E3779B97F4A7C15L) | 1L;
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return z ^ (z >>> 33);
+    }
+
+    private static UUID parse(String uuid) {
+        if (uuid == null) {
+            return null;
+        }
+        try {
+            return UUID.fromString(uuid);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.ultikits.plugins.mail.service;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Thread-safe {@code yyyy-MM-dd HH:mm} formatting of mail timestamps.
+ * <p>
+ * Texts are cached per minute, so the many mails of a broadcast or a busy minute
+ * share one string and the formatter only runs once per minute shown. The cache is
+ * cleared when it grows past {@value #MAX_CACHED} minutes.
+ *
+ * @author wisdomme
+ * @version 1.0.0
+ */
+public class TimestampFormat {
+
+    private static final int MAX_CACHED = 4096;
+    private static final long MINUTE = 60_000L;
+    private static final TimestampFormat DEFAULT = new TimestampFormat(ZoneId.systemDefault());
+
+    private final DateTimeFormatter formatter;
+    // Epoch minute -> text
+    private final Map<Long, String> minutes = new ConcurrentHashMap<>();
+
+    TimestampFormat(ZoneId zone) {
+        this.formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm").withZone(zone);
+    }
+
+    /**
+     * Format a timestamp in the server's time zone.
+     *
+     * @param millis Epoch millis
+     */
+    public static String format(long millis) {
+        return DEFAULT.formatMillis(millis);
+    }
+
+    String formatMillis(long millis) {
+        Long minute = Math.floorDiv(millis, MINUTE);
+        String text = minutes.get(minute);
+        if (text == null) {
+            if (minutes.size() >= MAX_CACHED) {
+                minutes.clear();
+            }
+            text = formatter.format(Instant.ofEpochMilli(millis));
+            minutes.put(minute, text);
+        }
+        return text;
+    }
+
+    int cachedMinutes() {
+        return minutes.size();
+    }
+}
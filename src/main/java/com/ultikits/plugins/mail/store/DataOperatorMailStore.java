@@ -0,0 +1,418 @@
+package com.ultikits.plugins.mail.store;
+
+import com.ultikits.plugins.mail.entity.MailData;
+import com.ultikits.ultitools.interfaces.DataOperator;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * {@link MailStore} on top of the UltiTools {@link DataOperator}.
+ * <p>
+ * {@link #update(MailData, Predicate, Consumer)} reloads the row under a striped
+ * per-mail lock and checks the guard against it. When the UltiTools connection pool is
+ * known, the change is written with {@code UPDATE ... WHERE id = ? AND row_version = ?},
+ * so a row changed by another server sharing the database in the meantime fails the
+ * write and the update is retried against the fresh row. Without a pool the DataOperator
+ * API has no conditional writes and the whole row is written back: the lock then only
+ * protects against updates from this server. Paging and counting filter the
+ * receiver's rows in memory. The size estimate is seeded by the first full scan and
+ * then follows the inserts and deletes made through this store.
+ * <p>
+ * When the UltiTools connection pool is known, {@link #deleteInbox(String, boolean)}
+ * runs as two set-based statements in one transaction instead of a write per row. Those
+ * statements bypass the per-mail locks, so a per-row update racing with them may write
+ * back the flags it read before the bulk delete; the mail then simply stays in the inbox.
+ *
+ * @author wisdomme
+ * @version 1.0.0
+ */
+public class DataOperatorMailStore implements MailStore {
+
+    private final DataOperator<MailData> dataOperator;
+
+    // Per-mail locks in front of the read-compare-write updates
+    private final StripedLocks locks = new StripedLocks();
+
+    // Row count seen by the last full scan plus changes since, -1 before any scan
+    private final AtomicLong estimatedRows = new AtomicLong(-1);
+
+    // Pool behind the DataOperator, null until found
+    private volatile DataSource dataSource;
+
+    // Conditional writes tried before an update gives up against concurrent writers
+    private static final int CAS_ATTEMPTS = 5;
+
+    public DataOperatorMailStore(DataOperator<MailData> dataOperator) {
+        this.dataOperator = dataOperator;
+    }
+
+    /**
+     * The UltiTools operator the mails are stored through.
+     */
+    public DataOperator<MailData> getDataOperator() {
+        return dataOperator;
+    }
+
+    /**
+     * Pool to run set-based statements on, or null to go through the DataOperator only.
+     */
+    public void setDataSource(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    @Override
+    public void insert(MailData mail) {
+        dataOperator.insert(mail);
+        adjustEstimate(1);
+    }
+
+    @Override
+    public void insertAll(List<MailData> mails) {
+        for (MailData mail : mails) {
+            dataOperator.insert(mail);
+        }
+        adjustEstimate(mails.size());
+    }
+
+    @Override
+    public MailData getById(String id) {
+        return dataOperator.getById(id);
+    }
+
+    @Override
+    public List<MailData> getAll() {
+        List<MailData> all = dataOperator.getAll();
+        estimatedRows.set(all.size());
+        return all;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * With a pool only the receiver column is selected; without one the whole table
+     * is read through the DataOperator.
+     */
+    @Override
+    public void forEachReceiver(Consumer<String> action) {
+        DataSource pool = dataSource;
+        if (pool == null) {
+            MailStore.super.forEachReceiver(action);
+            return;
+        }
+        try (Connection connection = pool.getConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                 "SELECT receiver_uuid FROM " + MailData.TABLE);
+             ResultSet result = statement.executeQuery()) {
+            long rows = 0;
+            while (result.next()) {
+                action.accept(result.getString(1));
+                rows++;
+            }
+            estimatedRows.set(rows);
+        } catch (SQLException e) {
+            throw new IllegalStateException("receiver scan failed: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * With a pool, the ids are selected on {@code sent_time} and only those rows are
+     * loaded; without one this falls back to filtering every row.
+     */
+    @Override
+    public List<MailData> findSentBefore(long cutoff) {
+        DataSource pool = dataSource;
+        if (pool == null) {
+            return MailStore.super.findSentBefore(cutoff);
+        }
+        List<String> ids = new ArrayList<>();
+        try (Connection connection = pool.getConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                 "SELECT id FROM " + MailData.TABLE + " WHERE sent_time < ?")) {
+            statement.setLong(1, cutoff);
+            try (ResultSet result = statement.executeQuery()) {
+                while (result.next()) {
+                    ids.add(result.getString(1));
+                }
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("sent-time query failed: " + e.getMessage(), e);
+        }
+        List<MailData> sent = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            MailData mail = dataOperator.getById(id);
+            // Rows removed since the query are skipped
+            if (mail != null) {
+                sent.add(mail);
+            }
+        }
+        return sent;
+    }
+
+    @Override
+    public List<MailData> findByReceiver(String receiverUuid) {
+        return dataOperator.query()
+            .where("receiver_uuid").eq(receiverUuid)
+            .list();
+    }
+
+    @Override
+    public List<MailData> findBySender(String senderUuid) {
+        return dataOperator.query()
+            .where("sender_uuid").eq(senderUuid)
+            .list();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Filtered by the database, so a sender's broadcast rows are never loaded. The
+     * flag is checked again here, so the result does not depend on how the backend
+     * compares booleans.
+     */
+    @Override
+    public List<MailData> findSentbox(String senderUuid) {
+        List<MailData> sentbox = new ArrayList<>();
+        for (MailData mail : dataOperator.query()
+                .where("sender_uuid").eq(senderUuid)
+                .where("deleted_by_sender").eq(false)
+                .list()) {
+            if (!mail.isDeletedBySender()) {
+                sentbox.add(mail);
+            }
+        }
+        sentbox.sort((a, b) -> Long.compare(b.getSentTime(), a.getSentTime()));
+        return sentbox;
+    }
+
+    @Override
+    public List<MailData> findInboxPage(String receiverUuid, int offset, int limit) {
+        List<MailData> inbox = visibleInbox(receiverUuid);
+        inbox.sort((a, b) -> Long.compare(b.getSentTime(), a.getSentTime()));
+        int from = Math.min(Math.max(offset, 0), inbox.size());
+        int to = (int) Math.min((long) from + Math.max(limit, 0), inbox.size());
+        return new ArrayList<>(inbox.subList(from, to));
+    }
+
+    @Override
+    public int countInbox(String receiverUuid) {
+        return visibleInbox(receiverUuid).size();
+    }
+
+    @Override
+    public int countUnread(String receiverUuid) {
+        int count = 0;
+        for (MailData mail : visibleInbox(receiverUuid)) {
+            if (!mail.isRead()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private List<MailData> visibleInbox(String receiverUuid) {
+        List<MailData> result = new ArrayList<>();
+        for (MailData mail : findByReceiver(receiverUuid)) {
+            if (!mail.isDeletedByReceiver()) {
+                result.add(mail);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Mails without an id have no stored row to reload, so the change is checked
+     * against the given copy and written as is.
+     */
+    @Override
+    public boolean update(MailData mail, Predicate<MailData> guard, Consumer<MailData> change)
+            throws IllegalAccessException {
+        if (mail.getId() == null) {
+            return applyChange(mail, guard, change);
+        }
+        ReentrantLock lock = locks.get(mail.getId());
+        lock.lock();
+        try {
+            DataSource pool = dataSource;
+            if (pool != null) {
+                return updateIfUnchanged(pool, mail, guard, change);
+            }
+            MailData stored = dataOperator.getById(mail.getId());
+            if (stored == null) {
+                return false;
+            }
+            mail.copyStateFrom(stored);
+            return applyChange(mail, guard, change);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Apply a change with a write that only succeeds if the row still has the version
+     * it was read with. A lost race reloads the row and checks the guard again.
+     */
+    private boolean updateIfUnchanged(DataSource pool, MailData mail, Predicate<MailData> guard,
+                                      Consumer<MailData> change) throws IllegalAccessException {
+        for (int attempt = 0; attempt < CAS_ATTEMPTS; attempt++) {
+            MailData stored = dataOperator.getById(mail.getId());
+            if (stored == null) {
+                return false;
+            }
+            mail.copyStateFrom(stored);
+            if (!guard.test(mail)) {
+                return false;
+            }
+            long expected = mail.getVersion();
+            change.accept(mail);
+            mail.setVersion(expected + 1);
+            if (writeIfVersion(pool, mail, expected)) {
+                if (mail.isDeletedBySender() && mail.isDeletedByReceiver()) {
+                    adjustEstimate(-1);
+                }
+                return true;
+            }
+        }
+        MailData stored = dataOperator.getById(mail.getId());
+        if (stored != null) {
+            mail.copyStateFrom(stored);
+        }
+        return false;
+    }
+
+    private boolean writeIfVersion(DataSource pool, MailData mail, long expected) throws IllegalAccessException {
+        boolean remove = mail.isDeletedBySender() && mail.isDeletedByReceiver();
+        String sql = remove
+            ? "DELETE FROM " + MailData.TABLE + " WHERE id = ? AND row_version = ?"
+            : "UPDATE " + MailData.TABLE + " SET read_status = ?, claimed_status = ?, commands_executed = ?,"
+                + " deleted_by_sender = ?, deleted_by_receiver = ?, row_version = ?"
+                + " WHERE id = ? AND row_version = ?";
+        try (Connection connection = pool.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+            int index = 1;
+            if (!remove) {
+                statement.setBoolean(index++, mail.isRead());
+                statement.setBoolean(index++, mail.isClaimed());
+                statement.setBoolean(index++, mail.isCommandsExecuted());
+                statement.setBoolean(index++, mail.isDeletedBySender());
+                statement.setBoolean(index++, mail.isDeletedByReceiver());
+                statement.setLong(index++, mail.getVersion());
+            }
+            statement.setString(index++, mail.getId());
+            statement.setLong(index, expected);
+            return statement.executeUpdate() > 0;
+        } catch (SQLException e) {
+            throw new IllegalAccessException("conditional update failed: " + e.getMessage());
+        }
+    }
+
+    private boolean applyChange(MailData mail, Predicate<MailData> guard, Consumer<MailData> change)
+            throws IllegalAccessException {
+        if (!guard.test(mail)) {
+            return false;
+        }
+        change.accept(mail);
+        mail.setVersion(mail.getVersion() + 1);
+        if (mail.isDeletedBySender() && mail.isDeletedByReceiver()) {
+            dataOperator.delById(mail.getId());
+            adjustEstimate(-1);
+        } else {
+            dataOperator.update(mail);
+        }
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Flags every matching row with one UPDATE, then removes the rows both sides have
+     * deleted with one DELETE. Without a pool this falls back to a write per row.
+     */
+    @Override
+    public InboxDeletion deleteInbox(String receiverUuid, boolean readOnly) throws IllegalAccessException {
+        DataSource pool = dataSource;
+        if (pool == null) {
+            return MailStore.super.deleteInbox(receiverUuid, readOnly);
+        }
+        String update = "UPDATE " + MailData.TABLE + " SET deleted_by_receiver = ?,"
+            + " deleted_by_sender = CASE WHEN sender_uuid = ? THEN ? ELSE deleted_by_sender END,"
+            + " row_version = row_version + 1"
+            + " WHERE receiver_uuid = ? AND deleted_by_receiver = ?"
+            + " AND (items IS NULL OR items = '' OR claimed_status = ?)"
+            + (readOnly ? " AND read_status = ?" : "");
+        String delete = "DELETE FROM " + MailData.TABLE
+            + " WHERE receiver_uuid = ? AND deleted_by_receiver = ? AND deleted_by_sender = ?";
+        try (Connection connection = pool.getConnection()) {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try {
+                int deleted;
+                try (PreparedStatement statement = connection.prepareStatement(update)) {
+                    statement.setBoolean(1, true);
+                    statement.setString(2, receiverUuid);
+                    statement.setBoolean(3, true);
+                    statement.setString(4, receiverUuid);
+                    statement.setBoolean(5, false);
+                    statement.setBoolean(6, true);
+                    if (readOnly) {
+                        statement.setBoolean(7, true);
+                    }
+                    deleted = statement.executeUpdate();
+                }
+                int removed;
+                try (PreparedStatement statement = connection.prepareStatement(delete)) {
+                    statement.setString(1, receiverUuid);
+                    statement.setBoolean(2, true);
+                    statement.setBoolean(3, true);
+                    removed = statement.executeUpdate();
+                }
+                connection.commit();
+                adjustEstimate(-removed);
+                return new InboxDeletion(deleted, removed);
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException e) {
+            throw new IllegalAccessException("bulk delete failed: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public int deleteExpired(long cutoff) {
+        int count = 0;
+        List<MailData> all = dataOperator.getAll();
+        for (MailData mail : all) {
+            if (MailStore.isExpired(mail, cutoff)) {
+                dataOperator.delById(mail.getId());
+                count++;
+            }
+        }
+        estimatedRows.set(all.size() - count);
+        return count;
+    }
+
+    @Override
+    public long estimateSize() {
+        return estimatedRows.get();
+    }
+
+    private void adjustEstimate(long delta) {
+        estimatedRows.updateAndGet(rows -> rows < 0 ? rows : Math.max(0, rows + delta));
+    }
+}
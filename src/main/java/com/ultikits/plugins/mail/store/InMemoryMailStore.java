@@ -0,0 +1,406 @@
+package com.ultikits.plugins.mail.store;
+
+import com.ultikits.plugins.mail.entity.MailData;
+
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * {@link MailStore} that keeps every mail on the heap.
+ * <p>
+ * Nothing is persisted. It exists so service tests and load benchmarks can run real
+ * query semantics at scale without a database. Each receiver's mails are kept in a
+ * set ordered newest first, next to running inbox and unread counts, so paging and
+ * counting do not scan the whole table.
+ *
+ * @author wisdomme
+ * @version 1.0.0
+ */
+public class InMemoryMailStore implements MailStore {
+
+    // Newest first; the id breaks ties so mails sent in the same millisecond are kept apart
+    private static final Comparator<MailData> NEWEST_FIRST = (a, b) -> {
+        int byTime = Long.compare(b.getSentTime(), a.getSentTime());
+        return byTime != 0 ? byTime : a.getId().compareTo(b.getId());
+    };
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, MailData> rows = new HashMap<>();
+    private final Map<String, Inbox> byReceiver = new HashMap<>();
+    private final Map<String, Set<MailData>> bySender = new HashMap<>();
+
+    // ==================== Writes ====================
+
+    @Override
+    public void insert(MailData mail) {
+        insertAll(Collections.singletonList(mail));
+    }
+
+    @Override
+    public void insertAll(List<MailData> mails) {
+        lock.writeLock().lock();
+        try {
+            for (MailData mail : mails) {
+                if (mail.getId() == null) {
+                    mail.setId(UUID.randomUUID().toString());
+                }
+                MailData previous = rows.get(mail.getId());
+                if (previous != null) {
+                    unindex(previous);
+                }
+                MailData row = copy(mail);
+                rows.put(row.getId(), row);
+                index(row);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Mails without an id have no stored row, so the change is checked against the
+     * given copy and nothing is written.
+     */
+    @Override
+    public boolean update(MailData mail, Predicate<MailData> guard, Consumer<MailData> change) {
+        if (mail.getId() == null) {
+            if (!guard.test(mail)) {
+                return false;
+            }
+            change.accept(mail);
+            mail.setVersion(mail.getVersion() + 1);
+            return true;
+        }
+        lock.writeLock().lock();
+        try {
+            MailData row = rows.get(mail.getId());
+            if (row == null) {
+                return false;
+            }
+            mail.copyStateFrom(row);
+            if (!guard.test(mail)) {
+                return false;
+            }
+            change.accept(mail);
+            mail.setVersion(mail.getVersion() + 1);
+
+            Inbox inbox = byReceiver.get(row.getReceiverUuid());
+            inbox.uncount(row);
+            row.copyStateFrom(mail);
+            if (row.isDeletedBySender() && row.isDeletedByReceiver()) {
+                // Already uncounted above; the row is deleted by the receiver so unindex skips the counts
+                rows.remove(row.getId());
+                unindex(row);
+            } else {
+                inbox.count(row);
+            }
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public InboxDeletion deleteInbox(String receiverUuid, boolean readOnly) {
+        lock.writeLock().lock();
+        try {
+            Inbox inbox = byReceiver.get(receiverUuid);
+            if (inbox == null) {
+                return new InboxDeletion(0, 0);
+            }
+            int deleted = 0;
+            List<MailData> gone = new ArrayList<>();
+            for (MailData row : inbox.mails) {
+                if (!MailStore.isInboxDeletable(row, readOnly)) {
+                    continue;
+                }
+                inbox.uncount(row);
+                row.setDeletedByReceiver(true);
+                if (receiverUuid.equals(row.getSenderUuid())) {
+                    row.setDeletedBySender(true);
+                }
+                row.setVersion(row.getVersion() + 1);
+                deleted++;
+                if (row.isDeletedBySender()) {
+                    gone.add(row);
+                }
+            }
+            // Removed after the loop, unindex changes the set being iterated
+            for (MailData row : gone) {
+                rows.remove(row.getId());
+                unindex(row);
+            }
+            return new InboxDeletion(deleted, gone.size());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public int deleteExpired(long cutoff) {
+        lock.writeLock().lock();
+        try {
+            int count = 0;
+            Iterator<MailData> it = rows.values().iterator();
+            while (it.hasNext()) {
+                MailData row = it.next();
+                if (MailStore.isExpired(row, cutoff)) {
+                    it.remove();
+                    unindex(row);
+                    count++;
+                }
+            }
+            return count;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // ==================== Reads ====================
+
+    @Override
+    public MailData getById(String id) {
+        lock.readLock().lock();
+        try {
+            MailData row = rows.get(id);
+            return row != null ? copy(row) : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<MailData> getAll() {
+        lock.readLock().lock();
+        try {
+            return copyAll(rows.values());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<MailData> findSentBefore(long cutoff) {
+        lock.readLock().lock();
+        try {
+            List<MailData> sent = new ArrayList<>();
+            for (MailData row : rows.values()) {
+                if (row.getSentTime() < cutoff) {
+                    sent.add(copy(row));
+                }
+            }
+            return sent;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void forEachReceiver(Consumer<String> action) {
+        lock.readLock().lock();
+        try {
+            for (Map.Entry<String, Inbox> entry : byReceiver.entrySet()) {
+                for (int i = entry.getValue().mails.size(); i > 0; i--) {
+                    action.accept(entry.getKey());
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<MailData> findByReceiver(String receiverUuid) {
+        lock.readLock().lock();
+        try {
+            Inbox inbox = byReceiver.get(receiverUuid);
+            return inbox != null ? copyAll(inbox.mails) : new ArrayList<>();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<MailData> findBySender(String senderUuid) {
+        lock.readLock().lock();
+        try {
+            return copyAll(bySender.getOrDefault(senderUuid, Collections.emptySet()));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<MailData> findSentbox(String senderUuid) {
+        lock.readLock().lock();
+        try {
+            List<MailData> sentbox = new ArrayList<>();
+            for (MailData row : bySender.getOrDefault(senderUuid, Collections.emptySet())) {
+                if (!row.isDeletedBySender()) {
+                    sentbox.add(copy(row));
+                }
+            }
+            return sentbox;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<MailData> findInboxPage(String receiverUuid, int offset, int limit) {
+        List<MailData> page = new ArrayList<>();
+        if (limit <= 0) {
+            return page;
+        }
+        lock.readLock().lock();
+        try {
+            Inbox inbox = byReceiver.get(receiverUuid);
+            if (inbox == null || offset >= inbox.visible) {
+                return page;
+            }
+            int skip = Math.max(offset, 0);
+            for (MailData row : inbox.mails) {
+                if (row.isDeletedByReceiver()) {
+                    continue;
+                }
+                if (skip > 0) {
+                    skip--;
+                    continue;
+                }
+                page.add(copy(row));
+                if (page.size() == limit) {
+                    break;
+                }
+            }
+            return page;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int countInbox(String receiverUuid) {
+        lock.readLock().lock();
+        try {
+            Inbox inbox = byReceiver.get(receiverUuid);
+            return inbox != null ? inbox.visible : 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int countUnread(String receiverUuid) {
+        lock.readLock().lock();
+        try {
+            Inbox inbox = byReceiver.get(receiverUuid);
+            return inbox != null ? inbox.unread : 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean isSoleWriter() {
+        return true;
+    }
+
+    @Override
+    public long estimateSize() {
+        return size();
+    }
+
+    /**
+     * Number of stored mails.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return rows.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ==================== Indexes ====================
+
+    private void index(MailData row) {
+        Inbox inbox = byReceiver.computeIfAbsent(row.getReceiverUuid(), k -> new Inbox());
+        inbox.mails.add(row);
+        inbox.count(row);
+        bySender.computeIfAbsent(row.getSenderUuid(), k -> new TreeSet<>(NEWEST_FIRST)).add(row);
+    }
+
+    private void unindex(MailData row) {
+        Inbox inbox = byReceiver.get(row.getReceiverUuid());
+        if (inbox != null && inbox.mails.remove(row)) {
+            inbox.uncount(row);
+            if (inbox.mails.isEmpty()) {
+                byReceiver.remove(row.getReceiverUuid());
+            }
+        }
+        Set<MailData> sent = bySender.get(row.getSenderUuid());
+        if (sent != null) {
+            sent.remove(row);
+            if (sent.isEmpty()) {
+                bySender.remove(row.getSenderUuid());
+            }
+        }
+    }
+
+    private static List<MailData> copyAll(Collection<MailData> rows) {
+        List<MailData> result = new ArrayList<>(rows.size());
+        for (MailData row : rows) {
+            result.add(copy(row));
+        }
+        return result;
+    }
+
+    private static MailData copy(MailData mail) {
+        MailData copy = new MailData();
+        copy.setId(mail.getId());
+        copy.setSenderUuid(mail.getSenderUuid());
+        copy.setSenderName(mail.getSenderName());
+        copy.setReceiverUuid(mail.getReceiverUuid());
+        copy.setReceiverName(mail.getReceiverName());
+        copy.setSubject(mail.getSubject());
+        copy.setContent(mail.getContent());
+        copy.setItems(mail.getItems());
+        copy.setCommands(mail.getCommands());
+        copy.setSentTime(mail.getSentTime());
+        copy.setGroupId(mail.getGroupId());
+        copy.copyStateFrom(mail);
+        return copy;
+    }
+
+    /**
+     * One receiver's mails with running counts of the visible and unread ones.
+     */
+    private static class Inbox {
+        final TreeSet<MailData> mails = new TreeSet<>(NEWEST_FIRST);
+        int visible;
+        int unread;
+
+        void count(MailData row) {
+            if (!row.isDeletedByReceiver()) {
+                visible++;
+                if (!row.isRead()) {
+                    unread++;
+                }
+            }
+        }
+
+        void uncount(MailData row) {
+            if (!row.isDeletedByReceiver()) {
+                visible--;
+                if (!row.isRead()) {
+                    unread--;
+                }
+            }
+        }
+    }
+}
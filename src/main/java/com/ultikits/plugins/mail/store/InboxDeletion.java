@@ -0,0 +1,32 @@
+package com.ultikits.plugins.mail.store;
+
+/**
+ * Outcome of {@link MailStore#deleteInbox(String, boolean)}.
+ *
+ * @author wisdomme
+ * @version 1.0.0
+ */
+public final class InboxDeletion {
+
+    private final int deleted;
+    private final int removed;
+
+    public InboxDeletion(int deleted, int removed) {
+        this.deleted = deleted;
+        this.removed = removed;
+    }
+
+    /**
+     * Number of mails taken out of the inbox.
+     */
+    public int getDeleted() {
+        return deleted;
+    }
+
+    /**
+     * Number of those rows removed because the sender had deleted them too.
+     */
+    public int getRemoved() {
+        return removed;
+    }
+}
@@ -0,0 +1,213 @@
+package com.ultikits.plugins.mail.store;
+
+import com.ultikits.plugins.mail.entity.MailData;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Persistence backend for mails.
+ * <p>
+ * Rows handed out are copies; changing one does not change the store until it is
+ * written back with {@link #update(MailData, Predicate, Consumer)}. Implementations
+ * must be safe to call from any thread.
+ *
+ * @author wisdomme
+ * @version 1.0.0
+ */
+public interface MailStore {
+
+    /**
+     * Insert a new mail. Assigns an id if the mail has none.
+     */
+    void insert(MailData mail);
+
+    /**
+     * Insert several mails in one go.
+     */
+    void insertAll(List<MailData> mails);
+
+    /**
+     * Get a mail by id.
+     *
+     * @return the mail, or null if there is none
+     */
+    MailData getById(String id);
+
+    /**
+     * Get every stored mail.
+     */
+    List<MailData> getAll();
+
+    /**
+     * Pass the receiver UUID of every stored mail row to an action, once per row.
+     * Backends override it to read only the receiver column instead of whole rows.
+     */
+    default void forEachReceiver(Consumer<String> action) {
+        for (MailData mail : getAll()) {
+            action.accept(mail.getReceiverUuid());
+        }
+    }
+
+    /**
+     * Get every mail received by a player, including ones the receiver deleted.
+     */
+    List<MailData> findByReceiver(String receiverUuid);
+
+    /**
+     * Get every mail sent by a player, including ones the sender deleted.
+     */
+    List<MailData> findBySender(String senderUuid);
+
+    /**
+     * Get every mail sent before a cutoff, in no particular order.
+     * The default implementation filters {@link #getAll()}; backends override it to
+     * skip newer rows without loading them.
+     *
+     * @param cutoff Epoch millis, exclusive
+     */
+    default List<MailData> findSentBefore(long cutoff) {
+        List<MailData> sent = new ArrayList<>();
+        for (MailData mail : getAll()) {
+            if (mail.getSentTime() < cutoff) {
+                sent.add(mail);
+            }
+        }
+        return sent;
+    }
+
+    /**
+     * Get a player's sentbox, newest first: the mails they sent and did not delete.
+     * Broadcast rows are stored deleted by the sender, so they are not part of it.
+     */
+    default List<MailData> findSentbox(String senderUuid) {
+        List<MailData> sentbox = new ArrayList<>();
+        for (MailData mail : findBySender(senderUuid)) {
+            if (!mail.isDeletedBySender()) {
+                sentbox.add(mail);
+            }
+        }
+        sentbox.sort((a, b) -> Long.compare(b.getSentTime(), a.getSentTime()));
+        return sentbox;
+    }
+
+    /**
+     * Get one page of a player's inbox, newest first, without mails the receiver deleted.
+     *
+     * @param offset Number of mails to skip
+     * @param limit  Maximum number of mails to return
+     */
+    List<MailData> findInboxPage(String receiverUuid, int offset, int limit);
+
+    /**
+     * Number of mails in a player's inbox, without mails the receiver deleted.
+     */
+    int countInbox(String receiverUuid);
+
+    /**
+     * Number of unread mails in a player's inbox.
+     */
+    int countUnread(String receiverUuid);
+
+    /**
+     * Apply a state change to the stored row atomically.
+     * <p>
+     * The stored state flags and version are copied into {@code mail} first. If
+     * {@code guard} accepts them, {@code change} is applied, the version is bumped and
+     * the flags are written; a mail deleted by both sides is removed instead. Only the
+     * state flags and the version are persisted.
+     *
+     * @return true if the change was applied, false if the guard rejected it or the row is gone
+     * @throws IllegalAccessException if the backend refused the write
+     */
+    boolean update(MailData mail, Predicate<MailData> guard, Consumer<MailData> change)
+            throws IllegalAccessException;
+
+    /**
+     * Delete a player's inbox on the receiver side in one go.
+     * <p>
+     * Mails with unclaimed attachments are skipped. Mails the player sent to themselves
+     * are deleted on both sides, and rows the sender had already deleted are removed.
+     * The default implementation updates the rows one by one; backends override it with
+     * a set-based write.
+     *
+     * @param readOnly Only delete mails the receiver has read
+     * @throws IllegalAccessException if the backend refused the write
+     */
+    default InboxDeletion deleteInbox(String receiverUuid, boolean readOnly) throws IllegalAccessException {
+        int deleted = 0;
+        int removed = 0;
+        for (MailData mail : findByReceiver(receiverUuid)) {
+            if (!isInboxDeletable(mail, readOnly)) {
+                continue;
+            }
+            boolean ownMail = receiverUuid.equals(mail.getSenderUuid());
+            if (update(mail, m -> isInboxDeletable(m, readOnly), m -> {
+                m.setDeletedByReceiver(true);
+                if (ownMail) {
+                    m.setDeletedBySender(true);
+                }
+            })) {
+                deleted++;
+                if (mail.isDeletedBySender()) {
+                    removed++;
+                }
+            }
+        }
+        return new InboxDeletion(deleted, removed);
+    }
+
+    /**
+     * Whether {@link #deleteInbox(String, boolean)} takes a mail out of the inbox.
+     */
+    static boolean isInboxDeletable(MailData mail, boolean readOnly) {
+        return !mail.isDeletedByReceiver()
+            && (!readOnly || mail.isRead())
+            && !(mail.hasItems() && !mail.isClaimed());
+    }
+
+    /**
+     * Remove the mails {@link #isExpired(MailData, long)} accepts.
+     *
+     * @param cutoff Epoch millis
+     * @return number of mails removed
+     */
+    int deleteExpired(long cutoff);
+
+    /**
+     * Whether {@link #deleteExpired(long)} removes a mail: sent before the cutoff and
+     * read, with no unclaimed attachments and no commands left to run.
+     */
+    static boolean isExpired(MailData mail, long cutoff) {
+        return mail.getSentTime() < cutoff
+            && mail.isRead()
+            && !(mail.hasItems() && !mail.isClaimed())
+            && !(mail.hasCommands() && !mail.isCommandsExecuted());
+    }
+
+    /**
+     * Whether every write to the stored mails goes through this process, so
+     * in-process bookkeeping such as the receiver filter sees every insert.
+     * Shared databases may also be written by other servers or a web panel.
+     */
+    default boolean isSoleWriter() {
+        return false;
+    }
+
+    /**
+     * Approximate number of stored mails, cheap enough to read on every metrics scrape.
+     *
+     * @return the estimate, or -1 if the backend cannot tell without a full scan
+     */
+    default long estimateSize() {
+        return -1;
+    }
+
+    /**
+     * Release files and background work held by the store.
+     */
+    default void close() {
+    }
+}
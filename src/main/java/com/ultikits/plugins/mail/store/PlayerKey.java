@@ -0,0 +1,124 @@
+package com.ultikits.plugins.mail.store;
+
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Compact key for a sender or receiver UUID column.
+ * <p>
+ * A canonical UUID string (lowercase hex with dashes, as {@link UUID#toString()}
+ * writes it) is held as two longs: 32 bytes of heap instead of about 80 for the
+ * string, and hashing and comparing never walk 36 chars. Any other value, such as the
+ * {@code SYSTEM} sender of recall mails or an empty column, is kept as a string, so
+ * {@link #toString()} always gives back the exact value the key was made from.
+ *
+ * @author wisdomme
+ * @version 1.0.0
+ */
+public final class PlayerKey {
+
+    private static final PlayerKey EMPTY = new PlayerKey(0L, 0L, "");
+
+    private final long most;
+    private final long least;
+    // Non-UUID value, null when the key is a UUID
+    private final String other;
+
+    private PlayerKey(long most, long least, String other) {
+        this.most = most;
+        this.least = least;
+        this.other = other;
+    }
+
+    public static PlayerKey of(UUID uuid) {
+        return new PlayerKey(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), null);
+    }
+
+    public static PlayerKey of(long most, long least) {
+        return new PlayerKey(most, least, null);
+    }
+
+    /**
+     * Key for a column value; null and empty values share one key.
+     */
+    public static PlayerKey of(String value) {
+        if (value == null || value.isEmpty()) {
+            return EMPTY;
+        }
+        if (value.length() != 36) {
+            return new PlayerKey(0L, 0L, value);
+        }
+        long most = 0L;
+        long least = 0L;
+        int digits = 0;
+        for (int i = 0; i < 36; i++) {
+            char c = value.charAt(i);
+            if (i == 8 || i == 13 || i == 18 || i == 23) {
+                if (c != '-') {
+                    return new PlayerKey(0L, 0L, value);
+                }
+                continue;
+            }
+            int digit;
+            if (c >= '0' && c <= '9') {
+                digit = c - '0';
+            } else if (c >= 'a' && c <= 'f') {
+                digit = c - 'a' + 10;
+            } else {
+                // Upper case or not hex: keep the exact string
+                return new PlayerKey(0L, 0L, value);
+            }
+            if (digits < 16) {
+                most = (most << 4) | digit;
+            } else {
+                least = (least << 4) | digit;
+            }
+            digits++;
+        }
+        return new PlayerKey(most, least, null);
+    }
+
+    /**
+     * Whether the key holds a UUID rather than a plain string.
+     */
+    public boolean isUuid() {
+        return other == null;
+    }
+
+    public long getMostSignificantBits() {
+        return most;
+    }
+
+    public long getLeastSignificantBits() {
+        return least;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof PlayerKey)) {
+            return false;
+        }
+        PlayerKey key = (PlayerKey) o;
+        return most == key.most && least == key.least && Objects.equals(other, key.other);
+    }
+
+    @Override
+    public int hashCode() {
+        if (other != null) {
+            return other.hashCode();
+        }
+        long bits = most ^ least;
+        return (int) (bits >> 32) ^ (int) bits;
+    }
+
+    /**
+     * The column value: the UUID in canonical form, or the plain string.
+     */
+    @Override
+    public String toString() {
+        return other != null ? other : new UUID(most, least).toString();
+    }
+}
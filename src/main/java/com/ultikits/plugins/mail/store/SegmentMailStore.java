@@ -0,0 +1,1291 @@
+package com.ultikits.plugins.mail.store;
+
+import com.ultikits.plugins.mail.entity.MailData;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.zip.CRC32;
+
+/**
+ * Embedded {@link MailStore} on append-only segment files.
+ * <p>
+ * Every change is appended as a record: a full row on insert, a small flags record on
+ * update and a tombstone on delete. An in-memory index keeps each mail's header
+ * (receiver, sender, time, flags, version) and the location of its row, so inbox paging
+ * and counts never touch the disk and only the rows of the requested page are read,
+ * through memory-mapped windows of the segments. A segment is sealed at
+ * {@code segmentBytes} and a new one is started; the windows keep segments larger than
+ * 2 GB, such as a big compacted base, readable.
+ * <p>
+ * When the files hold more than twice the live row bytes, a background compaction
+ * rewrites all live rows into one base segment and deletes the older segments. Writes
+ * are not fsynced one by one; the active segment is forced once a second and on close.
+ * <p>
+ * Record layout: body length (int), CRC32 of type and body (int), type (byte), body.
+ * A torn record at the end of the last segment is dropped on open.
+ * <p>
+ * Receiver and sender UUIDs are written as 16 bytes and indexed as {@link PlayerKey}s.
+ * Rows written before that, with the UUIDs as strings, are still read; opening a store
+ * that has any compacts it right away, which rewrites them in the packed form.
+ *
+ * @author wisdomme
+ * @version 1.0.0
+ */
+public class SegmentMailStore implements MailStore {
+
+    static final long DEFAULT_SEGMENT_BYTES = 64L << 20;
+    static final long DEFAULT_MIN_COMPACT_BYTES = 4L << 20;
+    static final int DEFAULT_MAP_WINDOW_BYTES = 1 << 28;
+
+    private static final String PREFIX = "segment-";
+    private static final String SUFFIX = ".dat";
+    private static final String COMPACT_SUFFIX = ".compact";
+
+    private static final byte ROW = 1;
+    private static final byte FLAGS = 2;
+    private static final byte DELETE = 3;
+    private static final byte BASE = 4;
+    // Row with the receiver and sender packed as 16-byte UUIDs
+    private static final byte PACKED_ROW = 5;
+    private static final int HEADER = 9;
+
+    private static final int READ = 1;
+    private static final int CLAIMED = 1 << 1;
+    private static final int COMMANDS_EXECUTED = 1 << 2;
+    private static final int DELETED_BY_SENDER = 1 << 3;
+    private static final int DELETED_BY_RECEIVER = 1 << 4;
+
+    private static final byte KEY_UUID = 0;
+    private static final byte KEY_STRING = 1;
+
+    private final File dir;
+    private final long segmentBytes;
+    private final long minCompactBytes;
+    private final int mapWindowBytes;
+    private final Consumer<String> errorHandler;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Entry> rows = new HashMap<>();
+    private final Map<PlayerKey, Set<Entry>> byReceiver = new HashMap<>();
+    private final Map<PlayerKey, Set<Entry>> bySender = new HashMap<>();
+    private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+    private Segment active;
+
+    private long liveBytes;
+    private long totalBytes;
+    private boolean compacting;
+
+    // Live rows still in the string-UUID row format
+    private int legacyRows;
+
+    private final ScheduledExecutorService background;
+
+    /**
+     * Open a store with default segment and compaction sizes.
+     *
+     * @param dir          Directory holding the segment files
+     * @param errorHandler Receives errors from background work
+     */
+    public SegmentMailStore(File dir, Consumer<String> errorHandler) throws IOException {
+        this(dir, DEFAULT_SEGMENT_BYTES, DEFAULT_MIN_COMPACT_BYTES, errorHandler);
+    }
+
+    SegmentMailStore(File dir, long segmentBytes, long minCompactBytes, Consumer<String> errorHandler)
+            throws IOException {
+        this(dir, segmentBytes, minCompactBytes, DEFAULT_MAP_WINDOW_BYTES, errorHandler);
+    }
+
+    SegmentMailStore(File dir, long segmentBytes, long minCompactBytes, int mapWindowBytes,
+                     Consumer<String> errorHandler) throws IOException {
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        this.minCompactBytes = minCompactBytes;
+        this.mapWindowBytes = mapWindowBytes;
+        this.errorHandler = errorHandler;
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("cannot create " + dir);
+        }
+        open();
+        this.background = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "UltiMail-SegmentStore");
+            thread.setDaemon(true);
+            return thread;
+        });
+        background.scheduleWithFixedDelay(this::sync, 1, 1, TimeUnit.SECONDS);
+        lock.writeLock().lock();
+        try {
+            maybeCompact();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // ==================== Reads ====================
+
+    @Override
+    public MailData getById(String id) {
+        lock.readLock().lock();
+        try {
+            Entry entry = rows.get(id);
+            return entry != null ? materialize(entry) : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<MailData> getAll() {
+        lock.readLock().lock();
+        try {
+            return materializeAll(rows.values());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Answered from the receiver index; no row is read.
+     */
+    @Override
+    public void forEachReceiver(Consumer<String> action) {
+        lock.readLock().lock();
+        try {
+            for (Map.Entry<PlayerKey, Set<Entry>> entry : byReceiver.entrySet()) {
+                String receiver = entry.getKey().toString();
+                for (int i = entry.getValue().size(); i > 0; i--) {
+                    action.accept(receiver);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Filtered on the indexed send time, so only the matching rows are read.
+     */
+    @Override
+    public List<MailData> findSentBefore(long cutoff) {
+        lock.readLock().lock();
+        try {
+            List<Entry> sent = new ArrayList<>();
+            for (Entry entry : rows.values()) {
+                if (entry.sentTime < cutoff) {
+                    sent.add(entry);
+                }
+            }
+            return materializeAll(sent);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<MailData> findByReceiver(String receiverUuid) {
+        lock.readLock().lock();
+        try {
+            return materializeAll(byReceiver.getOrDefault(PlayerKey.of(receiverUuid), Collections.emptySet()));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<MailData> findBySender(String senderUuid) {
+        lock.readLock().lock();
+        try {
+            return materializeAll(bySender.getOrDefault(PlayerKey.of(senderUuid), Collections.emptySet()));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Filtered on the index flags, so the rows of a sender's broadcasts are never read.
+     */
+    @Override
+    public List<MailData> findSentbox(String senderUuid) {
+        lock.readLock().lock();
+        try {
+            List<Entry> sentbox = new ArrayList<>();
+            for (Entry entry : bySender.getOrDefault(PlayerKey.of(senderUuid), Collections.emptySet())) {
+                if ((entry.flags & DELETED_BY_SENDER) == 0) {
+                    sentbox.add(entry);
+                }
+            }
+            sentbox.sort((a, b) -> Long.compare(b.sentTime, a.sentTime));
+            return materializeAll(sentbox);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<MailData> findInboxPage(String receiverUuid, int offset, int limit) {
+        lock.readLock().lock();
+        try {
+            List<Entry> inbox = visibleInbox(receiverUuid);
+            inbox.sort((a, b) -> Long.compare(b.sentTime, a.sentTime));
+            int from = Math.min(Math.max(offset, 0), inbox.size());
+            int to = (int) Math.min((long) from + Math.max(limit, 0), inbox.size());
+            return materializeAll(inbox.subList(from, to));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int countInbox(String receiverUuid) {
+        lock.readLock().lock();
+        try {
+            return visibleInbox(receiverUuid).size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int countUnread(String receiverUuid) {
+        lock.readLock().lock();
+        try {
+            int count = 0;
+            for (Entry entry : visibleInbox(receiverUuid)) {
+                if ((entry.flags & READ) == 0) {
+                    count++;
+                }
+            }
+            return count;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private List<Entry> visibleInbox(String receiverUuid) {
+        List<Entry> result = new ArrayList<>();
+        for (Entry entry : byReceiver.getOrDefault(PlayerKey.of(receiverUuid), Collections.emptySet())) {
+            if ((entry.flags & DELETED_BY_RECEIVER) == 0) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    private List<MailData> materializeAll(Collection<Entry> entries) {
+        List<MailData> result = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            result.add(materialize(entry));
+        }
+        return result;
+    }
+
+    private MailData materialize(Entry entry) {
+        MailData mail = readRow(segments.get(entry.segment), entry);
+        // A flags record may have superseded the state in the row
+        applyFlags(mail, entry.flags, entry.version);
+        return mail;
+    }
+
+    // ==================== Writes ====================
+
+    @Override
+    public void insert(MailData mail) {
+        insertAll(Collections.singletonList(mail));
+    }
+
+    @Override
+    public void insertAll(List<MailData> mails) {
+        lock.writeLock().lock();
+        try {
+            for (MailData mail : mails) {
+                if (mail.getId() == null) {
+                    mail.setId(UUID.randomUUID().toString());
+                }
+                byte[] body = encodeRow(mail);
+                long offset = append(PACKED_ROW, body);
+                putEntry(header(mail, active.number, offset, HEADER + body.length));
+            }
+            maybeCompact();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean update(MailData mail, Predicate<MailData> guard, Consumer<MailData> change)
+            throws IllegalAccessException {
+        lock.writeLock().lock();
+        try {
+            Entry entry = mail.getId() != null ? rows.get(mail.getId()) : null;
+            if (entry == null) {
+                return false;
+            }
+            applyFlags(mail, entry.flags, entry.version);
+            if (!guard.test(mail)) {
+                return false;
+            }
+            change.accept(mail);
+            mail.setVersion(mail.getVersion() + 1);
+            if (mail.isDeletedBySender() && mail.isDeletedByReceiver()) {
+                append(DELETE, encodeId(entry.id));
+                removeEntry(entry);
+            } else {
+                int flags = flagsOf(mail);
+                append(FLAGS, encodeFlags(entry.id, flags, mail.getVersion()));
+                entry.flags = flags;
+                entry.version = mail.getVersion();
+            }
+            maybeCompact();
+            return true;
+        } catch (IOException e) {
+            throw new IllegalAccessException("segment write failed: " + e.getMessage());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public InboxDeletion deleteInbox(String receiverUuid, boolean readOnly) throws IllegalAccessException {
+        lock.writeLock().lock();
+        try {
+            PlayerKey receiver = PlayerKey.of(receiverUuid);
+            List<Entry> matched = new ArrayList<>();
+            for (Entry entry : byReceiver.getOrDefault(receiver, Collections.emptySet())) {
+                boolean unclaimed = entry.hasItems && (entry.flags & CLAIMED) == 0;
+                if ((entry.flags & DELETED_BY_RECEIVER) == 0 && !unclaimed
+                        && (!readOnly || (entry.flags & READ) != 0)) {
+                    matched.add(entry);
+                }
+            }
+            int removed = 0;
+            for (Entry entry : matched) {
+                int flags = entry.flags | DELETED_BY_RECEIVER;
+                if (receiver.equals(entry.sender)) {
+                    flags |= DELETED_BY_SENDER;
+                }
+                if ((flags & DELETED_BY_SENDER) != 0) {
+                    append(DELETE, encodeId(entry.id));
+                    removeEntry(entry);
+                    removed++;
+                } else {
+                    append(FLAGS, encodeFlags(entry.id, flags, entry.version + 1));
+                    entry.flags = flags;
+                    entry.version++;
+                }
+            }
+            maybeCompact();
+            return new InboxDeletion(matched.size(), removed);
+        } catch (IOException e) {
+            throw new IllegalAccessException("segment write failed: " + e.getMessage());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Decided on the index where it can be; the index does not know whether a mail has
+     * commands, so the row is read for old, read mails whose commands never ran.
+     */
+    @Override
+    public int deleteExpired(long cutoff) {
+        lock.writeLock().lock();
+        try {
+            List<Entry> expired = new ArrayList<>();
+            for (Entry entry : rows.values()) {
+                if (entry.sentTime >= cutoff || (entry.flags & READ) == 0
+                        || (entry.hasItems && (entry.flags & CLAIMED) == 0)) {
+                    continue;
+                }
+                if ((entry.flags & COMMANDS_EXECUTED) != 0 || MailStore.isExpired(materialize(entry), cutoff)) {
+                    expired.add(entry);
+                }
+            }
+            for (Entry entry : expired) {
+                append(DELETE, encodeId(entry.id));
+                removeEntry(entry);
+            }
+            maybeCompact();
+            return expired.size();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private long append(byte type, byte[] body) throws IOException {
+        // Called under the write lock, so no reader holds a view of a replaced window
+        active.releaseRetired();
+        if (active.size > 0 && active.size + HEADER + body.length > segmentBytes) {
+            roll();
+        }
+        long offset = active.size;
+        active.write(frame(type, body));
+        totalBytes += HEADER + body.length;
+        return offset;
+    }
+
+    private void roll() throws IOException {
+        active.sync();
+        active = openSegment(active.number + 1);
+    }
+
+    private static ByteBuffer frame(byte type, byte[] body) {
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(body, 0, body.length);
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER + body.length);
+        buffer.putInt(body.length).putInt((int) crc.getValue()).put(type).put(body);
+        buffer.flip();
+        return buffer;
+    }
+
+    // ==================== Index ====================
+
+    private void putEntry(Entry entry) {
+        Entry previous = rows.get(entry.id);
+        if (previous != null) {
+            removeEntry(previous);
+        }
+        rows.put(entry.id, entry);
+        byReceiver.computeIfAbsent(entry.receiver, k -> new LinkedHashSet<>()).add(entry);
+        bySender.computeIfAbsent(entry.sender, k -> new LinkedHashSet<>()).add(entry);
+        liveBytes += entry.length;
+        if (!entry.packed) {
+            legacyRows++;
+        }
+    }
+
+    private void removeEntry(Entry entry) {
+        rows.remove(entry.id);
+        removeFrom(byReceiver, entry.receiver, entry);
+        removeFrom(bySender, entry.sender, entry);
+        liveBytes -= entry.length;
+        if (!entry.packed) {
+            legacyRows--;
+        }
+    }
+
+    private static void removeFrom(Map<PlayerKey, Set<Entry>> index, PlayerKey key, Entry entry) {
+        Set<Entry> set = index.get(key);
+        if (set != null) {
+            set.remove(entry);
+            if (set.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+
+    private static Entry header(MailData mail, int segment, long offset, int length) {
+        Entry entry = new Entry(mail.getId(), PlayerKey.of(mail.getReceiverUuid()),
+            PlayerKey.of(mail.getSenderUuid()), true);
+        entry.sentTime = mail.getSentTime();
+        entry.flags = flagsOf(mail);
+        entry.version = mail.getVersion();
+        entry.hasItems = mail.hasItems();
+        entry.segment = segment;
+        entry.offset = offset;
+        entry.length = length;
+        return entry;
+    }
+
+    // ==================== Open and replay ====================
+
+    private void open() throws IOException {
+        File[] compactLeftovers = dir.listFiles((d, name) -> name.endsWith(COMPACT_SUFFIX));
+        if (compactLeftovers != null) {
+            for (File file : compactLeftovers) {
+                Files.deleteIfExists(file.toPath());
+            }
+        }
+
+        TreeMap<Integer, File> files = new TreeMap<>();
+        File[] listed = dir.listFiles((d, name) -> name.startsWith(PREFIX) && name.endsWith(SUFFIX));
+        if (listed != null) {
+            for (File file : listed) {
+                String number = file.getName().substring(PREFIX.length(), file.getName().length() - SUFFIX.length());
+                try {
+                    files.put(Integer.parseInt(number), file);
+                } catch (NumberFormatException e) {
+                    // Not one of ours
+                }
+            }
+        }
+
+        // Everything below the newest base segment was already compacted into it
+        Integer base = null;
+        for (Map.Entry<Integer, File> file : files.descendingMap().entrySet()) {
+            if (startsWithBase(file.getValue())) {
+                base = file.getKey();
+                break;
+            }
+        }
+        if (base != null) {
+            for (File stale : files.headMap(base).values()) {
+                Files.deleteIfExists(stale.toPath());
+            }
+            files = new TreeMap<>(files.tailMap(base));
+        }
+
+        for (Map.Entry<Integer, File> file : files.entrySet()) {
+            Segment segment = openSegment(file.getKey());
+            replay(segment, file.getKey().equals(files.lastKey()));
+        }
+        if (active == null) {
+            active = openSegment(1);
+        }
+    }
+
+    private static boolean startsWithBase(File file) throws IOException {
+        if (file.length() < HEADER) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // read fully
+            }
+            return header.get(8) == BASE;
+        }
+    }
+
+    private void replay(Segment segment, boolean last) throws IOException {
+        long size = segment.size;
+        long position = 0;
+        while (position + HEADER <= size) {
+            ByteBuffer head = segment.read(position, HEADER);
+            int length = head.getInt();
+            int crc = head.getInt();
+            byte type = head.get();
+            if (length < 0 || position + HEADER + length > size) {
+                break;
+            }
+            ByteBuffer body = segment.read(position + HEADER, length);
+            byte[] bytes = new byte[length];
+            body.get(bytes);
+            CRC32 check = new CRC32();
+            check.update(type);
+            check.update(bytes, 0, length);
+            if ((int) check.getValue() != crc) {
+                break;
+            }
+            apply(type, ByteBuffer.wrap(bytes), segment.number, position, HEADER + length);
+            position += HEADER + length;
+        }
+        if (position < size) {
+            if (!last) {
+                throw new IOException("corrupt record in " + segment.file.getName() + " at " + position);
+            }
+            // Torn write at the end of the last segment
+            segment.truncate(position);
+        }
+        totalBytes += segment.size;
+    }
+
+    private void apply(byte type, ByteBuffer body, int segment, long offset, int length) {
+        switch (type) {
+            case ROW:
+            case PACKED_ROW: {
+                boolean packed = type == PACKED_ROW;
+                String id = readString(body);
+                PlayerKey receiver = packed ? readKey(body) : PlayerKey.of(readString(body));
+                PlayerKey sender = packed ? readKey(body) : PlayerKey.of(readString(body));
+                Entry entry = new Entry(id, receiver, sender, packed);
+                entry.sentTime = body.getLong();
+                entry.flags = body.get();
+                entry.version = body.getLong();
+                entry.hasItems = body.get() != 0;
+                entry.segment = segment;
+                entry.offset = offset;
+                entry.length = length;
+                putEntry(entry);
+                break;
+            }
+            case FLAGS: {
+                Entry entry = rows.get(readString(body));
+                int flags = body.get();
+                long version = body.getLong();
+                if (entry != null) {
+                    entry.flags = flags;
+                    entry.version = version;
+                }
+                break;
+            }
+            case DELETE: {
+                Entry entry = rows.get(readString(body));
+                if (entry != null) {
+                    removeEntry(entry);
+                }
+                break;
+            }
+            default:
+                break;
+        }
+    }
+
+    private Segment openSegment(int number) throws IOException {
+        Segment segment = new Segment(number, new File(dir, segmentName(number)), mapWindowBytes);
+        segments.put(number, segment);
+        active = segment;
+        return segment;
+    }
+
+    private static String segmentName(int number) {
+        return PREFIX + String.format("%06d", number) + SUFFIX;
+    }
+
+    // ==================== Compaction ====================
+
+    private void maybeCompact() {
+        boolean wasteful = totalBytes > minCompactBytes && totalBytes > 2 * liveBytes;
+        if (!compacting && (wasteful || legacyRows > 0)) {
+            compacting = true;
+            background.execute(() -> {
+                boolean compacted = false;
+                try {
+                    compact();
+                    compacted = true;
+                } catch (Exception e) {
+                    errorHandler.accept("Failed to compact mail segments: " + e.getMessage());
+                } finally {
+                    lock.writeLock().lock();
+                    try {
+                        compacting = false;
+                        // Writes made during the compaction may already call for another one
+                        if (compacted) {
+                            maybeCompact();
+                        }
+                    } finally {
+                        lock.writeLock().unlock();
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Rewrite all live rows into one base segment and drop the segments it replaces.
+     * Writers only wait while the active segment is rolled and while the files are swapped.
+     * <p>
+     * The base gets a number of its own, skipped when rolling, so it is moved into place
+     * without replacing a file that is still open. The index and the segment map only
+     * switch to it once it is in place; until then a failure leaves the store as it was.
+     * Old segments that cannot be deleted are removed on the next open, since everything
+     * below the newest base is stale.
+     */
+    void compact() throws IOException {
+        int cutoff;
+        int baseNumber;
+        List<Entry> snapshot = new ArrayList<>();
+        Map<Integer, Segment> sealed;
+        lock.writeLock().lock();
+        try {
+            active.sync();
+            cutoff = active.number;
+            baseNumber = cutoff + 1;
+            openSegment(cutoff + 2);
+            sealed = new HashMap<>(segments.headMap(cutoff, true));
+            for (Entry entry : rows.values()) {
+                snapshot.add(entry.copy());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        // Sealed segments are immutable, so they can be read without the lock
+        File target = new File(dir, segmentName(baseNumber));
+        File temp = new File(dir, segmentName(baseNumber) + COMPACT_SUFFIX);
+        Map<String, long[]> moved = new HashMap<>();
+        Segment base;
+        try {
+            try (FileChannel out = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                long position = writeFully(out, frame(BASE, new byte[0]));
+                for (Entry entry : snapshot) {
+                    Segment segment = sealed.get(entry.segment);
+                    if (segment == null) {
+                        continue;
+                    }
+                    MailData mail = readRow(segment, entry);
+                    applyFlags(mail, entry.flags, entry.version);
+                    byte[] body = encodeRow(mail);
+                    moved.put(entry.id, new long[]{position, HEADER + body.length});
+                    position += writeFully(out, frame(PACKED_ROW, body));
+                }
+                out.force(true);
+            }
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp.toPath());
+            throw e;
+        }
+        try {
+            base = new Segment(baseNumber, target, mapWindowBytes);
+        } catch (IOException e) {
+            // Not switched to yet; the old segments still hold every row
+            Files.deleteIfExists(target.toPath());
+            throw e;
+        }
+
+        List<Segment> replaced;
+        lock.writeLock().lock();
+        try {
+            segments.put(baseNumber, base);
+            for (Map.Entry<String, long[]> location : moved.entrySet()) {
+                Entry entry = rows.get(location.getKey());
+                if (entry != null && entry.segment <= cutoff) {
+                    liveBytes += location.getValue()[1] - entry.length;
+                    if (!entry.packed) {
+                        entry.packed = true;
+                        legacyRows--;
+                    }
+                    entry.segment = baseNumber;
+                    entry.offset = location.getValue()[0];
+                    entry.length = (int) location.getValue()[1];
+                }
+            }
+            replaced = new ArrayList<>(segments.headMap(cutoff, true).values());
+            for (Segment segment : replaced) {
+                segments.remove(segment.number);
+            }
+            // No reader holds a view of a replaced segment past this point
+            for (Segment segment : replaced) {
+                try {
+                    segment.close();
+                } catch (IOException e) {
+                    errorHandler.accept("Failed to close compacted segment " + segment.file.getName()
+                        + ": " + e.getMessage());
+                }
+            }
+            totalBytes = 0;
+            for (Segment segment : segments.values()) {
+                totalBytes += segment.size;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        for (Segment segment : replaced) {
+            try {
+                Files.deleteIfExists(segment.file.toPath());
+            } catch (IOException e) {
+                errorHandler.accept("Failed to delete compacted segment " + segment.file.getName()
+                    + ", it is removed on the next start: " + e.getMessage());
+            }
+        }
+    }
+
+    private static long writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        long written = 0;
+        while (buffer.hasRemaining()) {
+            written += channel.write(buffer);
+        }
+        return written;
+    }
+
+    // ==================== Lifecycle ====================
+
+    /**
+     * Force the active segment to disk.
+     */
+    public void sync() {
+        Segment current;
+        lock.readLock().lock();
+        try {
+            current = active;
+        } finally {
+            lock.readLock().unlock();
+        }
+        // Outside the lock, so writers do not wait for the disk
+        try {
+            current.sync();
+        } catch (ClosedChannelException e) {
+            // Rolled and closed meanwhile; it was synced before it was closed
+        } catch (IOException e) {
+            errorHandler.accept("Failed to sync mail segments: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() {
+        // Let a running compaction finish; interrupting it would close shared channels
+        background.shutdown();
+        try {
+            background.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        lock.writeLock().lock();
+        try {
+            for (Segment segment : segments.values()) {
+                segment.sync();
+                segment.close();
+            }
+            segments.clear();
+        } catch (IOException e) {
+            errorHandler.accept("Failed to close mail segments: " + e.getMessage());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean isSoleWriter() {
+        return true;
+    }
+
+    @Override
+    public long estimateSize() {
+        lock.readLock().lock();
+        try {
+            return rows.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Number of segment files.
+     */
+    int getSegmentCount() {
+        lock.readLock().lock();
+        try {
+            return segments.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Number of live rows still in the string-UUID row format.
+     */
+    int getLegacyRowCount() {
+        lock.readLock().lock();
+        try {
+            return legacyRows;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Total size of the segment files in bytes.
+     */
+    long getTotalBytes() {
+        lock.readLock().lock();
+        try {
+            return totalBytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Number of superseded mappings not unmapped yet.
+     */
+    int getRetiredMappings() {
+        lock.readLock().lock();
+        try {
+            int count = 0;
+            for (Segment segment : segments.values()) {
+                count += segment.retiredCount();
+            }
+            return count;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ==================== Encoding ====================
+
+    private static byte[] encodeRow(MailData mail) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(bytes);
+        // Header fields first, so replay can stop reading after them
+        writeString(out, mail.getId());
+        writeKey(out, PlayerKey.of(mail.getReceiverUuid()));
+        writeKey(out, PlayerKey.of(mail.getSenderUuid()));
+        out.writeLong(mail.getSentTime());
+        out.writeByte(flagsOf(mail));
+        out.writeLong(mail.getVersion());
+        out.writeBoolean(mail.hasItems());
+        writeString(out, mail.getSenderName());
+        writeString(out, mail.getReceiverName());
+        writeString(out, mail.getSubject());
+        writeString(out, mail.getContent());
+        writeString(out, mail.getItems());
+        writeString(out, mail.getCommands());
+        writeString(out, mail.getGroupId());
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static MailData readRow(Segment segment, Entry entry) {
+        ByteBuffer record = segment.read(entry.offset, entry.length);
+        byte type = record.get(HEADER - 1);
+        record.position(HEADER);
+        return decodeRow(record, type == PACKED_ROW);
+    }
+
+    private static MailData decodeRow(ByteBuffer in, boolean packed) {
+        MailData mail = new MailData();
+        mail.setId(readString(in));
+        mail.setReceiverUuid(emptyToNull(packed ? readKey(in).toString() : readString(in)));
+        mail.setSenderUuid(emptyToNull(packed ? readKey(in).toString() : readString(in)));
+        mail.setSentTime(in.getLong());
+        int flags = in.get();
+        long version = in.getLong();
+        in.get();
+        mail.setSenderName(readString(in));
+        mail.setReceiverName(readString(in));
+        mail.setSubject(readString(in));
+        mail.setContent(readString(in));
+        mail.setItems(readString(in));
+        mail.setCommands(readString(in));
+        // Rows written before broadcast groups end here
+        if (in.hasRemaining()) {
+            mail.setGroupId(readString(in));
+        }
+        applyFlags(mail, flags, version);
+        return mail;
+    }
+
+    private static byte[] encodeId(String id) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(48);
+        DataOutputStream out = new DataOutputStream(bytes);
+        writeString(out, id);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static byte[] encodeFlags(String id, int flags, long version) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        writeString(out, id);
+        out.writeByte(flags);
+        out.writeLong(version);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeKey(DataOutputStream out, PlayerKey key) throws IOException {
+        if (key.isUuid()) {
+            out.writeByte(KEY_UUID);
+            out.writeLong(key.getMostSignificantBits());
+            out.writeLong(key.getLeastSignificantBits());
+        } else {
+            out.writeByte(KEY_STRING);
+            writeString(out, key.toString());
+        }
+    }
+
+    private static PlayerKey readKey(ByteBuffer in) {
+        if (in.get() == KEY_UUID) {
+            return PlayerKey.of(in.getLong(), in.getLong());
+        }
+        return PlayerKey.of(readString(in));
+    }
+
+    private static int flagsOf(MailData mail) {
+        int flags = 0;
+        if (mail.isRead()) {
+            flags |= READ;
+        }
+        if (mail.isClaimed()) {
+            flags |= CLAIMED;
+        }
+        if (mail.isCommandsExecuted()) {
+            flags |= COMMANDS_EXECUTED;
+        }
+        if (mail.isDeletedBySender()) {
+            flags |= DELETED_BY_SENDER;
+        }
+        if (mail.isDeletedByReceiver()) {
+            flags |= DELETED_BY_RECEIVER;
+        }
+        return flags;
+    }
+
+    private static void applyFlags(MailData mail, int flags, long version) {
+        mail.setRead((flags & READ) != 0);
+        mail.setClaimed((flags & CLAIMED) != 0);
+        mail.setCommandsExecuted((flags & COMMANDS_EXECUTED) != 0);
+        mail.setDeletedBySender((flags & DELETED_BY_SENDER) != 0);
+        mail.setDeletedByReceiver((flags & DELETED_BY_RECEIVER) != 0);
+        mail.setVersion(version);
+    }
+
+    private static String emptyToNull(String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+
+    // ==================== Internals ====================
+
+    /**
+     * Index entry: a mail's header and the location of its row record.
+     */
+    private static class Entry {
+        final String id;
+        final PlayerKey receiver;
+        final PlayerKey sender;
+        // False for rows in the string-UUID format, until compaction rewrites them
+        boolean packed;
+        long sentTime;
+        int flags;
+        long version;
+        boolean hasItems;
+        int segment;
+        long offset;
+        int length;
+
+        Entry(String id, PlayerKey receiver, PlayerKey sender, boolean packed) {
+            this.id = id;
+            this.receiver = receiver;
+            this.sender = sender;
+            this.packed = packed;
+        }
+
+        Entry copy() {
+            Entry copy = new Entry(id, receiver, sender, packed);
+            copy.sentTime = sentTime;
+            copy.flags = flags;
+            copy.version = version;
+            copy.hasItems = hasItems;
+            copy.segment = segment;
+            copy.offset = offset;
+            copy.length = length;
+            return copy;
+        }
+    }
+
+    /**
+     * One segment file, appended through its channel and read through mapped windows
+     * of {@code windowBytes}, so a segment of any size can be read. A window that is
+     * too short for the file is remapped when the file grows; a record crossing a
+     * window boundary is read through the channel instead.
+     * <p>
+     * A reader may still hold a view of a superseded mapping, so it is kept until the
+     * next write to the active segment unmaps it under the store write lock. Only the
+     * active segment keeps growing; a sealed one retires at most its last window once,
+     * and those are unmapped by {@link #close()}. An open mapping would keep Windows
+     * from deleting or replacing the file.
+     */
+    private static class Segment {
+        final int number;
+        final File file;
+        final FileChannel channel;
+        final int windowBytes;
+        long size;
+        private final List<MappedByteBuffer> windows = new ArrayList<>();
+        private final List<MappedByteBuffer> retired = new ArrayList<>();
+
+        Segment(int number, File file, int windowBytes) throws IOException {
+            this.number = number;
+            this.file = file;
+            this.windowBytes = windowBytes;
+            this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.size = channel.size();
+        }
+
+        void write(ByteBuffer buffer) throws IOException {
+            long position = size;
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            size = position;
+        }
+
+        synchronized ByteBuffer read(long offset, int length) {
+            int index = (int) (offset / windowBytes);
+            int start = (int) (offset - (long) index * windowBytes);
+            try {
+                if ((long) start + length > windowBytes) {
+                    return readDirect(offset, length);
+                }
+                ByteBuffer view = window(index, start + length).duplicate();
+                view.position(start);
+                view.limit(start + length);
+                return view.slice();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private MappedByteBuffer window(int index, int needed) throws IOException {
+            MappedByteBuffer window = index < windows.size() ? windows.get(index) : null;
+            if (window == null || window.capacity() < needed) {
+                if (window != null) {
+                    retired.add(window);
+                }
+                long base = (long) index * windowBytes;
+                window = channel.map(FileChannel.MapMode.READ_ONLY, base, Math.min(windowBytes, size - base));
+                while (windows.size() <= index) {
+                    windows.add(null);
+                }
+                windows.set(index, window);
+            }
+            return window;
+        }
+
+        private ByteBuffer readDirect(long offset, int length) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(length);
+            long position = offset;
+            while (buffer.hasRemaining()) {
+                int read = channel.read(buffer, position);
+                if (read < 0) {
+                    throw new IOException("unexpected end of " + file.getName() + " at " + position);
+                }
+                position += read;
+            }
+            buffer.flip();
+            return buffer;
+        }
+
+        synchronized void truncate(long position) throws IOException {
+            retireWindows();
+            channel.truncate(position);
+            size = position;
+        }
+
+        /**
+         * Unmap superseded windows. Only called while no reader holds a view.
+         */
+        synchronized void releaseRetired() {
+            if (retired.isEmpty()) {
+                return;
+            }
+            for (MappedByteBuffer mapping : retired) {
+                Unmapper.unmap(mapping);
+            }
+            retired.clear();
+        }
+
+        synchronized int retiredCount() {
+            return retired.size();
+        }
+
+        void sync() throws IOException {
+            if (channel.isOpen()) {
+                channel.force(false);
+            }
+        }
+
+        /**
+         * Close the file and unmap its windows. Only called while no reader holds a view.
+         */
+        synchronized void close() throws IOException {
+            retireWindows();
+            releaseRetired();
+            channel.close();
+        }
+
+        private void retireWindows() {
+            for (MappedByteBuffer window : windows) {
+                if (window != null) {
+                    retired.add(window);
+                }
+            }
+            windows.clear();
+        }
+    }
+
+    /**
+     * Releases a mapping right away instead of when it is garbage collected. Uses
+     * {@code Unsafe.invokeCleaner} on Java 9 and later and the buffer's cleaner on
+     * Java 8; if neither is reachable the mapping is left to the garbage collector.
+     */
+    private static final class Unmapper {
+
+        private static final Consumer<MappedByteBuffer> UNMAP = find();
+
+        static void unmap(MappedByteBuffer buffer) {
+            try {
+                UNMAP.accept(buffer);
+            } catch (RuntimeException e) {
+                // Left to the garbage collector
+            }
+        }
+
+        private static Consumer<MappedByteBuffer> find() {
+            try {
+                Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+                Field field = unsafeClass.getDeclaredField("theUnsafe");
+                field.setAccessible(true);
+                Object unsafe = field.get(null);
+                return buffer -> invoke(invokeCleaner, unsafe, buffer);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                // Java 8
+            }
+            return buffer -> {
+                try {
+                    Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                    cleanerMethod.setAccessible(true);
+                    Object cleaner = cleanerMethod.invoke(buffer);
+                    if (cleaner != null) {
+                        invoke(cleaner.getClass().getMethod("clean"), cleaner);
+                    }
+                } catch (ReflectiveOperationException e) {
+                    throw new IllegalStateException(e);
+                }
+            };
+        }
+
+        private static void invoke(Method method, Object target, Object... args) {
+            try {
+                method.invoke(target, args);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.ultikits.plugins.mail.store;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Fixed set of locks shared by key hash.
+ * <p>
+ * Changes to the same mail always take the same lock, while changes to
+ * different mails usually take different ones, so mail traffic is not
+ * serialized behind one global lock.
+ *
+ * @author wisdomme
+ * @version 1.0.0
+ */
+public class StripedLocks {
+
+    private static final int DEFAULT_STRIPES = 64;
+
+    private final ReentrantLock[] locks;
+    private final int mask;
+
+    public StripedLocks() {
+        this(DEFAULT_STRIPES);
+    }
+
+    /**
+     * @param stripes Number of locks, rounded up to a power of two
+     */
+    public StripedLocks(int stripes) {
+        int size = stripes <= 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1;
+        this.locks = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        this.mask = size - 1;
+    }
+
+    /**
+     * Get the lock for a key.
+     */
+    public ReentrantLock get(Object key) {
+        int h = key == null ? 0 : key.hashCode();
+        // Spread high bits so similar ids land on different stripes
+        h ^= (h >>> 16);
+        return locks[h & mask];
+    }
+
+    /**
+     * Number of locks.
+     */
+    public int size() {
+        return locks.length;
+    }
+}
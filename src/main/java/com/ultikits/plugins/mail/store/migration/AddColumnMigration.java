@@ -0,0 +1,68 @@
+package com.ultikits.plugins.mail.store.migration;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Adds a nullable column unless the table already has it.
+ * <p>
+ * UltiTools creates new tables with every entity column, but does not add columns
+ * to tables created by an older version. Like {@link CreateIndexMigration}, a missing
+ * table fails the migration so it is retried on the next start.
+ *
+ * @author wisdomme
+ * @version 1.0.0
+ */
+public class AddColumnMigration implements Migration {
+
+    private final int version;
+    private final String table;
+    private final String column;
+    private final String type;
+
+    public AddColumnMigration(int version, String table, String column, String type) {
+        this.version = version;
+        this.table = table;
+        this.column = column;
+        this.type = type;
+    }
+
+    @Override
+    public int getVersion() {
+        return version;
+    }
+
+    @Override
+    public String getDescription() {
+        return "column " + column + " " + type + " on " + table;
+    }
+
+    @Override
+    public void apply(Connection connection) throws SQLException {
+        DatabaseMetaData meta = connection.getMetaData();
+        String tableName = CreateIndexMigration.findTable(meta, connection, table);
+        if (tableName == null) {
+            throw new SQLException("Table " + table + " does not exist yet");
+        }
+        if (hasColumn(meta, connection, tableName)) {
+            return;
+        }
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("ALTER TABLE " + tableName + " ADD COLUMN " + column + " " + type);
+        }
+    }
+
+    private boolean hasColumn(DatabaseMetaData meta, Connection connection, String tableName) throws SQLException {
+        try (ResultSet columns = meta.getColumns(connection.getCatalog(), null, tableName, null)) {
+            while (columns.next()) {
+                if (column.equalsIgnoreCase(columns.getString("COLUMN_NAME"))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
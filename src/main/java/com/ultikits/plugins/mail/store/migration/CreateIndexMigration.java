@@ -0,0 +1,85 @@
+package com.ultikits.plugins.mail.store.migration;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Creates an index unless one with the same name already exists.
+ * <p>
+ * The table is looked up case-insensitively, since databases differ in how they
+ * store unquoted names. A missing table fails the migration, so it is retried on the
+ * next start once UltiTools has created the table.
+ *
+ * @author wisdomme
+ * @version 1.0.0
+ */
+public class CreateIndexMigration implements Migration {
+
+    private final int version;
+    private final String table;
+    private final String index;
+    private final String[] columns;
+
+    public CreateIndexMigration(int version, String table, String index, String... columns) {
+        this.version = version;
+        this.table = table;
+        this.index = index;
+        this.columns = columns;
+    }
+
+    @Override
+    public int getVersion() {
+        return version;
+    }
+
+    @Override
+    public String getDescription() {
+        return "index " + index + " on " + table + " (" + String.join(", ", columns) + ")";
+    }
+
+    @Override
+    public void apply(Connection connection) throws SQLException {
+        DatabaseMetaData meta = connection.getMetaData();
+        String tableName = findTable(meta, connection, table);
+        if (tableName == null) {
+            throw new SQLException("Table " + table + " does not exist yet");
+        }
+        if (hasIndex(meta, connection, tableName)) {
+            return;
+        }
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("CREATE INDEX " + index + " ON " + tableName
+                + " (" + String.join(", ", columns) + ")");
+        }
+    }
+
+    /**
+     * The stored name of a table, matched case-insensitively, or null if there is none.
+     */
+    static String findTable(DatabaseMetaData meta, Connection connection, String table) throws SQLException {
+        try (ResultSet tables = meta.getTables(connection.getCatalog(), null, null, new String[]{"TABLE"})) {
+            while (tables.next()) {
+                String name = tables.getString("TABLE_NAME");
+                if (table.equalsIgnoreCase(name)) {
+                    return name;
+                }
+            }
+        }
+        return null;
+    }
+
+    private boolean hasIndex(DatabaseMetaData meta, Connection connection, String tableName) throws SQLException {
+        try (ResultSet indexes = meta.getIndexInfo(connection.getCatalog(), null, tableName, false, true)) {
+            while (indexes.next()) {
+                String name = indexes.getString("INDEX_NAME");
+                if (index.equalsIgnoreCase(name)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
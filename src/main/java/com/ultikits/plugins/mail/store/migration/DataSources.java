@@ -0,0 +1,64 @@
+package com.ultikits.plugins.mail.store.migration;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Finds the JDBC {@link DataSource} behind an UltiTools DataOperator.
+ * <p>
+ * The UltiTools API does not expose its connection pool, so the fields of the operator,
+ * or of the UltiTools instance, are searched a few levels deep for one. Data stores
+ * backed by JSON files have none, and migrations are then skipped.
+ *
+ * @author wisdomme
+ * @version 1.0.0
+ */
+public final class DataSources {
+
+    private static final int MAX_DEPTH = 3;
+
+    private DataSources() {
+    }
+
+    /**
+     * @param root Object to start the search from
+     * @return the data source, or null if there is none
+     */
+    public static DataSource find(Object root) {
+        return find(root, 0, new IdentityHashMap<>());
+    }
+
+    private static DataSource find(Object target, int depth, Map<Object, Boolean> seen) {
+        if (target == null || depth > MAX_DEPTH || seen.put(target, Boolean.TRUE) != null) {
+            return null;
+        }
+        if (target instanceof DataSource) {
+            return (DataSource) target;
+        }
+        String className = target.getClass().getName();
+        if (className.startsWith("java.") || className.startsWith("org.bukkit.") || target.getClass().isArray()) {
+            return null;
+        }
+        for (Class<?> type = target.getClass(); type != null && type != Object.class; type = type.getSuperclass()) {
+            for (Field field : type.getDeclaredFields()) {
+                if (Modifier.isStatic(field.getModifiers()) || field.getType().isPrimitive()) {
+                    continue;
+                }
+                DataSource found;
+                try {
+                    field.setAccessible(true);
+                    found = find(field.get(target), depth + 1, seen);
+                } catch (ReflectiveOperationException | RuntimeException e) {
+                    continue;
+                }
+                if (found != null) {
+                    return found;
+                }
+            }
+        }
+        return null;
+    }
+}
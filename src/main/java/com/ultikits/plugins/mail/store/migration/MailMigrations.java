@@ -0,0 +1,39 @@
+package com.ultikits.plugins.mail.store.migration;
+
+import com.ultikits.plugins.mail.entity.MailData;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The migrations of UltiMail's tables, in version order.
+ * New migrations are appended with the next version; released ones never change.
+ *
+ * @author wisdomme
+ * @version 1.0.0
+ */
+public final class MailMigrations {
+
+    private static final String MAIL_TABLE = MailData.TABLE;
+
+    private static final List<Migration> MIGRATIONS = Collections.unmodifiableList(Arrays.asList(
+        // Inbox paging, counts and unread checks: receiver, visibility, newest first
+        new CreateIndexMigration(1, MAIL_TABLE, "idx_mail_inbox",
+            "receiver_uuid", "deleted_by_receiver", "sent_time"),
+        // Sentbox listing: sender, visibility, newest first
+        new CreateIndexMigration(2, MAIL_TABLE, "idx_mail_sentbox",
+            "sender_uuid", "deleted_by_sender", "sent_time"),
+        // Broadcast group of a mail, null for mails sent to one player
+        new AddColumnMigration(3, MAIL_TABLE, "group_id", "VARCHAR(64)"),
+        // Optimistic concurrency version, checked by conditional updates; rows predating it start at 0
+        new AddColumnMigration(4, MAIL_TABLE, "row_version", "BIGINT DEFAULT 0")
+    ));
+
+    private MailMigrations() {
+    }
+
+    public static List<Migration> all() {
+        return MIGRATIONS;
+    }
+}
@@ -0,0 +1,32 @@
+package com.ultikits.plugins.mail.store.migration;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * One versioned change to UltiMail's tables.
+ * <p>
+ * Migrations run in version order, once per database. They must also be safe to run
+ * again, since a migration can be interrupted after its change but before its version
+ * is recorded.
+ *
+ * @author wisdomme
+ * @version 1.0.0
+ */
+public interface Migration {
+
+    /**
+     * Version number, unique and increasing.
+     */
+    int getVersion();
+
+    /**
+     * Short description for the log and the version table.
+     */
+    String getDescription();
+
+    /**
+     * Apply the change.
+     */
+    void apply(Connection connection) throws SQLException;
+}
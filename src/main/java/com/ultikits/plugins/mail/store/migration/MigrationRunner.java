@@ -0,0 +1,110 @@
+package com.ultikits.plugins.mail.store.migration;
+
+import com.ultikits.ultitools.interfaces.impl.logger.PluginLogger;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Applies pending {@link Migration}s to a database.
+ * <p>
+ * Applied versions are recorded in the {@value #VERSION_TABLE} table of the same
+ * database, so servers sharing a database migrate it once. Migrations run in version
+ * order and each one is timed in the log. The first failure stops the run; that
+ * migration and the ones after it are tried again on the next start.
+ * <p>
+ * {@link #run(List)} blocks the calling thread until every migration finished.
+ *
+ * @author wisdomme
+ * @version 1.0.0
+ */
+public class MigrationRunner {
+
+    static final String VERSION_TABLE = "mail_schema_version";
+
+    private final DataSource dataSource;
+    private final PluginLogger logger;
+
+    public MigrationRunner(DataSource dataSource, PluginLogger logger) {
+        this.dataSource = dataSource;
+        this.logger = logger;
+    }
+
+    /**
+     * Apply the migrations that have not been recorded yet.
+     *
+     * @return the number of migrations applied
+     */
+    public int run(List<Migration> migrations) {
+        List<Migration> ordered = new ArrayList<>(migrations);
+        ordered.sort(Comparator.comparingInt(Migration::getVersion));
+
+        int applied = 0;
+        try (Connection connection = dataSource.getConnection()) {
+            createVersionTable(connection);
+            Set<Integer> done = appliedVersions(connection);
+            for (Migration migration : ordered) {
+                if (done.contains(migration.getVersion())) {
+                    continue;
+                }
+                long start = System.nanoTime();
+                try {
+                    migration.apply(connection);
+                    long millis = (System.nanoTime() - start) / 1_000_000L;
+                    record(connection, migration, millis);
+                    logger.info("Applied mail schema migration " + migration.getVersion()
+                        + " (" + migration.getDescription() + ") in " + millis + "ms");
+                    applied++;
+                } catch (SQLException e) {
+                    logger.error("Mail schema migration " + migration.getVersion()
+                        + " (" + migration.getDescription() + ") failed: " + e.getMessage());
+                    break;
+                }
+            }
+        } catch (SQLException e) {
+            logger.error("Failed to read mail schema version: " + e.getMessage());
+        }
+        return applied;
+    }
+
+    private static void createVersionTable(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("CREATE TABLE IF NOT EXISTS " + VERSION_TABLE + " ("
+                + "version INT PRIMARY KEY, "
+                + "description VARCHAR(255) NOT NULL, "
+                + "applied_at BIGINT NOT NULL, "
+                + "duration_ms BIGINT NOT NULL)");
+        }
+    }
+
+    private static Set<Integer> appliedVersions(Connection connection) throws SQLException {
+        Set<Integer> versions = new HashSet<>();
+        try (Statement statement = connection.createStatement();
+             ResultSet rows = statement.executeQuery("SELECT version FROM " + VERSION_TABLE)) {
+            while (rows.next()) {
+                versions.add(rows.getInt(1));
+            }
+        }
+        return versions;
+    }
+
+    private static void record(Connection connection, Migration migration, long millis) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("INSERT INTO " + VERSION_TABLE
+                + " (version, description, applied_at, duration_ms) VALUES (?, ?, ?, ?)")) {
+            statement.setInt(1, migration.getVersion());
+            statement.setString(2, migration.getDescription());
+            statement.setLong(3, System.currentTimeMillis());
+            statement.setLong(4, millis);
+            statement.executeUpdate();
+        }
+    }
+}
@@ -1,10 +1,13 @@
 package com.ultikits.plugins.mail;
 
+import com.ultikits.plugins.mail.metrics.MetricsExporter;
+import com.ultikits.plugins.mail.service.MailService;
 import com.ultikits.ultitools.interfaces.impl.logger.PluginLogger;
 
 import org.junit.jupiter.api.*;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
 
 import java.util.concurrent.TimeUnit;
 
@@ -66,12 +69,55 @@ class UltiMailTest {
             PluginLogger logger = mock(PluginLogger.class);
             when(plugin.getLogger()).thenReturn(logger);
             when(plugin.i18n(anyString())).thenAnswer(inv -> inv.getArgument(0));
+            when(plugin.getContext()).thenReturn(mock(AnnotationConfigApplicationContext.class));
             doCallRealMethod().when(plugin).unregisterSelf();
 
             plugin.unregisterSelf();
 
             verify(logger).info(anyString());
         }
+
+        @Test
+        @DisplayName("unregisterSelf 应该关闭邮件服务和指标导出")
+        void shouldShutDownMailService() {
+            UltiMail plugin = mock(UltiMail.class);
+            when(plugin.getLogger()).thenReturn(mock(PluginLogger.class));
+            when(plugin.i18n(anyString())).thenAnswer(inv -> inv.getArgument(0));
+            AnnotationConfigApplicationContext context = mock(AnnotationConfigApplicationContext.class);
+            MailService mailService = mock(MailService.class);
+            MetricsExporter exporter = mock(MetricsExporter.class);
+            when(context.getBean(MailService.class)).thenReturn(mailService);
+            when(context.getBean(MetricsExporter.class)).thenReturn(exporter);
+            when(plugin.getContext()).thenReturn(context);
+            doCallRealMethod().when(plugin).unregisterSelf();
+
+            plugin.unregisterSelf();
+
+            verify(mailService).shutdown();
+            verify(exporter).stop();
+        }
+
+        @Test
+        @DisplayName("服务不可用时 unregisterSelf 仍应完成")
+        void shouldFinishWithoutMailService() {
+            UltiMail plugin = mock(UltiMail.class);
+            PluginLogger logger = mock(PluginLogger.class);
+            when(plugin.getLogger()).thenReturn(logger);
+            when(plugin.i18n(anyString())).thenAnswer(inv -> inv.getArgument(0));
+            AnnotationConfigApplicationContext context = mock(AnnotationConfigApplicationContext.class);
+            MetricsExporter exporter = mock(MetricsExporter.class);
+            when(context.getBean(MailService.class)).thenThrow(new IllegalStateException("context closed"));
+            when(context.getBean(MetricsExporter.class)).thenReturn(exporter);
+            when(plugin.getContext()).thenReturn(context);
+            doCallRealMethod().when(plugin).unregisterSelf();
+
+            plugin.unregisterSelf();
+
+            verify(logger).warn(contains("context closed"));
+            // A failed step does not skip the next one
+            verify(exporter).stop();
+            verify(logger).info(anyString());
+        }
     }
 
     @Nested
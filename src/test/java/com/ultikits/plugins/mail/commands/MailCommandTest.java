@@ -3,10 +3,12 @@ package com.ultikits.plugins.mail.commands;
 import com.ultikits.ultitools.abstracts.UltiToolsPlugin;
 import com.ultikits.plugins.mail.config.MailConfig;
 import com.ultikits.plugins.mail.entity.MailData;
+import com.ultikits.plugins.mail.entity.MailGroupData;
+import com.ultikits.plugins.mail.metrics.MailMetrics;
+import com.ultikits.plugins.mail.service.ClaimAllResult;
 import com.ultikits.plugins.mail.service.MailService;
 import com.ultikits.plugins.mail.utils.TestHelper;
 
-import org.bukkit.Material;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
 import org.bukkit.inventory.ItemStack;
@@ -23,6 +25,8 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.*;
@@ -81,7 +85,7 @@ class MailCommandTest {
         @Test
         @DisplayName("空收件箱时应该显示空消息")
         void shouldShowEmptyMessageForEmptyInbox() {
-            when(mockMailService.getInbox(playerUuid)).thenReturn(new ArrayList<>());
+            when(mockMailService.listInbox(playerUuid)).thenReturn(new ArrayList<>());
 
             mailCommand.inbox(player);
 
@@ -95,7 +99,7 @@ class MailCommandTest {
             List<MailData> mails = new ArrayList<>();
             mails.add(createTestMail("sender1", false, false));
             mails.add(createTestMail("sender2", true, false));
-            when(mockMailService.getInbox(playerUuid)).thenReturn(mails);
+            when(mockMailService.listInbox(playerUuid)).thenReturn(mails);
 
             mailCommand.inbox(player);
 
@@ -108,7 +112,7 @@ class MailCommandTest {
         void shouldShowReadStatus() {
             List<MailData> mails = new ArrayList<>();
             mails.add(createTestMail("sender1", true, false));
-            when(mockMailService.getInbox(playerUuid)).thenReturn(mails);
+            when(mockMailService.listInbox(playerUuid)).thenReturn(mails);
 
             mailCommand.inbox(player);
 
@@ -122,7 +126,7 @@ class MailCommandTest {
         void shouldShowUnreadStatus() {
             List<MailData> mails = new ArrayList<>();
             mails.add(createTestMail("sender1", false, false));
-            when(mockMailService.getInbox(playerUuid)).thenReturn(mails);
+            when(mockMailService.listInbox(playerUuid)).thenReturn(mails);
 
             mailCommand.inbox(player);
 
@@ -139,7 +143,7 @@ class MailCommandTest {
             mail.setItems("base64data");
             mail.setClaimed(false);
             mails.add(mail);
-            when(mockMailService.getInbox(playerUuid)).thenReturn(mails);
+            when(mockMailService.listInbox(playerUuid)).thenReturn(mails);
 
             mailCommand.inbox(player);
 
@@ -156,7 +160,7 @@ class MailCommandTest {
             mail.setItems("base64data");
             mail.setClaimed(true);
             mails.add(mail);
-            when(mockMailService.getInbox(playerUuid)).thenReturn(mails);
+            when(mockMailService.listInbox(playerUuid)).thenReturn(mails);
 
             mailCommand.inbox(player);
 
@@ -171,7 +175,7 @@ class MailCommandTest {
             List<MailData> mails = new ArrayList<>();
             mails.add(createTestMail("sender1", false, false));
             mails.add(createTestMail("sender2", false, false));
-            when(mockMailService.getInbox(playerUuid)).thenReturn(mails);
+            when(mockMailService.listInbox(playerUuid)).thenReturn(mails);
 
             mailCommand.inbox(player);
 
@@ -240,6 +244,27 @@ class MailCommandTest {
                 msg.contains("ReceiverGuy")
             ));
         }
+
+        @Test
+        @DisplayName("群发应显示为一条并按时间与邮件合并")
+        void shouldMergeBroadcastsByTime() {
+            MailData mail = createTestMail("TestPlayer", false, false);
+            mail.setReceiverName("ReceiverGuy");
+            mail.setSentTime(2000L);
+            MailGroupData group = new MailGroupData();
+            group.setSubject("Event");
+            group.setSentTime(1000L);
+            group.setDeliveredCount(500);
+            when(mockMailService.getSentMails(playerUuid)).thenReturn(new ArrayList<>(Arrays.asList(mail)));
+            when(mockMailService.getSentGroups(playerUuid)).thenReturn(new ArrayList<>(Arrays.asList(group)));
+
+            mailCommand.sent(player);
+
+            ArgumentCaptor<String> lines = ArgumentCaptor.forClass(String.class);
+            verify(player, times(3)).sendMessage(lines.capture());
+            assertThat(lines.getAllValues().get(1)).contains("ReceiverGuy");
+            assertThat(lines.getAllValues().get(2)).contains("[sentbox_broadcast]").contains("Event");
+        }
     }
 
     // ==================== readByIndex Tests ====================
@@ -253,7 +278,7 @@ class MailCommandTest {
         void shouldShowErrorForInvalidIndex() {
             List<MailData> mails = new ArrayList<>();
             mails.add(createTestMail("sender", false, false));
-            when(mockMailService.getInbox(playerUuid)).thenReturn(mails);
+            stubInbox(mails);
 
             mailCommand.readByIndex(player, 5);
 
@@ -265,7 +290,7 @@ class MailCommandTest {
         void shouldShowErrorForZeroIndex() {
             List<MailData> mails = new ArrayList<>();
             mails.add(createTestMail("sender", false, false));
-            when(mockMailService.getInbox(playerUuid)).thenReturn(mails);
+            stubInbox(mails);
 
             mailCommand.readByIndex(player, 0);
 
@@ -277,7 +302,7 @@ class MailCommandTest {
         void shouldShowErrorForNegativeIndex() {
             List<MailData> mails = new ArrayList<>();
             mails.add(createTestMail("sender", false, false));
-            when(mockMailService.getInbox(playerUuid)).thenReturn(mails);
+            stubInbox(mails);
 
             mailCommand.readByIndex(player, -1);
 
@@ -290,7 +315,7 @@ class MailCommandTest {
             List<MailData> mails = new ArrayList<>();
             MailData mail = createTestMail("sender", false, false);
             mails.add(mail);
-            when(mockMailService.getInbox(playerUuid)).thenReturn(mails);
+            stubInbox(mails);
 
             mailCommand.readByIndex(player, 1);
 
@@ -305,7 +330,7 @@ class MailCommandTest {
             mail.setSubject("测试标题");
             mail.setContent("测试内容");
             mails.add(mail);
-            when(mockMailService.getInbox(playerUuid)).thenReturn(mails);
+            stubInbox(mails);
 
             mailCommand.readByIndex(player, 1);
 
@@ -323,7 +348,7 @@ class MailCommandTest {
             MailData mail = createTestMail("sender", false, false);
             mail.setCommands("[\"give %player% diamond 1\"]");
             mails.add(mail);
-            when(mockMailService.getInbox(playerUuid)).thenReturn(mails);
+            stubInbox(mails);
 
             mailCommand.readByIndex(player, 1);
 
@@ -337,7 +362,7 @@ class MailCommandTest {
             MailData mail = createTestMail("sender", false, false);
             mail.setCommands(null);
             mails.add(mail);
-            when(mockMailService.getInbox(playerUuid)).thenReturn(mails);
+            stubInbox(mails);
 
             mailCommand.readByIndex(player, 1);
 
@@ -352,7 +377,7 @@ class MailCommandTest {
             mail.setCommands("[\"test\"]");
             mail.setCommandsExecuted(true);
             mails.add(mail);
-            when(mockMailService.getInbox(playerUuid)).thenReturn(mails);
+            stubInbox(mails);
 
             mailCommand.readByIndex(player, 1);
 
@@ -367,7 +392,7 @@ class MailCommandTest {
             mail.setItems("base64data");
             mail.setClaimed(false);
             mails.add(mail);
-            when(mockMailService.getInbox(playerUuid)).thenReturn(mails);
+            stubInbox(mails);
 
             mailCommand.readByIndex(player, 1);
 
@@ -384,7 +409,7 @@ class MailCommandTest {
             mail.setItems("base64data");
             mail.setClaimed(true);
             mails.add(mail);
-            when(mockMailService.getInbox(playerUuid)).thenReturn(mails);
+            stubInbox(mails);
 
             mailCommand.readByIndex(player, 1);
 
@@ -403,7 +428,7 @@ class MailCommandTest {
         @Test
         @DisplayName("无效索引应该显示错误")
         void shouldShowErrorForInvalidIndex() {
-            when(mockMailService.getInbox(playerUuid)).thenReturn(new ArrayList<>());
+            stubInbox(new ArrayList<>());
 
             mailCommand.claim(player, 1);
 
@@ -418,7 +443,7 @@ class MailCommandTest {
             mail.setItems("base64data");
             mail.setClaimed(true);
             mails.add(mail);
-            when(mockMailService.getInbox(playerUuid)).thenReturn(mails);
+            stubInbox(mails);
 
             mailCommand.claim(player, 1);
 
@@ -432,7 +457,7 @@ class MailCommandTest {
             MailData mail = createTestMail("sender", false, false);
             mail.setItems(null);
             mails.add(mail);
-            when(mockMailService.getInbox(playerUuid)).thenReturn(mails);
+            stubInbox(mails);
 
             mailCommand.claim(player, 1);
 
@@ -447,16 +472,9 @@ class MailCommandTest {
             mail.setItems("base64data");
             mail.setClaimed(false);
             mails.add(mail);
-            when(mockMailService.getInbox(playerUuid)).thenReturn(mails);
-            when(mockMailService.getItemCount(mail)).thenReturn(5);
-            // Player inventory full - no empty slots
-            when(playerInventory.getStorageContents()).thenReturn(new ItemStack[]{
-                mock(ItemStack.class), mock(ItemStack.class)
-            });
-            // Non-empty items
-            for (ItemStack item : playerInventory.getStorageContents()) {
-                lenient().when(item.getType()).thenReturn(Material.DIAMOND);
-            }
+            stubInbox(mails);
+            // Player inventory full - items need 5 more slots
+            when(mockMailService.getMissingSlots(mail, player)).thenReturn(5);
 
             mailCommand.claim(player, 1);
 
@@ -471,15 +489,11 @@ class MailCommandTest {
             mail.setItems("base64data");
             mail.setClaimed(false);
             mails.add(mail);
-            when(mockMailService.getInbox(playerUuid)).thenReturn(mails);
-            when(mockMailService.getItemCount(mail)).thenReturn(1);
-            // Player has empty slots
-            ItemStack airItem = mock(ItemStack.class);
-            when(airItem.getType()).thenReturn(Material.AIR);
-            when(playerInventory.getStorageContents()).thenReturn(new ItemStack[]{null, airItem});
-            // claimItems returns items
-            ItemStack diamond = mock(ItemStack.class);
-            when(mockMailService.claimItems(mail, player)).thenReturn(new ItemStack[]{diamond});
+            stubInbox(mails);
+            // Items fit
+            when(mockMailService.getMissingSlots(mail, player)).thenReturn(0);
+            // claimItems hands out items
+            stubClaimItems(mail, mock(ItemStack.class));
 
             mailCommand.claim(player, 1);
 
@@ -487,6 +501,77 @@ class MailCommandTest {
         }
     }
 
+    // ==================== claimAll Tests ====================
+
+    @Nested
+    @DisplayName("claimall 命令测试")
+    class ClaimAllCommandTests {
+
+        @SuppressWarnings("unchecked")
+        private Consumer<ClaimAllResult> captureCallback() {
+            ArgumentCaptor<Consumer<ClaimAllResult>> captor = ArgumentCaptor.forClass(Consumer.class);
+            mailCommand.claimAll(player);
+            verify(mockMailService).claimAll(eq(player), captor.capture());
+            return captor.getValue();
+        }
+
+        @Test
+        @DisplayName("领取成功时应显示物品和邮件数量")
+        void shouldShowSuccessMessage() {
+            captureCallback().accept(new ClaimAllResult(false, 3, 7, 0));
+
+            verify(player).sendMessage(ArgumentMatchers.<String>argThat(msg ->
+                msg.contains("[claim_all_success]")
+            ));
+            verify(player, never()).sendMessage(ArgumentMatchers.<String>argThat(msg ->
+                msg.contains("[claim_all_skipped]")
+            ));
+        }
+
+        @Test
+        @DisplayName("部分放不下时应提示跳过数量")
+        void shouldShowSkippedMessage() {
+            captureCallback().accept(new ClaimAllResult(false, 1, 1, 2));
+
+            verify(player).sendMessage(ArgumentMatchers.<String>argThat(msg ->
+                msg.contains("[claim_all_skipped]")
+            ));
+        }
+
+        @Test
+        @DisplayName("没有可领取附件时应提示")
+        void shouldShowNoneMessage() {
+            captureCallback().accept(new ClaimAllResult(false, 0, 0, 0));
+
+            verify(player).sendMessage(ArgumentMatchers.<String>argThat(msg ->
+                msg.contains("[claim_all_none]")
+            ));
+        }
+
+        @Test
+        @DisplayName("正在领取时应提示稍候")
+        void shouldShowBusyMessage() {
+            captureCallback().accept(new ClaimAllResult(true, 0, 0, 0));
+
+            verify(player).sendMessage(ArgumentMatchers.<String>argThat(msg ->
+                msg.contains("[claim_all_busy]")
+            ));
+        }
+
+        @Test
+        @DisplayName("领取失败时应提示失败")
+        void shouldShowFailedMessage() {
+            ClaimAllResult failed = mock(ClaimAllResult.class);
+            when(failed.isFailed()).thenReturn(true);
+
+            captureCallback().accept(failed);
+
+            verify(player).sendMessage(ArgumentMatchers.<String>argThat(msg ->
+                msg.contains("[claim_all_failed]")
+            ));
+        }
+    }
+
     // ==================== delete Tests ====================
 
     @Nested
@@ -496,7 +581,7 @@ class MailCommandTest {
         @Test
         @DisplayName("无效索引应该显示错误")
         void shouldShowErrorForInvalidIndex() {
-            when(mockMailService.getInbox(playerUuid)).thenReturn(new ArrayList<>());
+            stubInbox(new ArrayList<>());
 
             mailCommand.delete(player, 1);
 
@@ -511,7 +596,7 @@ class MailCommandTest {
             mail.setItems("base64data");
             mail.setClaimed(false);
             mails.add(mail);
-            when(mockMailService.getInbox(playerUuid)).thenReturn(mails);
+            stubInbox(mails);
 
             mailCommand.delete(player, 1);
 
@@ -525,7 +610,7 @@ class MailCommandTest {
             List<MailData> mails = new ArrayList<>();
             MailData mail = createTestMail("sender", false, false);
             mails.add(mail);
-            when(mockMailService.getInbox(playerUuid)).thenReturn(mails);
+            stubInbox(mails);
 
             mailCommand.delete(player, 1);
 
@@ -541,7 +626,7 @@ class MailCommandTest {
             mail.setItems("base64data");
             mail.setClaimed(true);
             mails.add(mail);
-            when(mockMailService.getInbox(playerUuid)).thenReturn(mails);
+            stubInbox(mails);
 
             mailCommand.delete(player, 1);
 
@@ -556,23 +641,28 @@ class MailCommandTest {
     @DisplayName("delall 命令测试")
     class DeleteAllTests {
 
+        private IntConsumer captureCallback() {
+            ArgumentCaptor<IntConsumer> captor = ArgumentCaptor.forClass(IntConsumer.class);
+            mailCommand.deleteAll(player);
+            verify(mockMailService).deleteAllByReceiver(eq(playerUuid), captor.capture());
+            return captor.getValue();
+        }
+
         @Test
         @DisplayName("应该调用 deleteAllByReceiver")
         void shouldCallDeleteAll() {
-            when(mockMailService.deleteAllByReceiver(playerUuid)).thenReturn(5);
+            IntConsumer callback = captureCallback();
 
-            mailCommand.deleteAll(player);
+            verify(player, never()).sendMessage(anyString());
+            callback.accept(5);
 
-            verify(mockMailService).deleteAllByReceiver(playerUuid);
             verify(player).sendMessage(ArgumentMatchers.<String>argThat(msg -> msg.contains("5")));
         }
 
         @Test
         @DisplayName("零删除时仍应显示消息")
         void shouldShowMessageForZeroDeletes() {
-            when(mockMailService.deleteAllByReceiver(playerUuid)).thenReturn(0);
-
-            mailCommand.deleteAll(player);
+            captureCallback().accept(0);
 
             verify(player).sendMessage(ArgumentMatchers.<String>argThat(msg -> msg.contains("0")));
         }
@@ -587,11 +677,12 @@ class MailCommandTest {
         @Test
         @DisplayName("应该调用 deleteReadByReceiver")
         void shouldCallDeleteRead() {
-            when(mockMailService.deleteReadByReceiver(playerUuid)).thenReturn(3);
+            ArgumentCaptor<IntConsumer> captor = ArgumentCaptor.forClass(IntConsumer.class);
 
             mailCommand.deleteRead(player);
 
-            verify(mockMailService).deleteReadByReceiver(playerUuid);
+            verify(mockMailService).deleteReadByReceiver(eq(playerUuid), captor.capture());
+            captor.getValue().accept(3);
             verify(player).sendMessage(ArgumentMatchers.<String>argThat(msg -> msg.contains("3")));
         }
     }
@@ -611,12 +702,75 @@ class MailCommandTest {
         }
     }
 
+    // ==================== stats Tests ====================
+
+    @Nested
+    @DisplayName("stats 命令测试")
+    class StatsTests {
+
+        @Test
+        @DisplayName("应该显示操作、计数器、缓存和实时指标")
+        void shouldShowAllSections() {
+            MailMetrics metrics = new MailMetrics();
+            metrics.record(MailMetrics.Operation.SEND, System.nanoTime() - 2_000_000L);
+            metrics.registerCache("receiver_filter", () -> 3, () -> 1);
+            metrics.registerGauge("task_queue_depth", () -> 7);
+            when(mockMailService.getMetrics()).thenReturn(metrics);
+
+            mailCommand.stats(player);
+
+            ArgumentCaptor<String> captor = ArgumentCaptor.forClass(String.class);
+            verify(player, atLeast(1)).sendMessage(captor.capture());
+            List<String> lines = captor.getAllValues();
+            assertThat(lines).anyMatch(line -> line.contains("[stats_title]"));
+            assertThat(lines).anyMatch(line -> line.contains("send: 1,"));
+            assertThat(lines).anyMatch(line -> line.contains("broadcast_mails: 0"));
+            assertThat(lines).anyMatch(line -> line.contains("receiver_filter: 75") && line.contains("(3/4)"));
+            assertThat(lines).anyMatch(line -> line.contains("task_queue_depth: 7"));
+        }
+
+        @Test
+        @DisplayName("stats 应该需要管理员权限")
+        void shouldRequireAdminPermission() throws Exception {
+            com.ultikits.ultitools.annotations.command.CmdMapping mapping = MailCommand.class
+                .getMethod("stats", CommandSender.class)
+                .getAnnotation(com.ultikits.ultitools.annotations.command.CmdMapping.class);
+
+            assertThat(mapping.permission()).isEqualTo("ultimail.admin.stats");
+        }
+
+        @Test
+        @DisplayName("控制台也应能查看统计且文本来自语言文件")
+        void shouldShowStatsToConsole() throws Exception {
+            when(mockMailService.getMetrics()).thenReturn(new MailMetrics());
+            CommandSender console = mock(org.bukkit.command.ConsoleCommandSender.class);
+
+            mailCommand.stats(console);
+
+            ArgumentCaptor<String> captor = ArgumentCaptor.forClass(String.class);
+            verify(console, atLeast(1)).sendMessage(captor.capture());
+            assertThat(captor.getAllValues()).anyMatch(line -> line.contains("[stats_tick_times]"));
+            assertThat(captor.getAllValues()).noneMatch(line -> line.contains("avg"));
+            com.ultikits.ultitools.annotations.command.CmdTarget target = MailCommand.class
+                .getMethod("stats", CommandSender.class)
+                .getAnnotation(com.ultikits.ultitools.annotations.command.CmdTarget.class);
+            assertThat(target.value())
+                .isEqualTo(com.ultikits.ultitools.annotations.command.CmdTarget.CmdTargetType.BOTH);
+        }
+    }
+
     // ==================== help Tests ====================
 
     @Nested
     @DisplayName("help 命令测试")
     class HelpTests {
 
+        @BeforeEach
+        void setUpPermissions() {
+            // Help checks one permission per admin line
+            lenient().when(player.hasPermission(anyString())).thenReturn(false);
+        }
+
         @Test
         @DisplayName("帮助命令应该显示帮助信息")
         void shouldShowHelpMessage() {
@@ -650,6 +804,16 @@ class MailCommandTest {
             // We need to verify the exact calls
         }
 
+        @Test
+        @DisplayName("有统计权限时应显示 stats 命令")
+        void shouldShowStatsCommandForAdmins() {
+            when(player.hasPermission("ultimail.admin.stats")).thenReturn(true);
+
+            mailCommand.help(player);
+
+            verify(player).sendMessage(ArgumentMatchers.<String>argThat(msg -> msg.contains("/mail stats")));
+        }
+
         @Test
         @DisplayName("handleHelp 应该接受 CommandSender")
         void shouldAcceptCommandSender() {
@@ -713,71 +877,48 @@ class MailCommandTest {
         }
     }
 
-    // ==================== countEmptySlots Tests ====================
+    // ==================== Inventory fit check Tests ====================
 
     @Nested
-    @DisplayName("countEmptySlots 测试 (间接测试)")
-    class CountEmptySlotsTests {
-
-        @Test
-        @DisplayName("空背包应该有足够空间")
-        void shouldCountAllSlotsAsEmpty() {
-            List<MailData> mails = new ArrayList<>();
-            MailData mail = createTestMail("sender", false, false);
-            mail.setItems("base64data");
-            mail.setClaimed(false);
-            mails.add(mail);
-            when(mockMailService.getInbox(playerUuid)).thenReturn(mails);
-            when(mockMailService.getItemCount(mail)).thenReturn(2);
-            // All null = empty
-            when(playerInventory.getStorageContents()).thenReturn(new ItemStack[]{null, null, null});
-            ItemStack diamond = mock(ItemStack.class);
-            when(mockMailService.claimItems(mail, player)).thenReturn(new ItemStack[]{diamond});
-
-            mailCommand.claim(player, 1);
-
-            verify(mockMailService).claimItems(mail, player);
-        }
+    @DisplayName("背包空间检查测试")
+    class InventoryFitCheckTests {
 
         @Test
-        @DisplayName("AIR物品应被视为空槽位")
-        void shouldCountAirSlotsAsEmpty() {
+        @DisplayName("放得下时应领取且不读取整个背包数组")
+        void shouldClaimWhenItemsFit() {
             List<MailData> mails = new ArrayList<>();
             MailData mail = createTestMail("sender", false, false);
             mail.setItems("base64data");
             mail.setClaimed(false);
             mails.add(mail);
-            when(mockMailService.getInbox(playerUuid)).thenReturn(mails);
-            when(mockMailService.getItemCount(mail)).thenReturn(1);
-            ItemStack airItem = mock(ItemStack.class);
-            when(airItem.getType()).thenReturn(Material.AIR);
-            when(playerInventory.getStorageContents()).thenReturn(new ItemStack[]{airItem, null});
-            ItemStack diamond = mock(ItemStack.class);
-            when(mockMailService.claimItems(mail, player)).thenReturn(new ItemStack[]{diamond});
+            stubInbox(mails);
+            when(mockMailService.getMissingSlots(mail, player)).thenReturn(0);
+            stubClaimItems(mail, mock(ItemStack.class));
 
             mailCommand.claim(player, 1);
 
-            verify(mockMailService).claimItems(mail, player);
+            verify(mockMailService).claimItems(eq(mail), eq(player), any());
+            verify(mockMailService, never()).getItemCount(any());
+            verify(playerInventory, never()).getStorageContents();
         }
 
         @Test
-        @DisplayName("满背包应该拒绝领取")
-        void shouldRejectWhenInventoryCompletelyFull() {
+        @DisplayName("放不下时应提示缺少的格数")
+        void shouldReportMissingSlots() {
             List<MailData> mails = new ArrayList<>();
             MailData mail = createTestMail("sender", false, false);
             mail.setItems("base64data");
             mail.setClaimed(false);
             mails.add(mail);
-            when(mockMailService.getInbox(playerUuid)).thenReturn(mails);
-            when(mockMailService.getItemCount(mail)).thenReturn(3);
-            ItemStack stone = mock(ItemStack.class);
-            when(stone.getType()).thenReturn(Material.STONE);
-            when(playerInventory.getStorageContents()).thenReturn(new ItemStack[]{stone, stone});
+            stubInbox(mails);
+            when(mockMailService.getMissingSlots(mail, player)).thenReturn(3);
 
             mailCommand.claim(player, 1);
 
-            verify(player).sendMessage(ArgumentMatchers.<String>argThat(msg -> msg.contains("[claim_inventory_full]")));
-            verify(mockMailService, never()).claimItems(any(), any());
+            verify(player).sendMessage(ArgumentMatchers.<String>argThat(msg ->
+                msg.contains("[claim_inventory_full]")
+            ));
+            verify(mockMailService, never()).claimItems(any(), any(), any());
         }
     }
 
@@ -794,7 +935,7 @@ class MailCommandTest {
             MailData mail = createTestMail("sender", false, false);
             mail.setItems(null);
             mails.add(mail);
-            when(mockMailService.getInbox(playerUuid)).thenReturn(mails);
+            stubInbox(mails);
 
             mailCommand.readByIndex(player, 1);
 
@@ -807,7 +948,7 @@ class MailCommandTest {
         @Test
         @DisplayName("空收件箱读取任何索引都应失败")
         void shouldFailForEmptyInbox() {
-            when(mockMailService.getInbox(playerUuid)).thenReturn(new ArrayList<>());
+            stubInbox(new ArrayList<>());
 
             mailCommand.readByIndex(player, 1);
 
@@ -821,7 +962,7 @@ class MailCommandTest {
             mails.add(createTestMail("sender1", false, false));
             mails.add(createTestMail("sender2", false, false));
             mails.add(createTestMail("sender3", false, false));
-            when(mockMailService.getInbox(playerUuid)).thenReturn(mails);
+            stubInbox(mails);
 
             mailCommand.readByIndex(player, 3);
 
@@ -891,7 +1032,7 @@ class MailCommandTest {
         @Test
         @DisplayName("空收件箱删除应失败")
         void shouldFailForEmptyInboxDelete() {
-            when(mockMailService.getInbox(playerUuid)).thenReturn(new ArrayList<>());
+            stubInbox(new ArrayList<>());
 
             mailCommand.delete(player, 1);
 
@@ -903,7 +1044,7 @@ class MailCommandTest {
         void shouldFailForOutOfRangeDeleteIndex() {
             List<MailData> mails = new ArrayList<>();
             mails.add(createTestMail("sender", false, false));
-            when(mockMailService.getInbox(playerUuid)).thenReturn(mails);
+            stubInbox(mails);
 
             mailCommand.delete(player, 2);
 
@@ -918,13 +1059,13 @@ class MailCommandTest {
     class MailServiceInteractionTests {
 
         @Test
-        @DisplayName("inbox 应该使用正确的玩家UUID调用 getInbox")
-        void shouldCallGetInboxWithCorrectUuid() {
-            when(mockMailService.getInbox(playerUuid)).thenReturn(new ArrayList<>());
+        @DisplayName("inbox 应该使用正确的玩家UUID调用 listInbox")
+        void shouldCallListInboxWithCorrectUuid() {
+            when(mockMailService.listInbox(playerUuid)).thenReturn(new ArrayList<>());
 
             mailCommand.inbox(player);
 
-            verify(mockMailService).getInbox(playerUuid);
+            verify(mockMailService).listInbox(playerUuid);
         }
 
         @Test
@@ -940,25 +1081,39 @@ class MailCommandTest {
         @Test
         @DisplayName("deleteAll 应该使用正确的玩家UUID")
         void shouldCallDeleteAllWithCorrectUuid() {
-            when(mockMailService.deleteAllByReceiver(playerUuid)).thenReturn(0);
-
             mailCommand.deleteAll(player);
 
-            verify(mockMailService).deleteAllByReceiver(playerUuid);
+            verify(mockMailService).deleteAllByReceiver(eq(playerUuid), any());
         }
 
         @Test
         @DisplayName("deleteRead 应该使用正确的玩家UUID")
         void shouldCallDeleteReadWithCorrectUuid() {
-            when(mockMailService.deleteReadByReceiver(playerUuid)).thenReturn(0);
-
             mailCommand.deleteRead(player);
 
-            verify(mockMailService).deleteReadByReceiver(playerUuid);
+            verify(mockMailService).deleteReadByReceiver(eq(playerUuid), any());
         }
     }
 
     // Helper methods
+    /**
+     * Resolve index commands against the given inbox, as the last listing would.
+     */
+    private void stubInbox(List<MailData> mails) {
+        when(mockMailService.getInboxMail(eq(playerUuid), anyInt())).thenAnswer(invocation -> {
+            int index = invocation.getArgument(1);
+            return index >= 1 && index <= mails.size() ? mails.get(index - 1) : null;
+        });
+    }
+
+    private void stubClaimItems(MailData mail, ItemStack... items) {
+        doAnswer(invocation -> {
+            Consumer<ItemStack[]> callback = invocation.getArgument(2);
+            callback.accept(items);
+            return null;
+        }).when(mockMailService).claimItems(eq(mail), eq(player), any());
+    }
+
     private MailData createTestMail(String senderName, boolean read, boolean claimed) {
         MailData mail = new MailData();
         mail.setSenderUuid("sender-uuid");
@@ -2,10 +2,11 @@ package com.ultikits.plugins.mail.commands;
 
 import com.ultikits.plugins.mail.config.MailConfig;
 import com.ultikits.plugins.mail.entity.MailData;
+import com.ultikits.plugins.mail.metrics.MailMetrics;
 import com.ultikits.plugins.mail.service.MailService;
+import com.ultikits.plugins.mail.store.MailStore;
 import com.ultikits.plugins.mail.utils.TestHelper;
 import com.ultikits.ultitools.abstracts.UltiToolsPlugin;
-import com.ultikits.ultitools.interfaces.DataOperator;
 
 import org.bukkit.Bukkit;
 import org.bukkit.OfflinePlayer;
@@ -77,8 +78,6 @@ class RecallCommandTest {
     void setUp() throws Exception {
         // Setup mock UltiToolsPlugin
         mockPlugin = TestHelper.mockUltiToolsPlugin();
-        DataOperator<MailData> mockDataOperator = mock(DataOperator.class);
-        when(mockPlugin.getDataOperator(MailData.class)).thenReturn(mockDataOperator);
 
         // Use real MailConfig with defaults
         config = new MailConfig();
@@ -118,6 +117,7 @@ class RecallCommandTest {
         TestHelper.injectField(recallCommand, "config", config);
         TestHelper.injectField(recallCommand, "mailService", mockMailService);
         TestHelper.injectField(recallCommand, "plugin", mockPlugin);
+        TestHelper.injectField(recallCommand, "metrics", new MailMetrics());
     }
 
     @AfterEach
@@ -270,17 +270,13 @@ class RecallCommandTest {
         @Test
         @DisplayName("应该正确创建游戏邮件")
         void shouldCreateGameMail() throws Exception {
-            @SuppressWarnings("unchecked")
-            DataOperator<MailData> mailDataOperator = mock(DataOperator.class);
-            when(mockPlugin.getDataOperator(MailData.class)).thenReturn(mailDataOperator);
-
             Method method = RecallCommand.class.getDeclaredMethod(
                 "sendGameMail", String.class, String.class, String.class, String.class);
             method.setAccessible(true); // NOPMD
 
             method.invoke(recallCommand, "uuid-123", "TestPlayer", "AdminPlayer", null);
 
-            verify(mailDataOperator).insert(argThat(mail -> {
+            verify(mockMailService).insertMail(argThat(mail -> {
                 MailData m = (MailData) mail;
                 return "SYSTEM".equals(m.getSenderUuid()) &&
                        "uuid-123".equals(m.getReceiverUuid()) &&
@@ -291,17 +287,13 @@ class RecallCommandTest {
         @Test
         @DisplayName("使用自定义消息时应替换默认内容")
         void shouldUseCustomMessage() throws Exception {
-            @SuppressWarnings("unchecked")
-            DataOperator<MailData> mailDataOperator = mock(DataOperator.class);
-            when(mockPlugin.getDataOperator(MailData.class)).thenReturn(mailDataOperator);
-
             Method method = RecallCommand.class.getDeclaredMethod(
                 "sendGameMail", String.class, String.class, String.class, String.class);
             method.setAccessible(true); // NOPMD
 
             method.invoke(recallCommand, "uuid-123", "TestPlayer", "Admin", "自定义召回消息");
 
-            verify(mailDataOperator).insert(argThat(mail -> {
+            verify(mockMailService).insertMail(argThat(mail -> {
                 MailData m = (MailData) mail;
                 return m.getContent().contains("自定义召回消息");
             }));
@@ -310,17 +302,13 @@ class RecallCommandTest {
         @Test
         @DisplayName("邮件主题应替换SERVER占位符")
         void shouldReplaceServerPlaceholderInSubject() throws Exception {
-            @SuppressWarnings("unchecked")
-            DataOperator<MailData> mailDataOperator = mock(DataOperator.class);
-            when(mockPlugin.getDataOperator(MailData.class)).thenReturn(mailDataOperator);
-
             Method method = RecallCommand.class.getDeclaredMethod(
                 "sendGameMail", String.class, String.class, String.class, String.class);
             method.setAccessible(true); // NOPMD
 
             method.invoke(recallCommand, "uuid-123", "TestPlayer", "Admin", null);
 
-            verify(mailDataOperator).insert(argThat(mail -> {
+            verify(mockMailService).insertMail(argThat(mail -> {
                 MailData m = (MailData) mail;
                 return m.getSubject().contains(config.getServerName()) &&
                        !m.getSubject().contains("{SERVER}");
@@ -330,17 +318,13 @@ class RecallCommandTest {
         @Test
         @DisplayName("邮件内容应替换SENDER占位符")
         void shouldReplaceSenderPlaceholderInContent() throws Exception {
-            @SuppressWarnings("unchecked")
-            DataOperator<MailData> mailDataOperator = mock(DataOperator.class);
-            when(mockPlugin.getDataOperator(MailData.class)).thenReturn(mailDataOperator);
-
             Method method = RecallCommand.class.getDeclaredMethod(
                 "sendGameMail", String.class, String.class, String.class, String.class);
             method.setAccessible(true); // NOPMD
 
             method.invoke(recallCommand, "uuid-123", "TestPlayer", "TheAdmin", null);
 
-            verify(mailDataOperator).insert(argThat(mail -> {
+            verify(mockMailService).insertMail(argThat(mail -> {
                 MailData m = (MailData) mail;
                 return m.getContent().contains("TheAdmin") &&
                        !m.getContent().contains("{SENDER}");
@@ -350,17 +334,13 @@ class RecallCommandTest {
         @Test
         @DisplayName("发送者UUID应该是SYSTEM")
         void shouldUseSYSTEMasSenderUuid() throws Exception {
-            @SuppressWarnings("unchecked")
-            DataOperator<MailData> mailDataOperator = mock(DataOperator.class);
-            when(mockPlugin.getDataOperator(MailData.class)).thenReturn(mailDataOperator);
-
             Method method = RecallCommand.class.getDeclaredMethod(
                 "sendGameMail", String.class, String.class, String.class, String.class);
             method.setAccessible(true); // NOPMD
 
             method.invoke(recallCommand, "uuid-123", "TestPlayer", "Admin", null);
 
-            verify(mailDataOperator).insert(argThat(mail -> {
+            verify(mockMailService).insertMail(argThat(mail -> {
                 MailData m = (MailData) mail;
                 return "SYSTEM".equals(m.getSenderUuid());
             }));
@@ -369,17 +349,13 @@ class RecallCommandTest {
         @Test
         @DisplayName("发送者名称应该是服务器名称")
         void shouldUseServerNameAsSenderName() throws Exception {
-            @SuppressWarnings("unchecked")
-            DataOperator<MailData> mailDataOperator = mock(DataOperator.class);
-            when(mockPlugin.getDataOperator(MailData.class)).thenReturn(mailDataOperator);
-
             Method method = RecallCommand.class.getDeclaredMethod(
                 "sendGameMail", String.class, String.class, String.class, String.class);
             method.setAccessible(true); // NOPMD
 
             method.invoke(recallCommand, "uuid-123", "TestPlayer", "Admin", null);
 
-            verify(mailDataOperator).insert(argThat(mail -> {
+            verify(mockMailService).insertMail(argThat(mail -> {
                 MailData m = (MailData) mail;
                 return config.getServerName().equals(m.getSenderName());
             }));
@@ -401,11 +377,10 @@ class RecallCommandTest {
             when(offlinePlayer.getName()).thenReturn("OfflineGuy");
             mockedBukkit.when(Bukkit::getOfflinePlayers).thenReturn(new OfflinePlayer[]{offlinePlayer});
 
-            // The mail data operator returns empty (no existing mails)
-            @SuppressWarnings("unchecked")
-            DataOperator<MailData> mailOp = mock(DataOperator.class);
-            when(mailOp.getAll()).thenReturn(new ArrayList<>());
-            when(mockPlugin.getDataOperator(MailData.class)).thenReturn(mailOp);
+            // The mail store returns empty (no existing mails)
+            MailStore mailStore = mock(MailStore.class);
+            when(mailStore.getAll()).thenReturn(new ArrayList<>());
+            when(mockMailService.getStore()).thenReturn(mailStore);
 
             Method method = RecallCommand.class.getDeclaredMethod("getAllRegisteredPlayers");
             method.setAccessible(true); // NOPMD
@@ -419,8 +394,7 @@ class RecallCommandTest {
         @Test
         @DisplayName("回退到邮件数据时应收集唯一接收者")
         void shouldCollectUniqueReceiversFromMailData() throws Exception {
-            @SuppressWarnings("unchecked")
-            DataOperator<MailData> mailOp = mock(DataOperator.class);
+            MailStore mailStore = mock(MailStore.class);
             List<MailData> mails = new ArrayList<>();
 
             MailData mail1 = new MailData();
@@ -438,8 +412,8 @@ class RecallCommandTest {
             mail3.setReceiverName("Player2");
             mails.add(mail3);
 
-            when(mailOp.getAll()).thenReturn(mails);
-            when(mockPlugin.getDataOperator(MailData.class)).thenReturn(mailOp);
+            when(mailStore.getAll()).thenReturn(mails);
+            when(mockMailService.getStore()).thenReturn(mailStore);
             mockedBukkit.when(Bukkit::getOfflinePlayers).thenReturn(new OfflinePlayer[0]);
 
             Method method = RecallCommand.class.getDeclaredMethod("getAllRegisteredPlayers");
@@ -455,8 +429,7 @@ class RecallCommandTest {
         @Test
         @DisplayName("应该排除SYSTEM UUID")
         void shouldExcludeSystemUuid() throws Exception {
-            @SuppressWarnings("unchecked")
-            DataOperator<MailData> mailOp = mock(DataOperator.class);
+            MailStore mailStore = mock(MailStore.class);
             List<MailData> mails = new ArrayList<>();
 
             MailData mail = new MailData();
@@ -464,8 +437,8 @@ class RecallCommandTest {
             mail.setReceiverName("System");
             mails.add(mail);
 
-            when(mailOp.getAll()).thenReturn(mails);
-            when(mockPlugin.getDataOperator(MailData.class)).thenReturn(mailOp);
+            when(mailStore.getAll()).thenReturn(mails);
+            when(mockMailService.getStore()).thenReturn(mailStore);
             mockedBukkit.when(Bukkit::getOfflinePlayers).thenReturn(new OfflinePlayer[0]);
 
             Method method = RecallCommand.class.getDeclaredMethod("getAllRegisteredPlayers");
@@ -482,16 +455,15 @@ class RecallCommandTest {
         void shouldDeduplicatePlayers() throws Exception {
             UUID uuid1 = UUID.randomUUID();
 
-            @SuppressWarnings("unchecked")
-            DataOperator<MailData> mailOp = mock(DataOperator.class);
+            MailStore mailStore = mock(MailStore.class);
             List<MailData> mails = new ArrayList<>();
             MailData mail = new MailData();
             mail.setReceiverUuid(uuid1.toString());
             mail.setReceiverName("SamePlayer");
             mails.add(mail);
-            when(mailOp.getAll()).thenReturn(mails);
+            when(mailStore.getAll()).thenReturn(mails);
 
-            when(mockPlugin.getDataOperator(MailData.class)).thenReturn(mailOp);
+            when(mockMailService.getStore()).thenReturn(mailStore);
 
             // Same player also in offline list
             OfflinePlayer offlinePlayer = mock(OfflinePlayer.class);
@@ -530,10 +502,9 @@ class RecallCommandTest {
             when(offlineOnline.getName()).thenReturn("OnlineGuy");
             mockedBukkit.when(Bukkit::getOfflinePlayers).thenReturn(new OfflinePlayer[]{offlineOnline});
 
-            @SuppressWarnings("unchecked")
-            DataOperator<MailData> mailOp = mock(DataOperator.class);
-            when(mailOp.getAll()).thenReturn(new ArrayList<>());
-            when(mockPlugin.getDataOperator(MailData.class)).thenReturn(mailOp);
+            MailStore mailStore = mock(MailStore.class);
+            when(mailStore.getAll()).thenReturn(new ArrayList<>());
+            when(mockMailService.getStore()).thenReturn(mailStore);
 
             Method method = RecallCommand.class.getDeclaredMethod(
                 "sendRecallNotifications", String.class, String.class);
@@ -551,10 +522,9 @@ class RecallCommandTest {
         void shouldReturnCorrectResultArray() throws Exception {
             mockedBukkit.when(Bukkit::getOfflinePlayers).thenReturn(new OfflinePlayer[0]);
 
-            @SuppressWarnings("unchecked")
-            DataOperator<MailData> mailOp = mock(DataOperator.class);
-            when(mailOp.getAll()).thenReturn(new ArrayList<>());
-            when(mockPlugin.getDataOperator(MailData.class)).thenReturn(mailOp);
+            MailStore mailStore = mock(MailStore.class);
+            when(mailStore.getAll()).thenReturn(new ArrayList<>());
+            when(mockMailService.getStore()).thenReturn(mailStore);
 
             Method method = RecallCommand.class.getDeclaredMethod(
                 "sendRecallNotifications", String.class, String.class);
@@ -586,10 +556,9 @@ class RecallCommandTest {
             mockedBukkit.when(Bukkit::getOfflinePlayers).thenReturn(new OfflinePlayer[]{offlinePlayer});
             mockedBukkit.when(() -> Bukkit.getPlayer(offlineUuid)).thenReturn(null);
 
-            @SuppressWarnings("unchecked")
-            DataOperator<MailData> mailOp = mock(DataOperator.class);
-            when(mailOp.getAll()).thenReturn(new ArrayList<>());
-            when(mockPlugin.getDataOperator(MailData.class)).thenReturn(mailOp);
+            MailStore mailStore = mock(MailStore.class);
+            when(mailStore.getAll()).thenReturn(new ArrayList<>());
+            when(mockMailService.getStore()).thenReturn(mailStore);
 
             Method method = RecallCommand.class.getDeclaredMethod(
                 "sendRecallNotifications", String.class, String.class);
@@ -599,7 +568,7 @@ class RecallCommandTest {
 
             assertThat(results[0]).isEqualTo(1); // total
             assertThat(results[1]).isEqualTo(1); // gameMails
-            verify(mailOp).insert(any(MailData.class));
+            verify(mockMailService).insertMail(any(MailData.class));
         }
 
         @Test
@@ -617,10 +586,9 @@ class RecallCommandTest {
             mockedBukkit.when(() -> Bukkit.getPlayer(uuid1)).thenReturn(null);
             mockedBukkit.when(() -> Bukkit.getPlayer(uuid2)).thenReturn(null);
 
-            @SuppressWarnings("unchecked")
-            DataOperator<MailData> mailOp = mock(DataOperator.class);
-            when(mailOp.getAll()).thenReturn(new ArrayList<>());
-            when(mockPlugin.getDataOperator(MailData.class)).thenReturn(mailOp);
+            MailStore mailStore = mock(MailStore.class);
+            when(mailStore.getAll()).thenReturn(new ArrayList<>());
+            when(mockMailService.getStore()).thenReturn(mailStore);
 
             Method method = RecallCommand.class.getDeclaredMethod(
                 "sendRecallNotifications", String.class, String.class);
@@ -631,7 +599,7 @@ class RecallCommandTest {
             assertThat(results[0]).isEqualTo(2); // total
             assertThat(results[1]).isEqualTo(2); // gameMails
             ArgumentCaptor<MailData> mailCaptor = ArgumentCaptor.forClass(MailData.class);
-            verify(mailOp, times(2)).insert(mailCaptor.capture());
+            verify(mockMailService, times(2)).insertMail(mailCaptor.capture());
             assertThat(mailCaptor.getAllValues())
                 .hasSize(2)
                 .allSatisfy(mail -> assertThat(mail.getId()).isNull());
@@ -650,11 +618,10 @@ class RecallCommandTest {
             mockedBukkit.when(Bukkit::getOfflinePlayers).thenReturn(new OfflinePlayer[]{offlinePlayer});
             mockedBukkit.when(() -> Bukkit.getPlayer(offlineUuid)).thenReturn(null);
 
-            @SuppressWarnings("unchecked")
-            DataOperator<MailData> mailOp = mock(DataOperator.class);
-            when(mailOp.getAll()).thenReturn(new ArrayList<>());
-            when(mockPlugin.getDataOperator(MailData.class)).thenReturn(mailOp);
-            doThrow(new RuntimeException("DB error")).when(mailOp).insert(any(MailData.class));
+            MailStore mailStore = mock(MailStore.class);
+            when(mailStore.getAll()).thenReturn(new ArrayList<>());
+            when(mockMailService.getStore()).thenReturn(mailStore);
+            doThrow(new RuntimeException("DB error")).when(mockMailService).insertMail(any(MailData.class));
 
             Method method = RecallCommand.class.getDeclaredMethod(
                 "sendRecallNotifications", String.class, String.class);
@@ -677,10 +644,9 @@ class RecallCommandTest {
             mockedBukkit.when(Bukkit::getOfflinePlayers).thenReturn(new OfflinePlayer[]{offlinePlayer});
             mockedBukkit.when(() -> Bukkit.getPlayer(offlineUuid)).thenReturn(null);
 
-            @SuppressWarnings("unchecked")
-            DataOperator<MailData> mailOp = mock(DataOperator.class);
-            when(mailOp.getAll()).thenReturn(new ArrayList<>());
-            when(mockPlugin.getDataOperator(MailData.class)).thenReturn(mailOp);
+            MailStore mailStore = mock(MailStore.class);
+            when(mailStore.getAll()).thenReturn(new ArrayList<>());
+            when(mockMailService.getStore()).thenReturn(mailStore);
 
             Method method = RecallCommand.class.getDeclaredMethod(
                 "sendRecallNotifications", String.class, String.class);
@@ -688,7 +654,7 @@ class RecallCommandTest {
 
             method.invoke(recallCommand, "Admin", "快来玩吧！");
 
-            verify(mailOp).insert(argThat(mail -> {
+            verify(mockMailService).insertMail(argThat(mail -> {
                 MailData m = (MailData) mail;
                 return m.getContent().contains("快来玩吧！");
             }));
@@ -706,8 +672,7 @@ class RecallCommandTest {
             mockedBukkit.when(Bukkit::getOfflinePlayers).thenReturn(new OfflinePlayer[]{offlinePlayer});
             mockedBukkit.when(() -> Bukkit.getPlayer(offlineUuid)).thenReturn(null);
 
-            @SuppressWarnings("unchecked")
-            DataOperator<MailData> mailOp = mock(DataOperator.class);
+            MailStore mailStore = mock(MailStore.class);
 
             // Use mail data with email info
             List<MailData> mails = new ArrayList<>();
@@ -715,8 +680,8 @@ class RecallCommandTest {
             mail.setReceiverUuid(offlineUuid.toString());
             mail.setReceiverName("OfflineGuy");
             mails.add(mail);
-            lenient().when(mailOp.getAll()).thenReturn(mails);
-            lenient().when(mockPlugin.getDataOperator(MailData.class)).thenReturn(mailOp);
+            lenient().when(mailStore.getAll()).thenReturn(mails);
+            lenient().when(mockMailService.getStore()).thenReturn(mailStore);
 
             // Since the offline player is also found via Bukkit.getOfflinePlayers,
             // and the mail data player is also found, but email comes from login plugin
@@ -742,15 +707,14 @@ class RecallCommandTest {
             mockedBukkit.when(Bukkit::getOfflinePlayers).thenReturn(new OfflinePlayer[]{offlinePlayer});
             mockedBukkit.when(() -> Bukkit.getPlayer(uuid1)).thenReturn(null);
 
-            @SuppressWarnings("unchecked")
-            DataOperator<MailData> mailOp = mock(DataOperator.class);
+            MailStore mailStore = mock(MailStore.class);
             List<MailData> mails = new ArrayList<>();
             MailData mail = new MailData();
             mail.setReceiverUuid(uuid1.toString());
             mail.setReceiverName("Player1");
             mails.add(mail);
-            lenient().when(mailOp.getAll()).thenReturn(mails);
-            lenient().when(mockPlugin.getDataOperator(MailData.class)).thenReturn(mailOp);
+            lenient().when(mailStore.getAll()).thenReturn(mails);
+            lenient().when(mockMailService.getStore()).thenReturn(mailStore);
 
             Method method = RecallCommand.class.getDeclaredMethod(
                 "sendRecallNotifications", String.class, String.class);
@@ -779,11 +743,10 @@ class RecallCommandTest {
             mockedBukkit.when(Bukkit::getOfflinePlayers).thenReturn(new OfflinePlayer[]{offlinePlayer});
             mockedBukkit.when(() -> Bukkit.getPlayer(offlineUuid)).thenReturn(null);
 
-            @SuppressWarnings("unchecked")
-            DataOperator<MailData> mailOp = mock(DataOperator.class);
-            when(mailOp.getAll()).thenReturn(new ArrayList<>());
-            when(mockPlugin.getDataOperator(MailData.class)).thenReturn(mailOp);
-            doThrow(new RuntimeException("DB error")).when(mailOp).insert(any(MailData.class));
+            MailStore mailStore = mock(MailStore.class);
+            when(mailStore.getAll()).thenReturn(new ArrayList<>());
+            when(mockMailService.getStore()).thenReturn(mailStore);
+            doThrow(new RuntimeException("DB error")).when(mockMailService).insertMail(any(MailData.class));
 
             recallCommand.sendRecallWithMessage(adminPlayer, null);
 
@@ -814,14 +777,13 @@ class RecallCommandTest {
             mockedBukkit.when(Bukkit::getOfflinePlayers).thenReturn(new OfflinePlayer[]{offlinePlayer});
             mockedBukkit.when(() -> Bukkit.getPlayer(offlineUuid)).thenReturn(null);
 
-            @SuppressWarnings("unchecked")
-            DataOperator<MailData> mailOp = mock(DataOperator.class);
-            when(mailOp.getAll()).thenReturn(new ArrayList<>());
-            when(mockPlugin.getDataOperator(MailData.class)).thenReturn(mailOp);
+            MailStore mailStore = mock(MailStore.class);
+            when(mailStore.getAll()).thenReturn(new ArrayList<>());
+            when(mockMailService.getStore()).thenReturn(mailStore);
 
             recallCommand.sendRecallWithMessage(adminPlayer, "服务器更新了");
 
-            verify(mailOp).insert(argThat(mail -> {
+            verify(mockMailService).insertMail(argThat(mail -> {
                 MailData m = (MailData) mail;
                 return m.getContent().contains("服务器更新了");
             }));
@@ -1132,10 +1094,9 @@ class RecallCommandTest {
             mockedBukkit.when(Bukkit::getOfflinePlayers).thenReturn(new OfflinePlayer[]{offlinePlayer});
             mockedBukkit.when(() -> Bukkit.getPlayer(offlineUuid)).thenReturn(null);
 
-            @SuppressWarnings("unchecked")
-            DataOperator<MailData> mailOp = mock(DataOperator.class);
-            when(mailOp.getAll()).thenReturn(new ArrayList<>());
-            when(mockPlugin.getDataOperator(MailData.class)).thenReturn(mailOp);
+            MailStore mailStore = mock(MailStore.class);
+            when(mailStore.getAll()).thenReturn(new ArrayList<>());
+            when(mockMailService.getStore()).thenReturn(mailStore);
 
             recallCommand.sendRecallWithMessage(adminPlayer, null);
 
@@ -1160,10 +1121,9 @@ class RecallCommandTest {
             mockedBukkit.when(Bukkit::getOfflinePlayers).thenReturn(new OfflinePlayer[]{offlinePlayer});
             mockedBukkit.when(() -> Bukkit.getPlayer(offlineUuid)).thenReturn(null);
 
-            @SuppressWarnings("unchecked")
-            DataOperator<MailData> mailOp = mock(DataOperator.class);
-            when(mailOp.getAll()).thenReturn(new ArrayList<>());
-            when(mockPlugin.getDataOperator(MailData.class)).thenReturn(mailOp);
+            MailStore mailStore = mock(MailStore.class);
+            when(mailStore.getAll()).thenReturn(new ArrayList<>());
+            when(mockMailService.getStore()).thenReturn(mailStore);
 
             recallCommand.sendRecallWithMessage(adminPlayer, "自定义消息");
 
@@ -1183,11 +1143,10 @@ class RecallCommandTest {
             mockedBukkit.when(Bukkit::getOfflinePlayers).thenReturn(new OfflinePlayer[]{offlinePlayer});
             mockedBukkit.when(() -> Bukkit.getPlayer(offlineUuid)).thenReturn(null);
 
-            @SuppressWarnings("unchecked")
-            DataOperator<MailData> mailOp = mock(DataOperator.class);
-            when(mailOp.getAll()).thenReturn(new ArrayList<>());
-            when(mockPlugin.getDataOperator(MailData.class)).thenReturn(mailOp);
-            doThrow(new RuntimeException("DB error")).when(mailOp).insert(any(MailData.class));
+            MailStore mailStore = mock(MailStore.class);
+            when(mailStore.getAll()).thenReturn(new ArrayList<>());
+            when(mockMailService.getStore()).thenReturn(mailStore);
+            doThrow(new RuntimeException("DB error")).when(mockMailService).insertMail(any(MailData.class));
 
             recallCommand.sendRecallWithMessage(adminPlayer, null);
 
@@ -1212,10 +1171,9 @@ class RecallCommandTest {
 
             mockedBukkit.when(Bukkit::getOfflinePlayers).thenReturn(new OfflinePlayer[]{off1, off2});
 
-            @SuppressWarnings("unchecked")
-            DataOperator<MailData> mailOp = mock(DataOperator.class);
-            when(mailOp.getAll()).thenReturn(new ArrayList<>());
-            when(mockPlugin.getDataOperator(MailData.class)).thenReturn(mailOp);
+            MailStore mailStore = mock(MailStore.class);
+            when(mailStore.getAll()).thenReturn(new ArrayList<>());
+            when(mockMailService.getStore()).thenReturn(mailStore);
 
             Method method = RecallCommand.class.getDeclaredMethod("getAllRegisteredPlayers");
             method.setAccessible(true); // NOPMD
@@ -1245,10 +1203,9 @@ class RecallCommandTest {
             mockedBukkit.when(Bukkit::getOfflinePlayers).thenReturn(new OfflinePlayer[]{offlinePlayer});
             mockedBukkit.when(() -> Bukkit.getPlayer(offlineUuid)).thenReturn(null);
 
-            @SuppressWarnings("unchecked")
-            DataOperator<MailData> mailOp = mock(DataOperator.class);
-            when(mailOp.getAll()).thenReturn(new ArrayList<>());
-            when(mockPlugin.getDataOperator(MailData.class)).thenReturn(mailOp);
+            MailStore mailStore = mock(MailStore.class);
+            when(mailStore.getAll()).thenReturn(new ArrayList<>());
+            when(mockMailService.getStore()).thenReturn(mailStore);
 
             Method method = RecallCommand.class.getDeclaredMethod(
                 "sendRecallNotifications", String.class, String.class);
@@ -1375,10 +1332,9 @@ class RecallCommandTest {
             mockedBukkit.when(Bukkit::getOfflinePlayers).thenReturn(new OfflinePlayer[]{offlinePlayer});
             mockedBukkit.when(() -> Bukkit.getPlayer(offlineUuid)).thenReturn(null);
 
-            @SuppressWarnings("unchecked")
-            DataOperator<MailData> mailOp = mock(DataOperator.class);
-            when(mailOp.getAll()).thenReturn(new ArrayList<>());
-            when(mockPlugin.getDataOperator(MailData.class)).thenReturn(mailOp);
+            MailStore mailStore = mock(MailStore.class);
+            when(mailStore.getAll()).thenReturn(new ArrayList<>());
+            when(mockMailService.getStore()).thenReturn(mailStore);
 
             Method method = RecallCommand.class.getDeclaredMethod(
                 "sendRecallNotifications", String.class, String.class);
@@ -65,6 +65,12 @@ class MailConfigTest {
             assertThat(config.getMailExpireDays()).isEqualTo(30);
         }
         
+        @Test
+        @DisplayName("purgeExpiredMails 默认应该为 false")
+        void shouldNotPurgeExpiredMailsByDefault() {
+            assertThat(config.isPurgeExpiredMails()).isFalse();
+        }
+        
         @Test
         @DisplayName("emailEnabled 默认应该为 false")
         void shouldDefaultEmailEnabledToFalse() {
@@ -88,6 +94,20 @@ class MailConfigTest {
         void shouldDefaultSmtpStartTlsToTrue() {
             assertThat(config.isSmtpStartTls()).isTrue();
         }
+        
+        @Test
+        @DisplayName("slowOperationMicros 默认应该为 5000")
+        void shouldDefaultSlowOperationMicrosTo5000() {
+            assertThat(config.getSlowOperationMicros()).isEqualTo(5000);
+        }
+        
+        @Test
+        @DisplayName("指标导出默认应该关闭且只监听本机")
+        void shouldDefaultMetricsExporterToLocalAndDisabled() {
+            assertThat(config.isMetricsExporterEnabled()).isFalse();
+            assertThat(config.getMetricsExporterHost()).isEqualTo("127.0.0.1");
+            assertThat(config.getMetricsExporterPort()).isEqualTo(9465);
+        }
     }
 
     @Nested
@@ -120,6 +120,42 @@ class MailDataTest {
         }
     }
 
+    @Nested
+    @DisplayName("版本号测试")
+    class VersionTests {
+
+        @Test
+        @DisplayName("默认版本号应为 0")
+        void shouldStartAtVersionZero() {
+            assertThat(new MailData().getVersion()).isZero();
+        }
+
+        @Test
+        @DisplayName("copyStateFrom 应复制状态标志和版本号")
+        void shouldCopyStateAndVersion() {
+            MailData source = new MailData();
+            source.setRead(true);
+            source.setClaimed(true);
+            source.setCommandsExecuted(true);
+            source.setDeletedBySender(true);
+            source.setDeletedByReceiver(true);
+            source.setVersion(7);
+            source.setSubject("other");
+
+            MailData target = new MailData();
+            target.setSubject("mine");
+            target.copyStateFrom(source);
+
+            assertThat(target.isRead()).isTrue();
+            assertThat(target.isClaimed()).isTrue();
+            assertThat(target.isCommandsExecuted()).isTrue();
+            assertThat(target.isDeletedBySender()).isTrue();
+            assertThat(target.isDeletedByReceiver()).isTrue();
+            assertThat(target.getVersion()).isEqualTo(7);
+            assertThat(target.getSubject()).isEqualTo("mine");
+        }
+    }
+
     @Nested
     @DisplayName("Getter/Setter 测试")
     class GetterSetterTests {
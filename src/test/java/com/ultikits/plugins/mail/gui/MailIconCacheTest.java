@@ -0,0 +1,117 @@
+package com.ultikits.plugins.mail.gui;
+
+import com.ultikits.plugins.mail.entity.MailData;
+import com.ultikits.plugins.mail.metrics.MailMetrics;
+import com.ultikits.plugins.mail.metrics.MailMetrics.Counter;
+import mc.obliviate.inventory.Icon;
+import org.bukkit.Material;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.ItemMeta;
+import org.junit.jupiter.api.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for MailIconCache, with mocked icons standing in for rendered items.
+ */
+@DisplayName("MailIconCache 测试")
+@Timeout(value = 30, unit = TimeUnit.SECONDS)
+class MailIconCacheTest {
+
+    private MailMetrics metrics;
+    private List<MailData> rendered;
+    private MailIconCache cache;
+
+    @BeforeEach
+    void setUp() {
+        metrics = new MailMetrics();
+        rendered = new ArrayList<>();
+        Function<MailData, Icon> renderer = mail -> {
+            rendered.add(mail);
+            Icon icon = mock(Icon.class);
+            ItemStack item = mock(ItemStack.class);
+            when(item.getType()).thenReturn(mail.isRead() ? Material.BOOK : Material.WRITABLE_BOOK);
+            when(item.getItemMeta()).thenReturn(mock(ItemMeta.class));
+            when(icon.getItem()).thenReturn(item);
+            return icon;
+        };
+        cache = new MailIconCache(renderer, metrics);
+    }
+
+    private static MailData mail(String id) {
+        MailData mail = new MailData();
+        mail.setId(id);
+        mail.setSubject("Subject");
+        mail.setContent("Content");
+        return mail;
+    }
+
+    @Test
+    @DisplayName("未变化的邮件应复用图标")
+    void shouldReuseIconOfUnchangedMail() {
+        MailData mail = mail("m1");
+
+        Icon first = cache.get(mail);
+        Icon second = cache.get(mail);
+
+        assertThat(second).isSameAs(first);
+        assertThat(rendered).hasSize(1);
+        assertThat(cache.isCurrent(mail)).isTrue();
+        assertThat(metrics.getCounter(Counter.GUI_ICON_BUILDS)).isEqualTo(1);
+        assertThat(metrics.getCounter(Counter.GUI_ICON_REUSES)).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("版本变化后应原地重绘同一个图标")
+    void shouldRedrawChangedMailInPlace() {
+        MailData mail = mail("m1");
+        Icon shown = cache.get(mail);
+        mail.setRead(true);
+        mail.setVersion(mail.getVersion() + 1);
+
+        assertThat(cache.isCurrent(mail)).isFalse();
+        Icon redrawn = cache.get(mail);
+
+        assertThat(redrawn).isSameAs(shown);
+        verify(shown.getItem()).setType(Material.BOOK);
+        verify(shown.getItem()).setItemMeta(any(ItemMeta.class));
+        assertThat(rendered).hasSize(2);
+        assertThat(cache.isCurrent(mail)).isTrue();
+        assertThat(metrics.getCounter(Counter.GUI_ICON_BUILDS)).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("只应重绘发生变化的邮件")
+    void shouldRenderOnlyChangedMails() {
+        List<MailData> page = new ArrayList<>();
+        for (int i = 0; i < 45; i++) {
+            page.add(mail("m" + i));
+        }
+        page.forEach(cache::get);
+        page.get(7).setVersion(1);
+
+        page.forEach(cache::get);
+
+        assertThat(rendered).hasSize(46);
+        assertThat(rendered.get(45)).isSameAs(page.get(7));
+        assertThat(metrics.getCounter(Counter.GUI_ICON_REUSES)).isEqualTo(44);
+    }
+
+    @Test
+    @DisplayName("没有 id 的邮件每次都应重新渲染")
+    void shouldAlwaysRenderMailWithoutId() {
+        MailData mail = mail(null);
+
+        cache.get(mail);
+        cache.get(mail);
+
+        assertThat(rendered).hasSize(2);
+        assertThat(cache.isCurrent(mail)).isFalse();
+    }
+}
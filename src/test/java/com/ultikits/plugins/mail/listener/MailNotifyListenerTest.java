@@ -1,6 +1,7 @@
 package com.ultikits.plugins.mail.listener;
 
 import com.ultikits.plugins.mail.config.MailConfig;
+import com.ultikits.plugins.mail.service.CommandDispatcher;
 import com.ultikits.plugins.mail.service.MailService;
 import com.ultikits.plugins.mail.utils.TestHelper;
 import com.ultikits.ultitools.abstracts.UltiToolsPlugin;
@@ -40,6 +41,9 @@ class MailNotifyListenerTest {
     @Mock
     private MailService mockMailService;
 
+    @Mock
+    private CommandDispatcher mockCommandDispatcher;
+
     private MailConfig config;
 
     @Mock
@@ -99,6 +103,7 @@ class MailNotifyListenerTest {
         TestHelper.injectField(listener, "mailService", mockMailService);
         TestHelper.injectField(listener, "config", config);
         TestHelper.injectField(listener, "plugin", mockPlugin);
+        TestHelper.injectField(listener, "commandDispatcher", mockCommandDispatcher);
     }
 
     @AfterEach
@@ -136,6 +141,16 @@ class MailNotifyListenerTest {
 
             verify(mockMailService).getUnreadCount(playerUuid);
         }
+
+        @Test
+        @DisplayName("通知关闭时也应恢复离线期间保留的邮件命令")
+        void shouldResumeParkedCommandsWhenNotifyDisabled() {
+            config.setNotifyOnJoin(false);
+
+            listener.onPlayerJoin(new PlayerJoinEvent(player, "joined"));
+
+            verify(mockCommandDispatcher).resume(player);
+        }
     }
 
     // ==================== Unread Count Tests ====================
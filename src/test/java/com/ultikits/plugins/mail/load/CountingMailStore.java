@@ -0,0 +1,119 @@
+package com.ultikits.plugins.mail.load;
+
+import com.ultikits.plugins.mail.entity.MailData;
+import com.ultikits.plugins.mail.store.MailStore;
+
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * {@link MailStore} decorator that counts every call, standing in for the number
+ * of database round trips an operation costs.
+ */
+class CountingMailStore implements MailStore {
+
+    private final MailStore delegate;
+    private final LongAdder calls = new LongAdder();
+
+    CountingMailStore(MailStore delegate) {
+        this.delegate = delegate;
+    }
+
+    long getCalls() {
+        return calls.sum();
+    }
+
+    MailStore getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public void insert(MailData mail) {
+        calls.increment();
+        delegate.insert(mail);
+    }
+
+    @Override
+    public void insertAll(List<MailData> mails) {
+        calls.increment();
+        delegate.insertAll(mails);
+    }
+
+    @Override
+    public MailData getById(String id) {
+        calls.increment();
+        return delegate.getById(id);
+    }
+
+    @Override
+    public List<MailData> getAll() {
+        calls.increment();
+        return delegate.getAll();
+    }
+
+    @Override
+    public List<MailData> findSentBefore(long cutoff) {
+        calls.increment();
+        return delegate.findSentBefore(cutoff);
+    }
+
+    @Override
+    public List<MailData> findByReceiver(String receiverUuid) {
+        calls.increment();
+        return delegate.findByReceiver(receiverUuid);
+    }
+
+    @Override
+    public List<MailData> findBySender(String senderUuid) {
+        calls.increment();
+        return delegate.findBySender(senderUuid);
+    }
+
+    @Override
+    public List<MailData> findInboxPage(String receiverUuid, int offset, int limit) {
+        calls.increment();
+        return delegate.findInboxPage(receiverUuid, offset, limit);
+    }
+
+    @Override
+    public int countInbox(String receiverUuid) {
+        calls.increment();
+        return delegate.countInbox(receiverUuid);
+    }
+
+    @Override
+    public int countUnread(String receiverUuid) {
+        calls.increment();
+        return delegate.countUnread(receiverUuid);
+    }
+
+    @Override
+    public boolean update(MailData mail, Predicate<MailData> guard, Consumer<MailData> change)
+            throws IllegalAccessException {
+        calls.increment();
+        return delegate.update(mail, guard, change);
+    }
+
+    @Override
+    public int deleteExpired(long cutoff) {
+        calls.increment();
+        return delegate.deleteExpired(cutoff);
+    }
+
+    @Override
+    public boolean isSoleWriter() {
+        return delegate.isSoleWriter();
+    }
+
+    @Override
+    public long estimateSize() {
+        return delegate.estimateSize();
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+}
@@ -0,0 +1,348 @@
+package com.ultikits.plugins.mail.load;
+
+import be.seeseemelk.mockbukkit.MockBukkit;
+import be.seeseemelk.mockbukkit.ServerMock;
+import be.seeseemelk.mockbukkit.entity.PlayerMock;
+import com.ultikits.plugins.mail.config.MailConfig;
+import com.ultikits.plugins.mail.entity.MailData;
+import com.ultikits.plugins.mail.load.LoadReport.Operation;
+import com.ultikits.plugins.mail.metrics.MailMetrics;
+import com.ultikits.plugins.mail.metrics.MainThreadMonitor;
+import com.ultikits.plugins.mail.service.ClaimJournal;
+import com.ultikits.plugins.mail.service.CommandDispatcher;
+import com.ultikits.plugins.mail.service.MailService;
+import com.ultikits.plugins.mail.service.MailTaskScheduler;
+import com.ultikits.plugins.mail.service.NotificationAggregator;
+import com.ultikits.plugins.mail.store.InMemoryMailStore;
+import com.ultikits.plugins.mail.utils.MockBukkitHelper;
+import com.ultikits.plugins.mail.utils.TestHelper;
+import com.ultikits.ultitools.abstracts.UltiToolsPlugin;
+
+import org.bukkit.Material;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.plugin.Plugin;
+
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.ultikits.plugins.mail.utils.TestHelper.injectField;
+
+/**
+ * Drives a MockBukkit server with a synthetic player population and a mix of
+ * mail operations, and reports what they cost.
+ * <p>
+ * The services are wired the way the container does it, on top of an
+ * {@link InMemoryMailStore} wrapped in a {@link CountingMailStore}. Each simulated
+ * tick runs a batch of operations and then one scheduler tick. Tick time counts the
+ * main-thread part only; the latency of claims and broadcasts also includes their
+ * off-thread work, which the harness waits for before moving on.
+ */
+final class LoadHarness {
+
+    private static final int SEED_BATCH = 10_000;
+    private static final long DAY_MILLIS = 86_400_000L;
+
+    private final LoadProfile profile;
+    private final Path workDir;
+    private final Random random;
+
+    private ServerMock server;
+    private MailService mailService;
+    private ClaimJournal claimJournal;
+    private CountingMailStore store;
+    private final List<PlayerMock> everyone = new ArrayList<>();
+    private final List<PlayerMock> online = new ArrayList<>();
+    private final List<PlayerMock> offline = new ArrayList<>();
+    private ItemStack[] attachment;
+    private String encodedAttachment;
+
+    LoadHarness(LoadProfile profile, Path workDir) {
+        this.profile = profile;
+        this.workDir = workDir;
+        this.random = new Random(profile.seed);
+    }
+
+    LoadReport run() throws Exception {
+        MockBukkitHelper.ensureCleanState();
+        server = MockBukkit.mock();
+        try {
+            wire();
+            populate();
+            seed();
+            return drive();
+        } finally {
+            if (claimJournal != null) {
+                invoke(claimJournal, "close");
+            }
+            MockBukkitHelper.safeUnmock();
+        }
+    }
+
+    // ==================== Setup ====================
+
+    private void wire() throws Exception {
+        UltiToolsPlugin plugin = TestHelper.stubUltiToolsPlugin();
+        Plugin bukkitPlugin = MockBukkit.createMockPlugin();
+        MailConfig config = new MailConfig();
+        config.setSendCooldown(0);
+        store = new CountingMailStore(new InMemoryMailStore());
+        MailMetrics metrics = new MailMetrics();
+        MainThreadMonitor mainThread = new MainThreadMonitor();
+        injectField(mainThread, "config", config);
+        injectField(mainThread, "plugin", plugin);
+        injectField(mainThread, "metrics", metrics);
+        injectField(mainThread, "bukkitPlugin", bukkitPlugin);
+
+        MailTaskScheduler taskScheduler = new MailTaskScheduler();
+        injectField(taskScheduler, "config", config);
+        injectField(taskScheduler, "plugin", plugin);
+        injectField(taskScheduler, "bukkitPlugin", bukkitPlugin);
+
+        CommandDispatcher commandDispatcher = new CommandDispatcher();
+        injectField(commandDispatcher, "config", config);
+        injectField(commandDispatcher, "plugin", plugin);
+        injectField(commandDispatcher, "bukkitPlugin", bukkitPlugin);
+        injectField(commandDispatcher, "metrics", metrics);
+        injectField(commandDispatcher, "mainThread", mainThread);
+
+        NotificationAggregator notificationAggregator = new NotificationAggregator();
+        injectField(notificationAggregator, "config", config);
+        injectField(notificationAggregator, "bukkitPlugin", bukkitPlugin);
+
+        claimJournal = new ClaimJournal();
+        injectField(claimJournal, "config", config);
+        injectField(claimJournal, "plugin", plugin);
+        injectField(claimJournal, "bukkitPlugin", bukkitPlugin);
+        invoke(claimJournal, "open", workDir.resolve("claims.journal").toFile());
+
+        mailService = new MailService();
+        injectField(mailService, "config", config);
+        injectField(mailService, "store", store);
+        injectField(mailService, "plugin", plugin);
+        injectField(mailService, "bukkitPlugin", bukkitPlugin);
+        injectField(mailService, "taskScheduler", taskScheduler);
+        injectField(mailService, "commandDispatcher", commandDispatcher);
+        injectField(mailService, "notificationAggregator", notificationAggregator);
+        injectField(mailService, "claimJournal", claimJournal);
+        injectField(mailService, "metrics", metrics);
+        injectField(mailService, "mainThread", mainThread);
+
+        attachment = new ItemStack[]{new ItemStack(Material.DIAMOND, 4), new ItemStack(Material.IRON_INGOT, 32)};
+        encodedAttachment = (String) invoke(mailService, "serializeItems", (Object) attachment);
+        if (encodedAttachment == null) {
+            throw new IllegalStateException("attachment did not serialize");
+        }
+    }
+
+    private void populate() {
+        for (int i = 0; i < profile.players; i++) {
+            PlayerMock player = server.addPlayer("Player" + i);
+            everyone.add(player);
+            if (i < profile.onlinePlayers) {
+                online.add(player);
+            } else {
+                player.disconnect();
+                offline.add(player);
+            }
+        }
+    }
+
+    /**
+     * Seed the store directly, bypassing the counters. Receivers are drawn with a
+     * cubic skew over a shuffled ranking, so a few players have very large inboxes.
+     */
+    private void seed() {
+        List<PlayerMock> ranking = new ArrayList<>(everyone);
+        Collections.shuffle(ranking, random);
+        long now = System.currentTimeMillis();
+        List<MailData> batch = new ArrayList<>(SEED_BATCH);
+        for (int i = 0; i < profile.mails; i++) {
+            PlayerMock receiver = ranking.get((int) (ranking.size() * Math.pow(random.nextDouble(), 3)));
+            PlayerMock sender = everyone.get(random.nextInt(everyone.size()));
+            MailData mail = new MailData();
+            mail.setSenderUuid(sender.getUniqueId().toString());
+            mail.setSenderName(sender.getName());
+            mail.setReceiverUuid(receiver.getUniqueId().toString());
+            mail.setReceiverName(receiver.getName());
+            mail.setSubject("Seeded mail " + i);
+            mail.setContent("Synthetic content for load testing");
+            mail.setSentTime(now - (long) (random.nextDouble() * 30 * DAY_MILLIS));
+            mail.setRead(random.nextDouble() < 0.6);
+            if (random.nextDouble() < profile.attachmentRatio) {
+                mail.setItems(encodedAttachment);
+                mail.setClaimed(mail.isRead() && random.nextBoolean());
+            }
+            batch.add(mail);
+            if (batch.size() == SEED_BATCH) {
+                store.getDelegate().insertAll(batch);
+                batch = new ArrayList<>(SEED_BATCH);
+            }
+        }
+        store.getDelegate().insertAll(batch);
+        mailService.rebuildReceiverFilter();
+    }
+
+    // ==================== Run ====================
+
+    private LoadReport drive() {
+        LoadReport report = new LoadReport(profile.ticks);
+        long heapBefore = usedHeapAfterGc();
+        long heapPeak = heapBefore;
+
+        for (int tick = 0; tick < profile.ticks; tick++) {
+            long tickNanos = 0;
+            for (int i = 0; i < profile.opsPerTick; i++) {
+                tickNanos += perform(report, pickOperation());
+            }
+            if (profile.broadcastEveryTicks > 0 && (tick + 1) % profile.broadcastEveryTicks == 0) {
+                tickNanos += perform(report, Operation.BROADCAST);
+            }
+
+            long calls = store.getCalls();
+            long start = System.nanoTime();
+            server.getScheduler().performOneTick();
+            tickNanos += System.nanoTime() - start;
+            report.recordSchedulerStoreCalls(store.getCalls() - calls);
+            report.recordTick(tick, tickNanos);
+
+            drainMessages();
+            if (tick % 100 == 0) {
+                heapPeak = Math.max(heapPeak, usedHeap());
+            }
+        }
+        server.getScheduler().waitAsyncTasksFinished();
+        report.recordHeap(heapBefore, usedHeapAfterGc(), heapPeak);
+        return report;
+    }
+
+    private Operation pickOperation() {
+        int total = profile.joinWeight + profile.inboxWeight + profile.claimWeight + profile.sendWeight;
+        int roll = random.nextInt(total);
+        if ((roll -= profile.joinWeight) < 0) {
+            return Operation.JOIN;
+        }
+        if ((roll -= profile.inboxWeight) < 0) {
+            return Operation.INBOX;
+        }
+        if ((roll -= profile.claimWeight) < 0) {
+            return Operation.CLAIM;
+        }
+        return Operation.SEND;
+    }
+
+    /**
+     * Run one operation and record it.
+     *
+     * @return main-thread nanos spent
+     */
+    private long perform(LoadReport report, Operation operation) {
+        PlayerMock player = prepare(operation);
+        long calls = store.getCalls();
+        long start = System.nanoTime();
+        boolean succeeded = execute(operation, player);
+        long mainThreadNanos = System.nanoTime() - start;
+
+        long latency = mainThreadNanos;
+        if (operation == Operation.CLAIM || operation == Operation.BROADCAST) {
+            server.getScheduler().waitAsyncTasksFinished();
+            latency = System.nanoTime() - start;
+        }
+        report.recordOperation(operation, latency, store.getCalls() - calls, succeeded);
+        return mainThreadNanos;
+    }
+
+    /**
+     * Untimed set-up for an operation: pick the acting player, and move players in
+     * and out for joins or empty inventories for claims.
+     */
+    private PlayerMock prepare(Operation operation) {
+        switch (operation) {
+            case JOIN:
+                if (offline.isEmpty()) {
+                    return randomOnline();
+                }
+                PlayerMock leaving = online.remove(random.nextInt(online.size()));
+                PlayerMock joining = offline.remove(random.nextInt(offline.size()));
+                leaving.disconnect();
+                offline.add(leaving);
+                joining.reconnect();
+                online.add(joining);
+                return joining;
+            case CLAIM:
+                PlayerMock claimer = randomOnline();
+                if (random.nextBoolean()) {
+                    claimer.getInventory().clear();
+                }
+                return claimer;
+            case BROADCAST:
+                return online.get(0);
+            default:
+                return randomOnline();
+        }
+    }
+
+    private boolean execute(Operation operation, PlayerMock player) {
+        switch (operation) {
+            case JOIN:
+                // What MailNotifyListener does once the join delay has passed
+                mailService.getUnreadCount(player.getUniqueId());
+                return true;
+            case INBOX:
+                mailService.getInbox(player.getUniqueId());
+                mailService.getUnreadCount(player.getUniqueId());
+                return true;
+            case CLAIM:
+                AtomicBoolean busy = new AtomicBoolean();
+                mailService.claimAll(player, result -> busy.compareAndSet(false, result.isBusy()));
+                return !busy.get();
+            case SEND:
+                PlayerMock receiver = randomOnline();
+                while (receiver == player && online.size() > 1) {
+                    receiver = randomOnline();
+                }
+                ItemStack[] items = random.nextDouble() < profile.attachmentRatio ? attachment : null;
+                return mailService.sendMail(player, receiver.getName(), "Load test", "Synthetic mail", items);
+            default:
+                mailService.sendToAll(player, "Synthetic broadcast", null);
+                return true;
+        }
+    }
+
+    private PlayerMock randomOnline() {
+        return online.get(random.nextInt(online.size()));
+    }
+
+    private void drainMessages() {
+        for (PlayerMock player : online) {
+            while (player.nextMessage() != null) {
+                // Discard so the mock players do not show up as heap growth
+            }
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static long usedHeapAfterGc() {
+        System.gc();
+        System.gc();
+        return usedHeap();
+    }
+
+    private static Object invoke(Object target, String name, Object... args) throws Exception {
+        for (Method method : target.getClass().getDeclaredMethods()) {
+            if (method.getName().equals(name) && method.getParameterCount() == args.length) {
+                method.setAccessible(true);
+                return method.invoke(target, args);
+            }
+        }
+        throw new NoSuchMethodException(target.getClass().getName() + "." + name);
+    }
+}
@@ -0,0 +1,58 @@
+package com.ultikits.plugins.mail.load;
+
+import com.ultikits.plugins.mail.load.LoadReport.Operation;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Load runs over a synthetic population. Tagged {@code load} and skipped by the
+ * default test run; see the README for how to run them and size the heap.
+ */
+@Tag("load")
+@DisplayName("负载测试")
+class LoadHarnessTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @Timeout(value = 120, unit = TimeUnit.SECONDS)
+    @DisplayName("小规模运行应覆盖所有操作")
+    void shouldDriveEveryOperation() throws Exception {
+        LoadProfile profile = new LoadProfile();
+        profile.players = 300;
+        profile.onlinePlayers = 30;
+        profile.mails = 5_000;
+        profile.ticks = 200;
+        profile.broadcastEveryTicks = 100;
+
+        LoadReport report = new LoadHarness(profile, tempDir).run();
+
+        for (Operation operation : Operation.values()) {
+            assertThat(report.getCount(operation)).as(operation.name()).isPositive();
+        }
+        assertThat(report.getCount(Operation.BROADCAST)).isEqualTo(2);
+        assertThat(report.getFailures(Operation.SEND)).isZero();
+        assertThat(report.getStoreCallsPerOperation(Operation.INBOX)).isLessThanOrEqualTo(2.0);
+        assertThat(report.getTickPercentile(50)).isPositive();
+    }
+
+    @Test
+    @Timeout(value = 2, unit = TimeUnit.HOURS)
+    @DisplayName("按系统属性配置的完整运行")
+    void shouldRunConfiguredProfile() throws Exception {
+        LoadProfile profile = LoadProfile.fromSystemProperties();
+        System.out.println("Load profile: " + profile);
+
+        LoadReport report = new LoadHarness(profile, tempDir).run();
+
+        System.out.println(report.format());
+        assertThat(report.getCount(Operation.INBOX)).isPositive();
+    }
+}
@@ -0,0 +1,56 @@
+package com.ultikits.plugins.mail.load;
+
+/**
+ * Shape of a synthetic load run: population, seeded data and the operation mix.
+ * <p>
+ * Every value can be overridden with a {@code load.*} system property, e.g.
+ * {@code -Dload.players=50000 -Dload.mails=2000000}.
+ */
+final class LoadProfile {
+
+    /** Known players; all but the online ones are offline. */
+    int players = 20_000;
+    int onlinePlayers = 200;
+    /** Mails seeded before the run, spread over the players with a skew towards a few big inboxes. */
+    int mails = 1_000_000;
+    /** Share of seeded and sent mails that carry attachments. */
+    double attachmentRatio = 0.25;
+
+    /** Simulated server ticks; 20 ticks are one second. */
+    int ticks = 6_000;
+    int opsPerTick = 10;
+    int joinWeight = 10;
+    int inboxWeight = 45;
+    int claimWeight = 10;
+    int sendWeight = 35;
+    /** One broadcast every this many ticks; 0 disables broadcasts. */
+    int broadcastEveryTicks = 1_200;
+
+    long seed = 42L;
+
+    static LoadProfile fromSystemProperties() {
+        LoadProfile profile = new LoadProfile();
+        profile.players = Integer.getInteger("load.players", profile.players);
+        profile.onlinePlayers = Integer.getInteger("load.onlinePlayers", profile.onlinePlayers);
+        profile.mails = Integer.getInteger("load.mails", profile.mails);
+        profile.attachmentRatio = Double.parseDouble(
+            System.getProperty("load.attachmentRatio", String.valueOf(profile.attachmentRatio)));
+        profile.ticks = Integer.getInteger("load.ticks", profile.ticks);
+        profile.opsPerTick = Integer.getInteger("load.opsPerTick", profile.opsPerTick);
+        profile.joinWeight = Integer.getInteger("load.joinWeight", profile.joinWeight);
+        profile.inboxWeight = Integer.getInteger("load.inboxWeight", profile.inboxWeight);
+        profile.claimWeight = Integer.getInteger("load.claimWeight", profile.claimWeight);
+        profile.sendWeight = Integer.getInteger("load.sendWeight", profile.sendWeight);
+        profile.broadcastEveryTicks = Integer.getInteger("load.broadcastEveryTicks", profile.broadcastEveryTicks);
+        profile.seed = Long.getLong("load.seed", profile.seed);
+        return profile;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("players=%d (online %d), mails=%d, ticks=%d x %d ops, "
+                + "mix join/inbox/claim/send=%d/%d/%d/%d, broadcast every %d ticks, seed=%d",
+            players, onlinePlayers, mails, ticks, opsPerTick,
+            joinWeight, inboxWeight, claimWeight, sendWeight, broadcastEveryTicks, seed);
+    }
+}
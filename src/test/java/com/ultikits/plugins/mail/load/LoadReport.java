@@ -0,0 +1,144 @@
+package com.ultikits.plugins.mail.load;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Results of a load run: main-thread tick times, per-operation latency and store
+ * calls, and heap usage.
+ */
+final class LoadReport {
+
+    /**
+     * Operations the harness drives.
+     */
+    enum Operation {
+        /** A player joins and the join listener's unread count is looked up. */
+        JOIN,
+        /** A player opens the inbox: inbox list and unread count. */
+        INBOX,
+        /** A player claims every attachment that fits the inventory. */
+        CLAIM,
+        /** A player sends a mail, sometimes with attachments. */
+        SEND,
+        /** An admin sends a mail to every known player. */
+        BROADCAST
+    }
+
+    private final long[] tickNanos;
+    private final Map<Operation, Stats> operations = new EnumMap<>(Operation.class);
+    private long schedulerStoreCalls;
+    private long heapBefore;
+    private long heapAfter;
+    private long heapPeak;
+
+    LoadReport(int ticks) {
+        this.tickNanos = new long[ticks];
+        for (Operation operation : Operation.values()) {
+            operations.put(operation, new Stats());
+        }
+    }
+
+    void recordTick(int tick, long nanos) {
+        tickNanos[tick] = nanos;
+    }
+
+    void recordOperation(Operation operation, long nanos, long storeCalls, boolean succeeded) {
+        Stats stats = operations.get(operation);
+        stats.add(nanos);
+        stats.storeCalls += storeCalls;
+        if (!succeeded) {
+            stats.failures++;
+        }
+    }
+
+    void recordSchedulerStoreCalls(long storeCalls) {
+        schedulerStoreCalls += storeCalls;
+    }
+
+    void recordHeap(long before, long after, long peak) {
+        this.heapBefore = before;
+        this.heapAfter = after;
+        this.heapPeak = peak;
+    }
+
+    long getTickPercentile(double percentile) {
+        long[] sorted = tickNanos.clone();
+        Arrays.sort(sorted);
+        return percentile(sorted, percentile);
+    }
+
+    long getCount(Operation operation) {
+        return operations.get(operation).count;
+    }
+
+    long getFailures(Operation operation) {
+        return operations.get(operation).failures;
+    }
+
+    double getStoreCallsPerOperation(Operation operation) {
+        Stats stats = operations.get(operation);
+        return stats.count == 0 ? 0 : (double) stats.storeCalls / stats.count;
+    }
+
+    long getHeapGrowth() {
+        return heapAfter - heapBefore;
+    }
+
+    String format() {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format("Tick time  p50 %s  p95 %s  p99 %s  max %s  (%d ticks)%n",
+            millis(getTickPercentile(50)), millis(getTickPercentile(95)),
+            millis(getTickPercentile(99)), millis(getTickPercentile(100)), tickNanos.length));
+        out.append(String.format("%-10s %8s %8s %10s %10s %10s %12s%n",
+            "operation", "count", "failed", "p50", "p99", "max", "store/op"));
+        for (Map.Entry<Operation, Stats> entry : operations.entrySet()) {
+            Stats stats = entry.getValue();
+            long[] sorted = stats.sorted();
+            out.append(String.format("%-10s %8d %8d %10s %10s %10s %12.2f%n",
+                entry.getKey(), stats.count, stats.failures,
+                millis(percentile(sorted, 50)), millis(percentile(sorted, 99)),
+                millis(percentile(sorted, 100)), getStoreCallsPerOperation(entry.getKey())));
+        }
+        out.append(String.format("Store calls from scheduled main-thread tasks: %d%n", schedulerStoreCalls));
+        out.append(String.format("Heap  before %d MiB  after %d MiB  growth %+d MiB  peak %d MiB%n",
+            heapBefore >> 20, heapAfter >> 20, getHeapGrowth() >> 20, heapPeak >> 20));
+        return out.toString();
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return sorted[Math.min(Math.max(index, 0), sorted.length - 1)];
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.3fms", nanos / 1e6);
+    }
+
+    /**
+     * Latencies of one operation, kept in a growable primitive array.
+     */
+    private static final class Stats {
+        long[] latencies = new long[1024];
+        int count;
+        long failures;
+        long storeCalls;
+
+        void add(long nanos) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = nanos;
+        }
+
+        long[] sorted() {
+            long[] sorted = Arrays.copyOf(latencies, count);
+            Arrays.sort(sorted);
+            return sorted;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.ultikits.plugins.mail.metrics;
+
+import org.junit.jupiter.api.*;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for LatencyHistogram.
+ */
+@DisplayName("LatencyHistogram 测试")
+@Timeout(value = 30, unit = TimeUnit.SECONDS)
+class LatencyHistogramTest {
+
+    private LatencyHistogram histogram;
+
+    @BeforeEach
+    void setUp() {
+        histogram = new LatencyHistogram();
+    }
+
+    @Test
+    @DisplayName("无记录时百分位应为 0")
+    void shouldReturnZeroWhenEmpty() {
+        assertThat(histogram.getCount()).isZero();
+        assertThat(histogram.getPercentileNanos(50)).isZero();
+        assertThat(histogram.getMaxNanos()).isZero();
+    }
+
+    @Test
+    @DisplayName("观测值应落入上界不小于它的第一个桶")
+    void shouldPlaceObservationsInBuckets() {
+        histogram.record(10_000L);
+        histogram.record(10_001L);
+        histogram.record(1L);
+
+        long[] counts = histogram.getBucketCounts();
+        assertThat(counts[0]).isEqualTo(2);
+        assertThat(counts[1]).isEqualTo(1);
+        assertThat(histogram.getSumNanos()).isEqualTo(20_002L);
+    }
+
+    @Test
+    @DisplayName("超过最大上界的观测值应进入溢出桶")
+    void shouldUseOverflowBucket() {
+        histogram.record(60_000_000_000L);
+
+        long[] counts = histogram.getBucketCounts();
+        assertThat(counts).hasSize(LatencyHistogram.getBoundsNanos().length + 1);
+        assertThat(counts[counts.length - 1]).isEqualTo(1);
+        assertThat(histogram.getPercentileNanos(99)).isEqualTo(60_000_000_000L);
+    }
+
+    @Test
+    @DisplayName("百分位应返回所在桶的上界且不超过最大值")
+    void shouldAnswerPercentilesFromBuckets() {
+        for (int i = 0; i < 99; i++) {
+            histogram.record(20_000L);
+        }
+        histogram.record(3_000_000L);
+
+        assertThat(histogram.getPercentileNanos(50)).isEqualTo(25_000L);
+        assertThat(histogram.getPercentileNanos(99)).isEqualTo(25_000L);
+        assertThat(histogram.getPercentileNanos(100)).isEqualTo(3_000_000L);
+        assertThat(histogram.getMaxNanos()).isEqualTo(3_000_000L);
+    }
+
+    @Test
+    @DisplayName("并发记录不应丢失观测值")
+    void shouldCountConcurrentRecords() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (int t = 0; t < 4; t++) {
+                executor.submit(() -> {
+                    for (int i = 0; i < 10_000; i++) {
+                        histogram.record(i);
+                    }
+                });
+            }
+        } finally {
+            executor.shutdown();
+            assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+        }
+
+        assertThat(histogram.getCount()).isEqualTo(40_000);
+        long total = 0;
+        for (long count : histogram.getBucketCounts()) {
+            total += count;
+        }
+        assertThat(total).isEqualTo(40_000);
+    }
+}
@@ -0,0 +1,97 @@
+package com.ultikits.plugins.mail.metrics;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+/**
+ * Tests for MailEvents, reading back a real Flight Recorder recording.
+ */
+@DisplayName("MailEvents 测试")
+@Timeout(value = 30, unit = TimeUnit.SECONDS)
+class MailEventsTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("当前 JVM 应支持 JFR")
+    void shouldDetectFlightRecorder() {
+        assertThat(MailEvents.isAvailable()).isTrue();
+    }
+
+    @Test
+    @DisplayName("未录制时应返回空操作且不计算大小")
+    void shouldBeNoOpWithoutRecording() {
+        MailEvents.Span span = MailEvents.begin(MailEvents.Kind.SEND);
+
+        assertThat(span).isSameAs(MailEvents.NOOP);
+        span.end("Steve", 1, () -> {
+            fail("bytes should only be measured for recorded events");
+            return 0;
+        });
+    }
+
+    @Test
+    @DisplayName("录制时应提交带玩家、行数和字节数的事件")
+    void shouldCommitRecordedEvents() throws Exception {
+        List<RecordedEvent> events;
+        try (Recording recording = new Recording()) {
+            recording.enable("ultimail.Send");
+            recording.enable("ultimail.BroadcastChunk");
+            recording.start();
+
+            MailEvents.begin(MailEvents.Kind.SEND).end("Steve", 1, () -> 128);
+            MailEvents.begin(MailEvents.Kind.BROADCAST_CHUNK).end("Admin", 50, () -> 6400);
+
+            recording.stop();
+            Path file = tempDir.resolve("mail.jfr");
+            recording.dump(file);
+            events = RecordingFile.readAllEvents(file).stream()
+                .filter(event -> event.getEventType().getName().startsWith("ultimail."))
+                .collect(Collectors.toList());
+        }
+
+        assertThat(events).extracting(event -> event.getEventType().getName())
+            .containsExactlyInAnyOrder("ultimail.Send", "ultimail.BroadcastChunk");
+        RecordedEvent send = event(events, "ultimail.Send");
+        assertThat(send.getString("player")).isEqualTo("Steve");
+        assertThat(send.getLong("rows")).isEqualTo(1);
+        assertThat(send.getLong("bytes")).isEqualTo(128);
+        RecordedEvent chunk = event(events, "ultimail.BroadcastChunk");
+        assertThat(chunk.getString("player")).isEqualTo("Admin");
+        assertThat(chunk.getLong("rows")).isEqualTo(50);
+    }
+
+    @Test
+    @DisplayName("录制中被禁用的事件不应计算大小")
+    void shouldSkipDisabledEvents() {
+        try (Recording recording = new Recording()) {
+            recording.disable("ultimail.Claim");
+            recording.start();
+
+            MailEvents.begin(MailEvents.Kind.CLAIM).end("Steve", 1, () -> {
+                fail("bytes should only be measured for recorded events");
+                return 0;
+            });
+        }
+    }
+
+    private static RecordedEvent event(List<RecordedEvent> events, String name) {
+        return events.stream()
+            .filter(event -> event.getEventType().getName().equals(name))
+            .findFirst()
+            .orElseThrow(() -> new AssertionError("missing " + name));
+    }
+}
@@ -0,0 +1,216 @@
+package com.ultikits.plugins.mail.metrics;
+
+import com.ultikits.plugins.mail.metrics.MailMetrics.Counter;
+import com.ultikits.plugins.mail.metrics.MailMetrics.Operation;
+
+import org.junit.jupiter.api.*;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for MailMetrics.
+ */
+@DisplayName("MailMetrics 测试")
+@Timeout(value = 30, unit = TimeUnit.SECONDS)
+class MailMetricsTest {
+
+    private MailMetrics metrics;
+
+    @BeforeEach
+    void setUp() {
+        metrics = new MailMetrics();
+    }
+
+    @Nested
+    @DisplayName("操作记录测试")
+    class OperationTests {
+
+        @Test
+        @DisplayName("应按操作分别计数并记录延迟")
+        void shouldRecordPerOperation() {
+            metrics.record(Operation.SEND, System.nanoTime() - 5_000_000L);
+            metrics.record(Operation.SEND, System.nanoTime());
+            metrics.record(Operation.CLAIM, System.nanoTime());
+
+            assertThat(metrics.getCount(Operation.SEND)).isEqualTo(2);
+            assertThat(metrics.getCount(Operation.CLAIM)).isEqualTo(1);
+            assertThat(metrics.getCount(Operation.RECALL)).isZero();
+            assertThat(metrics.getLatency(Operation.SEND).getMaxNanos()).isGreaterThanOrEqualTo(5_000_000L);
+        }
+
+        @Test
+        @DisplayName("失败的操作也应计时")
+        void shouldTimeFailures() {
+            metrics.record(Operation.COMMAND, System.nanoTime(), false);
+            metrics.record(Operation.COMMAND, System.nanoTime(), true);
+
+            assertThat(metrics.getCount(Operation.COMMAND)).isEqualTo(2);
+            assertThat(metrics.getFailures(Operation.COMMAND)).isEqualTo(1);
+        }
+
+        @Test
+        @DisplayName("应按运行时长计算速率")
+        void shouldReportRate() {
+            metrics.record(Operation.INBOX_LOAD, System.nanoTime());
+
+            assertThat(metrics.getRate(Operation.INBOX_LOAD)).isPositive();
+            assertThat(metrics.getRate(Operation.BROADCAST)).isZero();
+        }
+    }
+
+    @Nested
+    @DisplayName("计数器测试")
+    class CounterTests {
+
+        @Test
+        @DisplayName("应累加计数器")
+        void shouldAddToCounters() {
+            metrics.increment(Counter.RECEIVER_FILTER_HITS);
+            metrics.add(Counter.BROADCAST_MAILS, 40);
+            metrics.add(Counter.BROADCAST_MAILS, 2);
+
+            assertThat(metrics.getCounter(Counter.RECEIVER_FILTER_HITS)).isEqualTo(1);
+            assertThat(metrics.getCounter(Counter.BROADCAST_MAILS)).isEqualTo(42);
+            assertThat(metrics.getCounter(Counter.RECALL_MAILS)).isZero();
+        }
+    }
+
+    @Nested
+    @DisplayName("实时指标与缓存测试")
+    class GaugeAndCacheTests {
+
+        @Test
+        @DisplayName("实时指标应在读取时取值并按名称排序")
+        void shouldReadGaugesOnSnapshot() {
+            long[] depth = {3};
+            metrics.registerGauge("task_queue_depth", () -> depth[0]);
+            metrics.registerGauge("open_claims", () -> 1);
+
+            depth[0] = 5;
+
+            assertThat(metrics.getGauges()).containsExactly(
+                org.assertj.core.api.Assertions.entry("open_claims", 1L),
+                org.assertj.core.api.Assertions.entry("task_queue_depth", 5L));
+        }
+
+        @Test
+        @DisplayName("抛出异常的实时指标应被跳过")
+        void shouldSkipBrokenGauges() {
+            metrics.registerGauge("broken", () -> {
+                throw new IllegalStateException("boom");
+            });
+            metrics.registerGauge("fine", () -> 2);
+
+            assertThat(metrics.getGauges()).containsOnlyKeys("fine");
+        }
+
+        @Test
+        @DisplayName("负值表示未知，应被跳过")
+        void shouldSkipUnknownGauges() {
+            metrics.registerGauge("store_rows", () -> -1);
+
+            assertThat(metrics.getGauges()).isEmpty();
+        }
+
+        @Test
+        @DisplayName("缓存命中率应由命中和未命中计算")
+        void shouldComputeHitRatio() {
+            metrics.registerCache("command_templates", () -> 9, () -> 1);
+            metrics.registerCache("empty", () -> 0, () -> 0);
+
+            assertThat(metrics.getCaches().get("command_templates").getHitRatio()).isEqualTo(0.9);
+            assertThat(metrics.getCaches().get("empty").getHitRatio()).isZero();
+        }
+    }
+
+    @Nested
+    @DisplayName("任务进度测试")
+    class JobTests {
+
+        @Test
+        @DisplayName("运行中的任务应报告进度，结束后计入操作")
+        void shouldTrackJobUntilFinished() {
+            MailMetrics.Job job = metrics.startJob(Operation.RECALL, 3);
+            job.advance();
+            job.advance();
+
+            assertThat(metrics.getRunningJobs()).containsExactly(job);
+            assertThat(job.getDoneItems()).isEqualTo(2);
+            assertThat(job.getTotalItems()).isEqualTo(3);
+
+            job.finish(false);
+
+            assertThat(metrics.getRunningJobs()).isEmpty();
+            assertThat(metrics.getCount(Operation.RECALL)).isEqualTo(1);
+            assertThat(metrics.getFailures(Operation.RECALL)).isEqualTo(1);
+        }
+
+        @Test
+        @DisplayName("重复结束只应记录一次")
+        void shouldRecordFinishOnce() {
+            MailMetrics.Job job = metrics.startJob(Operation.BROADCAST, 1);
+
+            job.finish(true);
+            job.finish(true);
+
+            assertThat(metrics.getCount(Operation.BROADCAST)).isEqualTo(1);
+        }
+    }
+
+    @Nested
+    @DisplayName("主线程耗时测试")
+    class MainThreadTests {
+
+        @Test
+        @DisplayName("应按操作累计主线程耗时，嵌套调用不计入 tick")
+        void shouldAccumulatePerOperation() {
+            metrics.recordMainThread(Operation.SEND, 300, true);
+            metrics.recordMainThread(Operation.NOTIFY, 100, false);
+            metrics.rollTick();
+
+            assertThat(metrics.getMainThreadNanos(Operation.SEND)).isEqualTo(300);
+            assertThat(metrics.getMainThreadNanos(Operation.NOTIFY)).isEqualTo(100);
+            assertThat(metrics.getLastTickNanos()).isEqualTo(300);
+        }
+
+        @Test
+        @DisplayName("应按窗口计算 tick 平均值和最大值")
+        void shouldAverageRecentTicks() {
+            for (int tick = 1; tick <= 40; tick++) {
+                metrics.recordMainThread(Operation.SEND, tick * 10L, true);
+                metrics.rollTick();
+            }
+
+            assertThat(metrics.getLastTickNanos()).isEqualTo(400);
+            // Last 20 ticks are 210..400
+            assertThat(metrics.getAverageTickNanos(20)).isEqualTo(305);
+            assertThat(metrics.getMaxTickNanos(20)).isEqualTo(400);
+            // Window larger than the ticks seen only averages what exists
+            assertThat(metrics.getAverageTickNanos(MailMetrics.TICK_WINDOW)).isEqualTo(205);
+        }
+
+        @Test
+        @DisplayName("环形窗口应只保留最近的 tick")
+        void shouldWrapTickWindow() {
+            metrics.recordMainThread(Operation.SEND, 1_000_000, true);
+            metrics.rollTick();
+            for (int tick = 0; tick < MailMetrics.TICK_WINDOW; tick++) {
+                metrics.recordMainThread(Operation.SEND, 10, true);
+                metrics.rollTick();
+            }
+
+            assertThat(metrics.getMaxTickNanos(MailMetrics.TICK_WINDOW)).isEqualTo(10);
+            assertThat(metrics.getAverageTickNanos(MailMetrics.TICK_WINDOW)).isEqualTo(10);
+        }
+
+        @Test
+        @DisplayName("没有 tick 时应返回 0")
+        void shouldReturnZeroWithoutTicks() {
+            assertThat(metrics.getLastTickNanos()).isZero();
+            assertThat(metrics.getAverageTickNanos(20)).isZero();
+            assertThat(metrics.getMaxTickNanos(20)).isZero();
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.ultikits.plugins.mail.metrics;
+
+import com.ultikits.plugins.mail.config.MailConfig;
+import com.ultikits.plugins.mail.metrics.MailMetrics.Operation;
+import com.ultikits.plugins.mail.utils.TestHelper;
+import com.ultikits.ultitools.abstracts.UltiToolsPlugin;
+
+import org.bukkit.Bukkit;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitScheduler;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.*;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for MainThreadMonitor.
+ */
+@DisplayName("MainThreadMonitor 测试")
+@ExtendWith(MockitoExtension.class)
+@Timeout(value = 30, unit = TimeUnit.SECONDS)
+class MainThreadMonitorTest {
+
+    private MainThreadMonitor monitor;
+    private MailConfig config;
+    private MailMetrics metrics;
+    private UltiToolsPlugin plugin;
+
+    @Mock
+    private BukkitScheduler mockBukkitScheduler;
+
+    @Mock
+    private Plugin mockBukkitPlugin;
+
+    private MockedStatic<Bukkit> mockedBukkit;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        plugin = TestHelper.mockUltiToolsPlugin();
+        config = new MailConfig();
+        metrics = new MailMetrics();
+
+        mockedBukkit = mockStatic(Bukkit.class);
+        lenient().when(Bukkit.getScheduler()).thenReturn(mockBukkitScheduler);
+
+        monitor = new MainThreadMonitor();
+        TestHelper.injectField(monitor, "plugin", plugin);
+        TestHelper.injectField(monitor, "config", config);
+        TestHelper.injectField(monitor, "metrics", metrics);
+        TestHelper.injectField(monitor, "bukkitPlugin", mockBukkitPlugin);
+    }
+
+    @AfterEach
+    void tearDown() {
+        mockedBukkit.close();
+        TestHelper.cleanupMocks();
+    }
+
+    private void onMainThread(boolean primary) {
+        mockedBukkit.when(Bukkit::isPrimaryThread).thenReturn(primary);
+    }
+
+    @Nested
+    @DisplayName("耗时统计")
+    class AccountingTests {
+
+        @Test
+        @DisplayName("主线程上的调用应计入操作与 tick")
+        void shouldRecordMainThreadCalls() {
+            onMainThread(true);
+
+            long start = monitor.begin();
+            monitor.end(Operation.SEND, start, "Steve", 1, () -> 0);
+            metrics.rollTick();
+
+            assertThat(metrics.getMainThreadNanos(Operation.SEND)).isPositive();
+            assertThat(metrics.getLastTickNanos()).isEqualTo(metrics.getMainThreadNanos(Operation.SEND));
+        }
+
+        @Test
+        @DisplayName("异步线程上的调用不应计入")
+        void shouldIgnoreAsyncCalls() {
+            onMainThread(false);
+
+            long start = monitor.begin();
+            monitor.end(Operation.SEND, start, "Steve", 1, () -> 0);
+
+            assertThat(metrics.getMainThreadNanos(Operation.SEND)).isZero();
+            verify(mockBukkitScheduler, never()).runTaskTimer(any(Plugin.class), any(Runnable.class),
+                anyLong(), anyLong());
+        }
+
+        @Test
+        @DisplayName("嵌套调用只计入一次 tick 耗时")
+        void shouldCountNestedCallsOnceForTick() {
+            onMainThread(true);
+
+            long outer = monitor.begin();
+            long inner = monitor.begin();
+            monitor.end(Operation.NOTIFY, inner, "Steve", 1, () -> 0);
+            monitor.end(Operation.SEND, outer, "Steve", 1, () -> 0);
+            metrics.rollTick();
+
+            assertThat(metrics.getMainThreadNanos(Operation.NOTIFY)).isPositive();
+            assertThat(metrics.getLastTickNanos()).isEqualTo(metrics.getMainThreadNanos(Operation.SEND));
+        }
+
+        @Test
+        @DisplayName("tick 定时器只应启动一次")
+        void shouldStartTickTimerOnce() {
+            onMainThread(true);
+
+            monitor.end(Operation.SEND, monitor.begin(), "Steve", 1, () -> 0);
+            monitor.end(Operation.CLAIM, monitor.begin(), "Steve", 1, () -> 0);
+
+            verify(mockBukkitScheduler, times(1)).runTaskTimer(eq(mockBukkitPlugin), any(Runnable.class),
+                eq(1L), eq(1L));
+        }
+    }
+
+    @Nested
+    @DisplayName("慢操作日志")
+    class SlowLogTests {
+
+        @Test
+        @DisplayName("超过阈值应记录玩家、邮件数与负载大小")
+        void shouldLogSlowOperation() {
+            onMainThread(true);
+            config.setSlowOperationMicros(1000);
+
+            monitor.begin();
+            monitor.end(Operation.INBOX_LOAD, System.nanoTime() - 10_000_000L, "Steve", 42, () -> 2048);
+
+            verify(plugin.getLogger()).warn(argThat((String message) -> message.contains("inbox_load")
+                && message.contains("Steve") && message.contains("mails: 42")
+                && message.contains("payload: 2048 bytes")));
+        }
+
+        @Test
+        @DisplayName("未超过阈值时不应记录，也不计算负载")
+        void shouldNotLogFastOperation() {
+            onMainThread(true);
+            config.setSlowOperationMicros(1_000_000);
+
+            monitor.end(Operation.SEND, monitor.begin(), "Steve", 1, () -> {
+                fail("payload should only be measured for slow operations");
+                return 0;
+            });
+
+            verify(plugin.getLogger(), never()).warn(anyString());
+        }
+
+        @Test
+        @DisplayName("阈值为 0 时不应记录")
+        void shouldNotLogWhenDisabled() {
+            onMainThread(true);
+            config.setSlowOperationMicros(0);
+
+            monitor.begin();
+            monitor.end(Operation.SEND, System.nanoTime() - 10_000_000L, "Steve", 1, () -> 0);
+
+            verify(plugin.getLogger(), never()).warn(anyString());
+        }
+    }
+}
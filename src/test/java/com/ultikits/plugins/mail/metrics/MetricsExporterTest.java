@@ -0,0 +1,119 @@
+package com.ultikits.plugins.mail.metrics;
+
+import com.ultikits.plugins.mail.config.MailConfig;
+import com.ultikits.plugins.mail.utils.TestHelper;
+
+import org.junit.jupiter.api.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for MetricsExporter, scraping a real server on localhost.
+ */
+@DisplayName("MetricsExporter 测试")
+@Timeout(value = 30, unit = TimeUnit.SECONDS)
+class MetricsExporterTest {
+
+    private MetricsExporter exporter;
+    private MailConfig config;
+    private MailMetrics metrics;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        config = new MailConfig();
+        metrics = new MailMetrics();
+        exporter = new MetricsExporter();
+        TestHelper.injectField(exporter, "plugin", TestHelper.mockUltiToolsPlugin());
+        TestHelper.injectField(exporter, "config", config);
+        TestHelper.injectField(exporter, "metrics", metrics);
+    }
+
+    @AfterEach
+    void tearDown() {
+        exporter.stop();
+        TestHelper.cleanupMocks();
+    }
+
+    @Test
+    @DisplayName("未启用时不应监听端口")
+    void shouldStayOffWhenDisabled() {
+        exporter.init();
+
+        assertThat(exporter.isRunning()).isFalse();
+        assertThat(exporter.getPort()).isEqualTo(-1);
+    }
+
+    @Test
+    @DisplayName("抓取 /metrics 应返回 Prometheus 文本")
+    void shouldServeMetrics() throws Exception {
+        metrics.record(MailMetrics.Operation.SEND, System.nanoTime());
+        exporter.start("127.0.0.1", 0);
+
+        HttpURLConnection connection = open("/metrics", "GET");
+
+        assertThat(connection.getResponseCode()).isEqualTo(200);
+        assertThat(connection.getContentType()).isEqualTo(PrometheusWriter.CONTENT_TYPE);
+        assertThat(read(connection)).contains("ultimail_operations_total{operation=\"send\"} 1\n");
+    }
+
+    @Test
+    @DisplayName("每次抓取都应反映最新数据")
+    void shouldServeFreshSnapshots() throws Exception {
+        exporter.start("127.0.0.1", 0);
+        assertThat(read(open("/metrics", "GET"))).contains("ultimail_operations_total{operation=\"claim\"} 0\n");
+
+        metrics.record(MailMetrics.Operation.CLAIM, System.nanoTime());
+
+        assertThat(read(open("/metrics", "GET"))).contains("ultimail_operations_total{operation=\"claim\"} 1\n");
+    }
+
+    @Test
+    @DisplayName("非 GET 请求应返回 405")
+    void shouldRejectOtherMethods() throws Exception {
+        exporter.start("127.0.0.1", 0);
+
+        HttpURLConnection connection = open("/metrics", "POST");
+
+        assertThat(connection.getResponseCode()).isEqualTo(405);
+    }
+
+    @Test
+    @DisplayName("停止后应释放端口")
+    void shouldStop() throws Exception {
+        exporter.start("127.0.0.1", 0);
+        assertThat(exporter.isRunning()).isTrue();
+
+        exporter.stop();
+
+        assertThat(exporter.isRunning()).isFalse();
+        assertThat(exporter.getPort()).isEqualTo(-1);
+    }
+
+    private HttpURLConnection open(String path, String method) throws Exception {
+        URL url = new URL("http://127.0.0.1:" + exporter.getPort() + path);
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod(method);
+        connection.setConnectTimeout(5000);
+        connection.setReadTimeout(5000);
+        return connection;
+    }
+
+    private static String read(HttpURLConnection connection) throws Exception {
+        try (InputStream in = connection.getInputStream()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.ultikits.plugins.mail.metrics;
+
+import com.ultikits.plugins.mail.metrics.MailMetrics.Counter;
+import com.ultikits.plugins.mail.metrics.MailMetrics.Operation;
+
+import org.junit.jupiter.api.*;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for PrometheusWriter.
+ */
+@DisplayName("PrometheusWriter 测试")
+@Timeout(value = 30, unit = TimeUnit.SECONDS)
+class PrometheusWriterTest {
+
+    private MailMetrics metrics;
+
+    @BeforeEach
+    void setUp() {
+        metrics = new MailMetrics();
+    }
+
+    @Test
+    @DisplayName("应输出操作计数和失败数")
+    void shouldWriteOperationCounters() {
+        metrics.record(Operation.SEND, System.nanoTime(), false);
+        metrics.record(Operation.SEND, System.nanoTime());
+
+        String text = PrometheusWriter.write(metrics);
+
+        assertThat(text).contains("# TYPE ultimail_operations_total counter\n");
+        assertThat(text).contains("ultimail_operations_total{operation=\"send\"} 2\n");
+        assertThat(text).contains("ultimail_operation_failures_total{operation=\"send\"} 1\n");
+        assertThat(text).contains("ultimail_operations_total{operation=\"recall\"} 0\n");
+    }
+
+    @Test
+    @DisplayName("延迟直方图的桶应累计且以 +Inf 结束")
+    void shouldWriteCumulativeHistogram() {
+        LatencyHistogram histogram = metrics.getLatency(Operation.INBOX_LOAD);
+        histogram.record(5_000L);
+        histogram.record(20_000L);
+        histogram.record(60_000_000_000L);
+
+        String text = PrometheusWriter.write(metrics);
+
+        assertThat(text).contains("# TYPE ultimail_operation_duration_seconds histogram\n");
+        assertThat(text).contains(
+            "ultimail_operation_duration_seconds_bucket{operation=\"inbox_load\",le=\"0.00001\"} 1\n");
+        assertThat(text).contains(
+            "ultimail_operation_duration_seconds_bucket{operation=\"inbox_load\",le=\"0.000025\"} 2\n");
+        assertThat(text).contains(
+            "ultimail_operation_duration_seconds_bucket{operation=\"inbox_load\",le=\"10\"} 2\n");
+        assertThat(text).contains(
+            "ultimail_operation_duration_seconds_bucket{operation=\"inbox_load\",le=\"+Inf\"} 3\n");
+        assertThat(text).contains("ultimail_operation_duration_seconds_sum{operation=\"inbox_load\"} 60.000025\n");
+        assertThat(text).contains("ultimail_operation_duration_seconds_count{operation=\"inbox_load\"} 3\n");
+    }
+
+    @Test
+    @DisplayName("应输出计数器、实时指标和缓存")
+    void shouldWriteCountersGaugesAndCaches() {
+        metrics.add(Counter.BROADCAST_MAILS, 12);
+        metrics.registerGauge("task_queue_depth", () -> 4);
+        metrics.registerGauge("store_rows", () -> -1);
+        metrics.registerCache("command_templates", () -> 8, () -> 2);
+
+        String text = PrometheusWriter.write(metrics);
+
+        assertThat(text).contains("ultimail_broadcast_mails_total 12\n");
+        assertThat(text).contains("# TYPE ultimail_task_queue_depth gauge\nultimail_task_queue_depth 4\n");
+        assertThat(text).doesNotContain("ultimail_store_rows");
+        assertThat(text).contains("ultimail_cache_hits_total{cache=\"command_templates\"} 8\n");
+        assertThat(text).contains("ultimail_cache_misses_total{cache=\"command_templates\"} 2\n");
+    }
+
+    @Test
+    @DisplayName("应按任务类型汇总运行中任务的进度")
+    void shouldWriteJobProgress() {
+        MailMetrics.Job first = metrics.startJob(Operation.BROADCAST, 100);
+        MailMetrics.Job second = metrics.startJob(Operation.BROADCAST, 50);
+        for (int i = 0; i < 30; i++) {
+            first.advance();
+        }
+        second.advance();
+
+        String text = PrometheusWriter.write(metrics);
+
+        assertThat(text).contains("ultimail_jobs_running{job=\"broadcast\"} 2\n");
+        assertThat(text).contains("ultimail_job_items{job=\"broadcast\"} 150\n");
+        assertThat(text).contains("ultimail_job_items_done{job=\"broadcast\"} 31\n");
+        assertThat(text).contains("ultimail_jobs_running{job=\"recall\"} 0\n");
+
+        first.finish(true);
+        second.finish(true);
+
+        assertThat(PrometheusWriter.write(metrics)).contains("ultimail_jobs_running{job=\"broadcast\"} 0\n");
+        assertThat(metrics.getCount(Operation.BROADCAST)).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("应输出主线程耗时和 tick 窗口")
+    void shouldWriteMainThreadTime() {
+        metrics.recordMainThread(Operation.SEND, 2_000_000L, true);
+        metrics.rollTick();
+
+        String text = PrometheusWriter.write(metrics);
+
+        assertThat(text).contains("# TYPE ultimail_main_thread_seconds_total counter\n");
+        assertThat(text).contains("ultimail_main_thread_seconds_total{operation=\"send\"} 0.002\n");
+        assertThat(text).contains("ultimail_main_thread_tick_seconds{window=\"last\"} 0.002\n");
+        assertThat(text).contains("ultimail_main_thread_tick_seconds{window=\"1m\"} 0.002\n");
+        assertThat(text).contains("ultimail_main_thread_tick_max_seconds 0.002\n");
+    }
+
+    @Test
+    @DisplayName("秒数应以普通小数输出")
+    void shouldFormatSeconds() {
+        assertThat(PrometheusWriter.seconds(0)).isEqualTo("0");
+        assertThat(PrometheusWriter.seconds(1_500_000_000L)).isEqualTo("1.5");
+        assertThat(PrometheusWriter.seconds(10_000L)).isEqualTo("0.00001");
+        assertThat(PrometheusWriter.seconds(10_000_000_000L)).isEqualTo("10");
+    }
+
+    @Test
+    @DisplayName("标签值应转义引号、反斜杠和换行")
+    void shouldEscapeLabelValues() {
+        assertThat(PrometheusWriter.escape("a\"b\\c\nd")).isEqualTo("a\\\"b\\\\c\\nd");
+    }
+}
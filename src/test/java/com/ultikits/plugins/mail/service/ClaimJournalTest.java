@@ -0,0 +1,205 @@
+package com.ultikits.plugins.mail.service;
+
+import com.ultikits.plugins.mail.config.MailConfig;
+import com.ultikits.plugins.mail.utils.TestHelper;
+import com.ultikits.ultitools.abstracts.UltiToolsPlugin;
+
+import org.bukkit.Bukkit;
+import org.bukkit.scheduler.BukkitScheduler;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.MockedStatic;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for ClaimJournal.
+ */
+@DisplayName("ClaimJournal 测试")
+class ClaimJournalTest {
+
+    @TempDir
+    Path tempDir;
+
+    private File file;
+    private ClaimJournal journal;
+    private final UUID player = UUID.randomUUID();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        file = tempDir.resolve("claims.journal").toFile();
+        journal = open();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        journal.close();
+        TestHelper.cleanupMocks();
+    }
+
+    private ClaimJournal open() throws Exception {
+        ClaimJournal opened = new ClaimJournal();
+        UltiToolsPlugin plugin = TestHelper.mockUltiToolsPlugin();
+        inject(opened, "plugin", plugin);
+        inject(opened, "config", new MailConfig());
+        opened.open(file);
+        return opened;
+    }
+
+    private ClaimJournal reopen() throws Exception {
+        journal.close();
+        journal = open();
+        return journal;
+    }
+
+    private void inject(Object target, String name, Object value) throws Exception {
+        Field field = target.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(target, value);
+    }
+
+    @Test
+    @DisplayName("未完成的意图重启后应被恢复")
+    void shouldRecoverOpenIntents() throws Exception {
+        journal.begin("m1", player, 4);
+        journal.begin("m2", player, 7);
+        journal.complete("m1");
+
+        List<ClaimJournal.Intent> intents = reopen().getRecoveredIntents();
+
+        assertThat(intents).hasSize(1);
+        assertThat(intents.get(0).getMailId()).isEqualTo("m2");
+        assertThat(intents.get(0).getPlayerUuid()).isEqualTo(player);
+        assertThat(intents.get(0).getVersion()).isEqualTo(7);
+    }
+
+    @Test
+    @DisplayName("完成恢复的意图后不应再次恢复")
+    void shouldNotRecoverCompletedRecoveredIntent() throws Exception {
+        journal.begin("m1", player, 1);
+        reopen().complete("m1");
+
+        assertThat(reopen().getRecoveredIntents()).isEmpty();
+    }
+
+    @Test
+    @DisplayName("末尾残缺记录应被丢弃")
+    void shouldDropTornTail() throws Exception {
+        journal.begin("m1", player, 1);
+        journal.close();
+        Files.write(file.toPath(), "I\tm2\t".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        journal = open();
+        journal.begin("m3", player, 2);
+
+        List<ClaimJournal.Intent> intents = reopen().getRecoveredIntents();
+        assertThat(intents).extracting(ClaimJournal.Intent::getMailId).containsExactly("m1", "m3");
+    }
+
+    @Test
+    @DisplayName("格式错误的记录应被跳过")
+    void shouldSkipMalformedRecord() throws Exception {
+        journal.close();
+        Files.write(file.toPath(), ("I\tm1\tnot-a-uuid\t1\n\nI\tm2\t" + player + "\t2\n")
+            .getBytes(StandardCharsets.UTF_8));
+
+        List<ClaimJournal.Intent> intents = open().getRecoveredIntents();
+
+        assertThat(intents).extracting(ClaimJournal.Intent::getMailId).containsExactly("m2");
+    }
+
+    @Test
+    @DisplayName("没有 id 的邮件不应写入日志")
+    void shouldIgnoreMailsWithoutId() {
+        assertThat(journal.begin(null, player, 1)).isTrue();
+        journal.complete(null);
+
+        assertThat(journal.getOpenCount()).isZero();
+        assertThat(file.length()).isZero();
+    }
+
+    @Test
+    @DisplayName("未知 id 的完成记录不应写入")
+    void shouldIgnoreCompleteOfUnknownId() {
+        journal.complete("unknown");
+
+        assertThat(file.length()).isZero();
+    }
+
+    @Test
+    @DisplayName("超过阈值且无未完成意图时应截断文件")
+    void shouldCompactWhenIdle() {
+        for (int i = 0; i < 20000; i++) {
+            journal.begin("mail-" + i, player, i);
+            journal.complete("mail-" + i);
+        }
+
+        assertThat(file.length()).isLessThan(1L << 20);
+        assertThat(journal.getOpenCount()).isZero();
+    }
+
+    @Test
+    @DisplayName("有未完成意图时不应截断文件")
+    void shouldNotCompactWithOpenIntent() throws Exception {
+        journal.begin("pending", player, 1);
+        for (int i = 0; i < 20000; i++) {
+            journal.begin("mail-" + i, player, i);
+            journal.complete("mail-" + i);
+        }
+
+        assertThat(file.length()).isGreaterThan(1L << 20);
+        assertThat(reopen().getRecoveredIntents()).extracting(ClaimJournal.Intent::getMailId)
+            .containsExactly("pending");
+    }
+
+    @Test
+    @DisplayName("同步后记录应保留")
+    void shouldKeepRecordsAfterSync() throws Exception {
+        journal.begin("m1", player, 1);
+        journal.sync();
+        journal.sync();
+
+        assertThat(reopen().getRecoveredIntents()).hasSize(1);
+    }
+
+    @Test
+    @DisplayName("同步前排队的动作应共享一次异步同步")
+    void shouldRunQueuedActionsAfterOneSharedSync() throws Exception {
+        BukkitScheduler scheduler = mock(BukkitScheduler.class);
+        try (MockedStatic<Bukkit> bukkit = mockStatic(Bukkit.class)) {
+            bukkit.when(Bukkit::getScheduler).thenReturn(scheduler);
+            List<String> ran = new ArrayList<>();
+
+            journal.begin("m1", player, 1);
+            journal.afterSync(() -> ran.add("first"));
+            journal.begin("m2", player, 1);
+            journal.afterSync(() -> ran.add("second"));
+
+            ArgumentCaptor<Runnable> flush = ArgumentCaptor.forClass(Runnable.class);
+            verify(scheduler, times(1)).runTaskAsynchronously(any(), flush.capture());
+            assertThat(ran).isEmpty();
+
+            flush.getValue().run();
+
+            assertThat(ran).containsExactly("first", "second");
+
+            journal.afterSync(() -> ran.add("third"));
+
+            verify(scheduler, times(2)).runTaskAsynchronously(any(), any(Runnable.class));
+        }
+        assertThat(reopen().getRecoveredIntents()).hasSize(2);
+    }
+}
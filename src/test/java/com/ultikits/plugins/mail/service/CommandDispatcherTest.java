@@ -0,0 +1,298 @@
+package com.ultikits.plugins.mail.service;
+
+import com.ultikits.plugins.mail.config.MailConfig;
+import com.ultikits.plugins.mail.metrics.MailMetrics;
+import com.ultikits.plugins.mail.metrics.MainThreadMonitor;
+import com.ultikits.plugins.mail.utils.TestHelper;
+import com.ultikits.ultitools.abstracts.UltiToolsPlugin;
+
+import org.bukkit.Bukkit;
+import org.bukkit.command.ConsoleCommandSender;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitScheduler;
+import org.bukkit.scheduler.BukkitTask;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.*;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for CommandDispatcher.
+ */
+@DisplayName("CommandDispatcher 测试")
+@ExtendWith(MockitoExtension.class)
+@Timeout(value = 30, unit = TimeUnit.SECONDS)
+class CommandDispatcherTest {
+
+    private CommandDispatcher dispatcher;
+
+    private MailConfig config;
+
+    private MailMetrics metrics;
+
+    private MainThreadMonitor mainThread;
+
+    @Mock
+    private BukkitScheduler mockBukkitScheduler;
+
+    @Mock
+    private Plugin mockBukkitPlugin;
+
+    @Mock
+    private Player player;
+
+    private MockedStatic<Bukkit> mockedBukkit;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        UltiToolsPlugin mockPlugin = TestHelper.mockUltiToolsPlugin();
+        config = new MailConfig();
+        lenient().when(player.getName()).thenReturn("Steve");
+        lenient().when(player.isOnline()).thenReturn(true);
+
+        mockedBukkit = mockStatic(Bukkit.class);
+        mockedBukkit.when(Bukkit::getScheduler).thenReturn(mockBukkitScheduler);
+
+        dispatcher = new CommandDispatcher();
+        TestHelper.injectField(dispatcher, "plugin", mockPlugin);
+        TestHelper.injectField(dispatcher, "config", config);
+        TestHelper.injectField(dispatcher, "bukkitPlugin", mockBukkitPlugin);
+        metrics = new MailMetrics();
+        TestHelper.injectField(dispatcher, "metrics", metrics);
+        mainThread = new MainThreadMonitor();
+        TestHelper.injectField(mainThread, "plugin", mockPlugin);
+        TestHelper.injectField(mainThread, "config", config);
+        TestHelper.injectField(mainThread, "metrics", metrics);
+        TestHelper.injectField(dispatcher, "mainThread", mainThread);
+    }
+
+    @AfterEach
+    void tearDown() {
+        mockedBukkit.close();
+        TestHelper.cleanupMocks();
+    }
+
+    @Test
+    @DisplayName("首次派发时应启动每 tick 定时器")
+    void shouldStartTimerOnFirstDispatch() {
+        dispatcher.dispatch(player, commands("a"));
+        dispatcher.dispatch(player, commands("b"));
+
+        verify(mockBukkitScheduler, times(1)).runTaskTimer(eq(mockBukkitPlugin), any(Runnable.class), eq(1L), eq(1L));
+        assertThat(dispatcher.getQueueDepth()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("停止时应取消定时器，再次派发时重新启动")
+    void shouldCancelTimerOnStopAndRestartOnDispatch() {
+        BukkitTask timer = mock(BukkitTask.class);
+        when(mockBukkitScheduler.runTaskTimer(eq(mockBukkitPlugin), any(Runnable.class), eq(1L), eq(1L)))
+            .thenReturn(timer);
+        dispatcher.dispatch(player, commands("a"));
+
+        dispatcher.stop();
+        dispatcher.stop();
+
+        verify(timer, times(1)).cancel();
+        assertThat(dispatcher.getQueueDepth()).isEqualTo(1);
+
+        dispatcher.dispatch(player, commands("b"));
+
+        verify(mockBukkitScheduler, times(2)).runTaskTimer(eq(mockBukkitPlugin), any(Runnable.class), eq(1L), eq(1L));
+    }
+
+    @Test
+    @DisplayName("空命令列表不应启动定时器")
+    void shouldIgnoreEmptyDispatch() {
+        dispatcher.dispatch(player, Collections.<CompiledCommand>emptyList());
+
+        verifyNoInteractions(mockBukkitScheduler);
+    }
+
+    @Test
+    @DisplayName("每 tick 执行数不应超过上限")
+    void shouldRespectCommandsPerTick() {
+        config.setCommandsPerTick(3);
+        List<CompiledCommand> batch = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            batch.add(CompiledCommand.compile("cmd" + i));
+        }
+        dispatcher.dispatch(player, batch);
+
+        dispatcher.tick();
+        assertThat(dispatcher.getLastTickCommands()).isEqualTo(3);
+        verify(player, times(3)).performCommand(anyString());
+
+        dispatcher.tick();
+        dispatcher.tick();
+        assertThat(dispatcher.getQueueDepth()).isZero();
+        assertThat(dispatcher.getDispatchedCommands()).isEqualTo(8);
+        verify(player, times(8)).performCommand(anyString());
+    }
+
+    @Test
+    @DisplayName("应按目标分别以玩家和控制台执行")
+    void shouldRouteByTarget() {
+        ConsoleCommandSender console = mock(ConsoleCommandSender.class);
+        mockedBukkit.when(Bukkit::getConsoleSender).thenReturn(console);
+
+        dispatcher.dispatch(player, commands("give %player% diamond 1", "console:eco give %player% 100"));
+        dispatcher.tick();
+
+        verify(player).performCommand("give Steve diamond 1");
+        mockedBukkit.verify(() -> Bukkit.dispatchCommand(console, "eco give Steve 100"));
+    }
+
+    @Test
+    @DisplayName("玩家离线时应保留玩家命令直到重新上线")
+    void shouldParkPlayerCommandUntilRejoin() {
+        UUID uuid = UUID.randomUUID();
+        when(player.getUniqueId()).thenReturn(uuid);
+        when(player.isOnline()).thenReturn(false);
+
+        dispatcher.dispatch(player, commands("spawn", "kit starter"));
+        dispatcher.tick();
+
+        verify(player, never()).performCommand(anyString());
+        assertThat(dispatcher.getQueueDepth()).isZero();
+        assertThat(dispatcher.getParkedCount()).isEqualTo(2);
+
+        Player rejoined = mock(Player.class);
+        when(rejoined.getUniqueId()).thenReturn(uuid);
+        when(rejoined.getName()).thenReturn("Steve");
+        when(rejoined.isOnline()).thenReturn(true);
+        dispatcher.resume(rejoined);
+        dispatcher.tick();
+
+        InOrder order = inOrder(rejoined);
+        order.verify(rejoined).performCommand("spawn");
+        order.verify(rejoined).performCommand("kit starter");
+        assertThat(dispatcher.getParkedCount()).isZero();
+    }
+
+    @Test
+    @DisplayName("保留的命令应写入文件并在重启后恢复")
+    void shouldPersistParkedCommandsAcrossRestart() throws Exception {
+        File file = tempDir.resolve("mail").resolve("parked-commands.txt").toFile();
+        dispatcher.load(file);
+        UUID uuid = UUID.randomUUID();
+        when(player.getUniqueId()).thenReturn(uuid);
+        when(player.isOnline()).thenReturn(false);
+
+        dispatcher.dispatch(player, commands("kit %player%", "spawn"));
+        dispatcher.tick();
+
+        assertThat(file).exists();
+
+        CommandDispatcher restarted = new CommandDispatcher();
+        TestHelper.injectField(restarted, "plugin", TestHelper.mockUltiToolsPlugin());
+        TestHelper.injectField(restarted, "config", config);
+        TestHelper.injectField(restarted, "bukkitPlugin", mockBukkitPlugin);
+        TestHelper.injectField(restarted, "metrics", metrics);
+        TestHelper.injectField(restarted, "mainThread", mainThread);
+        restarted.load(file);
+
+        assertThat(restarted.getParkedCount()).isEqualTo(2);
+
+        Player rejoined = mock(Player.class);
+        when(rejoined.getUniqueId()).thenReturn(uuid);
+        when(rejoined.getName()).thenReturn("Alex");
+        when(rejoined.isOnline()).thenReturn(true);
+        restarted.resume(rejoined);
+        restarted.tick();
+
+        InOrder order = inOrder(rejoined);
+        order.verify(rejoined).performCommand("kit Steve");
+        order.verify(rejoined).performCommand("spawn");
+        assertThat(file).doesNotExist();
+    }
+
+    @Test
+    @DisplayName("保留命令文件中格式错误的行应被跳过")
+    void shouldSkipMalformedParkedLines() throws Exception {
+        UUID uuid = UUID.randomUUID();
+        File file = tempDir.resolve("parked-commands.txt").toFile();
+        Files.write(file.toPath(), ("not-a-uuid\tspawn\n" + uuid + "\n" + uuid + "\tspawn\n")
+            .getBytes(StandardCharsets.UTF_8));
+
+        dispatcher.load(file);
+
+        assertThat(dispatcher.getParkedCount()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("玩家离线时控制台命令仍应执行")
+    void shouldRunConsoleCommandForOfflinePlayer() {
+        ConsoleCommandSender console = mock(ConsoleCommandSender.class);
+        mockedBukkit.when(Bukkit::getConsoleSender).thenReturn(console);
+        when(player.isOnline()).thenReturn(false);
+
+        dispatcher.dispatch(player, commands("console:eco give %player% 100"));
+        dispatcher.tick();
+
+        mockedBukkit.verify(() -> Bukkit.dispatchCommand(console, "eco give Steve 100"));
+        assertThat(dispatcher.getParkedCount()).isZero();
+    }
+
+    @Test
+    @DisplayName("没有保留命令的玩家上线时不应派发")
+    void shouldIgnoreResumeWithoutParkedCommands() {
+        when(player.getUniqueId()).thenReturn(UUID.randomUUID());
+
+        dispatcher.resume(player);
+
+        assertThat(dispatcher.getQueueDepth()).isZero();
+        verifyNoInteractions(mockBukkitScheduler);
+    }
+
+    @Test
+    @DisplayName("命令异常不应中断队列")
+    void shouldContinueAfterFailure() {
+        when(player.performCommand("bad")).thenThrow(new IllegalStateException("boom"));
+
+        dispatcher.dispatch(player, commands("bad", "good"));
+        dispatcher.tick();
+
+        verify(player).performCommand("good");
+    }
+
+    @Test
+    @DisplayName("每条命令都应计入指标，异常计为失败")
+    void shouldRecordCommandMetrics() {
+        when(player.performCommand("bad")).thenThrow(new IllegalStateException("boom"));
+
+        dispatcher.dispatch(player, commands("bad", "good"));
+        dispatcher.tick();
+
+        assertThat(metrics.getCount(MailMetrics.Operation.COMMAND)).isEqualTo(2);
+        assertThat(metrics.getFailures(MailMetrics.Operation.COMMAND)).isEqualTo(1);
+    }
+
+    private static List<CompiledCommand> commands(String... raw) {
+        List<CompiledCommand> list = new ArrayList<>();
+        for (String command : Arrays.asList(raw)) {
+            list.add(CompiledCommand.compile(command));
+        }
+        return list;
+    }
+}
@@ -0,0 +1,111 @@
+package com.ultikits.plugins.mail.service;
+
+import com.google.gson.JsonParseException;
+
+import org.junit.jupiter.api.*;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Unit tests for CommandTemplateCache and CompiledCommand.
+ */
+@DisplayName("CommandTemplateCache 测试")
+class CommandTemplateCacheTest {
+
+    private CommandTemplateCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new CommandTemplateCache(2);
+    }
+
+    @Nested
+    @DisplayName("CompiledCommand 编译测试")
+    class CompileTests {
+
+        @Test
+        @DisplayName("应替换所有%player%占位符")
+        void shouldRenderAllPlaceholders() {
+            CompiledCommand command = CompiledCommand.compile("tp %player% %player%");
+
+            assertThat(command.getPlaceholderCount()).isEqualTo(2);
+            assertThat(command.render("Steve")).isEqualTo("tp Steve Steve");
+        }
+
+        @Test
+        @DisplayName("无占位符命令应原样返回")
+        void shouldRenderPlainCommand() {
+            CompiledCommand command = CompiledCommand.compile("spawn");
+
+            assertThat(command.getPlaceholderCount()).isZero();
+            assertThat(command.isConsole()).isFalse();
+            assertThat(command.render("Steve")).isEqualTo("spawn");
+        }
+
+        @Test
+        @DisplayName("console:前缀应在编译时识别并去除")
+        void shouldResolveConsolePrefix() {
+            CompiledCommand command = CompiledCommand.compile("CONSOLE: eco give %player% 100");
+
+            assertThat(command.isConsole()).isTrue();
+            assertThat(command.render("Steve")).isEqualTo("eco give Steve 100");
+        }
+
+        @Test
+        @DisplayName("占位符位于首尾时应正确渲染")
+        void shouldRenderPlaceholderAtEdges() {
+            assertThat(CompiledCommand.compile("%player%").render("Steve")).isEqualTo("Steve");
+            assertThat(CompiledCommand.compile("%player% hi %player%").render("A")).isEqualTo("A hi A");
+        }
+    }
+
+    @Test
+    @DisplayName("相同负载应只编译一次")
+    void shouldCompileSamePayloadOnce() {
+        String payload = "[\"give %player% diamond 1\",\"console:say hi\"]";
+
+        List<CompiledCommand> first = cache.get(payload);
+        List<CompiledCommand> second = cache.get(payload);
+
+        assertThat(second).isSameAs(first).hasSize(2);
+        assertThat(cache.getMisses()).isEqualTo(1);
+        assertThat(cache.getHits()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("超出容量时应淘汰最久未使用的负载")
+    void shouldEvictLeastRecentlyUsed() {
+        cache.get("[\"a\"]");
+        cache.get("[\"b\"]");
+        cache.get("[\"a\"]");
+        cache.get("[\"c\"]");
+
+        assertThat(cache.size()).isEqualTo(2);
+        cache.get("[\"a\"]");
+        assertThat(cache.getHits()).isEqualTo(2);
+        cache.get("[\"b\"]");
+        assertThat(cache.getMisses()).isEqualTo(4);
+    }
+
+    @Test
+    @DisplayName("空数组应返回空列表")
+    void shouldReturnEmptyForEmptyArray() {
+        assertThat(cache.get("[]")).isEmpty();
+    }
+
+    @Test
+    @DisplayName("null 元素应被跳过")
+    void shouldSkipNullEntries() {
+        assertThat(cache.get("[null,\"spawn\"]")).hasSize(1);
+    }
+
+    @Test
+    @DisplayName("无效JSON应抛出解析异常且不缓存")
+    void shouldRejectInvalidJson() {
+        assertThatThrownBy(() -> cache.get("not valid json")).isInstanceOf(JsonParseException.class);
+        assertThat(cache.size()).isZero();
+    }
+}
@@ -0,0 +1,93 @@
+package com.ultikits.plugins.mail.service;
+
+import com.ultikits.plugins.mail.entity.MailData;
+
+import org.junit.jupiter.api.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for InboxSnapshots, with a manual clock.
+ */
+@DisplayName("InboxSnapshots 测试")
+@Timeout(value = 30, unit = TimeUnit.SECONDS)
+class InboxSnapshotsTest {
+
+    private static final long TTL = 1000L;
+
+    private final AtomicLong now = new AtomicLong(10_000L);
+    private InboxSnapshots snapshots;
+
+    @BeforeEach
+    void setUp() {
+        snapshots = new InboxSnapshots(TTL, now::get);
+    }
+
+    private static List<MailData> mails(String... ids) {
+        List<MailData> mails = new ArrayList<>();
+        for (String id : ids) {
+            MailData mail = new MailData();
+            mail.setId(id);
+            mails.add(mail);
+        }
+        return mails;
+    }
+
+    @Test
+    @DisplayName("应按列出的顺序解析编号")
+    void shouldResolveIndexesInListedOrder() {
+        UUID player = UUID.randomUUID();
+        snapshots.record(player, mails("c", "b", "a"));
+
+        InboxSnapshots.Snapshot snapshot = snapshots.get(player);
+
+        assertThat(snapshot.size()).isEqualTo(3);
+        assertThat(Arrays.asList(snapshot.idAt(1), snapshot.idAt(2), snapshot.idAt(3))).containsExactly("c", "b", "a");
+        assertThat(snapshot.idAt(0)).isNull();
+        assertThat(snapshot.idAt(4)).isNull();
+    }
+
+    @Test
+    @DisplayName("新的列出应替换旧快照")
+    void shouldReplaceSnapshotOnNextListing() {
+        UUID player = UUID.randomUUID();
+        snapshots.record(player, mails("a"));
+        snapshots.record(player, mails("b", "a"));
+
+        assertThat(snapshots.get(player).idAt(1)).isEqualTo("b");
+        assertThat(snapshots.get(UUID.randomUUID())).isNull();
+    }
+
+    @Test
+    @DisplayName("过期的快照应被丢弃")
+    void shouldDropExpiredSnapshot() {
+        UUID player = UUID.randomUUID();
+        snapshots.record(player, mails("a"));
+
+        now.addAndGet(TTL - 1);
+        assertThat(snapshots.get(player)).isNotNull();
+        now.addAndGet(1);
+        assertThat(snapshots.get(player)).isNull();
+        assertThat(snapshots.size()).isZero();
+    }
+
+    @Test
+    @DisplayName("快照过多时记录应清理过期快照")
+    void shouldSweepExpiredSnapshotsWhenRecording() {
+        for (int i = 0; i < 300; i++) {
+            snapshots.record(UUID.randomUUID(), mails("a"));
+        }
+        now.addAndGet(TTL);
+
+        snapshots.record(UUID.randomUUID(), mails("a"));
+
+        assertThat(snapshots.size()).isEqualTo(1);
+    }
+}
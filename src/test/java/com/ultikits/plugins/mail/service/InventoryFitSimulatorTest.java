@@ -0,0 +1,190 @@
+package com.ultikits.plugins.mail.service;
+
+import org.bukkit.Material;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.ItemStack;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for InventoryFitSimulator.
+ */
+@DisplayName("InventoryFitSimulator 测试")
+@ExtendWith(MockitoExtension.class)
+class InventoryFitSimulatorTest {
+
+    @Test
+    @DisplayName("空背包应放得下")
+    void shouldFitIntoEmptyInventory() {
+        InventoryFitSimulator simulator = new InventoryFitSimulator(2).load(new ItemStack[2]);
+
+        assertThat(simulator.getEmptySlots()).isEqualTo(2);
+        assertThat(simulator.fits(stack(Material.STONE, 64), stack(Material.DIRT, 1))).isTrue();
+    }
+
+    @Test
+    @DisplayName("可堆叠到已有物品时应放得下")
+    void shouldMergeIntoSimilarStack() {
+        InventoryFitSimulator simulator = new InventoryFitSimulator(1)
+            .load(new ItemStack[]{stack(Material.STONE, 10)});
+
+        assertThat(simulator.getEmptySlots()).isZero();
+        assertThat(simulator.fits(stack(Material.STONE, 54))).isTrue();
+        assertThat(simulator.fits(stack(Material.STONE, 55))).isFalse();
+    }
+
+    @Test
+    @DisplayName("不同材质不应堆叠")
+    void shouldNotMergeDifferentMaterials() {
+        InventoryFitSimulator simulator = new InventoryFitSimulator(1)
+            .load(new ItemStack[]{stack(Material.STONE, 10)});
+
+        assertThat(simulator.getMissingSlots(stack(Material.DIRT, 1))).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("有元数据的物品不应堆叠到无元数据的物品上")
+    void shouldNotMergeMetaIntoPlainStack() {
+        ItemStack named = stack(Material.STONE, 1);
+        when(named.hasItemMeta()).thenReturn(true);
+        InventoryFitSimulator simulator = new InventoryFitSimulator(1)
+            .load(new ItemStack[]{stack(Material.STONE, 10)});
+
+        assertThat(simulator.fits(named)).isFalse();
+    }
+
+    @Test
+    @DisplayName("元数据相同的物品应堆叠")
+    void shouldMergeSimilarMeta() {
+        ItemStack slot = stack(Material.STONE, 10);
+        ItemStack copy = stack(Material.STONE, 10);
+        ItemStack named = stack(Material.STONE, 1);
+        when(slot.hasItemMeta()).thenReturn(true);
+        when(slot.clone()).thenReturn(copy);
+        when(named.hasItemMeta()).thenReturn(true);
+        when(copy.isSimilar(named)).thenReturn(true);
+        InventoryFitSimulator simulator = new InventoryFitSimulator(1).load(new ItemStack[]{slot});
+
+        assertThat(simulator.fits(named)).isTrue();
+        verify(slot, never()).getItemMeta();
+        verify(named, never()).getItemMeta();
+    }
+
+    @Test
+    @DisplayName("元数据不同的物品不应堆叠")
+    void shouldNotMergeDifferentMeta() {
+        ItemStack slot = stack(Material.STONE, 10);
+        ItemStack copy = stack(Material.STONE, 10);
+        ItemStack named = stack(Material.STONE, 1);
+        when(slot.hasItemMeta()).thenReturn(true);
+        when(slot.clone()).thenReturn(copy);
+        when(named.hasItemMeta()).thenReturn(true);
+        InventoryFitSimulator simulator = new InventoryFitSimulator(1).load(new ItemStack[]{slot});
+
+        assertThat(simulator.fits(named)).isFalse();
+    }
+
+    @Test
+    @DisplayName("旧版本中耐久不同的物品不应堆叠")
+    @SuppressWarnings("deprecation")
+    void shouldNotMergeDifferentLegacyDurability() {
+        ItemStack wool = stack(Material.STONE, 10);
+        when(wool.getDurability()).thenReturn((short) 14);
+        ItemStack sameColour = stack(Material.STONE, 1);
+        when(sameColour.getDurability()).thenReturn((short) 14);
+        ItemStack otherColour = stack(Material.STONE, 1);
+        when(otherColour.getDurability()).thenReturn((short) 3);
+        InventoryFitSimulator simulator = new InventoryFitSimulator(1, true).load(new ItemStack[]{wool});
+
+        assertThat(simulator.fits(sameColour)).isTrue();
+        assertThat(simulator.fits(otherColour)).isFalse();
+    }
+
+    @Test
+    @DisplayName("新版本中不应读取耐久")
+    @SuppressWarnings("deprecation")
+    void shouldNotReadDurabilityOnModernServers() {
+        ItemStack stone = stack(Material.STONE, 10);
+        InventoryFitSimulator simulator = new InventoryFitSimulator(1, false).load(new ItemStack[]{stone});
+
+        assertThat(simulator.fits(stack(Material.STONE, 1))).isTrue();
+        verify(stone, never()).getDurability();
+    }
+
+    @Test
+    @DisplayName("应按最大堆叠数计算缺少的格数")
+    void shouldCountMissingSlotsByMaxStack() {
+        InventoryFitSimulator simulator = new InventoryFitSimulator(1).load(new ItemStack[1]);
+        ItemStack pearls = stack(Material.STONE, 40);
+        when(pearls.getMaxStackSize()).thenReturn(16);
+
+        assertThat(simulator.getMissingSlots(pearls)).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("fits 不应修改模型，add 应提交")
+    void shouldOnlyCommitOnAdd() {
+        InventoryFitSimulator simulator = new InventoryFitSimulator(1).load(new ItemStack[1]);
+
+        assertThat(simulator.fits(stack(Material.STONE, 1))).isTrue();
+        assertThat(simulator.getEmptySlots()).isEqualTo(1);
+
+        assertThat(simulator.add(stack(Material.STONE, 1))).isTrue();
+        assertThat(simulator.getEmptySlots()).isZero();
+        assertThat(simulator.add(stack(Material.DIRT, 1))).isFalse();
+        assertThat(simulator.fits(stack(Material.STONE, 63))).isTrue();
+    }
+
+    @Test
+    @DisplayName("应选出能放下的分组并跳过放不下的")
+    void shouldSelectFittingGroups() {
+        InventoryFitSimulator simulator = new InventoryFitSimulator(2).load(new ItemStack[2]);
+
+        boolean[] accepted = simulator.selectFitting(Arrays.asList(
+            new ItemStack[]{stack(Material.STONE, 1)},
+            new ItemStack[]{stack(Material.DIRT, 1), stack(Material.DIAMOND, 1)},
+            new ItemStack[]{stack(Material.STONE, 5)},
+            new ItemStack[]{stack(Material.DIRT, 1)}
+        ));
+
+        assertThat(accepted).containsExactly(true, false, true, true);
+    }
+
+    @Test
+    @DisplayName("空物品和AIR应被忽略")
+    void shouldIgnoreEmptyItems() {
+        InventoryFitSimulator simulator = new InventoryFitSimulator(1)
+            .load(new ItemStack[]{stack(Material.AIR, 1)});
+
+        assertThat(simulator.getEmptySlots()).isEqualTo(1);
+        assertThat(simulator.fits(null, stack(Material.AIR, 1))).isTrue();
+    }
+
+    @Test
+    @DisplayName("应逐格读取背包而不是复制内容数组")
+    void shouldLoadInventorySlotBySlot() {
+        Inventory inventory = mock(Inventory.class);
+        ItemStack stone = stack(Material.STONE, 64);
+        when(inventory.getItem(0)).thenReturn(stone);
+
+        InventoryFitSimulator simulator = new InventoryFitSimulator().load(inventory);
+
+        assertThat(simulator.getEmptySlots()).isEqualTo(InventoryFitSimulator.PLAYER_STORAGE_SIZE - 1);
+        verify(inventory, never()).getStorageContents();
+        verify(inventory, never()).getContents();
+    }
+
+    private static ItemStack stack(Material material, int amount) {
+        ItemStack item = mock(ItemStack.class);
+        lenient().when(item.getType()).thenReturn(material);
+        lenient().when(item.getAmount()).thenReturn(amount);
+        lenient().when(item.getMaxStackSize()).thenReturn(64);
+        return item;
+    }
+}
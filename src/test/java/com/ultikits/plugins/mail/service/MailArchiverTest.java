@@ -0,0 +1,317 @@
+package com.ultikits.plugins.mail.service;
+
+import com.ultikits.plugins.mail.entity.MailArchiveBlob;
+import com.ultikits.plugins.mail.entity.MailArchiveData;
+import com.ultikits.plugins.mail.entity.MailData;
+import com.ultikits.plugins.mail.store.InMemoryMailStore;
+import com.ultikits.ultitools.interfaces.DataOperator;
+import com.ultikits.ultitools.interfaces.Query;
+
+import org.junit.jupiter.api.*;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for MailArchiver, with map-backed DataOperators standing in for the archive tables.
+ */
+@DisplayName("MailArchiver 测试")
+@Timeout(value = 30, unit = TimeUnit.SECONDS)
+class MailArchiverTest {
+
+    private static final String PLAYER = UUID.randomUUID().toString();
+    private static final String OTHER = UUID.randomUUID().toString();
+
+    private final Map<String, MailArchiveData> summaryTable = new ConcurrentHashMap<>();
+    private final Map<String, MailArchiveBlob> blobTable = new ConcurrentHashMap<>();
+
+    private InMemoryMailStore store;
+    private DataOperator<MailArchiveBlob> blobs;
+    private MailArchiver archiver;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        store = new InMemoryMailStore();
+        blobs = table(blobTable, MailArchiveBlob::getId, null);
+        archiver = new MailArchiver(store, table(summaryTable, MailArchiveData::getId, MailArchiveData::getPlayerUuid),
+            blobs, ZoneOffset.UTC);
+    }
+
+    /**
+     * A DataOperator over a map, with a single-condition query on the given column.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> DataOperator<T> table(Map<String, T> rows, Function<T, String> id, Function<T, String> player)
+            throws Exception {
+        DataOperator<T> operator = mock(DataOperator.class, withSettings().lenient());
+        doAnswer(invocation -> {
+            T row = invocation.getArgument(0);
+            rows.put(id.apply(row), row);
+            return null;
+        }).when(operator).insert(any());
+        doAnswer(invocation -> {
+            T row = invocation.getArgument(0);
+            rows.put(id.apply(row), row);
+            return null;
+        }).when(operator).update(any());
+        doAnswer(invocation -> rows.remove(invocation.<String>getArgument(0))).when(operator).delById(any());
+        when(operator.getById(any())).thenAnswer(invocation -> rows.get(invocation.<String>getArgument(0)));
+        when(operator.getAll()).thenAnswer(invocation -> new ArrayList<>(rows.values()));
+        when(operator.query()).thenAnswer(invocation -> {
+            Query<T> query = mock(Query.class, withSettings().lenient());
+            Object[] value = new Object[1];
+            when(query.where(anyString())).thenReturn(query);
+            when(query.eq(any())).thenAnswer(eq -> {
+                value[0] = eq.getArgument(0);
+                return query;
+            });
+            when(query.list()).thenAnswer(list -> {
+                List<T> matches = new ArrayList<>();
+                for (T row : rows.values()) {
+                    if (Objects.equals(player.apply(row), value[0])) {
+                        matches.add(row);
+                    }
+                }
+                return matches;
+            });
+            return query;
+        });
+        return operator;
+    }
+
+    private static long at(int year, int month, int day) {
+        return LocalDate.of(year, month, day).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+    }
+
+    private MailData insert(String receiver, long sentTime) {
+        MailData mail = mail(receiver, sentTime);
+        store.insert(mail);
+        return mail;
+    }
+
+    private static MailData mail(String receiver, long sentTime) {
+        MailData mail = new MailData();
+        mail.setSenderUuid(OTHER);
+        mail.setSenderName("Sender");
+        mail.setReceiverUuid(receiver);
+        mail.setReceiverName("Receiver");
+        mail.setSubject("Subject " + sentTime);
+        mail.setContent("Content " + sentTime);
+        mail.setSentTime(sentTime);
+        mail.setRead(true);
+        return mail;
+    }
+
+    private MailData stored(MailData mail) {
+        return store.getById(mail.getId());
+    }
+
+    private final long cutoff = at(2026, 6, 1);
+
+    @Nested
+    @DisplayName("归档条件测试")
+    class EligibilityTests {
+
+        @Test
+        @DisplayName("只应归档已读、附件已领取且命令已执行的旧邮件")
+        void shouldArchiveOnlyFinishedOldMails() throws Exception {
+            MailData plain = insert(PLAYER, at(2026, 3, 1));
+            MailData claimed = mail(PLAYER, at(2026, 3, 2));
+            claimed.setItems("items");
+            claimed.setClaimed(true);
+            store.insert(claimed);
+            MailData unread = mail(PLAYER, at(2026, 3, 3));
+            unread.setRead(false);
+            store.insert(unread);
+            MailData unclaimed = mail(PLAYER, at(2026, 3, 4));
+            unclaimed.setItems("items");
+            store.insert(unclaimed);
+            MailData recent = insert(PLAYER, at(2026, 6, 2));
+            MailData deleted = insert(PLAYER, at(2026, 3, 5));
+            store.update(deleted, m -> true, m -> m.setDeletedByReceiver(true));
+
+            int archived = archiver.archive(cutoff);
+
+            assertThat(archived).isEqualTo(2);
+            assertThat(stored(plain)).isNull();
+            assertThat(stored(claimed)).isNull();
+            assertThat(stored(unread)).isNotNull();
+            assertThat(stored(unclaimed)).isNotNull();
+            assertThat(stored(recent)).isNotNull();
+            assertThat(stored(deleted)).isNotNull();
+        }
+
+        @Test
+        @DisplayName("应只加载截止时间之前发送的邮件")
+        void shouldLoadOnlyMailsSentBeforeCutoff() throws Exception {
+            insert(PLAYER, at(2026, 3, 1));
+            insert(PLAYER, at(2026, 6, 2));
+            InMemoryMailStore scanned = spy(store);
+            MailArchiver scoped = new MailArchiver(scanned,
+                table(summaryTable, MailArchiveData::getId, MailArchiveData::getPlayerUuid), blobs, ZoneOffset.UTC);
+
+            assertThat(scoped.archive(cutoff)).isEqualTo(1);
+
+            verify(scanned).findSentBefore(cutoff);
+            verify(scanned, never()).getAll();
+        }
+
+        @Test
+        @DisplayName("归档的邮件应从发件人的发件箱中隐藏")
+        void shouldHideArchivedMailsFromSentbox() throws Exception {
+            MailData old = insert(PLAYER, at(2026, 3, 1));
+            MailData recent = insert(PLAYER, at(2026, 6, 2));
+            assertThat(store.findSentbox(OTHER)).hasSize(2);
+
+            archiver.archive(cutoff);
+
+            assertThat(store.findSentbox(OTHER)).extracting(MailData::getId).containsExactly(recent.getId());
+            assertThat(archiver.load(PLAYER, "2026-03")).extracting(MailData::getId).containsExactly(old.getId());
+        }
+
+        @Test
+        @DisplayName("命令未执行的邮件不应归档")
+        void shouldKeepMailsWithPendingCommands() {
+            MailData mail = mail(PLAYER, at(2026, 3, 1));
+            mail.setCommands("[\"say hi\"]");
+
+            assertThat(MailArchiver.isArchivable(mail, cutoff)).isFalse();
+            mail.setCommandsExecuted(true);
+            assertThat(MailArchiver.isArchivable(mail, cutoff)).isTrue();
+        }
+    }
+
+    @Nested
+    @DisplayName("按月归档测试")
+    class MonthTests {
+
+        @Test
+        @DisplayName("应按玩家和月份分别归档")
+        void shouldGroupByPlayerAndMonth() throws Exception {
+            insert(PLAYER, at(2026, 3, 1));
+            insert(PLAYER, at(2026, 3, 31));
+            insert(PLAYER, at(2026, 4, 15));
+            insert(OTHER, at(2026, 3, 10));
+
+            archiver.archive(cutoff);
+
+            List<MailArchiveData> months = archiver.getMonths(PLAYER);
+            assertThat(months).extracting(MailArchiveData::getMonth).containsExactly("2026-04", "2026-03");
+            assertThat(months).extracting(MailArchiveData::getMailCount).containsExactly(1, 2);
+            assertThat(archiver.getMonths(OTHER)).extracting(MailArchiveData::getMonth).containsExactly("2026-03");
+        }
+
+        @Test
+        @DisplayName("加载的归档应按时间倒序且内容完整")
+        void shouldLoadMonthNewestFirst() throws Exception {
+            MailData older = insert(PLAYER, at(2026, 3, 1));
+            MailData newer = insert(PLAYER, at(2026, 3, 20));
+
+            archiver.archive(cutoff);
+
+            List<MailData> loaded = archiver.load(PLAYER, "2026-03");
+            assertThat(loaded).extracting(MailData::getId).containsExactly(newer.getId(), older.getId());
+            assertThat(loaded.get(0).getSubject()).isEqualTo(newer.getSubject());
+            assertThat(loaded.get(0).getSenderUuid()).isEqualTo(OTHER);
+            assertThat(loaded.get(0).isRead()).isTrue();
+            assertThat(archiver.load(PLAYER, "2026-01")).isEmpty();
+        }
+
+        @Test
+        @DisplayName("再次归档应合并到已有月份且不重复")
+        void shouldMergeIntoExistingMonth() throws Exception {
+            MailData first = insert(PLAYER, at(2026, 3, 1));
+            archiver.archive(cutoff);
+            MailData second = insert(PLAYER, at(2026, 3, 2));
+            // A row archived before a crash is still live and gets archived again
+            store.insert(first);
+
+            int archived = archiver.archive(cutoff);
+
+            assertThat(archived).isEqualTo(2);
+            assertThat(archiver.load(PLAYER, "2026-03")).extracting(MailData::getId)
+                .containsExactly(second.getId(), first.getId());
+            assertThat(archiver.getMonths(PLAYER).get(0).getMailCount()).isEqualTo(2);
+        }
+
+        @Test
+        @DisplayName("扫描后被修改的邮件应保留在收件箱且不进入归档")
+        void shouldSkipRowsChangedAfterScan() throws Exception {
+            MailData kept = insert(PLAYER, at(2026, 3, 1));
+            MailData moved = insert(PLAYER, at(2026, 3, 2));
+            store = new InMemoryMailStore() {
+                @Override
+                public List<MailData> getAll() {
+                    List<MailData> all = super.getAll();
+                    MailData racing = super.getById(kept.getId());
+                    try {
+                        // Changed between the scan and the removal
+                        super.update(racing, m -> true, m -> m.setClaimed(true));
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                    return all;
+                }
+            };
+            store.insert(kept);
+            store.insert(moved);
+            archiver = new MailArchiver(store, table(summaryTable, MailArchiveData::getId,
+                MailArchiveData::getPlayerUuid), blobs, ZoneOffset.UTC);
+
+            int archived = archiver.archive(cutoff);
+
+            assertThat(archived).isEqualTo(1);
+            assertThat(stored(kept)).isNotNull();
+            assertThat(archiver.load(PLAYER, "2026-03")).extracting(MailData::getId).containsExactly(moved.getId());
+            assertThat(archiver.getMonths(PLAYER).get(0).getMailCount()).isEqualTo(1);
+        }
+    }
+
+    @Nested
+    @DisplayName("归档清理与编码测试")
+    class PurgeAndCodecTests {
+
+        @Test
+        @DisplayName("应删除在截止时间前结束的月份")
+        void shouldPurgeEndedMonths() throws Exception {
+            insert(PLAYER, at(2026, 2, 10));
+            insert(PLAYER, at(2026, 3, 10));
+            archiver.archive(cutoff);
+
+            int removed = archiver.purge(at(2026, 3, 15));
+
+            assertThat(removed).isEqualTo(1);
+            assertThat(archiver.getMonths(PLAYER)).extracting(MailArchiveData::getMonth).containsExactly("2026-03");
+            assertThat(blobTable).containsOnlyKeys(MailArchiveData.idOf(PLAYER, "2026-03"));
+        }
+
+        @Test
+        @DisplayName("编码后应可还原且比 JSON 更小")
+        void shouldRoundTripCompressed() {
+            List<MailData> mails = new ArrayList<>();
+            List<String> ids = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                MailData mail = mail(PLAYER, at(2026, 3, 1) + i);
+                mail.setId("mail-" + i);
+                mail.setSubject("Daily reward");
+                mail.setContent("Thanks for playing today!");
+                mails.add(mail);
+                ids.add(mail.getId());
+            }
+
+            String encoded = MailArchiver.encode(mails);
+
+            assertThat(MailArchiver.decode(encoded)).extracting(MailData::getId).containsExactlyElementsOf(ids);
+            assertThat(encoded.length()).isLessThan(new com.google.gson.Gson().toJson(mails).length() / 4);
+            assertThat(MailArchiver.decode(null)).isEmpty();
+        }
+    }
+}
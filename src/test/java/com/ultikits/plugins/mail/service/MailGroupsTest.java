@@ -0,0 +1,222 @@
+package com.ultikits.plugins.mail.service;
+
+import com.ultikits.plugins.mail.entity.MailGroupData;
+import com.ultikits.ultitools.interfaces.DataOperator;
+import com.ultikits.ultitools.interfaces.Query;
+
+import org.junit.jupiter.api.*;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for MailGroups, with a map-backed DataOperator standing in for the groups table.
+ */
+@DisplayName("MailGroups 测试")
+@Timeout(value = 30, unit = TimeUnit.SECONDS)
+class MailGroupsTest {
+
+    private static final String SENDER = UUID.randomUUID().toString();
+
+    private final Map<String, MailGroupData> table = new ConcurrentHashMap<>();
+
+    private DataOperator<MailGroupData> operator;
+    private MailGroups groups;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() throws Exception {
+        operator = mock(DataOperator.class, withSettings().lenient());
+        doAnswer(invocation -> {
+            MailGroupData group = invocation.getArgument(0);
+            table.put(group.getId(), copy(group));
+            return null;
+        }).when(operator).insert(any());
+        doAnswer(invocation -> {
+            MailGroupData group = invocation.getArgument(0);
+            table.put(group.getId(), copy(group));
+            return null;
+        }).when(operator).update(any());
+        doAnswer(invocation -> table.remove(invocation.<String>getArgument(0))).when(operator).delById(any());
+        when(operator.getById(any())).thenAnswer(invocation -> {
+            MailGroupData group = table.get(invocation.<String>getArgument(0));
+            return group != null ? copy(group) : null;
+        });
+        when(operator.getAll()).thenAnswer(invocation -> copies(table.values()));
+        when(operator.query()).thenAnswer(invocation -> {
+            Query<MailGroupData> query = mock(Query.class, withSettings().lenient());
+            Object[] value = new Object[1];
+            when(query.where(anyString())).thenReturn(query);
+            when(query.eq(any())).thenAnswer(eq -> {
+                value[0] = eq.getArgument(0);
+                return query;
+            });
+            when(query.list()).thenAnswer(list -> {
+                List<MailGroupData> matches = new ArrayList<>();
+                for (MailGroupData group : table.values()) {
+                    if (Objects.equals(group.getSenderUuid(), value[0])) {
+                        matches.add(group);
+                    }
+                }
+                return copies(matches);
+            });
+            return query;
+        });
+        groups = new MailGroups(operator);
+    }
+
+    private static MailGroupData copy(MailGroupData group) {
+        MailGroupData copy = new MailGroupData();
+        copy.setId(group.getId());
+        copy.setSenderUuid(group.getSenderUuid());
+        copy.setSenderName(group.getSenderName());
+        copy.setSubject(group.getSubject());
+        copy.setContent(group.getContent());
+        copy.setItemsAttached(group.isItemsAttached());
+        copy.setSentTime(group.getSentTime());
+        copy.setDeliveredCount(group.getDeliveredCount());
+        copy.setReadCount(group.getReadCount());
+        copy.setClaimedCount(group.getClaimedCount());
+        return copy;
+    }
+
+    private static List<MailGroupData> copies(Collection<MailGroupData> groups) {
+        List<MailGroupData> result = new ArrayList<>();
+        for (MailGroupData group : groups) {
+            result.add(copy(group));
+        }
+        return result;
+    }
+
+    private MailGroupData create(boolean itemsAttached) {
+        return groups.create(SENDER, "Sender", "Event", "Thanks for playing", itemsAttached);
+    }
+
+    @Nested
+    @DisplayName("计数器测试")
+    class CounterTests {
+
+        @Test
+        @DisplayName("新建的群发应从零开始计数")
+        void shouldCreateGroupWithZeroCounters() {
+            MailGroupData group = create(true);
+
+            MailGroupData stored = table.get(group.getId());
+            assertThat(stored.getSubject()).isEqualTo("Event");
+            assertThat(stored.isItemsAttached()).isTrue();
+            assertThat(stored.getDeliveredCount()).isZero();
+            assertThat(stored.getReadCount()).isZero();
+        }
+
+        @Test
+        @DisplayName("未写入的计数应计入读取结果")
+        void shouldIncludePendingCountsInReads() throws Exception {
+            MailGroupData group = create(true);
+            groups.recordDelivered(group.getId(), 3);
+            groups.recordRead(group.getId());
+            groups.recordClaimed(group.getId(), 1);
+
+            MailGroupData loaded = groups.getGroups(SENDER).get(0);
+
+            assertThat(loaded.getDeliveredCount()).isEqualTo(3);
+            assertThat(loaded.getReadCount()).isEqualTo(1);
+            assertThat(loaded.getClaimedCount()).isEqualTo(1);
+            verify(operator, never()).update(any());
+        }
+
+        @Test
+        @DisplayName("写入应合并为每个群发一次更新")
+        void shouldFlushOneUpdatePerGroup() throws Exception {
+            MailGroupData group = create(false);
+            for (int i = 0; i < 1000; i++) {
+                groups.recordDelivered(group.getId(), 1);
+            }
+            groups.recordRead(group.getId());
+            groups.recordRead(group.getId());
+
+            groups.flush();
+
+            verify(operator, times(1)).update(any());
+            assertThat(table.get(group.getId()).getDeliveredCount()).isEqualTo(1000);
+            assertThat(table.get(group.getId()).getReadCount()).isEqualTo(2);
+            assertThat(groups.getGroups(SENDER).get(0).getDeliveredCount()).isEqualTo(1000);
+        }
+
+        @Test
+        @DisplayName("只有第一次记录应要求安排写入")
+        void shouldAskForOneFlushUntilFlushed() throws Exception {
+            MailGroupData group = create(false);
+
+            assertThat(groups.recordRead(group.getId())).isTrue();
+            assertThat(groups.recordRead(group.getId())).isFalse();
+            groups.flush();
+            assertThat(groups.recordRead(group.getId())).isTrue();
+        }
+
+        @Test
+        @DisplayName("撤销领取应减少领取数")
+        void shouldUndoClaim() throws Exception {
+            MailGroupData group = create(true);
+            groups.recordClaimed(group.getId(), 1);
+            groups.recordClaimed(group.getId(), -1);
+
+            groups.flush();
+
+            assertThat(table.get(group.getId()).getClaimedCount()).isZero();
+        }
+
+        @Test
+        @DisplayName("写入失败时应保留计数供下次写入")
+        void shouldKeepCountsWhenFlushFails() throws Exception {
+            MailGroupData group = create(false);
+            groups.recordRead(group.getId());
+            doThrow(new IllegalAccessException("db down")).when(operator).update(any());
+
+            assertThatThrownBy(() -> groups.flush()).isInstanceOf(IllegalAccessException.class);
+
+            assertThat(groups.getGroups(SENDER).get(0).getReadCount()).isEqualTo(1);
+        }
+    }
+
+    @Nested
+    @DisplayName("查询与清理测试")
+    class QueryAndPurgeTests {
+
+        @Test
+        @DisplayName("应只返回该玩家的群发并按时间倒序")
+        void shouldListSenderGroupsNewestFirst() {
+            MailGroupData older = create(false);
+            table.get(older.getId()).setSentTime(100L);
+            MailGroupData newer = create(false);
+            table.get(newer.getId()).setSentTime(200L);
+            groups.create(UUID.randomUUID().toString(), "Other", "Other", "Other", false);
+
+            assertThat(groups.getGroups(SENDER)).extracting(MailGroupData::getId)
+                .containsExactly(newer.getId(), older.getId());
+        }
+
+        @Test
+        @DisplayName("应清理过期群发但保留附件未领完的")
+        void shouldPurgeExceptUnclaimedAttachments() {
+            MailGroupData plain = create(false);
+            MailGroupData unclaimed = create(true);
+            MailGroupData claimed = create(true);
+            groups.recordDelivered(unclaimed.getId(), 2);
+            groups.recordClaimed(unclaimed.getId(), 1);
+            groups.recordDelivered(claimed.getId(), 2);
+            groups.recordClaimed(claimed.getId(), 2);
+
+            int removed = groups.purge(System.currentTimeMillis() + 1000);
+
+            assertThat(removed).isEqualTo(2);
+            assertThat(table).containsOnlyKeys(unclaimed.getId());
+            assertThat(groups.getGroups(SENDER)).extracting(MailGroupData::getDeliveredCount).containsExactly(2);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.ultikits.plugins.mail.service;
+
+import com.ultikits.plugins.mail.entity.MailData;
+import com.ultikits.plugins.mail.service.MailRenderCache.View;
+
+import org.bukkit.Material;
+import org.junit.jupiter.api.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Unit tests for MailRenderCache and the label snapshots it is keyed by.
+ */
+@DisplayName("MailRenderCache 测试")
+@Timeout(value = 30, unit = TimeUnit.SECONDS)
+class MailRenderCacheTest {
+
+    private final Map<String, String> language = new HashMap<>();
+    private final List<MailData> rendered = new ArrayList<>();
+    private final BiFunction<MailData, MailLabels, MailRender> renderer = (mail, labels) -> {
+        rendered.add(mail);
+        return new MailRender(Material.BOOK, labels.get("lore_read") + " " + mail.getSubject(),
+            Collections.singletonList(labels.get("lore_from")));
+    };
+
+    private MailRenderCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new MailRenderCache();
+    }
+
+    private MailLabels labels() {
+        return cache.labels(key -> language.getOrDefault(key, "[" + key + "]"));
+    }
+
+    private static MailData mail(String id) {
+        MailData mail = new MailData();
+        mail.setId(id);
+        mail.setSubject("Subject " + id);
+        return mail;
+    }
+
+    @Nested
+    @DisplayName("缓存命中测试")
+    class HitTests {
+
+        @Test
+        @DisplayName("未变化的邮件应复用同一个渲染结果")
+        void shouldReuseRenderOfUnchangedMail() {
+            MailData mail = mail("m1");
+            MailLabels labels = labels();
+
+            MailRender first = cache.get(View.INBOX, mail, labels, renderer);
+            MailRender second = cache.get(View.INBOX, mail, labels(), renderer);
+
+            assertThat(second).isSameAs(first);
+            assertThat(rendered).hasSize(1);
+            assertThat(cache.getHits()).isEqualTo(1);
+            assertThat(cache.getMisses()).isEqualTo(1);
+        }
+
+        @Test
+        @DisplayName("邮件版本变化后应重新渲染")
+        void shouldRenderAgainAfterVersionChange() {
+            MailData mail = mail("m1");
+            cache.get(View.INBOX, mail, labels(), renderer);
+            mail.setVersion(1);
+
+            cache.get(View.INBOX, mail, labels(), renderer);
+
+            assertThat(rendered).hasSize(2);
+        }
+
+        @Test
+        @DisplayName("不同视图应分别缓存")
+        void shouldKeepViewsApart() {
+            MailData mail = mail("m1");
+            MailLabels labels = labels();
+
+            cache.get(View.INBOX, mail, labels, renderer);
+            cache.get(View.SENTBOX, mail, labels, renderer);
+
+            assertThat(rendered).hasSize(2);
+            assertThat(cache.size()).isEqualTo(2);
+        }
+
+        @Test
+        @DisplayName("超过容量时应淘汰最久未用的渲染")
+        void shouldEvictLeastRecentlyUsed() {
+            MailRenderCache small = new MailRenderCache(2);
+            MailLabels labels = small.labels(key -> key);
+            MailData a = mail("a");
+            MailData b = mail("b");
+            small.get(View.INBOX, a, labels, renderer);
+            small.get(View.INBOX, b, labels, renderer);
+            small.get(View.INBOX, a, labels, renderer);
+
+            small.get(View.INBOX, mail("c"), labels, renderer);
+            small.get(View.INBOX, a, labels, renderer);
+            small.get(View.INBOX, b, labels, renderer);
+
+            assertThat(rendered).extracting(MailData::getId).containsExactly("a", "b", "c", "b");
+        }
+    }
+
+    @Nested
+    @DisplayName("语言快照测试")
+    class LabelTests {
+
+        @Test
+        @DisplayName("文本未变时应返回同一个快照")
+        void shouldKeepSnapshotWhileTextsUnchanged() {
+            language.put("lore_read", "Read");
+
+            assertThat(labels()).isSameAs(labels());
+        }
+
+        @Test
+        @DisplayName("语言变化后应重新渲染")
+        void shouldRenderAgainAfterLanguageChange() {
+            MailData mail = mail("m1");
+            language.put("lore_read", "已读");
+            cache.get(View.INBOX, mail, labels(), renderer);
+            language.put("lore_read", "Read");
+
+            MailRender render = cache.get(View.INBOX, mail, labels(), renderer);
+
+            assertThat(render.getName()).startsWith("Read");
+            assertThat(rendered).hasSize(2);
+        }
+
+        @Test
+        @DisplayName("未知键应返回键本身")
+        void shouldFallBackToKey() {
+            assertThat(labels().get("not_a_label")).isEqualTo("not_a_label");
+        }
+
+        @Test
+        @DisplayName("渲染结果应不可修改")
+        void shouldBeImmutable() {
+            MailRender render = cache.get(View.INBOX, mail("m1"), labels(), renderer);
+
+            assertThatThrownBy(() -> render.getLore().add("x")).isInstanceOf(UnsupportedOperationException.class);
+        }
+    }
+}
@@ -2,7 +2,15 @@ package com.ultikits.plugins.mail.service;
 
 import com.ultikits.ultitools.abstracts.UltiToolsPlugin;
 import com.ultikits.plugins.mail.config.MailConfig;
+import com.ultikits.plugins.mail.entity.MailArchiveData;
 import com.ultikits.plugins.mail.entity.MailData;
+import com.ultikits.plugins.mail.entity.MailGroupData;
+import com.ultikits.plugins.mail.metrics.MailMetrics;
+import com.ultikits.plugins.mail.metrics.MainThreadMonitor;
+import com.ultikits.plugins.mail.store.DataOperatorMailStore;
+import com.ultikits.plugins.mail.store.InMemoryMailStore;
+import com.ultikits.plugins.mail.store.MailStore;
+import com.ultikits.plugins.mail.store.SegmentMailStore;
 import com.ultikits.plugins.mail.utils.TestHelper;
 import com.ultikits.ultitools.UltiTools;
 import com.ultikits.ultitools.interfaces.DataOperator;
@@ -18,17 +26,21 @@ import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.PlayerInventory;
 import org.bukkit.plugin.Plugin;
 import org.bukkit.scheduler.BukkitScheduler;
+import org.bukkit.scheduler.BukkitTask;
 import org.junit.jupiter.api.*;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.*;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 
@@ -64,15 +76,34 @@ class MailServiceTest {
     @Mock
     private PlayerInventory receiverInventory;
 
+    @Mock
+    private BukkitScheduler mockMainScheduler;
+
     private MockedStatic<Bukkit> mockedBukkit;
 
+    private NotificationAggregator notificationAggregator;
+
+    private MailTaskScheduler taskScheduler;
+
+    private CommandDispatcher commandDispatcher;
+
+    private ClaimJournal claimJournal;
+
+    private MailMetrics metrics;
+    private MainThreadMonitor mainThread;
+
+    private UltiToolsPlugin mockPlugin;
+
+    @TempDir
+    Path tempDir;
+
     private UUID senderUuid;
     private UUID receiverUuid;
 
     @BeforeEach
     void setUp() throws Exception {
         // Setup mock UltiToolsPlugin
-        UltiToolsPlugin mockPlugin = TestHelper.mockUltiToolsPlugin();
+        mockPlugin = TestHelper.mockUltiToolsPlugin();
         when(mockPlugin.getDataOperator(MailData.class)).thenReturn(mockDataOperator);
 
         // Setup Query DSL chain (lenient because not all nested test classes use queries)
@@ -103,16 +134,59 @@ class MailServiceTest {
         mockedBukkit = mockStatic(Bukkit.class);
         mockedBukkit.when(() -> Bukkit.getPlayerExact("ReceiverPlayer")).thenReturn(receiver);
         mockedBukkit.when(() -> Bukkit.getPlayerExact("SenderPlayer")).thenReturn(sender);
+        mockedBukkit.when(() -> Bukkit.getPlayer(receiverUuid)).thenReturn(receiver);
+
+        // Run delayed main-thread tasks (notification flush) immediately
+        mockedBukkit.when(Bukkit::getScheduler).thenReturn(mockMainScheduler);
+        lenient().when(mockMainScheduler.runTaskLater(any(), any(Runnable.class), anyLong()))
+            .thenAnswer(invocation -> {
+                Runnable runnable = invocation.getArgument(1);
+                runnable.run();
+                return null;
+            });
+
+        notificationAggregator = new NotificationAggregator();
+        injectField(notificationAggregator, "config", config);
+        injectField(notificationAggregator, "bukkitPlugin", mock(Plugin.class));
+
+        // Main-thread tasks are drained manually with runMainThreadTasks()
+        taskScheduler = new MailTaskScheduler();
+        injectField(taskScheduler, "config", config);
+        injectField(taskScheduler, "plugin", mockPlugin);
+        injectField(taskScheduler, "bukkitPlugin", mock(Plugin.class));
+
+        metrics = new MailMetrics();
+        mainThread = new MainThreadMonitor();
+        injectField(mainThread, "config", config);
+        injectField(mainThread, "plugin", mockPlugin);
+        injectField(mainThread, "metrics", metrics);
+        injectField(mainThread, "bukkitPlugin", mock(Plugin.class));
+
+        commandDispatcher = new CommandDispatcher();
+        injectField(commandDispatcher, "config", config);
+        injectField(commandDispatcher, "plugin", mockPlugin);
+        injectField(commandDispatcher, "bukkitPlugin", mock(Plugin.class));
+        injectField(commandDispatcher, "metrics", metrics);
+        injectField(commandDispatcher, "mainThread", mainThread);
+
+        claimJournal = openJournal();
 
         // Create service and inject dependencies
         mailService = new MailService();
         injectField(mailService, "config", config);
-        injectField(mailService, "dataOperator", mockDataOperator);
+        injectField(mailService, "store", new DataOperatorMailStore(mockDataOperator));
         injectField(mailService, "plugin", mockPlugin);
+        injectField(mailService, "notificationAggregator", notificationAggregator);
+        injectField(mailService, "taskScheduler", taskScheduler);
+        injectField(mailService, "commandDispatcher", commandDispatcher);
+        injectField(mailService, "claimJournal", claimJournal);
+        injectField(mailService, "metrics", metrics);
+        injectField(mailService, "mainThread", mainThread);
     }
 
     @AfterEach
-    void tearDown() {
+    void tearDown() throws Exception {
+        claimJournal.close();
         mockedBukkit.close();
         TestHelper.cleanupMocks();
     }
@@ -123,6 +197,62 @@ class MailServiceTest {
         field.set(target, value);
     }
 
+    private ClaimJournal openJournal() throws Exception {
+        ClaimJournal journal = new ClaimJournal();
+        injectField(journal, "config", config);
+        injectField(journal, "plugin", mockPlugin);
+        journal.open(tempDir.resolve("claims.journal").toFile());
+        return journal;
+    }
+
+    private void runMainThreadTasks() {
+        while (taskScheduler.getQueueDepth() > 0 || commandDispatcher.getQueueDepth() > 0) {
+            taskScheduler.tick();
+            commandDispatcher.tick();
+        }
+    }
+
+    /**
+     * Claim a mail's items for the receiver with async tasks run inline and
+     * main-thread tasks drained.
+     *
+     * @return the items handed to the callback, or null if it was not called
+     */
+    private ItemStack[] claim(MailService service, MailData mail) {
+        stubAsyncInline();
+        List<ItemStack[]> results = new ArrayList<>();
+        service.claimItems(mail, receiver, results::add);
+        runMainThreadTasks();
+        return results.isEmpty() ? null : results.get(0);
+    }
+
+    private void stubAsyncInline() {
+        lenient().when(mockMainScheduler.runTaskAsynchronously(any(), any(Runnable.class)))
+            .thenAnswer(invocation -> {
+                Runnable runnable = invocation.getArgument(1);
+                runnable.run();
+                return null;
+            });
+    }
+
+    /**
+     * Run a bulk inbox delete for the receiver with async tasks run inline.
+     *
+     * @return the count handed to the callback
+     */
+    private int deleteInbox(boolean readOnly) {
+        stubAsyncInline();
+        List<Integer> counts = new ArrayList<>();
+        if (readOnly) {
+            mailService.deleteReadByReceiver(receiverUuid, counts::add);
+        } else {
+            mailService.deleteAllByReceiver(receiverUuid, counts::add);
+        }
+        runMainThreadTasks();
+        assertThat(counts).hasSize(1);
+        return counts.get(0);
+    }
+
     @SuppressWarnings("unchecked")
     private Map<UUID, Long> getCooldownMap() throws Exception {
         Field field = MailService.class.getDeclaredField("sendCooldowns");
@@ -234,6 +364,7 @@ class MailServiceTest {
             // Make receiver offline
             mockedBukkit.when(() -> Bukkit.getPlayerExact("ReceiverPlayer")).thenReturn(null)
                 .thenReturn(null);
+            mockedBukkit.when(() -> Bukkit.getPlayer(receiverUuid)).thenReturn(null);
             // But they exist as offline player for UUID lookup
             OfflinePlayer offlineReceiver = mock(OfflinePlayer.class);
             when(offlineReceiver.hasPlayedBefore()).thenReturn(true);
@@ -470,6 +601,56 @@ class MailServiceTest {
 
             assertThat(result).isEmpty();
         }
+
+        @Test
+        @DisplayName("异步加载应在工作线程准备并于主线程回调")
+        void shouldLoadInboxOffThread() {
+            stubAsyncInline();
+            MailData mail = createTestMail("s1", "sender1", receiverUuid.toString(), "ReceiverPlayer");
+            when(mockQueryBuilder.list()).thenReturn(new ArrayList<>(Collections.singletonList(mail)));
+            List<List<MailData>> prepared = new ArrayList<>();
+            List<List<MailData>> received = new ArrayList<>();
+
+            mailService.loadInbox(receiverUuid, prepared::add, received::add);
+
+            assertThat(prepared).hasSize(1);
+            assertThat(prepared.get(0)).containsExactly(mail);
+            assertThat(received).isEmpty();
+            runMainThreadTasks();
+            assertThat(received).containsExactly(prepared.get(0));
+        }
+
+        @Test
+        @DisplayName("异步加载失败时应回调空列表")
+        void shouldReturnEmptyInboxWhenLoadFails() {
+            stubAsyncInline();
+            when(mockQueryBuilder.list()).thenThrow(new RuntimeException("db down"));
+            List<List<MailData>> received = new ArrayList<>();
+
+            mailService.loadInbox(receiverUuid, null, received::add);
+            runMainThreadTasks();
+
+            assertThat(received).containsExactly(Collections.emptyList());
+            verify(mockPlugin.getLogger()).error(contains("Failed to load inbox"));
+        }
+
+        @Test
+        @DisplayName("准备失败时仍应回调已加载的邮件")
+        void shouldDeliverMailsWhenPrepareFails() {
+            stubAsyncInline();
+            MailData mail = createTestMail("s1", "sender1", receiverUuid.toString(), "ReceiverPlayer");
+            when(mockQueryBuilder.list()).thenReturn(new ArrayList<>(Collections.singletonList(mail)));
+            List<List<MailData>> received = new ArrayList<>();
+
+            mailService.loadInbox(receiverUuid, loaded -> {
+                throw new IllegalStateException("render failed");
+            }, received::add);
+            runMainThreadTasks();
+
+            assertThat(received).hasSize(1);
+            assertThat(received.get(0)).containsExactly(mail);
+            verify(mockPlugin.getLogger()).warn(contains("Failed to prepare inbox"));
+        }
     }
 
     // ==================== getSentMails Tests ====================
@@ -520,6 +701,16 @@ class MailServiceTest {
 
             assertThat(result.get(0).getSentTime()).isGreaterThan(result.get(1).getSentTime());
         }
+
+        @Test
+        @DisplayName("读取群发失败时应返回空列表")
+        void shouldReturnEmptyGroupsOnFailure() throws Exception {
+            MailGroups groups = mock(MailGroups.class);
+            when(groups.getGroups(senderUuid.toString())).thenThrow(new IllegalStateException("db down"));
+            injectField(mailService, "groups", groups);
+
+            assertThat(mailService.getSentGroups(senderUuid)).isEmpty();
+        }
     }
 
     // ==================== getUnreadCount Tests ====================
@@ -602,6 +793,22 @@ class MailServiceTest {
 
             assertThat(mail.isRead()).isTrue();
         }
+
+        @Test
+        @DisplayName("群发邮件首次已读应计数并安排写入")
+        void shouldCountFirstReadOfBroadcast() throws Exception {
+            MailGroups groups = mock(MailGroups.class);
+            when(groups.recordRead("group-1")).thenReturn(true);
+            injectField(mailService, "groups", groups);
+            MailData mail = createTestMail("s1", "sender1", receiverUuid.toString(), "ReceiverPlayer");
+            mail.setGroupId("group-1");
+
+            mailService.markAsRead(mail);
+            mailService.markAsRead(mail);
+
+            verify(groups, times(1)).recordRead("group-1");
+            verify(mockMainScheduler).runTaskAsynchronously(any(), any(Runnable.class));
+        }
     }
 
     // ==================== claimItems Tests ====================
@@ -616,7 +823,7 @@ class MailServiceTest {
             MailData mail = createTestMail("s1", "sender1", receiverUuid.toString(), "ReceiverPlayer");
             mail.setClaimed(true);
 
-            ItemStack[] result = mailService.claimItems(mail, receiver);
+            ItemStack[] result = claim(mailService, mail);
 
             assertThat(result).isEmpty();
         }
@@ -627,7 +834,7 @@ class MailServiceTest {
             MailData mail = createTestMail("s1", "sender1", receiverUuid.toString(), "ReceiverPlayer");
             mail.setItems(null);
 
-            ItemStack[] result = mailService.claimItems(mail, receiver);
+            ItemStack[] result = claim(mailService, mail);
 
             assertThat(result).isEmpty();
         }
@@ -638,7 +845,7 @@ class MailServiceTest {
             MailData mail = createTestMail("s1", "sender1", receiverUuid.toString(), "ReceiverPlayer");
             mail.setItems("");
 
-            ItemStack[] result = mailService.claimItems(mail, receiver);
+            ItemStack[] result = claim(mailService, mail);
 
             assertThat(result).isEmpty();
         }
@@ -721,6 +928,7 @@ class MailServiceTest {
             mail.setCommands("[\"give ReceiverPlayer diamond 1\"]");
 
             mailService.executeMailCommands(receiver, mail);
+            runMainThreadTasks();
 
             verify(receiver).performCommand("give ReceiverPlayer diamond 1");
             assertThat(mail.isCommandsExecuted()).isTrue();
@@ -737,6 +945,7 @@ class MailServiceTest {
             mail.setCommands("[\"console:eco give ReceiverPlayer 100\"]");
 
             mailService.executeMailCommands(receiver, mail);
+            runMainThreadTasks();
 
             mockedBukkit.verify(() -> Bukkit.dispatchCommand(eq(consoleSender), eq("eco give ReceiverPlayer 100")));
             assertThat(mail.isCommandsExecuted()).isTrue();
@@ -749,6 +958,7 @@ class MailServiceTest {
             mail.setCommands("[\"give %player% diamond 1\"]");
 
             mailService.executeMailCommands(receiver, mail);
+            runMainThreadTasks();
 
             verify(receiver).performCommand("give ReceiverPlayer diamond 1");
         }
@@ -787,6 +997,7 @@ class MailServiceTest {
             mail.setCommands("[\"give ReceiverPlayer diamond 1\",\"console:eco give ReceiverPlayer 100\"]");
 
             mailService.executeMailCommands(receiver, mail);
+            runMainThreadTasks();
 
             verify(receiver).performCommand("give ReceiverPlayer diamond 1");
             mockedBukkit.verify(() -> Bukkit.dispatchCommand(eq(consoleSender), eq("eco give ReceiverPlayer 100")));
@@ -828,6 +1039,7 @@ class MailServiceTest {
                 receiverUuid.toString(), "ReceiverPlayer");
             mail.setDeletedBySender(true);
             mail.setId("123");
+            when(mockDataOperator.getById("123")).thenReturn(storedCopy(mail));
 
             mailService.deleteMail(mail, receiverUuid);
 
@@ -864,7 +1076,7 @@ class MailServiceTest {
             mails.add(mail2);
             when(mockQueryBuilder.list()).thenReturn(mails);
 
-            int count = mailService.deleteAllByReceiver(receiverUuid);
+            int count = deleteInbox(false);
 
             assertThat(count).isEqualTo(2);
         }
@@ -879,11 +1091,25 @@ class MailServiceTest {
             mails.add(mail);
             when(mockQueryBuilder.list()).thenReturn(mails);
 
-            int count = mailService.deleteAllByReceiver(receiverUuid);
+            int count = deleteInbox(false);
 
             assertThat(count).isEqualTo(0);
         }
 
+        @Test
+        @DisplayName("存储写入失败时应回调0并记录错误")
+        void shouldReportZeroWhenStoreFails() throws Exception {
+            MailStore failing = mock(MailStore.class);
+            when(failing.deleteInbox(receiverUuid.toString(), false))
+                .thenThrow(new IllegalAccessException("db down"));
+            injectField(mailService, "store", failing);
+
+            int count = deleteInbox(false);
+
+            assertThat(count).isZero();
+            verify(mockPlugin.getLogger()).error(contains("Failed to delete mails: db down"));
+        }
+
         @Test
         @DisplayName("已领取附件的邮件应该被删除")
         void shouldDeleteClaimedItemsMails() throws Exception {
@@ -894,7 +1120,7 @@ class MailServiceTest {
             mails.add(mail);
             when(mockQueryBuilder.list()).thenReturn(mails);
 
-            int count = mailService.deleteAllByReceiver(receiverUuid);
+            int count = deleteInbox(false);
 
             assertThat(count).isEqualTo(1);
         }
@@ -918,7 +1144,7 @@ class MailServiceTest {
             mails.add(mail2);
             when(mockQueryBuilder.list()).thenReturn(mails);
 
-            int count = mailService.deleteReadByReceiver(receiverUuid);
+            int count = deleteInbox(true);
 
             assertThat(count).isEqualTo(1);
         }
@@ -934,7 +1160,7 @@ class MailServiceTest {
             mails.add(mail);
             when(mockQueryBuilder.list()).thenReturn(mails);
 
-            int count = mailService.deleteReadByReceiver(receiverUuid);
+            int count = deleteInbox(true);
 
             assertThat(count).isEqualTo(0);
         }
@@ -950,7 +1176,7 @@ class MailServiceTest {
             mails.add(mail);
             when(mockQueryBuilder.list()).thenReturn(mails);
 
-            int count = mailService.deleteReadByReceiver(receiverUuid);
+            int count = deleteInbox(true);
 
             assertThat(count).isEqualTo(1);
         }
@@ -1241,6 +1467,7 @@ class MailServiceTest {
                 receiverUuid.toString(), "ReceiverPlayer");
             mail.setDeletedBySender(true);
             mail.setId("456");
+            when(mockDataOperator.getById("456")).thenReturn(storedCopy(mail));
 
             mailService.deleteMail(mail, receiverUuid);
 
@@ -1254,6 +1481,7 @@ class MailServiceTest {
                 receiverUuid.toString(), "ReceiverPlayer");
             mail.setDeletedByReceiver(true);
             mail.setId("789");
+            when(mockDataOperator.getById("789")).thenReturn(storedCopy(mail));
 
             mailService.deleteMail(mail, senderUuid);
 
@@ -1266,6 +1494,7 @@ class MailServiceTest {
             MailData mail = createTestMail(senderUuid.toString(), "SenderPlayer",
                 senderUuid.toString(), "SenderPlayer");
             mail.setId("101");
+            when(mockDataOperator.getById("101")).thenReturn(storedCopy(mail));
 
             mailService.deleteMail(mail, senderUuid);
 
@@ -1326,6 +1555,7 @@ class MailServiceTest {
             mail.setCommands("[\"Console:test command\"]");
 
             mailService.executeMailCommands(receiver, mail);
+            runMainThreadTasks();
 
             mockedBukkit.verify(() -> Bukkit.dispatchCommand(eq(consoleSender), eq("test command")));
         }
@@ -1441,7 +1671,7 @@ class MailServiceTest {
         void shouldReturnZeroForEmptyInbox() {
             when(mockQueryBuilder.list()).thenReturn(new ArrayList<>());
 
-            int count = mailService.deleteAllByReceiver(receiverUuid);
+            int count = deleteInbox(false);
 
             assertThat(count).isEqualTo(0);
         }
@@ -1462,7 +1692,7 @@ class MailServiceTest {
             mails.add(withClaimed);
             when(mockQueryBuilder.list()).thenReturn(mails);
 
-            int count = mailService.deleteAllByReceiver(receiverUuid);
+            int count = deleteInbox(false);
 
             // noItems + withClaimed = 2, withUnclaimed skipped
             assertThat(count).isEqualTo(2);
@@ -1484,7 +1714,7 @@ class MailServiceTest {
             mails.add(mail);
             when(mockQueryBuilder.list()).thenReturn(mails);
 
-            int count = mailService.deleteReadByReceiver(receiverUuid);
+            int count = deleteInbox(true);
 
             assertThat(count).isEqualTo(0);
         }
@@ -1494,7 +1724,7 @@ class MailServiceTest {
         void shouldReturnZeroForEmptyInbox() {
             when(mockQueryBuilder.list()).thenReturn(new ArrayList<>());
 
-            int count = mailService.deleteReadByReceiver(receiverUuid);
+            int count = deleteInbox(true);
 
             assertThat(count).isEqualTo(0);
         }
@@ -1517,7 +1747,7 @@ class MailServiceTest {
             mails.add(unread2);
             when(mockQueryBuilder.list()).thenReturn(mails);
 
-            int count = mailService.deleteReadByReceiver(receiverUuid);
+            int count = deleteInbox(true);
 
             assertThat(count).isEqualTo(2);
         }
@@ -1535,7 +1765,7 @@ class MailServiceTest {
             MailData mail = createTestMail("s1", "sender1", receiverUuid.toString(), "ReceiverPlayer");
             mail.setItems("not-valid-base64-data");
 
-            ItemStack[] result = mailService.claimItems(mail, receiver);
+            ItemStack[] result = claim(mailService, mail);
 
             // deserializeItems returns empty array on error
             assertThat(result).isEmpty();
@@ -1574,6 +1804,14 @@ class MailServiceTest {
                     return null;
                 });
 
+            // Make runTaskLater run immediately (for the notification flush)
+            lenient().when(mockScheduler.runTaskLater(any(), any(Runnable.class), anyLong()))
+                .thenAnswer(invocation -> {
+                    Runnable runnable = invocation.getArgument(1);
+                    runnable.run();
+                    return null;
+                });
+
             // Make runTask run immediately (for progress & final notification BukkitRunnables)
             lenient().when(mockScheduler.runTask(any(Plugin.class), any(Runnable.class)))
                 .thenAnswer(invocation -> {
@@ -1658,6 +1896,7 @@ class MailServiceTest {
             mockedBukkit.when(Bukkit::getOfflinePlayers).thenReturn(new OfflinePlayer[]{other});
 
             mailService.sendToAll(sender, "广播内容", null);
+            runMainThreadTasks();
 
             // The final notification BukkitRunnable should send success message
             verify(sender, atLeast(1)).sendMessage(ArgumentMatchers.<String>argThat(msg ->
@@ -1681,6 +1920,34 @@ class MailServiceTest {
                 "Unknown".equals(mail.getReceiverName())
             ));
         }
+
+        @Test
+        @DisplayName("群发应只产生一个发件箱条目并写入送达数")
+        void shouldGroupBroadcastInSentbox() throws Exception {
+            MailGroups groups = mock(MailGroups.class);
+            MailGroupData group = new MailGroupData();
+            group.setId("group-1");
+            when(groups.create(eq(senderUuid.toString()), eq("SenderPlayer"), any(), eq("广播内容"), eq(false)))
+                .thenReturn(group);
+            injectField(mailService, "groups", groups);
+            OfflinePlayer off1 = mock(OfflinePlayer.class);
+            when(off1.getUniqueId()).thenReturn(UUID.randomUUID());
+            when(off1.getName()).thenReturn("Player1");
+            when(off1.isOnline()).thenReturn(false);
+            OfflinePlayer off2 = mock(OfflinePlayer.class);
+            when(off2.getUniqueId()).thenReturn(UUID.randomUUID());
+            when(off2.getName()).thenReturn("Player2");
+            when(off2.isOnline()).thenReturn(false);
+            mockedBukkit.when(Bukkit::getOfflinePlayers).thenReturn(new OfflinePlayer[]{off1, off2});
+
+            mailService.sendToAll(sender, "广播内容", null);
+
+            verify(mockDataOperator, times(2)).insert(argThat(mail ->
+                "group-1".equals(mail.getGroupId()) && mail.isDeletedBySender()
+            ));
+            verify(groups, times(2)).recordDelivered("group-1", 1);
+            verify(groups).flush();
+        }
     }
 
     // ==================== init Tests ====================
@@ -1778,12 +2045,11 @@ class MailServiceTest {
         @DisplayName("在线接收者应该收到通知消息")
         void shouldNotifyOnlineReceiver() throws Exception {
             when(receiver.isOnline()).thenReturn(true);
-            mockedBukkit.when(() -> Bukkit.getPlayerExact("ReceiverPlayer")).thenReturn(receiver);
 
             Method method = MailService.class.getDeclaredMethod("notifyReceiver", String.class, String.class);
             method.setAccessible(true);
 
-            method.invoke(mailService, "ReceiverPlayer", "SenderPlayer");
+            method.invoke(mailService, receiverUuid.toString(), "SenderPlayer");
 
             verify(receiver).sendMessage(any(String.class));
         }
@@ -1791,15 +2057,28 @@ class MailServiceTest {
         @Test
         @DisplayName("离线接收者不应发送消息")
         void shouldNotNotifyOfflineReceiver() throws Exception {
-            mockedBukkit.when(() -> Bukkit.getPlayerExact("OfflinePlayer")).thenReturn(null);
+            UUID offlineUuid = UUID.randomUUID();
+            mockedBukkit.when(() -> Bukkit.getPlayer(offlineUuid)).thenReturn(null);
 
             Method method = MailService.class.getDeclaredMethod("notifyReceiver", String.class, String.class);
             method.setAccessible(true);
 
-            method.invoke(mailService, "OfflinePlayer", "SenderPlayer");
+            method.invoke(mailService, offlineUuid.toString(), "SenderPlayer");
 
             verify(receiver, never()).sendMessage(any(String.class));
         }
+
+        @Test
+        @DisplayName("应该按UUID查找接收者而不是按名字")
+        void shouldLookupReceiverByUuid() throws Exception {
+            Method method = MailService.class.getDeclaredMethod("notifyReceiver", String.class, String.class);
+            method.setAccessible(true);
+
+            method.invoke(mailService, receiverUuid.toString(), "SenderPlayer");
+
+            mockedBukkit.verify(() -> Bukkit.getPlayer(receiverUuid));
+            mockedBukkit.verify(() -> Bukkit.getPlayerExact(anyString()), never());
+        }
     }
 
     // ==================== isOnCooldown Tests ====================
@@ -2111,34 +2390,1320 @@ class MailServiceTest {
     class InitMethodTests {
 
         @Test
-        @DisplayName("init应该设置dataOperator和bukkitPlugin")
-        void shouldInitializeDataOperatorAndBukkitPlugin() throws Exception {
+        @DisplayName("init应该设置存储和bukkitPlugin")
+        void shouldInitializeStoreAndBukkitPlugin() throws Exception {
             // Create a fresh service
             MailService freshService = new MailService();
             UltiToolsPlugin mockPlugin2 = TestHelper.mockUltiToolsPlugin();
             when(mockPlugin2.getDataOperator(MailData.class)).thenReturn(mockDataOperator);
             injectField(freshService, "plugin", mockPlugin2);
+            injectField(freshService, "config", config);
+            injectCollaborators(freshService);
 
             Plugin mockBukkitPlugin = mock(Plugin.class);
             org.bukkit.plugin.PluginManager pluginManager = mock(org.bukkit.plugin.PluginManager.class);
             when(pluginManager.getPlugin("UltiTools")).thenReturn(mockBukkitPlugin);
             mockedBukkit.when(Bukkit::getPluginManager).thenReturn(pluginManager);
+            BukkitScheduler scheduler = mock(BukkitScheduler.class);
+            mockedBukkit.when(Bukkit::getScheduler).thenReturn(scheduler);
 
             freshService.init();
 
-            // Verify dataOperator was set
-            java.lang.reflect.Field dataOpField = MailService.class.getDeclaredField("dataOperator");
-            dataOpField.setAccessible(true);
-            assertThat(dataOpField.get(freshService)).isSameAs(mockDataOperator);
+            // Verify the default store wraps the data operator
+            assertThat(freshService.getStore()).isInstanceOf(DataOperatorMailStore.class);
+            freshService.getStore().getById("m1");
+            verify(mockDataOperator).getById("m1");
 
             // Verify bukkitPlugin was set
             java.lang.reflect.Field bukkitPluginField = MailService.class.getDeclaredField("bukkitPlugin");
             bukkitPluginField.setAccessible(true);
             assertThat(bukkitPluginField.get(freshService)).isSameAs(mockBukkitPlugin);
         }
+
+        @Test
+        @DisplayName("配置为 segment 时应使用分段文件存储")
+        void shouldUseSegmentStoreWhenConfigured() throws Exception {
+            MailService freshService = new MailService();
+            injectField(freshService, "plugin", mockPlugin);
+            config.setStorageBackend("segment");
+            injectField(freshService, "config", config);
+            injectCollaborators(freshService);
+
+            Plugin mockBukkitPlugin = mock(Plugin.class);
+            when(mockBukkitPlugin.getDataFolder()).thenReturn(tempDir.toFile());
+            org.bukkit.plugin.PluginManager pluginManager = mock(org.bukkit.plugin.PluginManager.class);
+            when(pluginManager.getPlugin("UltiTools")).thenReturn(mockBukkitPlugin);
+            mockedBukkit.when(Bukkit::getPluginManager).thenReturn(pluginManager);
+
+            freshService.init();
+
+            try {
+                assertThat(freshService.getStore()).isInstanceOf(SegmentMailStore.class);
+                assertThat(tempDir.resolve("mail").resolve("store")).isDirectory();
+            } finally {
+                freshService.getStore().close();
+            }
+        }
+
+        @Test
+        @DisplayName("分段文件存储无法打开时应启动失败而不是改用数据源")
+        void shouldFailWhenSegmentStoreCannotOpen() throws Exception {
+            MailService freshService = new MailService();
+            injectField(freshService, "plugin", mockPlugin);
+            config.setStorageBackend("segment");
+            injectField(freshService, "config", config);
+            injectCollaborators(freshService);
+
+            // A file where the store directory should be
+            java.nio.file.Files.createDirectories(tempDir.resolve("mail"));
+            java.nio.file.Files.write(tempDir.resolve("mail").resolve("store"), new byte[]{1});
+            Plugin mockBukkitPlugin = mock(Plugin.class);
+            when(mockBukkitPlugin.getDataFolder()).thenReturn(tempDir.toFile());
+            org.bukkit.plugin.PluginManager pluginManager = mock(org.bukkit.plugin.PluginManager.class);
+            when(pluginManager.getPlugin("UltiTools")).thenReturn(mockBukkitPlugin);
+            mockedBukkit.when(Bukkit::getPluginManager).thenReturn(pluginManager);
+
+            assertThatThrownBy(freshService::init)
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("segment mail store unavailable");
+            assertThat(freshService.getStore()).isNull();
+            verify(mockPlugin.getLogger()).error(contains("storage.backend"));
+        }
+
+        @Test
+        @DisplayName("init应该注册队列深度和缓存指标")
+        void shouldRegisterGaugesAndCaches() throws Exception {
+            MailService freshService = new MailService();
+            UltiToolsPlugin mockPlugin2 = TestHelper.mockUltiToolsPlugin();
+            when(mockPlugin2.getDataOperator(MailData.class)).thenReturn(mockDataOperator);
+            injectField(freshService, "plugin", mockPlugin2);
+            injectField(freshService, "config", config);
+            injectCollaborators(freshService);
+            org.bukkit.plugin.PluginManager pluginManager = mock(org.bukkit.plugin.PluginManager.class);
+            mockedBukkit.when(Bukkit::getPluginManager).thenReturn(pluginManager);
+            mockedBukkit.when(Bukkit::getScheduler).thenReturn(mock(BukkitScheduler.class));
+
+            freshService.init();
+
+            assertThat(metrics.getGauges()).containsKeys("task_queue_depth", "command_queue_depth",
+                "pending_notifications", "open_claims", "claim_all_in_progress");
+            assertThat(metrics.getCaches()).containsKeys("receiver_filter", "command_templates", "gui_icons",
+                "mail_renders");
+        }
+
+        @Test
+        @DisplayName("开启归档时应定时执行归档任务")
+        void shouldScheduleArchiveWhenEnabled() throws Exception {
+            MailService freshService = new MailService();
+            UltiToolsPlugin mockPlugin2 = TestHelper.mockUltiToolsPlugin();
+            when(mockPlugin2.getDataOperator(MailData.class)).thenReturn(mockDataOperator);
+            injectField(freshService, "plugin", mockPlugin2);
+            config.setArchiveAfterDays(30);
+            injectField(freshService, "config", config);
+            injectCollaborators(freshService);
+            Plugin mockBukkitPlugin = mock(Plugin.class);
+            org.bukkit.plugin.PluginManager pluginManager = mock(org.bukkit.plugin.PluginManager.class);
+            when(pluginManager.getPlugin("UltiTools")).thenReturn(mockBukkitPlugin);
+            mockedBukkit.when(Bukkit::getPluginManager).thenReturn(pluginManager);
+            BukkitScheduler scheduler = mock(BukkitScheduler.class);
+            mockedBukkit.when(Bukkit::getScheduler).thenReturn(scheduler);
+
+            freshService.init();
+
+            verify(scheduler).runTaskTimerAsynchronously(eq(mockBukkitPlugin), any(Runnable.class),
+                eq(20L * 60), eq(20L * 60 * 60 * 6));
+        }
+
+        @Test
+        @DisplayName("关闭时应取消归档任务与调度定时器并关闭存储")
+        void shouldCancelArchiveAndCloseStoreOnShutdown() throws Exception {
+            MailService freshService = new MailService();
+            injectField(freshService, "plugin", mockPlugin);
+            config.setArchiveAfterDays(30);
+            injectField(freshService, "config", config);
+            injectCollaborators(freshService);
+            org.bukkit.plugin.PluginManager pluginManager = mock(org.bukkit.plugin.PluginManager.class);
+            mockedBukkit.when(Bukkit::getPluginManager).thenReturn(pluginManager);
+            BukkitScheduler scheduler = mock(BukkitScheduler.class);
+            BukkitTask archiveTask = mock(BukkitTask.class);
+            when(scheduler.runTaskTimerAsynchronously(any(), any(Runnable.class), anyLong(), anyLong()))
+                .thenReturn(archiveTask);
+            mockedBukkit.when(Bukkit::getScheduler).thenReturn(scheduler);
+            freshService.init();
+            MailStore closing = mock(MailStore.class);
+            injectField(freshService, "store", closing);
+            ClaimJournal closingJournal = mock(ClaimJournal.class);
+            injectField(freshService, "claimJournal", closingJournal);
+            MailTaskScheduler stoppingScheduler = mock(MailTaskScheduler.class);
+            injectField(freshService, "taskScheduler", stoppingScheduler);
+            CommandDispatcher stoppingDispatcher = mock(CommandDispatcher.class);
+            injectField(freshService, "commandDispatcher", stoppingDispatcher);
+
+            freshService.shutdown();
+            freshService.shutdown();
+
+            verify(archiveTask).cancel();
+            verify(stoppingScheduler, times(2)).stop();
+            verify(stoppingDispatcher, times(2)).stop();
+            verify(closing, times(2)).close();
+            verify(closingJournal, times(2)).close();
+        }
+
+        @Test
+        @DisplayName("没有 SQL 数据源时应跳过表结构迁移")
+        void shouldSkipMigrationWithoutDataSource() {
+            mailService.migrateSchema();
+
+            verify(mockPlugin.getLogger(), never()).info(anyString());
+            verify(mockPlugin.getLogger(), never()).error(anyString());
+        }
+
+        private void injectCollaborators(MailService freshService) throws Exception {
+            injectField(freshService, "notificationAggregator", notificationAggregator);
+            injectField(freshService, "taskScheduler", taskScheduler);
+            injectField(freshService, "commandDispatcher", commandDispatcher);
+            injectField(freshService, "claimJournal", claimJournal);
+            injectField(freshService, "metrics", metrics);
+            injectField(freshService, "mainThread", mainThread);
+        }
+    }
+
+    // ==================== Main-thread slicing Tests ====================
+
+    @Nested
+    @DisplayName("主线程任务切片测试")
+    class MainThreadSlicingTests {
+
+        @Test
+        @DisplayName("邮件命令应排队而不是立即执行")
+        void shouldQueueMailCommands() {
+            MailData mail = createTestMail("s1", "sender1", receiverUuid.toString(), "ReceiverPlayer");
+            mail.setCommands("[\"cmd1\",\"cmd2\",\"cmd3\"]");
+
+            mailService.executeMailCommands(receiver, mail);
+
+            verify(receiver, never()).performCommand(anyString());
+            assertThat(commandDispatcher.getQueueDepth()).isEqualTo(3);
+            assertThat(mail.isCommandsExecuted()).isTrue();
+
+            runMainThreadTasks();
+
+            verify(receiver, times(3)).performCommand(anyString());
+        }
+
+        @Test
+        @DisplayName("大批量命令应按每 tick 上限分摊执行")
+        void shouldSpreadLargeCommandBatch() {
+            config.setCommandsPerTick(5);
+            StringBuilder json = new StringBuilder("[");
+            for (int i = 0; i < 12; i++) {
+                json.append(i == 0 ? "" : ",").append("\"cmd").append(i).append("\"");
+            }
+            MailData mail = createTestMail("s1", "sender1", receiverUuid.toString(), "ReceiverPlayer");
+            mail.setCommands(json.append("]").toString());
+
+            mailService.executeMailCommands(receiver, mail);
+            commandDispatcher.tick();
+
+            verify(receiver, times(5)).performCommand(anyString());
+            assertThat(commandDispatcher.getQueueDepth()).isEqualTo(7);
+
+            runMainThreadTasks();
+
+            verify(receiver, times(12)).performCommand(anyString());
+        }
+
+        @Test
+        @DisplayName("相同命令负载应复用已编译模板")
+        void shouldReuseCompiledTemplates() throws Exception {
+            String payload = "[\"give %player% diamond 1\"]";
+            for (int i = 0; i < 3; i++) {
+                MailData mail = createTestMail("s" + i, "sender1", receiverUuid.toString(), "ReceiverPlayer");
+                mail.setCommands(payload);
+                mailService.executeMailCommands(receiver, mail);
+            }
+            runMainThreadTasks();
+
+            Field field = MailService.class.getDeclaredField("commandTemplates");
+            field.setAccessible(true);
+            CommandTemplateCache cache = (CommandTemplateCache) field.get(mailService);
+            assertThat(cache.size()).isEqualTo(1);
+            assertThat(cache.getMisses()).isEqualTo(1);
+            assertThat(cache.getHits()).isEqualTo(2);
+            verify(receiver, times(3)).performCommand("give ReceiverPlayer diamond 1");
+        }
+
+        @Test
+        @DisplayName("批量删除应在异步线程执行并回到主线程回调")
+        void shouldDeleteOffThreadAndCallBackOnMainThread() throws Exception {
+            List<MailData> mails = new ArrayList<>();
+            mails.add(createTestMail("s1", "sender1", receiverUuid.toString(), "ReceiverPlayer"));
+            mails.add(createTestMail("s2", "sender2", receiverUuid.toString(), "ReceiverPlayer"));
+            when(mockQueryBuilder.list()).thenReturn(mails);
+            List<Runnable> async = new ArrayList<>();
+            when(mockMainScheduler.runTaskAsynchronously(any(), any(Runnable.class))).thenAnswer(invocation -> {
+                async.add(invocation.getArgument(1));
+                return null;
+            });
+            List<Integer> counts = new ArrayList<>();
+
+            mailService.deleteAllByReceiver(receiverUuid, counts::add);
+
+            verify(mockDataOperator, never()).update(any());
+            async.forEach(Runnable::run);
+            verify(mockDataOperator, times(2)).update(any());
+            assertThat(counts).isEmpty();
+
+            runMainThreadTasks();
+
+            assertThat(counts).containsExactly(2);
+        }
+    }
+
+    // ==================== Receiver filter Tests ====================
+
+    @Nested
+    @DisplayName("接收者过滤器测试")
+    class ReceiverFilterIntegrationTests {
+
+        @BeforeEach
+        void enableReceiverFilter() {
+            // The data source store is shared, so the filter is opt-in there
+            config.setReceiverFilterEnabled(true);
+        }
+
+        @Test
+        @DisplayName("共享数据源默认不应使用过滤器")
+        void shouldQuerySharedStoreWhenFilterNotEnabled() {
+            config.setReceiverFilterEnabled(false);
+            when(mockQueryBuilder.list()).thenReturn(new ArrayList<>());
+
+            mailService.rebuildReceiverFilter();
+            mailService.getUnreadCount(receiverUuid);
+
+            assertThat(mailService.isReceiverFilterEnabled()).isFalse();
+            verify(mockDataOperator, never()).getAll();
+            verify(mockDataOperator).query();
+            assertThat(metrics.getCounter(MailMetrics.Counter.RECEIVER_FILTER_HITS)).isZero();
+        }
+
+        @Test
+        @DisplayName("单写入方的存储应始终使用过滤器")
+        void shouldUseFilterForSoleWriterStore() throws Exception {
+            config.setReceiverFilterEnabled(false);
+            injectField(mailService, "store", new InMemoryMailStore());
+
+            assertThat(mailService.isReceiverFilterEnabled()).isTrue();
+        }
+
+        @Test
+        @DisplayName("过滤器构建后无邮件玩家不应查询数据库")
+        void shouldSkipQueryForPlayerWithoutMail() {
+            when(mockDataOperator.getAll()).thenReturn(new ArrayList<>());
+            mailService.rebuildReceiverFilter();
+
+            assertThat(mailService.getUnreadCount(receiverUuid)).isEqualTo(0);
+            assertThat(mailService.getInbox(receiverUuid)).isEmpty();
+            verify(mockDataOperator, never()).query();
+        }
+
+        @Test
+        @DisplayName("发送邮件后应该查询接收者收件箱")
+        void shouldQueryAfterMailSent() {
+            when(mockDataOperator.getAll()).thenReturn(new ArrayList<>());
+            mailService.rebuildReceiverFilter();
+            when(mockQueryBuilder.list()).thenReturn(new ArrayList<>());
+
+            mailService.sendMail(sender, "ReceiverPlayer", "标题", "内容", null);
+            mailService.getUnreadCount(receiverUuid);
+
+            verify(mockDataOperator).query();
+        }
+
+        @Test
+        @DisplayName("扫描失败时过滤器应保持未构建")
+        void shouldStayUnbuiltWhenScanFails() {
+            when(mockDataOperator.getAll()).thenThrow(new RuntimeException("db down"));
+            when(mockQueryBuilder.list()).thenReturn(new ArrayList<>());
+
+            mailService.rebuildReceiverFilter();
+            mailService.getUnreadCount(receiverUuid);
+
+            verify(mockPlugin.getLogger()).warn(contains("db down"));
+            verify(mockDataOperator).query();
+        }
+
+        @Test
+        @DisplayName("过滤器未构建时应该查询数据库")
+        void shouldQueryBeforeFilterBuilt() {
+            when(mockQueryBuilder.list()).thenReturn(new ArrayList<>());
+
+            mailService.getUnreadCount(receiverUuid);
+
+            verify(mockDataOperator).query();
+        }
     }
 
     // Helper method
+    // ==================== claimAll Tests ====================
+
+    @Nested
+    @DisplayName("claimAll 方法测试")
+    class ClaimAllTests {
+
+        private MailService spyService;
+
+        private List<Runnable> deferredAsync;
+
+        @BeforeEach
+        void setUpClaimAll() throws Exception {
+            injectField(mailService, "bukkitPlugin", mock(Plugin.class));
+            deferredAsync = null;
+
+            // Run async tasks immediately unless a test defers them
+            lenient().when(mockMainScheduler.runTaskAsynchronously(any(), any(Runnable.class)))
+                .thenAnswer(invocation -> {
+                    Runnable runnable = invocation.getArgument(1);
+                    if (deferredAsync != null) {
+                        deferredAsync.add(runnable);
+                    } else {
+                        runnable.run();
+                    }
+                    return null;
+                });
+
+            spyService = spy(mailService);
+        }
+
+        @Test
+        @DisplayName("背包放得下时应领取全部附件并批量写入")
+        void shouldClaimAllThatFit() throws Exception {
+            when(receiverInventory.addItem(any())).thenReturn(new HashMap<>());
+            MailData first = mailWithItems("first", stack(Material.STONE, 1));
+            MailData second = mailWithItems("second", stack(Material.DIRT, 1));
+            List<ClaimAllResult> results = new ArrayList<>();
+
+            spyService.claimAll(receiver, Arrays.asList(first, second), results::add);
+            runMainThreadTasks();
+
+            assertThat(results).hasSize(1);
+            assertThat(results.get(0).getClaimedMails()).isEqualTo(2);
+            assertThat(results.get(0).getClaimedItems()).isEqualTo(2);
+            assertThat(results.get(0).getSkippedMails()).isZero();
+            assertThat(first.isClaimed()).isTrue();
+            assertThat(second.isClaimed()).isTrue();
+            verify(receiverInventory, times(2)).addItem(any());
+            verify(mockDataOperator, times(2)).update(any());
+        }
+
+        @Test
+        @DisplayName("放不下时应优先领取附件少的邮件")
+        void shouldPickLargestSetThatFits() throws Exception {
+            fillInventoryExceptFirstSlot();
+            when(receiverInventory.addItem(any())).thenReturn(new HashMap<>());
+            MailData big = mailWithItems("big", stack(Material.STONE, 1), stack(Material.DIRT, 1));
+            MailData small = mailWithItems("small", stack(Material.DIAMOND, 1));
+            List<ClaimAllResult> results = new ArrayList<>();
+
+            spyService.claimAll(receiver, Arrays.asList(big, small), results::add);
+            runMainThreadTasks();
+
+            assertThat(results.get(0).getClaimedMails()).isEqualTo(1);
+            assertThat(results.get(0).getSkippedMails()).isEqualTo(1);
+            assertThat(small.isClaimed()).isTrue();
+            assertThat(big.isClaimed()).isFalse();
+        }
+
+        @Test
+        @DisplayName("可与已有物品堆叠时应视为放得下")
+        void shouldMergeIntoExistingStacks() {
+            fillInventoryExceptFirstSlot();
+            when(receiverInventory.getItem(0)).thenReturn(stack(Material.STONE, 10));
+            ItemStack reward = stack(Material.STONE, 20);
+            when(receiverInventory.addItem(any())).thenReturn(new HashMap<>());
+            MailData mail = mailWithItems("merge", reward);
+            List<ClaimAllResult> results = new ArrayList<>();
+
+            spyService.claimAll(receiver, Collections.singletonList(mail), results::add);
+            runMainThreadTasks();
+
+            assertThat(results.get(0).getClaimedMails()).isEqualTo(1);
+            assertThat(mail.isClaimed()).isTrue();
+        }
+
+        @Test
+        @DisplayName("已领取和无附件的邮件应被忽略")
+        void shouldIgnoreClaimedAndEmptyMails() {
+            MailData claimed = createTestMail("s1", "sender1", receiverUuid.toString(), "ReceiverPlayer");
+            claimed.setItems("encoded");
+            claimed.setClaimed(true);
+            MailData empty = createTestMail("s2", "sender2", receiverUuid.toString(), "ReceiverPlayer");
+            List<ClaimAllResult> results = new ArrayList<>();
+
+            spyService.claimAll(receiver, Arrays.asList(claimed, empty), results::add);
+            runMainThreadTasks();
+
+            assertThat(results.get(0).getClaimedMails()).isZero();
+            assertThat(results.get(0).getSkippedMails()).isZero();
+            verify(receiverInventory, never()).addItem(any());
+            verify(spyService, never()).decodeItems(any());
+        }
+
+        @Test
+        @DisplayName("同一玩家重复领取应返回忙碌")
+        void shouldRejectConcurrentClaimAll() {
+            deferredAsync = new ArrayList<>();
+            List<ClaimAllResult> results = new ArrayList<>();
+
+            spyService.claimAll(receiver, new ArrayList<>(), results::add);
+            spyService.claimAll(receiver, new ArrayList<>(), results::add);
+
+            assertThat(results).hasSize(1);
+            assertThat(results.get(0).isBusy()).isTrue();
+
+            deferredAsync.forEach(Runnable::run);
+            runMainThreadTasks();
+            spyService.claimAll(receiver, new ArrayList<>(), results::add);
+
+            assertThat(results.get(1).isBusy()).isFalse();
+        }
+
+        @Test
+        @DisplayName("玩家离线时不应发放物品")
+        void shouldSkipWhenPlayerOffline() {
+            MailData mail = mailWithItems("offline", stack(Material.STONE, 1));
+            List<ClaimAllResult> results = new ArrayList<>();
+
+            spyService.claimAll(receiver, Collections.singletonList(mail), results::add);
+            when(receiver.isOnline()).thenReturn(false);
+            runMainThreadTasks();
+
+            assertThat(results).isEmpty();
+            assertThat(mail.isClaimed()).isFalse();
+            verify(receiverInventory, never()).addItem(any());
+        }
+
+        @Test
+        @DisplayName("准备阶段失败时应释放已赢得的领取并回调失败结果")
+        void shouldReleaseWonClaimsWhenPreparationFails() throws Exception {
+            ClaimJournal failingJournal = spy(claimJournal);
+            doThrow(new IllegalStateException("disk full")).when(failingJournal).sync();
+            Field journalField = MailService.class.getDeclaredField("claimJournal");
+            journalField.setAccessible(true);
+            journalField.set(spyService, failingJournal);
+            MailData mail = mailWithItems("failing", stack(Material.STONE, 1));
+            List<ClaimAllResult> results = new ArrayList<>();
+
+            spyService.claimAll(receiver, Collections.singletonList(mail), results::add);
+
+            // The callback runs on the main thread
+            assertThat(results).isEmpty();
+            runMainThreadTasks();
+
+            assertThat(results).hasSize(1);
+            assertThat(results.get(0).isFailed()).isTrue();
+            assertThat(mail.isClaimed()).isFalse();
+            assertThat(failingJournal.getOpenCount()).isZero();
+            verify(receiverInventory, never()).addItem(any());
+            verify(mockPlugin.getLogger()).error(contains("Failed to prepare claim all"));
+
+            spyService.claimAll(receiver, new ArrayList<>(), results::add);
+            assertThat(results.get(1).isBusy()).isFalse();
+        }
+
+        private MailData mailWithItems(String subject, ItemStack... items) {
+            MailData mail = createTestMail("s1", "sender1", receiverUuid.toString(), "ReceiverPlayer");
+            mail.setSubject(subject);
+            mail.setItems("encoded-" + subject);
+            doReturn(items).when(spyService).decodeItems(mail);
+            return mail;
+        }
+
+        private void fillInventoryExceptFirstSlot() {
+            ItemStack filler = stack(Material.BARRIER, 64);
+            when(receiverInventory.getItem(anyInt())).thenAnswer(invocation ->
+                (int) invocation.getArgument(0) == 0 ? null : filler);
+        }
+
+        private ItemStack stack(Material material, int amount) {
+            ItemStack item = mock(ItemStack.class);
+            lenient().when(item.getType()).thenReturn(material);
+            lenient().when(item.getAmount()).thenReturn(amount);
+            lenient().when(item.getMaxStackSize()).thenReturn(64);
+            return item;
+        }
+    }
+
+    // ==================== getMissingSlots Tests ====================
+
+    @Nested
+    @DisplayName("getMissingSlots 方法测试")
+    class GetMissingSlotsTests {
+
+        @Test
+        @DisplayName("没有附件时应返回 0")
+        void shouldReturnZeroForNoItems() {
+            MailData mail = createTestMail("s1", "sender1", receiverUuid.toString(), "ReceiverPlayer");
+
+            assertThat(mailService.getMissingSlots(mail, receiver)).isZero();
+        }
+
+        @Test
+        @DisplayName("背包已满且无法堆叠时应返回缺少的格数")
+        void shouldReportMissingSlotsWhenFull() {
+            ItemStack filler = mock(ItemStack.class);
+            when(filler.getType()).thenReturn(Material.BARRIER);
+            when(filler.getAmount()).thenReturn(64);
+            when(filler.getMaxStackSize()).thenReturn(64);
+            when(receiverInventory.getItem(anyInt())).thenReturn(filler);
+            ItemStack reward = mock(ItemStack.class);
+            when(reward.getType()).thenReturn(Material.DIAMOND);
+            when(reward.getAmount()).thenReturn(1);
+            when(reward.getMaxStackSize()).thenReturn(64);
+            MailData mail = createTestMail("s1", "sender1", receiverUuid.toString(), "ReceiverPlayer");
+            mail.setItems("encoded");
+            MailService spyService = spy(mailService);
+            doReturn(new ItemStack[]{reward}).when(spyService).decodeItems(mail);
+
+            assertThat(spyService.getMissingSlots(mail, receiver)).isEqualTo(1);
+        }
+    }
+
+    // ==================== Optimistic concurrency Tests ====================
+
+    @Nested
+    @DisplayName("乐观并发测试")
+    class OptimisticConcurrencyTests {
+
+        private final java.util.concurrent.atomic.AtomicReference<MailData> row =
+            new java.util.concurrent.atomic.AtomicReference<>();
+
+        private MailData mail;
+
+        @BeforeEach
+        void setUpRow() throws Exception {
+            mail = createTestMail(senderUuid.toString(), "SenderPlayer", receiverUuid.toString(), "ReceiverPlayer");
+            mail.setId("m1");
+            mail.setItems("encoded");
+            row.set(storedCopy(mail));
+
+            // Backing row: reads return a copy, writes replace it
+            lenient().when(mockDataOperator.getById("m1")).thenAnswer(invocation -> storedCopy(row.get()));
+            lenient().doAnswer(invocation -> {
+                row.set(storedCopy(invocation.getArgument(0)));
+                return null;
+            }).when(mockDataOperator).update(any());
+        }
+
+        @Test
+        @DisplayName("存储中已领取时不应再次发放物品")
+        void shouldRejectClaimWhenAlreadyClaimedInStore() {
+            row.get().setClaimed(true);
+            MailService spyService = spy(mailService);
+            doReturn(new ItemStack[]{mock(ItemStack.class)}).when(spyService).decodeItems(any());
+
+            ItemStack[] result = claim(spyService, mail);
+
+            assertThat(result).isEmpty();
+            assertThat(mail.isClaimed()).isTrue();
+            verify(receiverInventory, never()).addItem(any());
+        }
+
+        @Test
+        @DisplayName("领取成功应递增版本号")
+        void shouldBumpVersionOnClaim() {
+            row.get().setVersion(3);
+            when(receiverInventory.addItem(any())).thenReturn(new HashMap<>());
+            MailService spyService = spy(mailService);
+            doReturn(new ItemStack[]{mock(ItemStack.class)}).when(spyService).decodeItems(any());
+
+            ItemStack[] result = claim(spyService, mail);
+
+            assertThat(result).hasSize(1);
+            assertThat(mail.getVersion()).isEqualTo(4);
+            assertThat(row.get().isClaimed()).isTrue();
+            assertThat(row.get().getVersion()).isEqualTo(4);
+        }
+
+        @Test
+        @DisplayName("并发领取同一封邮件只应成功一次")
+        void shouldClaimOnlyOnceUnderContention() throws Exception {
+            lenient().when(receiverInventory.addItem(any())).thenReturn(new HashMap<>());
+            MailService spyService = spy(mailService);
+            doReturn(new ItemStack[]{mock(ItemStack.class)}).when(spyService).decodeItems(any());
+
+            stubAsyncInline();
+            int threads = 8;
+            java.util.concurrent.CountDownLatch start = new java.util.concurrent.CountDownLatch(1);
+            java.util.concurrent.atomic.AtomicInteger wins = new java.util.concurrent.atomic.AtomicInteger();
+            java.util.concurrent.ExecutorService pool = java.util.concurrent.Executors.newFixedThreadPool(threads);
+            List<java.util.concurrent.Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                // Every click works on its own stale copy
+                MailData copy = storedCopy(mail);
+                futures.add(pool.submit(() -> {
+                    start.await();
+                    spyService.claimItems(copy, receiver, items -> {
+                        if (items.length > 0) {
+                            wins.incrementAndGet();
+                        }
+                    });
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (java.util.concurrent.Future<?> future : futures) {
+                future.get();
+            }
+            pool.shutdown();
+            runMainThreadTasks();
+
+            assertThat(wins.get()).isEqualTo(1);
+            verify(receiverInventory, times(1)).addItem(any());
+            assertThat(row.get().getVersion()).isEqualTo(1);
+        }
+
+        @Test
+        @DisplayName("标记已读不应覆盖存储中较新的状态")
+        void shouldNotOverwriteNewerStateOnRead() {
+            row.get().setClaimed(true);
+
+            mailService.markAsRead(mail);
+
+            assertThat(row.get().isRead()).isTrue();
+            assertThat(row.get().isClaimed()).isTrue();
+        }
+
+        @Test
+        @DisplayName("已读邮件再次标记不应写库")
+        void shouldSkipWriteWhenAlreadyRead() throws Exception {
+            row.get().setRead(true);
+
+            mailService.markAsRead(mail);
+
+            verify(mockDataOperator, never()).update(any());
+            assertThat(mail.isRead()).isTrue();
+        }
+
+        @Test
+        @DisplayName("邮件命令在两个副本上只应执行一次")
+        void shouldRunCommandsOnceAcrossCopies() {
+            mail.setCommands("[\"spawn\"]");
+            row.set(storedCopy(mail));
+            MailData other = storedCopy(mail);
+
+            mailService.executeMailCommands(receiver, mail);
+            mailService.executeMailCommands(receiver, other);
+            runMainThreadTasks();
+
+            verify(receiver, times(1)).performCommand("spawn");
+        }
+
+        @Test
+        @DisplayName("行已不存在时删除不应写库")
+        void shouldIgnoreDeleteOfMissingRow() throws Exception {
+            doReturn(null).when(mockDataOperator).getById("m1");
+
+            mailService.deleteMail(mail, receiverUuid);
+
+            verify(mockDataOperator, never()).update(any());
+            verify(mockDataOperator, never()).delById(any());
+        }
+    }
+
+    // ==================== Expiry Tests ====================
+
+    @Nested
+    @DisplayName("过期邮件清理测试")
+    class ExpiryTests {
+
+        @Test
+        @DisplayName("应删除过期的已读邮件但保留未读和未领取附件的邮件")
+        void shouldPurgeExpiredMails() {
+            long old = System.currentTimeMillis() - (config.getMailExpireDays() + 1) * 86_400_000L;
+            MailData expired = createTestMail("s1", "sender1", receiverUuid.toString(), "ReceiverPlayer");
+            expired.setId("expired");
+            expired.setSentTime(old);
+            expired.setRead(true);
+            MailData unread = createTestMail("s1", "sender1", receiverUuid.toString(), "ReceiverPlayer");
+            unread.setId("unread");
+            unread.setSentTime(old);
+            MailData withItems = createTestMail("s1", "sender1", receiverUuid.toString(), "ReceiverPlayer");
+            withItems.setId("with-items");
+            withItems.setItems("encoded");
+            withItems.setSentTime(old);
+            withItems.setRead(true);
+            MailData fresh = createTestMail("s1", "sender1", receiverUuid.toString(), "ReceiverPlayer");
+            fresh.setId("fresh");
+            fresh.setRead(true);
+            when(mockDataOperator.getAll()).thenReturn(Arrays.asList(expired, unread, withItems, fresh));
+
+            mailService.purgeExpiredMails();
+
+            verify(mockDataOperator).delById("expired");
+            verify(mockDataOperator, never()).delById("unread");
+            verify(mockDataOperator, never()).delById("with-items");
+            verify(mockDataOperator, never()).delById("fresh");
+        }
+
+        @Test
+        @DisplayName("未开启清理时启动不应删除过期邮件")
+        void shouldNotPurgeAtStartupUnlessEnabled() throws Exception {
+            MailService freshService = new MailService();
+            injectField(freshService, "plugin", mockPlugin);
+            injectField(freshService, "config", config);
+            injectField(freshService, "taskScheduler", taskScheduler);
+            injectField(freshService, "commandDispatcher", commandDispatcher);
+            injectField(freshService, "notificationAggregator", notificationAggregator);
+            injectField(freshService, "claimJournal", claimJournal);
+            injectField(freshService, "metrics", metrics);
+            injectField(freshService, "mainThread", mainThread);
+            org.bukkit.plugin.PluginManager pluginManager = mock(org.bukkit.plugin.PluginManager.class);
+            mockedBukkit.when(Bukkit::getPluginManager).thenReturn(pluginManager);
+            BukkitScheduler scheduler = mock(BukkitScheduler.class);
+            mockedBukkit.when(Bukkit::getScheduler).thenReturn(scheduler);
+
+            freshService.init();
+            // Rebuild and claim recovery only
+            verify(scheduler, times(2)).runTaskAsynchronously(any(), any(Runnable.class));
+
+            config.setPurgeExpiredMails(true);
+            freshService.init();
+            verify(scheduler, times(5)).runTaskAsynchronously(any(), any(Runnable.class));
+        }
+
+        @Test
+        @DisplayName("清理失败时应记录警告")
+        void shouldLogWhenPurgeFails() {
+            when(mockDataOperator.getAll()).thenThrow(new RuntimeException("db down"));
+
+            mailService.purgeExpiredMails();
+
+            verify(mockPlugin.getLogger()).warn(contains("Failed to purge expired mails"));
+        }
+    }
+
+    // ==================== Archive Tests ====================
+
+    @Nested
+    @DisplayName("邮件归档测试")
+    class ArchiveTests {
+
+        private MailArchiver archiver;
+
+        @BeforeEach
+        void setUpArchiver() throws Exception {
+            archiver = mock(MailArchiver.class);
+            injectField(mailService, "archiver", archiver);
+            lenient().when(mockMainScheduler.runTaskAsynchronously(any(), any(Runnable.class)))
+                .thenAnswer(invocation -> {
+                    Runnable runnable = invocation.getArgument(1);
+                    runnable.run();
+                    return null;
+                });
+        }
+
+        @Test
+        @DisplayName("应按配置的天数归档并记录日志")
+        void shouldArchiveWithConfiguredCutoff() throws Exception {
+            config.setArchiveAfterDays(60);
+            when(archiver.archive(anyLong())).thenReturn(3);
+            long expected = System.currentTimeMillis() - 60 * 86_400_000L;
+
+            mailService.archiveOldMails();
+
+            ArgumentCaptor<Long> cutoff = ArgumentCaptor.forClass(Long.class);
+            verify(archiver).archive(cutoff.capture());
+            assertThat(cutoff.getValue()).isBetween(expected - 1000, expected + 1000);
+            verify(mockPlugin.getLogger()).info(contains("Archived 3 mails"));
+        }
+
+        @Test
+        @DisplayName("归档失败时应记录警告")
+        void shouldLogWhenArchiveFails() throws Exception {
+            when(archiver.archive(anyLong())).thenThrow(new IllegalAccessException("db down"));
+
+            mailService.archiveOldMails();
+
+            verify(mockPlugin.getLogger()).warn(contains("Failed to archive mails: db down"));
+        }
+
+        @Test
+        @DisplayName("清理过期邮件时应同时清理过期归档")
+        void shouldPurgeArchivesWithExpiredMails() {
+            mailService.purgeExpiredMails();
+
+            verify(archiver).purge(anyLong());
+        }
+
+        @Test
+        @DisplayName("归档应在异步加载后于主线程回调")
+        void shouldLoadArchiveOffThread() {
+            MailData mail = createTestMail("s1", "sender1", receiverUuid.toString(), "ReceiverPlayer");
+            when(archiver.load(receiverUuid.toString(), "2026-03")).thenReturn(Collections.singletonList(mail));
+            List<List<MailData>> received = new ArrayList<>();
+
+            mailService.loadArchive(receiverUuid, "2026-03", received::add);
+
+            assertThat(received).isEmpty();
+            runMainThreadTasks();
+            assertThat(received).containsExactly(Collections.singletonList(mail));
+        }
+
+        @Test
+        @DisplayName("加载月份失败时应回调空列表")
+        void shouldReturnNoMonthsWhenLoadFails() {
+            when(archiver.getMonths(receiverUuid.toString())).thenThrow(new RuntimeException("db down"));
+            List<List<MailArchiveData>> received = new ArrayList<>();
+
+            mailService.loadArchiveMonths(receiverUuid, received::add);
+            runMainThreadTasks();
+
+            assertThat(received).containsExactly(Collections.emptyList());
+            verify(mockPlugin.getLogger()).error(contains("Failed to load mail archives"));
+        }
+    }
+
+    // ==================== In-memory store Tests ====================
+
+    @Nested
+    @DisplayName("内存存储集成测试")
+    class InMemoryStoreTests {
+
+        private InMemoryMailStore store;
+
+        @BeforeEach
+        void setUpStore() throws Exception {
+            store = new InMemoryMailStore();
+            injectField(mailService, "store", store);
+        }
+
+        private MailData insert(long sentTime) {
+            return insert(sentTime, null);
+        }
+
+        private MailData insert(long sentTime, String items) {
+            MailData mail = createTestMail(senderUuid.toString(), "SenderPlayer",
+                receiverUuid.toString(), "ReceiverPlayer");
+            mail.setSentTime(sentTime);
+            mail.setItems(items);
+            mailService.insertMail(mail);
+            return mail;
+        }
+
+        @Test
+        @DisplayName("收件箱应按时间倒序返回")
+        void shouldReturnInboxNewestFirst() {
+            insert(100L);
+            insert(300L);
+            insert(200L);
+
+            assertThat(mailService.getInbox(receiverUuid))
+                .extracting(MailData::getSentTime)
+                .containsExactly(300L, 200L, 100L);
+            assertThat(mailService.getSentMails(senderUuid)).hasSize(3);
+        }
+
+        @Test
+        @DisplayName("编号应按上次列出的收件箱解析且不受新邮件影响")
+        void shouldResolveIndexFromLastListing() {
+            MailData older = insert(100L);
+            MailData newer = insert(200L);
+            mailService.listInbox(receiverUuid);
+
+            insert(300L);
+
+            assertThat(mailService.getInboxMail(receiverUuid, 1).getId()).isEqualTo(newer.getId());
+            assertThat(mailService.getInboxMail(receiverUuid, 2).getId()).isEqualTo(older.getId());
+            assertThat(mailService.getInboxMail(receiverUuid, 3)).isNull();
+            assertThat(mailService.getInboxMail(receiverUuid, 0)).isNull();
+        }
+
+        @Test
+        @DisplayName("列出后被删除的邮件不应再被解析")
+        void shouldNotResolveMailDeletedSinceListing() {
+            MailData mail = insert(100L);
+            mailService.listInbox(receiverUuid);
+
+            mailService.deleteMail(mailService.getMail(mail.getId()), receiverUuid);
+
+            assertThat(mailService.getInboxMail(receiverUuid, 1)).isNull();
+        }
+
+        @Test
+        @DisplayName("没有列出过收件箱时应重新列出后解析")
+        void shouldListInboxWhenNoSnapshot() {
+            insert(100L);
+            MailData newest = insert(200L);
+
+            assertThat(mailService.getInboxMail(receiverUuid, 1).getId()).isEqualTo(newest.getId());
+
+            insert(300L);
+            assertThat(mailService.getInboxMail(receiverUuid, 1).getId()).isEqualTo(newest.getId());
+        }
+
+        @Test
+        @DisplayName("标记已读应减少未读数")
+        void shouldCountUnreadAfterMarkAsRead() {
+            MailData first = insert(100L);
+            insert(200L);
+
+            mailService.markAsRead(mailService.getMail(first.getId()));
+
+            assertThat(mailService.getUnreadCount(receiverUuid)).isEqualTo(1);
+            assertThat(mailService.getMail(first.getId()).getVersion()).isEqualTo(1);
+        }
+
+        @Test
+        @DisplayName("双方都删除后邮件应被移除")
+        void shouldRemoveMailDeletedByBothSides() {
+            MailData mail = insert(100L);
+
+            mailService.deleteMail(mailService.getMail(mail.getId()), receiverUuid);
+            assertThat(mailService.getInbox(receiverUuid)).isEmpty();
+            assertThat(mailService.getSentMails(senderUuid)).hasSize(1);
+
+            mailService.deleteMail(mailService.getMail(mail.getId()), senderUuid);
+            assertThat(mailService.getMail(mail.getId())).isNull();
+            assertThat(store.size()).isZero();
+        }
+
+        @Test
+        @DisplayName("删除全部时自己发给自己的邮件应被移除")
+        void shouldRemoveOwnMailsOnDeleteAll() {
+            mailService.rebuildReceiverFilter();
+            MailData own = createTestMail(receiverUuid.toString(), "ReceiverPlayer",
+                receiverUuid.toString(), "ReceiverPlayer");
+            mailService.insertMail(own);
+            insert(100L);
+
+            int count = deleteInbox(false);
+
+            assertThat(count).isEqualTo(2);
+            assertThat(store.getById(own.getId())).isNull();
+            assertThat(store.size()).isEqualTo(1);
+            assertThat(mailService.getInbox(receiverUuid)).isEmpty();
+            assertThat(mailService.getSentMails(senderUuid)).hasSize(1);
+        }
+
+        @Test
+        @DisplayName("删除已读邮件应只删除已读且无未领取附件的邮件")
+        void shouldDeleteOnlyReadMails() {
+            MailData read = insert(100L);
+            MailData readWithItems = insert(200L, "encoded");
+            insert(300L);
+            mailService.markAsRead(mailService.getMail(read.getId()));
+            mailService.markAsRead(mailService.getMail(readWithItems.getId()));
+
+            int count = deleteInbox(true);
+
+            assertThat(count).isEqualTo(1);
+            assertThat(mailService.getInbox(receiverUuid))
+                .extracting(MailData::getSentTime)
+                .containsExactly(300L, 200L);
+        }
+    }
+
+    // ==================== Claim journal Tests ====================
+
+    @Nested
+    @DisplayName("领取日志测试")
+    class ClaimJournalTests {
+
+        private final java.util.concurrent.atomic.AtomicReference<MailData> row =
+            new java.util.concurrent.atomic.AtomicReference<>();
+
+        private MailData mail;
+
+        @BeforeEach
+        void setUpRow() {
+            mail = createTestMail(senderUuid.toString(), "SenderPlayer", receiverUuid.toString(), "ReceiverPlayer");
+            mail.setId("m1");
+            mail.setItems("encoded");
+            row.set(storedCopy(mail));
+
+            lenient().when(mockDataOperator.getById("m1")).thenAnswer(invocation -> storedCopy(row.get()));
+            lenient().doAnswer(invocation -> {
+                row.set(storedCopy(invocation.getArgument(0)));
+                return null;
+            }).when(mockDataOperator).update(any());
+        }
+
+        private void reopenJournal() throws Exception {
+            claimJournal.close();
+            claimJournal = openJournal();
+            injectField(mailService, "claimJournal", claimJournal);
+        }
+
+        @Test
+        @DisplayName("领取完成后日志不应留下未完成记录")
+        void shouldCompleteIntentAfterDelivery() {
+            when(receiverInventory.addItem(any())).thenReturn(new HashMap<>());
+            MailService spyService = spy(mailService);
+            doReturn(new ItemStack[]{mock(ItemStack.class)}).when(spyService).decodeItems(any());
+
+            claim(spyService, mail);
+
+            assertThat(claimJournal.getOpenCount()).isZero();
+        }
+
+        @Test
+        @DisplayName("发放物品前应先同步意图")
+        void shouldSyncIntentBeforeHandingOutItems() throws Exception {
+            when(receiverInventory.addItem(any())).thenReturn(new HashMap<>());
+            ClaimJournal journal = spy(claimJournal);
+            injectField(mailService, "claimJournal", journal);
+            MailService spyService = spy(mailService);
+            doReturn(new ItemStack[]{mock(ItemStack.class)}).when(spyService).decodeItems(any());
+
+            claim(spyService, mail);
+
+            InOrder order = inOrder(journal, receiverInventory);
+            order.verify(journal).begin("m1", receiverUuid, 1L);
+            order.verify(journal).sync();
+            order.verify(receiverInventory).addItem(any());
+            order.verify(journal).complete("m1");
+        }
+
+        @Test
+        @DisplayName("意图应在主线程外与其他领取一起同步")
+        void shouldSyncIntentOffTheMainThread() throws Exception {
+            when(receiverInventory.addItem(any())).thenReturn(new HashMap<>());
+            ClaimJournal journal = spy(claimJournal);
+            injectField(mailService, "claimJournal", journal);
+            MailService spyService = spy(mailService);
+            doReturn(new ItemStack[]{mock(ItemStack.class)}).when(spyService).decodeItems(any());
+            List<ItemStack[]> results = new ArrayList<>();
+
+            spyService.claimItems(mail, receiver, results::add);
+
+            verify(journal, never()).sync();
+            verify(receiverInventory, never()).addItem(any());
+            ArgumentCaptor<Runnable> flush = ArgumentCaptor.forClass(Runnable.class);
+            verify(mockMainScheduler).runTaskAsynchronously(any(), flush.capture());
+
+            flush.getValue().run();
+            runMainThreadTasks();
+
+            verify(journal).sync();
+            assertThat(results).hasSize(1);
+            assertThat(results.get(0)).hasSize(1);
+            assertThat(journal.getOpenCount()).isZero();
+        }
+
+        @Test
+        @DisplayName("同步期间玩家下线时应释放领取且不发放物品")
+        void shouldReleaseClaimWhenPlayerLeavesBeforeHandOut() {
+            MailService spyService = spy(mailService);
+            doReturn(new ItemStack[]{mock(ItemStack.class)}).when(spyService).decodeItems(any());
+            stubAsyncInline();
+            List<ItemStack[]> results = new ArrayList<>();
+
+            spyService.claimItems(mail, receiver, results::add);
+            when(receiver.isOnline()).thenReturn(false);
+            runMainThreadTasks();
+
+            assertThat(results).isEmpty();
+            assertThat(row.get().isClaimed()).isFalse();
+            assertThat(claimJournal.getOpenCount()).isZero();
+            verify(receiverInventory, never()).addItem(any());
+        }
+
+        @Test
+        @DisplayName("写库失败时应结束意图且不发放物品")
+        void shouldCloseIntentWhenWriteFails() throws Exception {
+            doThrow(new IllegalAccessException("db down")).when(mockDataOperator).update(any());
+            MailService spyService = spy(mailService);
+            doReturn(new ItemStack[]{mock(ItemStack.class)}).when(spyService).decodeItems(any());
+
+            ItemStack[] result = claim(spyService, mail);
+
+            assertThat(result).isEmpty();
+            assertThat(claimJournal.getOpenCount()).isZero();
+            assertThat(row.get().isClaimed()).isFalse();
+            verify(receiverInventory, never()).addItem(any());
+        }
+
+        @Test
+        @DisplayName("写库报错但已生效时应立即重新开放领取")
+        void shouldReopenClaimWhoseFailedWriteLanded() throws Exception {
+            doAnswer(invocation -> {
+                row.set(storedCopy(invocation.getArgument(0)));
+                throw new IllegalAccessException("timeout after commit");
+            }).doAnswer(invocation -> {
+                row.set(storedCopy(invocation.getArgument(0)));
+                return null;
+            }).when(mockDataOperator).update(any());
+            MailService spyService = spy(mailService);
+            doReturn(new ItemStack[]{mock(ItemStack.class)}).when(spyService).decodeItems(any());
+
+            ItemStack[] result = claim(spyService, mail);
+
+            assertThat(result).isEmpty();
+            assertThat(row.get().isClaimed()).isFalse();
+            assertThat(row.get().getVersion()).isEqualTo(2);
+            assertThat(claimJournal.getOpenCount()).isZero();
+        }
+
+        @Test
+        @DisplayName("结束意图也失败时应留给重启恢复")
+        void shouldLeaveIntentToRecoveryWhenSettlingFails() throws Exception {
+            doAnswer(invocation -> {
+                row.set(storedCopy(invocation.getArgument(0)));
+                throw new IllegalAccessException("db down");
+            }).when(mockDataOperator).update(any());
+            MailService spyService = spy(mailService);
+            doReturn(new ItemStack[]{mock(ItemStack.class)}).when(spyService).decodeItems(any());
+
+            claim(spyService, mail);
+
+            assertThat(claimJournal.getOpenCount()).isEqualTo(1);
+            reopenJournal();
+            assertThat(claimJournal.getRecoveredIntents()).extracting(ClaimJournal.Intent::getMailId)
+                .containsExactly("m1");
+        }
+
+        @Test
+        @DisplayName("并发写入落败时应结束意图")
+        void shouldCloseIntentOfLostRace() throws Exception {
+            MailStore racing = mock(MailStore.class);
+            when(racing.update(any(), any(), any())).thenAnswer(invocation -> {
+                java.util.function.Predicate<MailData> guard = invocation.getArgument(1);
+                guard.test(storedCopy(mail));
+                return false;
+            });
+            injectField(mailService, "store", racing);
+            MailService spyService = spy(mailService);
+            doReturn(new ItemStack[]{mock(ItemStack.class)}).when(spyService).decodeItems(any());
+
+            ItemStack[] result = claim(spyService, mail);
+
+            assertThat(result).isEmpty();
+            assertThat(claimJournal.getOpenCount()).isZero();
+        }
+
+        @Test
+        @DisplayName("已领取的邮件不应写入意图")
+        void shouldNotRecordIntentForClaimedMail() {
+            row.get().setClaimed(true);
+            MailService spyService = spy(mailService);
+            doReturn(new ItemStack[]{mock(ItemStack.class)}).when(spyService).decodeItems(any());
+
+            claim(spyService, mail);
+
+            assertThat(claimJournal.getOpenCount()).isZero();
+        }
+
+        @Test
+        @DisplayName("崩溃后应重新开放已写库但未发放的领取")
+        void shouldReopenInterruptedClaim() throws Exception {
+            // Claim persisted (version 0 -> 1) but the process died before delivery
+            claimJournal.begin("m1", receiverUuid, 1);
+            row.get().setClaimed(true);
+            row.get().setVersion(1);
+            reopenJournal();
+
+            mailService.recoverClaims();
+
+            assertThat(row.get().isClaimed()).isFalse();
+            assertThat(row.get().getVersion()).isEqualTo(2);
+            assertThat(claimJournal.getRecoveredIntents()).isEmpty();
+        }
+
+        @Test
+        @DisplayName("行版本已变化时不应重新开放")
+        void shouldLeaveChangedRowAlone() throws Exception {
+            claimJournal.begin("m1", receiverUuid, 1);
+            row.get().setClaimed(true);
+            row.get().setVersion(3);
+            reopenJournal();
+
+            mailService.recoverClaims();
+
+            assertThat(row.get().isClaimed()).isTrue();
+            verify(mockDataOperator, never()).update(any());
+            assertThat(claimJournal.getRecoveredIntents()).isEmpty();
+        }
+
+        @Test
+        @DisplayName("写库未生效的意图恢复时不应改动数据")
+        void shouldIgnoreIntentWhoseWriteNeverLanded() throws Exception {
+            claimJournal.begin("m1", receiverUuid, 1);
+            reopenJournal();
+
+            mailService.recoverClaims();
+
+            assertThat(row.get().isClaimed()).isFalse();
+            verify(mockDataOperator, never()).update(any());
+        }
+    }
+
+    // ==================== Metrics Tests ====================
+
+    @Nested
+    @DisplayName("运行指标测试")
+    class MetricsTests {
+
+        @Test
+        @DisplayName("发送成功和失败都应计入 send 指标")
+        void shouldRecordSends() {
+            mailService.sendMail(sender, "ReceiverPlayer", "标题", "内容", null);
+            mailService.sendMail(sender, "ReceiverPlayer", String.join("", Collections.nCopies(100, "a")), "内容", null);
+
+            assertThat(metrics.getCount(MailMetrics.Operation.SEND)).isEqualTo(2);
+            assertThat(metrics.getFailures(MailMetrics.Operation.SEND)).isEqualTo(1);
+        }
+
+        @Test
+        @DisplayName("过滤器直接回答的查询应计为命中")
+        void shouldCountReceiverFilterHits() {
+            config.setReceiverFilterEnabled(true);
+            when(mockDataOperator.getAll()).thenReturn(new ArrayList<>());
+            mailService.rebuildReceiverFilter();
+
+            mailService.getInbox(receiverUuid);
+            mailService.getUnreadCount(receiverUuid);
+
+            assertThat(metrics.getCount(MailMetrics.Operation.INBOX_LOAD)).isEqualTo(1);
+            assertThat(metrics.getCount(MailMetrics.Operation.UNREAD_COUNT)).isEqualTo(1);
+            assertThat(metrics.getCounter(MailMetrics.Counter.RECEIVER_FILTER_HITS)).isEqualTo(2);
+            assertThat(metrics.getCounter(MailMetrics.Counter.RECEIVER_FILTER_MISSES)).isZero();
+        }
+
+        @Test
+        @DisplayName("需要查询存储的请求应计为未命中")
+        void shouldCountReceiverFilterMisses() {
+            config.setReceiverFilterEnabled(true);
+            when(mockQueryBuilder.list()).thenReturn(new ArrayList<>());
+
+            mailService.getInbox(receiverUuid);
+
+            assertThat(metrics.getCounter(MailMetrics.Counter.RECEIVER_FILTER_MISSES)).isEqualTo(1);
+        }
+
+        @Test
+        @DisplayName("已领取邮件的领取应计为失败")
+        void shouldRecordClaimWithoutItemsAsFailure() {
+            MailData mail = createTestMail(senderUuid.toString(), "SenderPlayer", receiverUuid.toString(), "ReceiverPlayer");
+            mail.setClaimed(true);
+
+            claim(mailService, mail);
+
+            assertThat(metrics.getCount(MailMetrics.Operation.CLAIM)).isEqualTo(1);
+            assertThat(metrics.getFailures(MailMetrics.Operation.CLAIM)).isEqualTo(1);
+        }
+    }
+
+    private MailData storedCopy(MailData mail) {
+        MailData stored = createTestMail(mail.getSenderUuid(), mail.getSenderName(),
+            mail.getReceiverUuid(), mail.getReceiverName());
+        stored.setId(mail.getId());
+        stored.setItems(mail.getItems());
+        stored.setCommands(mail.getCommands());
+        stored.copyStateFrom(mail);
+        return stored;
+    }
+
     private MailData createTestMail(String senderUuid, String senderName, String receiverUuid, String receiverName) {
         MailData mail = new MailData();
         mail.setSenderUuid(senderUuid);
@@ -0,0 +1,159 @@
+package com.ultikits.plugins.mail.service;
+
+import com.ultikits.plugins.mail.config.MailConfig;
+import com.ultikits.plugins.mail.utils.TestHelper;
+import com.ultikits.ultitools.abstracts.UltiToolsPlugin;
+
+import org.bukkit.Bukkit;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitScheduler;
+import org.bukkit.scheduler.BukkitTask;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.*;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for MailTaskScheduler.
+ */
+@DisplayName("MailTaskScheduler 测试")
+@ExtendWith(MockitoExtension.class)
+@Timeout(value = 30, unit = TimeUnit.SECONDS)
+class MailTaskSchedulerTest {
+
+    private MailTaskScheduler scheduler;
+
+    private MailConfig config;
+
+    @Mock
+    private BukkitScheduler mockBukkitScheduler;
+
+    @Mock
+    private Plugin mockBukkitPlugin;
+
+    private MockedStatic<Bukkit> mockedBukkit;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        UltiToolsPlugin mockPlugin = TestHelper.mockUltiToolsPlugin();
+        config = new MailConfig();
+
+        mockedBukkit = mockStatic(Bukkit.class);
+        mockedBukkit.when(Bukkit::getScheduler).thenReturn(mockBukkitScheduler);
+
+        scheduler = new MailTaskScheduler();
+        TestHelper.injectField(scheduler, "plugin", mockPlugin);
+        TestHelper.injectField(scheduler, "config", config);
+        TestHelper.injectField(scheduler, "bukkitPlugin", mockBukkitPlugin);
+    }
+
+    @AfterEach
+    void tearDown() {
+        mockedBukkit.close();
+        TestHelper.cleanupMocks();
+    }
+
+    @Test
+    @DisplayName("首次提交时应启动每 tick 定时器")
+    void shouldStartTimerOnFirstSubmit() {
+        scheduler.submit(() -> { });
+        scheduler.submit(() -> { });
+
+        verify(mockBukkitScheduler, times(1)).runTaskTimer(eq(mockBukkitPlugin), any(Runnable.class), eq(1L), eq(1L));
+        assertThat(scheduler.getQueueDepth()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("停止时应取消定时器，再次提交时重新启动")
+    void shouldCancelTimerOnStopAndRestartOnSubmit() {
+        BukkitTask timer = mock(BukkitTask.class);
+        when(mockBukkitScheduler.runTaskTimer(eq(mockBukkitPlugin), any(Runnable.class), eq(1L), eq(1L)))
+            .thenReturn(timer);
+        scheduler.submit(() -> { });
+
+        scheduler.stop();
+        scheduler.stop();
+
+        verify(timer, times(1)).cancel();
+        assertThat(scheduler.getQueueDepth()).isEqualTo(1);
+
+        scheduler.submit(() -> { });
+
+        verify(mockBukkitScheduler, times(2)).runTaskTimer(eq(mockBukkitPlugin), any(Runnable.class), eq(1L), eq(1L));
+    }
+
+    @Test
+    @DisplayName("预算内的任务应在同一 tick 执行完")
+    void shouldRunCheapTasksInOneTick() {
+        AtomicInteger counter = new AtomicInteger();
+        for (int i = 0; i < 10; i++) {
+            scheduler.submit(counter::incrementAndGet);
+        }
+
+        scheduler.tick();
+
+        assertThat(counter.get()).isEqualTo(10);
+        assertThat(scheduler.getQueueDepth()).isZero();
+        assertThat(scheduler.getLastTickTasks()).isEqualTo(10);
+        assertThat(scheduler.getExecutedTasks()).isEqualTo(10);
+    }
+
+    @Test
+    @DisplayName("超出预算的任务应顺延到下一 tick")
+    void shouldDeferTasksBeyondBudget() {
+        config.setTickBudgetMicros(100);
+        AtomicInteger counter = new AtomicInteger();
+        for (int i = 0; i < 3; i++) {
+            scheduler.submit(() -> {
+                sleepMillis(2);
+                counter.incrementAndGet();
+            });
+        }
+
+        scheduler.tick();
+
+        assertThat(counter.get()).isEqualTo(1);
+        assertThat(scheduler.getQueueDepth()).isEqualTo(2);
+        assertThat(scheduler.getOverBudgetTicks()).isEqualTo(1);
+        assertThat(scheduler.getLastTickNanos()).isGreaterThan(scheduler.getBudgetNanos());
+    }
+
+    @Test
+    @DisplayName("任务异常不应中断队列")
+    void shouldContinueAfterTaskFailure() {
+        AtomicInteger counter = new AtomicInteger();
+        scheduler.submit(() -> {
+            throw new IllegalStateException("boom");
+        });
+        scheduler.submit(counter::incrementAndGet);
+
+        scheduler.tick();
+
+        assertThat(counter.get()).isEqualTo(1);
+        assertThat(scheduler.getQueueDepth()).isZero();
+    }
+
+    @Test
+    @DisplayName("空队列 tick 不应记录统计")
+    void shouldIgnoreIdleTicks() {
+        scheduler.tick();
+
+        assertThat(scheduler.getExecutedTasks()).isZero();
+        assertThat(scheduler.getAverageTickNanos()).isZero();
+    }
+
+    private static void sleepMillis(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
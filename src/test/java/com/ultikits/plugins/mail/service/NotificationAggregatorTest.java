@@ -0,0 +1,140 @@
+package com.ultikits.plugins.mail.service;
+
+import com.ultikits.plugins.mail.config.MailConfig;
+import com.ultikits.plugins.mail.utils.TestHelper;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitScheduler;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.*;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for NotificationAggregator.
+ * <p>
+ * The scheduled flush is captured and run manually to simulate the merge window.
+ */
+@DisplayName("NotificationAggregator 测试")
+@ExtendWith(MockitoExtension.class)
+@Timeout(value = 30, unit = TimeUnit.SECONDS)
+class NotificationAggregatorTest {
+
+    private NotificationAggregator aggregator;
+
+    private MailConfig config;
+
+    @Mock
+    private BukkitScheduler mockScheduler;
+
+    @Mock
+    private Plugin mockBukkitPlugin;
+
+    @Mock
+    private Player receiver;
+
+    private MockedStatic<Bukkit> mockedBukkit;
+
+    private UUID receiverUuid;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        config = new MailConfig();
+        receiverUuid = UUID.randomUUID();
+        lenient().when(receiver.isOnline()).thenReturn(true);
+
+        mockedBukkit = mockStatic(Bukkit.class);
+        mockedBukkit.when(Bukkit::getScheduler).thenReturn(mockScheduler);
+        mockedBukkit.when(() -> Bukkit.getPlayer(receiverUuid)).thenReturn(receiver);
+
+        aggregator = new NotificationAggregator();
+        TestHelper.injectField(aggregator, "config", config);
+        TestHelper.injectField(aggregator, "bukkitPlugin", mockBukkitPlugin);
+    }
+
+    @AfterEach
+    void tearDown() {
+        mockedBukkit.close();
+    }
+
+    @Test
+    @DisplayName("单封邮件应使用原通知模板")
+    void shouldUseSingleMessageForOneMail() {
+        aggregator.enqueue(receiverUuid, "Alice");
+        aggregator.flush();
+
+        verify(receiver).sendMessage(ArgumentMatchers.<String>argThat(msg ->
+            msg.contains("Alice") && !msg.contains("{SENDER}")
+        ));
+    }
+
+    @Test
+    @DisplayName("窗口内多封邮件应合并为一条通知")
+    void shouldMergeMailsWithinWindow() {
+        for (int i = 0; i < 300; i++) {
+            aggregator.enqueue(receiverUuid, "Alice");
+        }
+        aggregator.flush();
+
+        verify(receiver, times(1)).sendMessage(ArgumentMatchers.<String>argThat(msg ->
+            msg.contains("300") && msg.contains("Alice")
+        ));
+    }
+
+    @Test
+    @DisplayName("窗口内只应调度一次刷新")
+    void shouldScheduleFlushOnce() {
+        aggregator.enqueue(receiverUuid, "Alice");
+        aggregator.enqueue(receiverUuid, "Bob");
+        aggregator.enqueue(UUID.randomUUID(), "Carol");
+
+        verify(mockScheduler, times(1)).runTaskLater(eq(mockBukkitPlugin), any(Runnable.class),
+            eq((long) config.getNotifyMergeTicks()));
+        assertThat(aggregator.getPendingCount()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("超过三个发送者时应省略其余发送者")
+    void shouldTruncateSenderList() {
+        aggregator.enqueue(receiverUuid, "A1");
+        aggregator.enqueue(receiverUuid, "A2");
+        aggregator.enqueue(receiverUuid, "A3");
+        aggregator.enqueue(receiverUuid, "A4");
+        aggregator.flush();
+
+        verify(receiver).sendMessage(ArgumentMatchers.<String>argThat(msg ->
+            msg.contains("A1, A2, A3…") && !msg.contains("A4")
+        ));
+    }
+
+    @Test
+    @DisplayName("刷新后应重新调度新的窗口")
+    void shouldRescheduleAfterFlush() {
+        aggregator.enqueue(receiverUuid, "Alice");
+        aggregator.flush();
+        aggregator.enqueue(receiverUuid, "Bob");
+
+        verify(mockScheduler, times(2)).runTaskLater(any(), any(Runnable.class), anyLong());
+        assertThat(aggregator.getPendingCount()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("离线接收者不应收到通知")
+    void shouldSkipOfflineReceiver() {
+        UUID offline = UUID.randomUUID();
+        aggregator.enqueue(offline, "Alice");
+        aggregator.flush();
+
+        verify(receiver, never()).sendMessage(anyString());
+        assertThat(aggregator.getPendingCount()).isZero();
+    }
+}
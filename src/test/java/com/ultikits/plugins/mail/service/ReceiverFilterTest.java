@@ -0,0 +1,151 @@
+package com.ultikits.plugins.mail.service;
+
+import org.junit.jupiter.api.*;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for ReceiverFilter.
+ */
+@DisplayName("ReceiverFilter 测试")
+class ReceiverFilterTest {
+
+    private ReceiverFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        filter = new ReceiverFilter(12);
+    }
+
+    @Test
+    @DisplayName("未构建时应对所有玩家返回可能有邮件")
+    void shouldReportMaybeBeforeRebuild() {
+        assertThat(filter.isReady()).isFalse();
+        assertThat(filter.mightHaveMail(UUID.randomUUID())).isTrue();
+    }
+
+    @Test
+    @DisplayName("构建后无邮件玩家应返回 false")
+    void shouldReportNoMailAfterRebuild() {
+        rebuild();
+
+        assertThat(filter.isReady()).isTrue();
+        assertThat(filter.mightHaveMail(UUID.randomUUID())).isFalse();
+    }
+
+    @Test
+    @DisplayName("构建时应包含已有邮件的接收者")
+    void shouldContainExistingReceivers() {
+        UUID receiver = UUID.randomUUID();
+
+        rebuild(receiver.toString());
+
+        assertThat(filter.mightHaveMail(receiver)).isTrue();
+    }
+
+    @Test
+    @DisplayName("插入后应包含接收者")
+    void shouldContainAfterInsert() {
+        rebuild();
+        UUID receiver = UUID.randomUUID();
+
+        filter.recordInsert(receiver.toString());
+
+        assertThat(filter.mightHaveMail(receiver)).isTrue();
+    }
+
+    @Test
+    @DisplayName("最后一封邮件被删除后应返回 false")
+    void shouldForgetAfterLastDelete() {
+        rebuild();
+        UUID receiver = UUID.randomUUID();
+        filter.recordInsert(receiver.toString());
+        filter.recordInsert(receiver.toString());
+
+        filter.recordDelete(receiver.toString());
+        assertThat(filter.mightHaveMail(receiver)).isTrue();
+
+        filter.recordDelete(receiver.toString());
+        assertThat(filter.mightHaveMail(receiver)).isFalse();
+    }
+
+    @Test
+    @DisplayName("无效 UUID 应被忽略")
+    void shouldIgnoreInvalidUuid() {
+        rebuild("SYSTEM");
+
+        filter.recordInsert("not-a-uuid");
+        filter.recordDelete(null);
+
+        assertThat(filter.mightHaveMail(UUID.randomUUID())).isFalse();
+    }
+
+    @Test
+    @DisplayName("扫描期间插入的接收者不应丢失")
+    void shouldKeepInsertsMadeDuringScan() {
+        UUID early = UUID.randomUUID();
+        UUID during = UUID.randomUUID();
+        rebuild(early.toString());
+
+        ReceiverFilter.Rebuild fresh = filter.beginRebuild();
+        // Stored after the scan passed it
+        filter.recordInsert(during.toString());
+        fresh.add(early.toString());
+        filter.finishRebuild(fresh);
+
+        assertThat(filter.mightHaveMail(early)).isTrue();
+        assertThat(filter.mightHaveMail(during)).isTrue();
+    }
+
+    @Test
+    @DisplayName("扫描期间的删除应被忽略")
+    void shouldIgnoreDeletesDuringScan() {
+        UUID receiver = UUID.randomUUID();
+        rebuild(receiver.toString());
+
+        ReceiverFilter.Rebuild fresh = filter.beginRebuild();
+        filter.recordDelete(receiver.toString());
+        fresh.add(receiver.toString());
+        filter.finishRebuild(fresh);
+
+        assertThat(filter.mightHaveMail(receiver)).isTrue();
+    }
+
+    @Test
+    @DisplayName("放弃重建时应保留原有计数")
+    void shouldKeepCountersWhenRebuildAborted() {
+        UUID receiver = UUID.randomUUID();
+        rebuild(receiver.toString());
+
+        ReceiverFilter.Rebuild fresh = filter.beginRebuild();
+        filter.abortRebuild(fresh);
+
+        assertThat(filter.mightHaveMail(receiver)).isTrue();
+        filter.recordDelete(receiver.toString());
+        assertThat(filter.mightHaveMail(receiver)).isFalse();
+    }
+
+    @Test
+    @DisplayName("重叠的重建都应包含各自开始后的插入")
+    void shouldReplayInsertsIntoOverlappingRebuilds() {
+        UUID receiver = UUID.randomUUID();
+        ReceiverFilter.Rebuild first = filter.beginRebuild();
+        ReceiverFilter.Rebuild second = filter.beginRebuild();
+        filter.recordInsert(receiver.toString());
+
+        filter.finishRebuild(first);
+        filter.finishRebuild(second);
+
+        assertThat(filter.mightHaveMail(receiver)).isTrue();
+    }
+
+    private void rebuild(String... receivers) {
+        ReceiverFilter.Rebuild fresh = filter.beginRebuild();
+        for (String receiver : receivers) {
+            fresh.add(receiver);
+        }
+        filter.finishRebuild(fresh);
+    }
+}
@@ -0,0 +1,70 @@
+package com.ultikits.plugins.mail.service;
+
+import org.junit.jupiter.api.*;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for TimestampFormat.
+ */
+@DisplayName("TimestampFormat 测试")
+@Timeout(value = 30, unit = TimeUnit.SECONDS)
+class TimestampFormatTest {
+
+    private static long at(int hour, int minute, int second) {
+        return LocalDateTime.of(2026, 3, 14, hour, minute, second).toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    @Test
+    @DisplayName("应按 yyyy-MM-dd HH:mm 在给定时区格式化")
+    void shouldFormatInZone() {
+        assertThat(new TimestampFormat(ZoneOffset.UTC).formatMillis(at(9, 5, 30))).isEqualTo("2026-03-14 09:05");
+        assertThat(new TimestampFormat(ZoneOffset.ofHours(8)).formatMillis(at(20, 0, 0))).isEqualTo("2026-03-15 04:00");
+    }
+
+    @Test
+    @DisplayName("同一分钟内的时间应共享同一个文本")
+    void shouldShareTextWithinMinute() {
+        TimestampFormat format = new TimestampFormat(ZoneOffset.UTC);
+
+        String first = format.formatMillis(at(9, 5, 0));
+        String second = format.formatMillis(at(9, 5, 59) + 999);
+
+        assertThat(second).isSameAs(first);
+        assertThat(format.formatMillis(at(9, 6, 0))).isEqualTo("2026-03-14 09:06");
+        assertThat(format.cachedMinutes()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("多线程并发格式化结果应一致")
+    void shouldFormatConcurrently() throws Exception {
+        TimestampFormat format = new TimestampFormat(ZoneOffset.UTC);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                results.add(pool.submit(() -> {
+                    for (int i = 0; i < 10_000; i++) {
+                        int minute = i % 60;
+                        String expected = String.format("2026-03-14 10:%02d", minute);
+                        if (!expected.equals(format.formatMillis(at(10, minute, i % 60)))) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                assertThat(result.get()).isTrue();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package com.ultikits.plugins.mail.store;
+
+import com.ultikits.plugins.mail.entity.MailData;
+import com.ultikits.ultitools.interfaces.DataOperator;
+import com.ultikits.ultitools.interfaces.Query;
+
+import org.junit.jupiter.api.*;
+import org.mockito.InOrder;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Runs the {@link MailStore} conformance suite against {@link DataOperatorMailStore},
+ * backed by a map-based DataOperator that behaves like a table.
+ */
+@DisplayName("DataOperatorMailStore 测试")
+class DataOperatorMailStoreTest extends MailStoreConformanceTest {
+
+    private final Map<String, MailData> table = new ConcurrentHashMap<>();
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected MailStore createStore() {
+        DataOperator<MailData> operator = mock(DataOperator.class, withSettings().lenient());
+
+        doAnswer(invocation -> {
+            MailData mail = invocation.getArgument(0);
+            if (mail.getId() == null) {
+                mail.setId(UUID.randomUUID().toString());
+            }
+            table.put(mail.getId(), copy(mail));
+            return null;
+        }).when(operator).insert(any());
+        try {
+            doAnswer(invocation -> {
+                MailData mail = invocation.getArgument(0);
+                table.put(mail.getId(), copy(mail));
+                return null;
+            }).when(operator).update(any());
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+        doAnswer(invocation -> {
+            table.remove(invocation.<String>getArgument(0));
+            return null;
+        }).when(operator).delById(any());
+        when(operator.getById(any())).thenAnswer(invocation -> {
+            MailData mail = table.get(invocation.<String>getArgument(0));
+            return mail != null ? copy(mail) : null;
+        });
+        when(operator.getAll()).thenAnswer(invocation -> copies(table.values()));
+        when(operator.query()).thenAnswer(invocation -> query());
+
+        return new DataOperatorMailStore(operator);
+    }
+
+    /**
+     * A query over the table, with its conditions joined by AND.
+     */
+    @SuppressWarnings("unchecked")
+    private Query<MailData> query() {
+        Query<MailData> query = mock(Query.class, withSettings().lenient());
+        List<String> columns = new ArrayList<>();
+        List<Object> values = new ArrayList<>();
+        when(query.where(anyString())).thenAnswer(invocation -> {
+            columns.add(invocation.getArgument(0));
+            return query;
+        });
+        when(query.eq(any())).thenAnswer(invocation -> {
+            values.add(invocation.getArgument(0));
+            return query;
+        });
+        when(query.list()).thenAnswer(invocation -> {
+            List<MailData> matches = new ArrayList<>();
+            for (MailData mail : table.values()) {
+                boolean match = true;
+                for (int i = 0; i < columns.size(); i++) {
+                    match &= Objects.equals(column(mail, columns.get(i)), values.get(i));
+                }
+                if (match) {
+                    matches.add(mail);
+                }
+            }
+            return copies(matches);
+        });
+        return query;
+    }
+
+    private static Object column(MailData mail, String column) {
+        switch (column) {
+            case "receiver_uuid":
+                return mail.getReceiverUuid();
+            case "sender_uuid":
+                return mail.getSenderUuid();
+            case "deleted_by_sender":
+                return mail.isDeletedBySender();
+            default:
+                throw new IllegalArgumentException("Unknown column " + column);
+        }
+    }
+
+    @Nested
+    @DisplayName("基于连接池的批量删除测试")
+    class SetBasedDeleteTests {
+
+        private Connection connection;
+        private PreparedStatement update;
+        private PreparedStatement delete;
+
+        @BeforeEach
+        void setUpPool() throws Exception {
+            DataSource pool = mock(DataSource.class);
+            connection = mock(Connection.class);
+            update = mock(PreparedStatement.class);
+            delete = mock(PreparedStatement.class);
+            when(pool.getConnection()).thenReturn(connection);
+            when(connection.getAutoCommit()).thenReturn(true);
+            when(connection.prepareStatement(startsWith("UPDATE"))).thenReturn(update);
+            lenient().when(connection.prepareStatement(startsWith("DELETE"))).thenReturn(delete);
+            ((DataOperatorMailStore) store).setDataSource(pool);
+        }
+
+        @Test
+        @DisplayName("应以一条 UPDATE 和一条 DELETE 在同一事务中完成")
+        void shouldRunTwoStatementsInOneTransaction() throws Exception {
+            store.insertAll(Arrays.asList(mail("r1", "s1", 1L), mail("r1", "s1", 2L), mail("r1", "s1", 3L)));
+            store.getAll();
+            when(update.executeUpdate()).thenReturn(3);
+            when(delete.executeUpdate()).thenReturn(1);
+
+            InboxDeletion result = store.deleteInbox("r1", true);
+
+            assertThat(result.getDeleted()).isEqualTo(3);
+            assertThat(result.getRemoved()).isEqualTo(1);
+            assertThat(store.estimateSize()).isEqualTo(2);
+            verify(connection).prepareStatement(contains("claimed_status = ?) AND read_status = ?"));
+            verify(update).setString(4, "r1");
+            verify(update).setBoolean(7, true);
+            verify(delete).setString(1, "r1");
+            InOrder order = inOrder(connection, update, delete);
+            order.verify(connection).setAutoCommit(false);
+            order.verify(update).executeUpdate();
+            order.verify(delete).executeUpdate();
+            order.verify(connection).commit();
+            order.verify(connection).setAutoCommit(true);
+            // Nothing goes through the per-row path
+            assertThat(table.values()).noneMatch(MailData::isDeletedByReceiver);
+        }
+
+        @Test
+        @DisplayName("删除全部时不应带已读条件")
+        void shouldNotFilterOnReadWhenDeletingAll() throws Exception {
+            store.deleteInbox("r1", false);
+
+            verify(connection, never()).prepareStatement(contains("read_status"));
+            verify(update, never()).setBoolean(eq(7), anyBoolean());
+        }
+
+        @Test
+        @DisplayName("语句失败时应回滚并抛出异常")
+        void shouldRollBackOnFailure() throws Exception {
+            when(update.executeUpdate()).thenThrow(new SQLException("locked"));
+
+            assertThatThrownBy(() -> store.deleteInbox("r1", false))
+                .isInstanceOf(IllegalAccessException.class)
+                .hasMessageContaining("locked");
+            verify(connection).rollback();
+            verify(connection, never()).commit();
+        }
+    }
+
+    @Nested
+    @DisplayName("基于连接池的条件更新测试")
+    class ConditionalUpdateTests {
+
+        private PreparedStatement statement;
+
+        @BeforeEach
+        void setUpPool() throws Exception {
+            DataSource pool = mock(DataSource.class);
+            Connection connection = mock(Connection.class);
+            statement = mock(PreparedStatement.class);
+            when(pool.getConnection()).thenReturn(connection);
+            when(connection.prepareStatement(anyString())).thenReturn(statement);
+            ((DataOperatorMailStore) store).setDataSource(pool);
+        }
+
+        @Test
+        @DisplayName("应只在版本未变时写入状态")
+        void shouldWriteOnlyIfVersionUnchanged() throws Exception {
+            MailData mail = mail("r1", "s1", 1L);
+            store.insert(mail);
+            when(statement.executeUpdate()).thenReturn(1);
+
+            boolean won = store.update(mail, m -> !m.isRead(), m -> m.setRead(true));
+
+            assertThat(won).isTrue();
+            assertThat(mail.getVersion()).isEqualTo(1);
+            verify(statement).setBoolean(1, true);
+            verify(statement).setLong(6, 1L);
+            verify(statement).setString(7, mail.getId());
+            verify(statement).setLong(8, 0L);
+        }
+
+        @Test
+        @DisplayName("被其他服务器抢先修改时应重新读取并再次检查条件")
+        void shouldRecheckGuardAfterLostWrite() throws Exception {
+            MailData mail = mail("r1", "s1", 1L);
+            store.insert(mail);
+            when(statement.executeUpdate()).thenAnswer(invocation -> {
+                // Another server marked the mail read first
+                MailData stored = table.get(mail.getId());
+                stored.setRead(true);
+                stored.setVersion(stored.getVersion() + 1);
+                return 0;
+            });
+
+            boolean won = store.update(mail, m -> !m.isRead(), m -> m.setRead(true));
+
+            assertThat(won).isFalse();
+            assertThat(mail.isRead()).isTrue();
+            assertThat(mail.getVersion()).isEqualTo(1);
+            verify(statement, times(1)).executeUpdate();
+        }
+
+        @Test
+        @DisplayName("写入失败后条件仍成立时应重试")
+        void shouldRetryLostWrite() throws Exception {
+            MailData mail = mail("r1", "s1", 1L);
+            store.insert(mail);
+            when(statement.executeUpdate()).thenReturn(0, 1);
+
+            assertThat(store.update(mail, m -> !m.isRead(), m -> m.setRead(true))).isTrue();
+            verify(statement, times(2)).executeUpdate();
+        }
+
+        @Test
+        @DisplayName("语句失败时应抛出异常")
+        void shouldFailOnSqlError() throws Exception {
+            MailData mail = mail("r1", "s1", 1L);
+            store.insert(mail);
+            when(statement.executeUpdate()).thenThrow(new SQLException("gone"));
+
+            assertThatThrownBy(() -> store.update(mail, m -> true, m -> m.setRead(true)))
+                .isInstanceOf(IllegalAccessException.class)
+                .hasMessageContaining("gone");
+        }
+    }
+
+    @Nested
+    @DisplayName("基于连接池的接收者扫描测试")
+    class ReceiverScanTests {
+
+        @Test
+        @DisplayName("应只查询接收者列并更新行数估计")
+        void shouldSelectOnlyReceiverColumn() throws Exception {
+            DataSource pool = mock(DataSource.class);
+            Connection connection = mock(Connection.class);
+            PreparedStatement statement = mock(PreparedStatement.class);
+            ResultSet result = mock(ResultSet.class);
+            when(pool.getConnection()).thenReturn(connection);
+            when(connection.prepareStatement("SELECT receiver_uuid FROM mail_messages")).thenReturn(statement);
+            when(statement.executeQuery()).thenReturn(result);
+            when(result.next()).thenReturn(true, true, false);
+            when(result.getString(1)).thenReturn("r1", "r2");
+            ((DataOperatorMailStore) store).setDataSource(pool);
+
+            List<String> receivers = new ArrayList<>();
+            store.forEachReceiver(receivers::add);
+
+            assertThat(receivers).containsExactly("r1", "r2");
+            assertThat(store.estimateSize()).isEqualTo(2);
+        }
+
+        @Test
+        @DisplayName("按发送时间查询时应只加载匹配的行")
+        void shouldLoadOnlyRowsSentBeforeCutoff() throws Exception {
+            MailData old = mail("r1", "s1", 1L);
+            store.insert(old);
+            store.insert(mail("r1", "s1", 9L));
+            DataSource pool = mock(DataSource.class);
+            Connection connection = mock(Connection.class);
+            PreparedStatement statement = mock(PreparedStatement.class);
+            ResultSet result = mock(ResultSet.class);
+            when(pool.getConnection()).thenReturn(connection);
+            when(connection.prepareStatement("SELECT id FROM mail_messages WHERE sent_time < ?"))
+                .thenReturn(statement);
+            when(statement.executeQuery()).thenReturn(result);
+            when(result.next()).thenReturn(true, true, false);
+            when(result.getString(1)).thenReturn(old.getId(), "gone");
+            ((DataOperatorMailStore) store).setDataSource(pool);
+
+            List<MailData> sent = store.findSentBefore(5L);
+
+            verify(statement).setLong(1, 5L);
+            // The id removed since the query is skipped
+            assertThat(sent).extracting(MailData::getId).containsExactly(old.getId());
+        }
+    }
+
+    private static List<MailData> copies(Collection<MailData> mails) {
+        List<MailData> result = new ArrayList<>();
+        for (MailData mail : mails) {
+            result.add(copy(mail));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,135 @@
+package com.ultikits.plugins.mail.store;
+
+import com.ultikits.plugins.mail.entity.MailData;
+
+import org.junit.jupiter.api.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs the {@link MailStore} conformance suite against {@link InMemoryMailStore},
+ * plus index bookkeeping checks and a large-scale run tagged {@code benchmark}.
+ */
+@DisplayName("InMemoryMailStore 测试")
+class InMemoryMailStoreTest extends MailStoreConformanceTest {
+
+    @Override
+    protected MailStore createStore() {
+        return new InMemoryMailStore();
+    }
+
+    private InMemoryMailStore memory() {
+        return (InMemoryMailStore) store;
+    }
+
+    @Nested
+    @DisplayName("索引测试")
+    class IndexTests {
+
+        @Test
+        @DisplayName("同一毫秒发送的邮件都应保留")
+        void shouldKeepMailsWithSameSentTime() {
+            for (int i = 0; i < 5; i++) {
+                store.insert(mail("r1", "s1", 1000L));
+            }
+
+            assertThat(store.countInbox("r1")).isEqualTo(5);
+            assertThat(store.findInboxPage("r1", 0, 10)).hasSize(5);
+            assertThat(store.findBySender("s1")).hasSize(5);
+        }
+
+        @Test
+        @DisplayName("标志变更后计数应保持一致")
+        void shouldKeepCountsInStepWithUpdates() throws Exception {
+            MailData first = mail("r1", "s1", 1L);
+            MailData second = mail("r1", "s1", 2L);
+            store.insert(first);
+            store.insert(second);
+
+            store.update(store.getById(first.getId()), m -> true, m -> m.setRead(true));
+            assertThat(store.countUnread("r1")).isEqualTo(1);
+            assertThat(store.countInbox("r1")).isEqualTo(2);
+
+            store.update(store.getById(second.getId()), m -> true, m -> m.setDeletedByReceiver(true));
+            assertThat(store.countUnread("r1")).isZero();
+            assertThat(store.countInbox("r1")).isEqualTo(1);
+
+            store.update(store.getById(first.getId()), m -> true, m -> {
+                m.setDeletedByReceiver(true);
+                m.setDeletedBySender(true);
+            });
+            assertThat(store.countInbox("r1")).isZero();
+            assertThat(store.findByReceiver("r1")).hasSize(1);
+            assertThat(memory().size()).isEqualTo(1);
+        }
+
+        @Test
+        @DisplayName("重复插入同一 id 应替换旧行")
+        void shouldReplaceRowOnReinsert() {
+            MailData mail = mail("r1", "s1", 1L);
+            store.insert(mail);
+            mail.setReceiverUuid("r2");
+
+            store.insert(mail);
+
+            assertThat(memory().size()).isEqualTo(1);
+            assertThat(store.countInbox("r1")).isZero();
+            assertThat(store.countInbox("r2")).isEqualTo(1);
+        }
+
+        @Test
+        @DisplayName("过期清理后计数应同步减少")
+        void shouldUncountExpiredMails() {
+            MailData old = mail("r1", "s1", 1L);
+            old.setRead(true);
+            store.insert(old);
+            store.insert(mail("r1", "s1", 5000L));
+
+            store.deleteExpired(1000L);
+
+            assertThat(store.countInbox("r1")).isEqualTo(1);
+            assertThat(store.countUnread("r1")).isEqualTo(1);
+        }
+    }
+
+    @Test
+    @Tag("benchmark")
+    @DisplayName("基准：一百万封邮件")
+    void benchmarkMillionMails() {
+        int mails = 1_000_000;
+        int receivers = 10_000;
+        List<MailData> batch = new ArrayList<>(10_000);
+        long start = System.nanoTime();
+        for (int i = 0; i < mails; i++) {
+            batch.add(mail("r" + (i % receivers), "s" + (i % 100), i));
+            if (batch.size() == 10_000) {
+                store.insertAll(batch);
+                batch.clear();
+            }
+        }
+        long insertNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < receivers; i++) {
+            store.findInboxPage("r" + i, 45, 45);
+        }
+        long pageNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < receivers; i++) {
+            store.countUnread("r" + i);
+        }
+        long countNanos = System.nanoTime() - start;
+
+        System.out.printf("InMemoryMailStore x%d: insert %.0f mails/s, page %.1f us, countUnread %.2f us%n",
+            mails,
+            mails / (insertNanos / 1e9),
+            pageNanos / 1e3 / receivers,
+            countNanos / 1e3 / receivers);
+        assertThat(memory().size()).isEqualTo(mails);
+        assertThat(store.countInbox("r0")).isEqualTo(mails / receivers);
+    }
+}
@@ -0,0 +1,480 @@
+package com.ultikits.plugins.mail.store;
+
+import com.ultikits.plugins.mail.entity.MailData;
+
+import org.junit.jupiter.api.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Behaviour every {@link MailStore} must share.
+ * <p>
+ * Each implementation gets a subclass that creates the store; the benchmark at the
+ * end is tagged {@code benchmark} and skipped by the default test run.
+ */
+@Timeout(value = 60, unit = TimeUnit.SECONDS)
+abstract class MailStoreConformanceTest {
+
+    protected MailStore store;
+
+    protected abstract MailStore createStore() throws Exception;
+
+    @BeforeEach
+    void setUpStore() throws Exception {
+        store = createStore();
+    }
+
+    @AfterEach
+    void closeStore() {
+        store.close();
+    }
+
+    protected static MailData mail(String receiver, String sender, long sentTime) {
+        MailData mail = new MailData();
+        mail.setReceiverUuid(receiver);
+        mail.setReceiverName("R-" + receiver);
+        mail.setSenderUuid(sender);
+        mail.setSenderName("S-" + sender);
+        mail.setSubject("Subject " + sentTime);
+        mail.setContent("Content " + sentTime);
+        mail.setSentTime(sentTime);
+        return mail;
+    }
+
+    /**
+     * Field-by-field copy, the way a database hands out fresh rows.
+     */
+    protected static MailData copy(MailData mail) {
+        MailData copy = new MailData();
+        copy.setId(mail.getId());
+        copy.setReceiverUuid(mail.getReceiverUuid());
+        copy.setReceiverName(mail.getReceiverName());
+        copy.setSenderUuid(mail.getSenderUuid());
+        copy.setSenderName(mail.getSenderName());
+        copy.setSubject(mail.getSubject());
+        copy.setContent(mail.getContent());
+        copy.setItems(mail.getItems());
+        copy.setCommands(mail.getCommands());
+        copy.setSentTime(mail.getSentTime());
+        copy.setGroupId(mail.getGroupId());
+        copy.copyStateFrom(mail);
+        return copy;
+    }
+
+    @Test
+    @DisplayName("插入后应能按 id 读取完整字段")
+    void shouldRoundTripInsertedMail() {
+        MailData mail = mail("r1", "s1", 1000L);
+        mail.setItems("encoded-items");
+        mail.setCommands("[\"spawn\"]");
+        mail.setRead(true);
+
+        store.insert(mail);
+        MailData loaded = store.getById(mail.getId());
+
+        assertThat(mail.getId()).isNotNull();
+        assertThat(loaded).isNotSameAs(mail);
+        assertThat(loaded.getReceiverUuid()).isEqualTo("r1");
+        assertThat(loaded.getReceiverName()).isEqualTo("R-r1");
+        assertThat(loaded.getSenderUuid()).isEqualTo("s1");
+        assertThat(loaded.getSenderName()).isEqualTo("S-s1");
+        assertThat(loaded.getSubject()).isEqualTo("Subject 1000");
+        assertThat(loaded.getContent()).isEqualTo("Content 1000");
+        assertThat(loaded.getItems()).isEqualTo("encoded-items");
+        assertThat(loaded.getCommands()).isEqualTo("[\"spawn\"]");
+        assertThat(loaded.getSentTime()).isEqualTo(1000L);
+        assertThat(loaded.isRead()).isTrue();
+        assertThat(loaded.isClaimed()).isFalse();
+    }
+
+    @Test
+    @DisplayName("未知 id 应返回 null")
+    void shouldReturnNullForUnknownId() {
+        assertThat(store.getById("missing")).isNull();
+    }
+
+    @Test
+    @DisplayName("批量插入应插入全部邮件")
+    void shouldInsertAll() {
+        List<MailData> mails = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            mails.add(mail("r" + (i % 3), "s1", i));
+        }
+
+        store.insertAll(mails);
+
+        assertThat(store.getAll()).hasSize(10);
+        assertThat(store.findByReceiver("r0")).hasSize(4);
+    }
+
+    @Test
+    @DisplayName("接收者扫描应对每一行给出一次接收者")
+    void shouldVisitReceiverOfEveryRow() throws Exception {
+        MailData deleted = mail("r2", "s1", 3L);
+        store.insertAll(Arrays.asList(mail("r1", "s1", 1L), mail("r1", "s2", 2L), deleted));
+        store.update(deleted, m -> true, m -> m.setDeletedByReceiver(true));
+
+        List<String> receivers = new ArrayList<>();
+        store.forEachReceiver(receivers::add);
+
+        // Rows deleted by one side still exist and still count
+        assertThat(receivers).containsExactlyInAnyOrder("r1", "r1", "r2");
+    }
+
+    @Test
+    @DisplayName("应只返回截止时间之前发送的邮件")
+    void shouldFindMailsSentBefore() {
+        MailData old = mail("r1", "s1", 1L);
+        MailData edge = mail("r2", "s1", 5L);
+        MailData recent = mail("r1", "s2", 9L);
+        store.insertAll(Arrays.asList(old, edge, recent));
+
+        assertThat(store.findSentBefore(5L)).extracting(MailData::getId).containsExactly(old.getId());
+        assertThat(store.findSentBefore(10L)).hasSize(3);
+        assertThat(store.findSentBefore(1L)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("修改返回的副本不应影响存储")
+    void shouldHandOutCopies() {
+        MailData mail = mail("r1", "s1", 1L);
+        store.insert(mail);
+
+        store.getById(mail.getId()).setRead(true);
+
+        assertThat(store.getById(mail.getId()).isRead()).isFalse();
+    }
+
+    @Test
+    @DisplayName("按收件人和发件人查询应包含已删除的邮件")
+    void shouldFindByReceiverAndSenderIncludingDeleted() {
+        MailData deleted = mail("r1", "s1", 1L);
+        deleted.setDeletedByReceiver(true);
+        store.insert(deleted);
+        store.insert(mail("r1", "s2", 2L));
+        store.insert(mail("r2", "s1", 3L));
+
+        assertThat(store.findByReceiver("r1")).hasSize(2);
+        assertThat(store.findBySender("s1")).hasSize(2);
+        assertThat(store.findByReceiver("nobody")).isEmpty();
+    }
+
+    @Test
+    @DisplayName("收件箱分页应按时间倒序并排除收件人已删除的邮件")
+    void shouldPageInboxNewestFirst() {
+        for (int i = 1; i <= 5; i++) {
+            store.insert(mail("r1", "s1", i * 100L));
+        }
+        MailData deleted = mail("r1", "s1", 600L);
+        deleted.setDeletedByReceiver(true);
+        store.insert(deleted);
+
+        List<MailData> first = store.findInboxPage("r1", 0, 2);
+        List<MailData> second = store.findInboxPage("r1", 2, 2);
+        List<MailData> last = store.findInboxPage("r1", 4, 2);
+
+        assertThat(first).extracting(MailData::getSentTime).containsExactly(500L, 400L);
+        assertThat(second).extracting(MailData::getSentTime).containsExactly(300L, 200L);
+        assertThat(last).extracting(MailData::getSentTime).containsExactly(100L);
+        assertThat(store.findInboxPage("r1", 10, 2)).isEmpty();
+        assertThat(store.findInboxPage("r1", 0, 0)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("计数应只包含收件箱中可见的邮件")
+    void shouldCountInboxAndUnread() {
+        MailData read = mail("r1", "s1", 1L);
+        read.setRead(true);
+        store.insert(read);
+        store.insert(mail("r1", "s1", 2L));
+        MailData deleted = mail("r1", "s1", 3L);
+        deleted.setDeletedByReceiver(true);
+        store.insert(deleted);
+
+        assertThat(store.countInbox("r1")).isEqualTo(2);
+        assertThat(store.countUnread("r1")).isEqualTo(1);
+        assertThat(store.countUnread("nobody")).isZero();
+    }
+
+    @Test
+    @DisplayName("条件更新通过时应写入标志并递增版本")
+    void shouldApplyGuardedUpdate() throws Exception {
+        MailData mail = mail("r1", "s1", 1L);
+        store.insert(mail);
+        MailData copy = store.getById(mail.getId());
+
+        boolean applied = store.update(copy, m -> !m.isClaimed(), m -> m.setClaimed(true));
+
+        assertThat(applied).isTrue();
+        assertThat(copy.getVersion()).isEqualTo(1);
+        MailData stored = store.getById(mail.getId());
+        assertThat(stored.isClaimed()).isTrue();
+        assertThat(stored.getVersion()).isEqualTo(1);
+        assertThat(store.countUnread("r1")).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("过期副本应先同步存储状态再判断条件")
+    void shouldRejectUpdateAgainstStoredState() throws Exception {
+        MailData mail = mail("r1", "s1", 1L);
+        store.insert(mail);
+        MailData first = store.getById(mail.getId());
+        MailData stale = store.getById(mail.getId());
+        store.update(first, m -> !m.isClaimed(), m -> m.setClaimed(true));
+
+        boolean applied = store.update(stale, m -> !m.isClaimed(), m -> m.setClaimed(true));
+
+        assertThat(applied).isFalse();
+        assertThat(stale.isClaimed()).isTrue();
+        assertThat(stale.getVersion()).isEqualTo(1);
+        assertThat(store.getById(mail.getId()).getVersion()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("行不存在时更新应返回 false")
+    void shouldNotUpdateMissingRow() throws Exception {
+        MailData ghost = mail("r1", "s1", 1L);
+        ghost.setId("ghost");
+
+        assertThat(store.update(ghost, m -> true, m -> m.setRead(true))).isFalse();
+        assertThat(store.getById("ghost")).isNull();
+    }
+
+    @Test
+    @DisplayName("双方都删除后应移除该行")
+    void shouldRemoveRowDeletedByBothSides() throws Exception {
+        MailData mail = mail("r1", "s1", 1L);
+        store.insert(mail);
+
+        store.update(store.getById(mail.getId()), m -> true, m -> m.setDeletedByReceiver(true));
+        assertThat(store.getById(mail.getId())).isNotNull();
+        assertThat(store.countInbox("r1")).isZero();
+
+        store.update(store.getById(mail.getId()), m -> true, m -> m.setDeletedBySender(true));
+
+        assertThat(store.getById(mail.getId())).isNull();
+        assertThat(store.findByReceiver("r1")).isEmpty();
+        assertThat(store.findBySender("s1")).isEmpty();
+    }
+
+    @Test
+    @DisplayName("发件箱应按时间倒序且不含群发行和发件人已删除的邮件")
+    void shouldListSentboxWithoutBroadcastRows() throws Exception {
+        MailData older = mail("r1", "s1", 1L);
+        MailData newer = mail("r2", "s1", 3L);
+        MailData broadcast = mail("r3", "s1", 2L);
+        broadcast.setGroupId("group-1");
+        broadcast.setDeletedBySender(true);
+        MailData deleted = mail("r4", "s1", 4L);
+        store.insertAll(Arrays.asList(older, newer, broadcast, deleted, mail("r1", "s2", 5L)));
+        store.update(store.getById(deleted.getId()), m -> true, m -> m.setDeletedBySender(true));
+
+        assertThat(store.findSentbox("s1")).extracting(MailData::getId)
+            .containsExactly(newer.getId(), older.getId());
+        assertThat(store.findSentbox("nobody")).isEmpty();
+        assertThat(store.getById(broadcast.getId()).getGroupId()).isEqualTo("group-1");
+        assertThat(store.findInboxPage("r3", 0, 10)).extracting(MailData::getGroupId).containsExactly("group-1");
+    }
+
+    @Test
+    @DisplayName("批量删除收件箱应跳过未领取附件并只删除收件人一侧")
+    void shouldDeleteInboxExceptUnclaimedAttachments() throws Exception {
+        MailData plain = mail("r1", "s1", 1L);
+        MailData unclaimed = mail("r1", "s1", 2L);
+        unclaimed.setItems("encoded");
+        MailData claimed = mail("r1", "s1", 3L);
+        claimed.setItems("encoded");
+        claimed.setClaimed(true);
+        MailData other = mail("r2", "s1", 4L);
+        store.insertAll(Arrays.asList(plain, unclaimed, claimed, other));
+
+        InboxDeletion result = store.deleteInbox("r1", false);
+
+        assertThat(result.getDeleted()).isEqualTo(2);
+        assertThat(result.getRemoved()).isZero();
+        assertThat(store.countInbox("r1")).isEqualTo(1);
+        assertThat(store.getById(plain.getId()).isDeletedByReceiver()).isTrue();
+        assertThat(store.getById(plain.getId()).getVersion()).isEqualTo(1);
+        assertThat(store.getById(unclaimed.getId()).isDeletedByReceiver()).isFalse();
+        assertThat(store.findBySender("s1")).hasSize(4);
+        assertThat(store.countInbox("r2")).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("只删除已读时应保留未读邮件")
+    void shouldDeleteOnlyReadMailsFromInbox() throws Exception {
+        MailData read = mail("r1", "s1", 1L);
+        read.setRead(true);
+        MailData unread = mail("r1", "s1", 2L);
+        store.insertAll(Arrays.asList(read, unread));
+
+        InboxDeletion result = store.deleteInbox("r1", true);
+
+        assertThat(result.getDeleted()).isEqualTo(1);
+        assertThat(store.findInboxPage("r1", 0, 10)).extracting(MailData::getId).containsExactly(unread.getId());
+    }
+
+    @Test
+    @DisplayName("发件人已删除或自己发给自己的邮件应被移除")
+    void shouldRemoveInboxMailsDeletedByBothSides() throws Exception {
+        MailData senderDeleted = mail("r1", "s1", 1L);
+        senderDeleted.setDeletedBySender(true);
+        MailData ownMail = mail("r1", "r1", 2L);
+        MailData kept = mail("r1", "s1", 3L);
+        store.insertAll(Arrays.asList(senderDeleted, ownMail, kept));
+        store.getAll();
+
+        InboxDeletion result = store.deleteInbox("r1", false);
+
+        assertThat(result.getDeleted()).isEqualTo(3);
+        assertThat(result.getRemoved()).isEqualTo(2);
+        assertThat(store.getById(senderDeleted.getId())).isNull();
+        assertThat(store.getById(ownMail.getId())).isNull();
+        assertThat(store.findBySender("s1")).extracting(MailData::getId).containsExactly(kept.getId());
+        assertThat(store.estimateSize()).isEqualTo(1);
+        assertThat(store.deleteInbox("r1", false).getDeleted()).isZero();
+    }
+
+    @Test
+    @DisplayName("过期清理应保留带未领取附件的邮件")
+    void shouldDeleteExpiredExceptUnclaimedAttachments() {
+        MailData old = read(mail("r1", "s1", 100L));
+        MailData oldWithItems = read(mail("r1", "s1", 200L));
+        oldWithItems.setItems("encoded");
+        MailData oldClaimed = read(mail("r1", "s1", 300L));
+        oldClaimed.setItems("encoded");
+        oldClaimed.setClaimed(true);
+        MailData fresh = read(mail("r1", "s1", 5000L));
+        store.insertAll(Arrays.asList(old, oldWithItems, oldClaimed, fresh));
+
+        int removed = store.deleteExpired(1000L);
+
+        assertThat(removed).isEqualTo(2);
+        assertThat(store.getById(old.getId())).isNull();
+        assertThat(store.getById(oldClaimed.getId())).isNull();
+        assertThat(store.getById(oldWithItems.getId())).isNotNull();
+        assertThat(store.getById(fresh.getId())).isNotNull();
+    }
+
+    @Test
+    @DisplayName("过期清理应保留未读邮件和命令未执行的邮件")
+    void shouldKeepUnreadAndPendingCommandsWhenExpiring() {
+        MailData unread = mail("r1", "s1", 100L);
+        MailData pendingCommands = read(mail("r1", "s1", 200L));
+        pendingCommands.setCommands("[\"say hi\"]");
+        MailData ranCommands = read(mail("r1", "s1", 300L));
+        ranCommands.setCommands("[\"say hi\"]");
+        ranCommands.setCommandsExecuted(true);
+        store.insertAll(Arrays.asList(unread, pendingCommands, ranCommands));
+
+        int removed = store.deleteExpired(1000L);
+
+        assertThat(removed).isEqualTo(1);
+        assertThat(store.getById(unread.getId())).isNotNull();
+        assertThat(store.getById(pendingCommands.getId())).isNotNull();
+        assertThat(store.getById(ranCommands.getId())).isNull();
+    }
+
+    private static MailData read(MailData mail) {
+        mail.setRead(true);
+        return mail;
+    }
+
+    @Test
+    @DisplayName("全量读取后的行数估计应跟随插入和删除")
+    void shouldEstimateSizeAfterScan() throws Exception {
+        store.insertAll(Arrays.asList(mail("r1", "s1", 1L), mail("r1", "s1", 2L)));
+        store.getAll();
+        MailData mail = mail("r2", "s1", 3L);
+        store.insert(mail);
+
+        assertThat(store.estimateSize()).isEqualTo(3);
+
+        store.update(store.getById(mail.getId()), m -> true, m -> {
+            m.setDeletedByReceiver(true);
+            m.setDeletedBySender(true);
+        });
+
+        assertThat(store.estimateSize()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("并发领取同一封邮件只应成功一次")
+    void shouldAllowOneWinnerUnderContention() throws Exception {
+        MailData mail = mail("r1", "s1", 1L);
+        store.insert(mail);
+
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger winners = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                MailData copy = store.getById(mail.getId());
+                if (store.update(copy, m -> !m.isClaimed(), m -> m.setClaimed(true))) {
+                    winners.incrementAndGet();
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        assertThat(winners.get()).isEqualTo(1);
+        assertThat(store.getById(mail.getId()).getVersion()).isEqualTo(1);
+    }
+
+    @Test
+    @Tag("benchmark")
+    @DisplayName("基准：插入、分页与计数")
+    void benchmark() throws Exception {
+        int mails = 50_000;
+        int receivers = 500;
+        List<MailData> batch = new ArrayList<>(mails);
+        for (int i = 0; i < mails; i++) {
+            batch.add(mail("r" + (i % receivers), "s" + (i % 50), i));
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < mails; i += 1000) {
+            store.insertAll(batch.subList(i, i + 1000));
+        }
+        long insertNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < receivers; i++) {
+            store.findInboxPage("r" + i, 0, 45);
+        }
+        long pageNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < receivers; i++) {
+            store.countUnread("r" + i);
+        }
+        long countNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < 5000; i++) {
+            MailData copy = batch.get(i);
+            store.update(copy, m -> !m.isRead(), m -> m.setRead(true));
+        }
+        long updateNanos = System.nanoTime() - start;
+
+        System.out.printf("%s: insert %.0f mails/s, page %.1f us, countUnread %.1f us, update %.1f us%n",
+            store.getClass().getSimpleName(),
+            mails / (insertNanos / 1e9),
+            pageNanos / 1e3 / receivers,
+            countNanos / 1e3 / receivers,
+            updateNanos / 1e3 / 5000);
+        assertThat(store.countUnread("r0")).isEqualTo(mails / receivers - 10);
+    }
+}
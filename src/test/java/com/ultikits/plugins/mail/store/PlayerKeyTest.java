@@ -0,0 +1,64 @@
+package com.ultikits.plugins.mail.store;
+
+import org.junit.jupiter.api.*;
+
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for PlayerKey.
+ */
+@DisplayName("PlayerKey 测试")
+@Timeout(value = 30, unit = TimeUnit.SECONDS)
+class PlayerKeyTest {
+
+    @Test
+    @DisplayName("标准 UUID 字符串应解析为 UUID 键")
+    void shouldParseCanonicalUuid() {
+        UUID uuid = UUID.randomUUID();
+
+        PlayerKey key = PlayerKey.of(uuid.toString());
+
+        assertThat(key.isUuid()).isTrue();
+        assertThat(key.getMostSignificantBits()).isEqualTo(uuid.getMostSignificantBits());
+        assertThat(key.getLeastSignificantBits()).isEqualTo(uuid.getLeastSignificantBits());
+        assertThat(key).isEqualTo(PlayerKey.of(uuid)).hasSameHashCodeAs(PlayerKey.of(uuid));
+        assertThat(key.toString()).isEqualTo(uuid.toString());
+    }
+
+    @Test
+    @DisplayName("非标准值应原样保存为字符串")
+    void shouldKeepOtherValuesAsStrings() {
+        String upperCase = UUID.randomUUID().toString().toUpperCase(Locale.ROOT);
+
+        assertThat(PlayerKey.of("SYSTEM").isUuid()).isFalse();
+        assertThat(PlayerKey.of("SYSTEM").toString()).isEqualTo("SYSTEM");
+        assertThat(PlayerKey.of(upperCase).isUuid()).isFalse();
+        assertThat(PlayerKey.of(upperCase).toString()).isEqualTo(upperCase);
+        assertThat(PlayerKey.of("0123456789abcdef0123456789abcdef0123").isUuid()).isFalse();
+        assertThat(PlayerKey.of(upperCase)).isNotEqualTo(PlayerKey.of(upperCase.toLowerCase(Locale.ROOT)));
+    }
+
+    @Test
+    @DisplayName("null 和空字符串应得到同一个键")
+    void shouldShareEmptyKey() {
+        assertThat(PlayerKey.of((String) null)).isSameAs(PlayerKey.of(""));
+        assertThat(PlayerKey.of("").isUuid()).isFalse();
+        assertThat(PlayerKey.of("").toString()).isEmpty();
+    }
+
+    @Test
+    @DisplayName("相同的值应相等")
+    void shouldCompareByValue() {
+        UUID uuid = UUID.randomUUID();
+
+        assertThat(PlayerKey.of(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits()))
+            .isEqualTo(PlayerKey.of(uuid.toString()));
+        assertThat(PlayerKey.of("SYSTEM")).isEqualTo(PlayerKey.of("SYSTEM"))
+            .hasSameHashCodeAs(PlayerKey.of("SYSTEM"));
+        assertThat(PlayerKey.of(uuid)).isNotEqualTo(PlayerKey.of(UUID.randomUUID()));
+    }
+}
@@ -0,0 +1,429 @@
+package com.ultikits.plugins.mail.store;
+
+import com.ultikits.plugins.mail.entity.MailData;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Runs the {@link MailStore} conformance suite against {@link SegmentMailStore},
+ * plus persistence, recovery and compaction checks of its own.
+ */
+@DisplayName("SegmentMailStore 测试")
+class SegmentMailStoreTest extends MailStoreConformanceTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final List<String> errors = new ArrayList<>();
+
+    @Override
+    protected MailStore createStore() throws Exception {
+        return open(SegmentMailStore.DEFAULT_SEGMENT_BYTES, SegmentMailStore.DEFAULT_MIN_COMPACT_BYTES);
+    }
+
+    private SegmentMailStore open(long segmentBytes, long minCompactBytes) throws Exception {
+        return new SegmentMailStore(tempDir.toFile(), segmentBytes, minCompactBytes, errors::add);
+    }
+
+    private SegmentMailStore reopen(long segmentBytes, long minCompactBytes) throws Exception {
+        store.close();
+        SegmentMailStore reopened = open(segmentBytes, minCompactBytes);
+        store = reopened;
+        return reopened;
+    }
+
+    private SegmentMailStore reopen() throws Exception {
+        return reopen(SegmentMailStore.DEFAULT_SEGMENT_BYTES, SegmentMailStore.DEFAULT_MIN_COMPACT_BYTES);
+    }
+
+    private File[] segmentFiles() {
+        return tempDir.toFile().listFiles((dir, name) -> name.endsWith(".dat"));
+    }
+
+    @Nested
+    @DisplayName("持久化测试")
+    class PersistenceTests {
+
+        @Test
+        @DisplayName("重新打开后应恢复邮件和标志")
+        void shouldRestoreRowsAndFlagsAfterReopen() throws Exception {
+            MailData kept = mail("r1", "s1", 1L);
+            MailData removed = mail("r1", "s1", 2L);
+            store.insertAll(java.util.Arrays.asList(kept, removed));
+            store.update(store.getById(kept.getId()), m -> true, m -> m.setClaimed(true));
+            store.update(store.getById(removed.getId()), m -> true, m -> {
+                m.setDeletedByReceiver(true);
+                m.setDeletedBySender(true);
+            });
+
+            SegmentMailStore reopened = reopen();
+
+            MailData loaded = reopened.getById(kept.getId());
+            assertThat(loaded.isClaimed()).isTrue();
+            assertThat(loaded.getVersion()).isEqualTo(1);
+            assertThat(loaded.getSubject()).isEqualTo("Subject 1");
+            assertThat(reopened.getById(removed.getId())).isNull();
+            assertThat(reopened.countInbox("r1")).isEqualTo(1);
+        }
+
+        @Test
+        @DisplayName("群发 id 应在重启和压缩后保留")
+        void shouldKeepGroupIdAcrossReopenAndCompaction() throws Exception {
+            MailData grouped = mail("r1", "s1", 1L);
+            grouped.setGroupId("group-1");
+            MailData single = mail("r1", "s1", 2L);
+            store.insertAll(java.util.Arrays.asList(grouped, single));
+
+            SegmentMailStore reopened = reopen();
+            assertThat(reopened.getById(grouped.getId()).getGroupId()).isEqualTo("group-1");
+            assertThat(reopened.getById(single.getId()).getGroupId()).isNull();
+
+            reopened.compact();
+            assertThat(reopen().getById(grouped.getId()).getGroupId()).isEqualTo("group-1");
+        }
+
+        @Test
+        @DisplayName("末尾残缺记录应被丢弃且之后可继续写入")
+        void shouldDropTornTail() throws Exception {
+            MailData mail = mail("r1", "s1", 1L);
+            store.insert(mail);
+            store.close();
+            File segment = segmentFiles()[0];
+            Files.write(segment.toPath(), new byte[]{0, 0, 0, 40, 1, 2}, StandardOpenOption.APPEND);
+
+            SegmentMailStore reopened = open(SegmentMailStore.DEFAULT_SEGMENT_BYTES,
+                SegmentMailStore.DEFAULT_MIN_COMPACT_BYTES);
+            store = reopened;
+            MailData next = mail("r1", "s1", 2L);
+            reopened.insert(next);
+
+            SegmentMailStore again = reopen();
+            assertThat(again.getById(mail.getId())).isNotNull();
+            assertThat(again.getById(next.getId())).isNotNull();
+        }
+
+        @Test
+        @DisplayName("超过段大小时应切换到新段文件")
+        void shouldRollSegments() throws Exception {
+            SegmentMailStore small = reopen(4096, Long.MAX_VALUE);
+            for (int i = 0; i < 200; i++) {
+                small.insert(mail("r1", "s1", i));
+            }
+
+            assertThat(small.getSegmentCount()).isGreaterThan(1);
+            assertThat(reopen(4096, Long.MAX_VALUE).countInbox("r1")).isEqualTo(200);
+        }
+
+        @Test
+        @DisplayName("打开时应删除残留的压缩临时文件")
+        void shouldRemoveLeftoverCompactFile() throws Exception {
+            store.close();
+            File leftover = tempDir.resolve("segment-000001.dat.compact").toFile();
+            Files.write(leftover.toPath(), new byte[]{1, 2, 3});
+
+            store = open(SegmentMailStore.DEFAULT_SEGMENT_BYTES, SegmentMailStore.DEFAULT_MIN_COMPACT_BYTES);
+
+            assertThat(leftover).doesNotExist();
+        }
+    }
+
+    @Nested
+    @DisplayName("压缩测试")
+    class CompactionTests {
+
+        @Test
+        @DisplayName("压缩应回收已删除的数据并保留存活邮件")
+        void shouldReclaimDeadRows() throws Exception {
+            SegmentMailStore small = reopen(4096, Long.MAX_VALUE);
+            List<MailData> mails = new ArrayList<>();
+            for (int i = 0; i < 300; i++) {
+                MailData mail = mail("r" + (i % 3), "s1", i);
+                small.insert(mail);
+                mails.add(mail);
+            }
+            for (int i = 0; i < 300; i++) {
+                if (i % 10 != 0) {
+                    MailData mail = mails.get(i);
+                    small.update(mail, m -> true, m -> {
+                        m.setDeletedBySender(true);
+                        m.setDeletedByReceiver(true);
+                    });
+                }
+            }
+            small.update(mails.get(0), m -> true, m -> m.setRead(true));
+            long before = small.getTotalBytes();
+
+            small.compact();
+
+            assertThat(small.getTotalBytes()).isLessThan(before);
+            assertThat(small.getAll()).hasSize(30);
+            assertThat(small.getById(mails.get(0).getId()).isRead()).isTrue();
+
+            // Survives a restart, deleted rows stay deleted
+            SegmentMailStore reopened = reopen(4096, Long.MAX_VALUE);
+            assertThat(reopened.getAll()).hasSize(30);
+            assertThat(reopened.getById(mails.get(1).getId())).isNull();
+            assertThat(reopened.getById(mails.get(0).getId()).isRead()).isTrue();
+        }
+
+        @Test
+        @DisplayName("压缩后写入的变更应在重启后保留")
+        void shouldKeepWritesAfterCompaction() throws Exception {
+            SegmentMailStore small = reopen(4096, Long.MAX_VALUE);
+            MailData mail = mail("r1", "s1", 1L);
+            small.insert(mail);
+            small.compact();
+
+            small.update(small.getById(mail.getId()), m -> true, m -> m.setClaimed(true));
+            MailData later = mail("r1", "s1", 2L);
+            small.insert(later);
+
+            SegmentMailStore reopened = reopen(4096, Long.MAX_VALUE);
+            assertThat(reopened.getById(mail.getId()).isClaimed()).isTrue();
+            assertThat(reopened.getById(later.getId())).isNotNull();
+        }
+
+        @Test
+        @DisplayName("压缩失败时应保留原有段并可继续读写")
+        void shouldKeepSegmentsWhenCompactionFails() throws Exception {
+            SegmentMailStore small = reopen(4096, Long.MAX_VALUE);
+            List<MailData> mails = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                MailData mail = mail("r1", "s1", i);
+                small.insert(mail);
+                mails.add(mail);
+            }
+            int next = small.getSegmentCount() + 1;
+            // A directory where the base segment goes makes the move fail
+            File blocker = tempDir.resolve(String.format("segment-%06d.dat", next)).toFile();
+            assertThat(new File(blocker, "x").mkdirs()).isTrue();
+
+            assertThatThrownBy(small::compact).isInstanceOf(java.io.IOException.class);
+
+            assertThat(tempDir.toFile().list((dir, name) -> name.endsWith(".compact"))).isEmpty();
+            for (MailData mail : mails) {
+                assertThat(small.getById(mail.getId()).getSubject()).isEqualTo(mail.getSubject());
+            }
+            MailData later = mail("r1", "s1", 1000L);
+            small.insert(later);
+
+            Files.delete(new File(blocker, "x").toPath());
+            Files.delete(blocker.toPath());
+            SegmentMailStore reopened = reopen(4096, Long.MAX_VALUE);
+            assertThat(reopened.countInbox("r1")).isEqualTo(101);
+        }
+
+        @Test
+        @DisplayName("压缩后应删除被替换的段文件")
+        void shouldDeleteReplacedSegments() throws Exception {
+            SegmentMailStore small = reopen(4096, Long.MAX_VALUE);
+            for (int i = 0; i < 200; i++) {
+                small.insert(mail("r1", "s1", i));
+            }
+
+            small.compact();
+
+            // The base and the empty active segment
+            assertThat(segmentFiles()).hasSize(2);
+            assertThat(small.getSegmentCount()).isEqualTo(2);
+            assertThat(reopen(4096, Long.MAX_VALUE).countInbox("r1")).isEqualTo(200);
+        }
+
+        @Test
+        @DisplayName("垃圾数据过多时应自动在后台压缩")
+        void shouldCompactInBackground() throws Exception {
+            SegmentMailStore small = reopen(4096, 16 * 1024);
+            for (int round = 0; round < 400; round++) {
+                MailData mail = mail("r1", "s1", round);
+                small.insert(mail);
+                small.update(mail, m -> true, m -> {
+                    m.setDeletedBySender(true);
+                    m.setDeletedByReceiver(true);
+                });
+            }
+
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (small.getTotalBytes() > 16 * 1024 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+
+            assertThat(small.getTotalBytes()).isLessThanOrEqualTo(16 * 1024);
+            assertThat(errors).isEmpty();
+        }
+    }
+
+    @Nested
+    @DisplayName("映射窗口测试")
+    class MapWindowTests {
+
+        @Test
+        @DisplayName("跨越窗口边界的记录应能完整读取")
+        void shouldReadRecordsAcrossWindows() throws Exception {
+            store.close();
+            SegmentMailStore windowed = new SegmentMailStore(tempDir.toFile(),
+                SegmentMailStore.DEFAULT_SEGMENT_BYTES, Long.MAX_VALUE, 256, errors::add);
+            store = windowed;
+            List<MailData> mails = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                MailData mail = mail("r1", "s1", i);
+                mail.setContent("Content " + i + " " + String.join("", java.util.Collections.nCopies(i, "x")));
+                windowed.insert(mail);
+                mails.add(mail);
+            }
+
+            for (MailData mail : mails) {
+                assertThat(windowed.getById(mail.getId()).getContent()).isEqualTo(mail.getContent());
+            }
+            windowed.compact();
+            for (MailData mail : mails) {
+                assertThat(windowed.getById(mail.getId()).getContent()).isEqualTo(mail.getContent());
+            }
+            assertThat(errors).isEmpty();
+        }
+
+        @Test
+        @DisplayName("活动段被替换的映射应在下次写入时释放")
+        void shouldUnmapReplacedWindowsOfActiveSegment() throws Exception {
+            store.close();
+            SegmentMailStore windowed = new SegmentMailStore(tempDir.toFile(),
+                SegmentMailStore.DEFAULT_SEGMENT_BYTES, Long.MAX_VALUE, 1 << 20, errors::add);
+            store = windowed;
+
+            for (int i = 0; i < 200; i++) {
+                MailData mail = mail("r1", "s1", i);
+                windowed.insert(mail);
+                // Each read after a write remaps the grown window
+                assertThat(windowed.getById(mail.getId()).getSubject()).isEqualTo(mail.getSubject());
+                assertThat(windowed.getRetiredMappings()).isLessThanOrEqualTo(1);
+            }
+            assertThat(errors).isEmpty();
+        }
+    }
+
+    @Nested
+    @DisplayName("UUID 压缩存储测试")
+    class PackedUuidTests {
+
+        @Test
+        @DisplayName("UUID 与非 UUID 的收发件人在重启后应原样恢复")
+        void shouldRoundTripKeys() throws Exception {
+            String receiver = UUID.randomUUID().toString();
+            String upperCase = UUID.randomUUID().toString().toUpperCase(Locale.ROOT);
+            store.insertAll(Arrays.asList(mail(receiver, "SYSTEM", 1L), mail(upperCase, receiver, 2L)));
+
+            SegmentMailStore reopened = reopen();
+
+            assertThat(reopened.findByReceiver(receiver)).extracting(MailData::getSenderUuid)
+                .containsExactly("SYSTEM");
+            assertThat(reopened.findBySender(receiver)).extracting(MailData::getReceiverUuid)
+                .containsExactly(upperCase);
+            assertThat(reopened.findByReceiver(upperCase.toLowerCase(Locale.ROOT))).isEmpty();
+        }
+
+        @Test
+        @DisplayName("UUID 应以 16 字节写入")
+        void shouldPackUuids() throws Exception {
+            SegmentMailStore segmentStore = (SegmentMailStore) store;
+            long empty = segmentStore.getTotalBytes();
+            String receiver = UUID.randomUUID().toString();
+            String sender = UUID.randomUUID().toString();
+            segmentStore.insert(mail(receiver, sender, 1L));
+            long packed = segmentStore.getTotalBytes() - empty;
+
+            // Same lengths, but upper case is not canonical and stays a string
+            segmentStore.insert(mail(receiver.toUpperCase(Locale.ROOT), sender.toUpperCase(Locale.ROOT), 1L));
+            long strings = segmentStore.getTotalBytes() - empty - packed;
+
+            // Per UUID: tag + 16 bytes instead of tag + length + 36 chars
+            assertThat(strings - packed).isEqualTo(2 * ((1 + 4 + 36) - (1 + 16)));
+        }
+
+        @Test
+        @DisplayName("旧格式的行应可读取并在打开后被压缩重写")
+        void shouldMigrateLegacyRows() throws Exception {
+            store.close();
+            String receiver = UUID.randomUUID().toString();
+            writeLegacySegment(receiver, "SYSTEM");
+
+            SegmentMailStore migrated = open(SegmentMailStore.DEFAULT_SEGMENT_BYTES,
+                SegmentMailStore.DEFAULT_MIN_COMPACT_BYTES);
+            store = migrated;
+            assertThat(migrated.findByReceiver(receiver)).extracting(MailData::getSubject)
+                .containsExactly("Legacy");
+
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (migrated.getLegacyRowCount() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            assertThat(migrated.getLegacyRowCount()).isZero();
+
+            SegmentMailStore reopened = reopen();
+            assertThat(reopened.getLegacyRowCount()).isZero();
+            MailData loaded = reopened.findByReceiver(receiver).get(0);
+            assertThat(loaded.getSenderUuid()).isEqualTo("SYSTEM");
+            assertThat(loaded.getGroupId()).isNull();
+            assertThat(loaded.isRead()).isTrue();
+            assertThat(errors).isEmpty();
+        }
+
+        /**
+         * One row record in the format used before UUIDs were packed.
+         */
+        private void writeLegacySegment(String receiver, String sender) throws Exception {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            writeString(out, "legacy-1");
+            writeString(out, receiver);
+            writeString(out, sender);
+            out.writeLong(1L);
+            out.writeByte(1); // read
+            out.writeLong(0L);
+            out.writeBoolean(false);
+            writeString(out, "Sender");
+            writeString(out, "Receiver");
+            writeString(out, "Legacy");
+            writeString(out, "Old row");
+            writeString(out, null);
+            writeString(out, null);
+            out.flush();
+            byte[] body = bytes.toByteArray();
+
+            byte type = 1;
+            CRC32 crc = new CRC32();
+            crc.update(type);
+            crc.update(body, 0, body.length);
+            ByteBuffer record = ByteBuffer.allocate(9 + body.length);
+            record.putInt(body.length).putInt((int) crc.getValue()).put(type).put(body);
+            Files.write(tempDir.resolve("segment-000001.dat"), record.array());
+        }
+
+        private void writeString(DataOutputStream out, String value) throws Exception {
+            if (value == null) {
+                out.writeInt(-1);
+                return;
+            }
+            byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(encoded.length);
+            out.write(encoded);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.ultikits.plugins.mail.store;
+
+import org.junit.jupiter.api.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for StripedLocks.
+ */
+@DisplayName("StripedLocks 测试")
+class StripedLocksTest {
+
+    @Test
+    @DisplayName("锁数量应向上取整为 2 的幂")
+    void shouldRoundStripesToPowerOfTwo() {
+        assertThat(new StripedLocks(1).size()).isEqualTo(1);
+        assertThat(new StripedLocks(3).size()).isEqualTo(4);
+        assertThat(new StripedLocks(64).size()).isEqualTo(64);
+        assertThat(new StripedLocks(65).size()).isEqualTo(128);
+    }
+
+    @Test
+    @DisplayName("相同键应得到同一把锁")
+    void shouldReturnSameLockForSameKey() {
+        StripedLocks locks = new StripedLocks();
+
+        assertThat(locks.get("mail-1")).isSameAs(locks.get(new String("mail-1")));
+    }
+
+    @Test
+    @DisplayName("不同键应分散到多把锁")
+    void shouldSpreadKeysOverStripes() {
+        StripedLocks locks = new StripedLocks(16);
+        java.util.Set<Object> used = java.util.Collections.newSetFromMap(new java.util.IdentityHashMap<>());
+
+        for (int i = 0; i < 1000; i++) {
+            used.add(locks.get("mail-" + i));
+        }
+
+        assertThat(used).hasSize(16);
+    }
+
+    @Test
+    @DisplayName("null 键应可用")
+    void shouldAcceptNullKey() {
+        assertThat(new StripedLocks().get(null)).isNotNull();
+    }
+}
@@ -0,0 +1,97 @@
+package com.ultikits.plugins.mail.store.migration;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for AddColumnMigration against mocked database metadata.
+ */
+@DisplayName("AddColumnMigration 测试")
+@ExtendWith(MockitoExtension.class)
+@Timeout(value = 30, unit = TimeUnit.SECONDS)
+class AddColumnMigrationTest {
+
+    @Mock
+    private Connection connection;
+
+    @Mock
+    private DatabaseMetaData meta;
+
+    @Mock
+    private ResultSet tables;
+
+    @Mock
+    private ResultSet columns;
+
+    @Mock
+    private Statement statement;
+
+    private final AddColumnMigration migration = new AddColumnMigration(3, "mail_messages",
+        "group_id", "VARCHAR(64)");
+
+    @BeforeEach
+    void setUp() throws Exception {
+        when(connection.getMetaData()).thenReturn(meta);
+        when(meta.getTables(any(), isNull(), isNull(), any())).thenReturn(tables);
+        lenient().when(meta.getColumns(any(), isNull(), anyString(), isNull())).thenReturn(columns);
+        lenient().when(connection.createStatement()).thenReturn(statement);
+    }
+
+    @Test
+    @DisplayName("描述应包含列名和类型")
+    void shouldDescribeColumn() {
+        assertThat(migration.getVersion()).isEqualTo(3);
+        assertThat(migration.getDescription()).isEqualTo("column group_id VARCHAR(64) on mail_messages");
+    }
+
+    @Test
+    @DisplayName("列不存在时应按实际表名添加")
+    void shouldAddMissingColumn() throws Exception {
+        when(tables.next()).thenReturn(true, false);
+        when(tables.getString("TABLE_NAME")).thenReturn("MAIL_MESSAGES");
+        when(columns.next()).thenReturn(true, false);
+        when(columns.getString("COLUMN_NAME")).thenReturn("ID");
+
+        migration.apply(connection);
+
+        verify(statement).executeUpdate("ALTER TABLE MAIL_MESSAGES ADD COLUMN group_id VARCHAR(64)");
+    }
+
+    @Test
+    @DisplayName("列已存在时不应重复添加")
+    void shouldSkipExistingColumn() throws Exception {
+        when(tables.next()).thenReturn(true, false);
+        when(tables.getString("TABLE_NAME")).thenReturn("mail_messages");
+        when(columns.next()).thenReturn(true, false);
+        when(columns.getString("COLUMN_NAME")).thenReturn("GROUP_ID");
+
+        migration.apply(connection);
+
+        verify(statement, never()).executeUpdate(anyString());
+    }
+
+    @Test
+    @DisplayName("表不存在时应失败以便下次重试")
+    void shouldFailWhenTableMissing() throws Exception {
+        when(tables.next()).thenReturn(false);
+
+        assertThatThrownBy(() -> migration.apply(connection))
+            .isInstanceOf(SQLException.class)
+            .hasMessageContaining("mail_messages");
+        verify(statement, never()).executeUpdate(anyString());
+    }
+}
@@ -0,0 +1,100 @@
+package com.ultikits.plugins.mail.store.migration;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for CreateIndexMigration against mocked database metadata.
+ */
+@DisplayName("CreateIndexMigration 测试")
+@ExtendWith(MockitoExtension.class)
+@Timeout(value = 30, unit = TimeUnit.SECONDS)
+class CreateIndexMigrationTest {
+
+    @Mock
+    private Connection connection;
+
+    @Mock
+    private DatabaseMetaData meta;
+
+    @Mock
+    private ResultSet tables;
+
+    @Mock
+    private ResultSet indexes;
+
+    @Mock
+    private Statement statement;
+
+    private final CreateIndexMigration migration = new CreateIndexMigration(1, "mail_messages",
+        "idx_mail_inbox", "receiver_uuid", "deleted_by_receiver", "sent_time");
+
+    @BeforeEach
+    void setUp() throws Exception {
+        when(connection.getMetaData()).thenReturn(meta);
+        when(meta.getTables(any(), isNull(), isNull(), any())).thenReturn(tables);
+        lenient().when(meta.getIndexInfo(any(), isNull(), anyString(), eq(false), eq(true))).thenReturn(indexes);
+        lenient().when(connection.createStatement()).thenReturn(statement);
+    }
+
+    @Test
+    @DisplayName("描述应包含索引名和列")
+    void shouldDescribeIndex() {
+        assertThat(migration.getVersion()).isEqualTo(1);
+        assertThat(migration.getDescription())
+            .isEqualTo("index idx_mail_inbox on mail_messages (receiver_uuid, deleted_by_receiver, sent_time)");
+    }
+
+    @Test
+    @DisplayName("索引不存在时应按实际表名创建")
+    void shouldCreateMissingIndex() throws Exception {
+        when(tables.next()).thenReturn(true, false);
+        when(tables.getString("TABLE_NAME")).thenReturn("MAIL_MESSAGES");
+        when(indexes.next()).thenReturn(true, false);
+        when(indexes.getString("INDEX_NAME")).thenReturn("PRIMARY");
+
+        migration.apply(connection);
+
+        verify(statement).executeUpdate("CREATE INDEX idx_mail_inbox ON MAIL_MESSAGES "
+            + "(receiver_uuid, deleted_by_receiver, sent_time)");
+    }
+
+    @Test
+    @DisplayName("索引已存在时不应重复创建")
+    void shouldSkipExistingIndex() throws Exception {
+        when(tables.next()).thenReturn(true, false);
+        when(tables.getString("TABLE_NAME")).thenReturn("mail_messages");
+        when(indexes.next()).thenReturn(true, false);
+        when(indexes.getString("INDEX_NAME")).thenReturn("IDX_MAIL_INBOX");
+
+        migration.apply(connection);
+
+        verify(statement, never()).executeUpdate(anyString());
+    }
+
+    @Test
+    @DisplayName("表不存在时应失败以便下次重试")
+    void shouldFailWhenTableMissing() throws Exception {
+        when(tables.next()).thenReturn(true, false);
+        when(tables.getString("TABLE_NAME")).thenReturn("other_table");
+
+        assertThatThrownBy(() -> migration.apply(connection))
+            .isInstanceOf(SQLException.class)
+            .hasMessageContaining("mail_messages");
+        verify(statement, never()).executeUpdate(anyString());
+    }
+}
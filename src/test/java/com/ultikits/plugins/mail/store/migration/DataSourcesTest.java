@@ -0,0 +1,69 @@
+package com.ultikits.plugins.mail.store.migration;
+
+import org.junit.jupiter.api.*;
+
+import javax.sql.DataSource;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Unit tests for DataSources.
+ */
+@DisplayName("DataSources 测试")
+@Timeout(value = 30, unit = TimeUnit.SECONDS)
+class DataSourcesTest {
+
+    static class Store {
+        private final DataSource pool;
+
+        Store(DataSource pool) {
+            this.pool = pool;
+        }
+    }
+
+    static class Operator {
+        private final String table = "mail_messages";
+        private final Store store;
+        private Operator self;
+
+        Operator(Store store) {
+            this.store = store;
+            this.self = this;
+        }
+    }
+
+    static class Deep {
+        private final Object next;
+
+        Deep(Object next) {
+            this.next = next;
+        }
+    }
+
+    @Test
+    @DisplayName("应在字段中找到数据源")
+    void shouldFindNestedDataSource() {
+        DataSource pool = mock(DataSource.class);
+
+        assertThat(DataSources.find(new Operator(new Store(pool)))).isSameAs(pool);
+    }
+
+    @Test
+    @DisplayName("没有数据源时应返回 null")
+    void shouldReturnNullWithoutDataSource() {
+        assertThat(DataSources.find(new Operator(new Store(null)))).isNull();
+        assertThat(DataSources.find(null)).isNull();
+    }
+
+    @Test
+    @DisplayName("超过搜索深度的数据源不应被找到")
+    void shouldStopAtMaxDepth() {
+        DataSource pool = mock(DataSource.class);
+
+        Object tooDeep = new Deep(new Deep(new Deep(new Deep(new Deep(pool)))));
+
+        assertThat(DataSources.find(tooDeep)).isNull();
+    }
+}
@@ -0,0 +1,43 @@
+package com.ultikits.plugins.mail.store.migration;
+
+import com.ultikits.plugins.mail.entity.MailData;
+import org.junit.jupiter.api.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for the list of MailMigrations.
+ */
+@DisplayName("MailMigrations 测试")
+@Timeout(value = 30, unit = TimeUnit.SECONDS)
+class MailMigrationsTest {
+
+    @Test
+    @DisplayName("版本号应从 1 开始连续递增")
+    void shouldNumberVersionsConsecutively() {
+        List<Migration> migrations = MailMigrations.all();
+
+        for (int i = 0; i < migrations.size(); i++) {
+            assertThat(migrations.get(i).getVersion()).isEqualTo(i + 1);
+        }
+    }
+
+    @Test
+    @DisplayName("所有迁移都应作用于实体映射的表")
+    void shouldTargetEntityTable() {
+        assertThat(MailMigrations.all())
+            .extracting(Migration::getDescription)
+            .allMatch(description -> description.contains(" on " + MailData.TABLE));
+    }
+
+    @Test
+    @DisplayName("应为旧表补上乐观锁版本列")
+    void shouldAddRowVersionColumn() {
+        assertThat(MailMigrations.all())
+            .extracting(Migration::getDescription)
+            .contains("column row_version BIGINT DEFAULT 0 on mail_messages");
+    }
+}
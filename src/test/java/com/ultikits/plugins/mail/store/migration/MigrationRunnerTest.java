@@ -0,0 +1,153 @@
+package com.ultikits.plugins.mail.store.migration;
+
+import com.ultikits.ultitools.interfaces.impl.logger.PluginLogger;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for MigrationRunner against a mocked JDBC connection.
+ */
+@DisplayName("MigrationRunner 测试")
+@ExtendWith(MockitoExtension.class)
+@Timeout(value = 30, unit = TimeUnit.SECONDS)
+class MigrationRunnerTest {
+
+    @Mock
+    private DataSource dataSource;
+
+    @Mock
+    private Connection connection;
+
+    @Mock
+    private Statement statement;
+
+    @Mock
+    private PreparedStatement insert;
+
+    @Mock
+    private ResultSet versions;
+
+    @Mock
+    private PluginLogger logger;
+
+    private final List<Integer> appliedOrder = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        lenient().when(dataSource.getConnection()).thenReturn(connection);
+        lenient().when(connection.createStatement()).thenReturn(statement);
+        lenient().when(connection.prepareStatement(anyString())).thenReturn(insert);
+        lenient().when(statement.executeQuery(anyString())).thenReturn(versions);
+    }
+
+    private void alreadyApplied(Integer... applied) throws SQLException {
+        Iterator<Integer> rows = Arrays.asList(applied).iterator();
+        int[] current = new int[1];
+        when(versions.next()).thenAnswer(invocation -> {
+            if (!rows.hasNext()) {
+                return false;
+            }
+            current[0] = rows.next();
+            return true;
+        });
+        lenient().when(versions.getInt(1)).thenAnswer(invocation -> current[0]);
+    }
+
+    private Migration migration(int version, boolean fails) {
+        return new Migration() {
+            @Override
+            public int getVersion() {
+                return version;
+            }
+
+            @Override
+            public String getDescription() {
+                return "step " + version;
+            }
+
+            @Override
+            public void apply(Connection connection) throws SQLException {
+                if (fails) {
+                    throw new SQLException("boom");
+                }
+                appliedOrder.add(version);
+            }
+        };
+    }
+
+    @Test
+    @DisplayName("应创建版本表并按版本顺序执行未应用的迁移")
+    void shouldApplyPendingMigrationsInOrder() throws Exception {
+        alreadyApplied(1);
+
+        int applied = new MigrationRunner(dataSource, logger)
+            .run(Arrays.asList(migration(3, false), migration(1, false), migration(2, false)));
+
+        assertThat(applied).isEqualTo(2);
+        assertThat(appliedOrder).containsExactly(2, 3);
+        verify(statement).executeUpdate(startsWith("CREATE TABLE IF NOT EXISTS mail_schema_version"));
+        verify(insert).setInt(1, 2);
+        verify(insert).setInt(1, 3);
+        verify(insert, times(2)).executeUpdate();
+        verify(logger).info(contains("migration 2 (step 2)"));
+        verify(connection).close();
+    }
+
+    @Test
+    @DisplayName("全部已应用时不应执行任何迁移")
+    void shouldSkipAppliedMigrations() throws Exception {
+        alreadyApplied(1, 2);
+
+        int applied = new MigrationRunner(dataSource, logger)
+            .run(Arrays.asList(migration(1, false), migration(2, false)));
+
+        assertThat(applied).isZero();
+        assertThat(appliedOrder).isEmpty();
+        verify(insert, never()).executeUpdate();
+    }
+
+    @Test
+    @DisplayName("迁移失败应停止后续迁移且不记录版本")
+    void shouldStopAtFirstFailure() throws Exception {
+        alreadyApplied();
+
+        int applied = new MigrationRunner(dataSource, logger)
+            .run(Arrays.asList(migration(1, false), migration(2, true), migration(3, false)));
+
+        assertThat(applied).isEqualTo(1);
+        assertThat(appliedOrder).containsExactly(1);
+        verify(insert).setInt(1, 1);
+        verify(insert, never()).setInt(1, 2);
+        verify(logger).error(contains("migration 2 (step 2) failed: boom"));
+    }
+
+    @Test
+    @DisplayName("无法连接数据库时应记录错误")
+    void shouldLogConnectionFailure() throws Exception {
+        when(dataSource.getConnection()).thenThrow(new SQLException("refused"));
+
+        int applied = new MigrationRunner(dataSource, logger).run(Arrays.asList(migration(1, false)));
+
+        assertThat(applied).isZero();
+        verify(logger).error(contains("refused"));
+    }
+}
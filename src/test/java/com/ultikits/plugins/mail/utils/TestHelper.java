@@ -54,6 +54,18 @@ public final class TestHelper {
         return plugin;
     }
 
+    /**
+     * Create a stub-only UltiToolsPlugin that does not record invocations.
+     * For long runs such as load tests, where recording every i18n call would
+     * show up as heap growth. i18n returns the key itself.
+     */
+    public static UltiToolsPlugin stubUltiToolsPlugin() {
+        UltiToolsPlugin plugin = mock(UltiToolsPlugin.class, withSettings().stubOnly());
+        when(plugin.i18n(any(String.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(plugin.getLogger()).thenReturn(mock(PluginLogger.class, withSettings().stubOnly()));
+        return plugin;
+    }
+
     /**
      * @deprecated Use {@link #mockUltiToolsPlugin()} instead.
      * Kept for backward compatibility during migration.